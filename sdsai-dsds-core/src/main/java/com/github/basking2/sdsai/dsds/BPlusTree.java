@@ -0,0 +1,655 @@
+package com.github.basking2.sdsai.dsds;
+
+import com.github.basking2.sdsai.dsds.node.Node;
+import com.github.basking2.sdsai.dsds.node.NodeStore;
+import com.github.basking2.sdsai.dsds.node.NodeStoreException;
+import com.github.basking2.sdsai.dsds.node.NodeStoreNodeNotFoundException;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+import static java.util.Collections.binarySearch;
+
+/**
+ * <p>A B+Tree that uses a {@link NodeStore} object to persist {@link Node}s
+ * and user data, as {@link BTree} does.</p>
+ *
+ * <p>Every key is kept in a leaf. Internal nodes hold separator keys, copies of the
+ * first key of a subtree, and keys equal to a separator are found in the subtree to its right.
+ * Each leaf keeps the store key of the next leaf as its only ancestor,
+ * {@code node.getAncestors().get(0)}, so iterating or selecting a range is one descent
+ * followed by a walk along the leaves. Internal nodes are not read again during a scan.</p>
+ *
+ * <p>Removing a key does not merge nodes. A leaf left empty is unlinked from the chain
+ * of leaves and from its parent and is removed, as is any internal node left without children.</p>
+ *
+ * <p>As with {@link BTree} there is no concurrency built into this object.</p>
+ *
+ * @param <K> The user key type. Keys must be {@link Comparable}.
+ * @param <STOREKEY> The storage key that K will be transformed in to.
+ * @param <V> The user value type.
+ */
+public class BPlusTree<K, STOREKEY, V> extends AbstractMap<K, V> implements BTreeMap<K, V>
+{
+    /**
+     * The key at which the root is always stored.
+     */
+    private final STOREKEY rootKey;
+
+    private final NodeStore<K, STOREKEY, V> nodeStore;
+
+    /**
+     * The most keys a node may hold. Nodes are split when they hold more.
+     */
+    private int maxData;
+
+    /**
+     * @param rootKey The key at which the tree's root is stored.
+     * @param nodeStore The storage engine.
+     */
+    public BPlusTree(final K rootKey, final NodeStore<K, STOREKEY, V> nodeStore)
+    {
+        this(rootKey, nodeStore, 100);
+    }
+
+    /**
+     * Build a tree over the root stored at {@code rootKey} or, if there is none,
+     * a new empty tree whose nodes hold up to {@code minData*2+1} keys.
+     *
+     * @param rootKey The key at which the tree's root is stored.
+     * @param nodeStore The storage engine.
+     * @param minData Half the number of keys a node holds after a split.
+     */
+    public BPlusTree(final K rootKey, final NodeStore<K, STOREKEY, V> nodeStore, final int minData)
+    {
+        this.nodeStore = nodeStore;
+        this.rootKey = nodeStore.convert(rootKey);
+        this.maxData = minData * 2 + 1;
+    }
+
+    /**
+     * Load the root node or, if none is found, create it.
+     *
+     * @throws NodeStoreException
+     */
+    private Node<K, STOREKEY> getRoot()
+    {
+        try {
+            final Node<K, STOREKEY> root = nodeStore.loadNode(rootKey);
+            maxData = root.getDataCap();
+            return root;
+        }
+        catch (final NodeStoreNodeNotFoundException e) {
+            final Node<K, STOREKEY> root = newNode();
+            nodeStore.store(rootKey, root);
+            return root;
+        }
+    }
+
+    /**
+     * @return A node whose data cap is {@link #maxData}, with one ancestor, the next leaf.
+     */
+    private Node<K, STOREKEY> newNode()
+    {
+        return new Node<>(maxData + 1, maxData, 1);
+    }
+
+    /**
+     * @return The index of the child of an internal node to descend to for {@code key}.
+     */
+    private int childIndex(final Node<K, STOREKEY> node, final K key)
+    {
+        final int i = binarySearch(node.getData(), key, null);
+
+        // A key equal to a separator is in the subtree to its right.
+        return i >= 0 ? i + 1 : -(i + 1);
+    }
+
+    /**
+     * The nodes from the root to a leaf.
+     */
+    private final class Path
+    {
+        private final List<STOREKEY> keys = new ArrayList<>();
+        private final List<Node<K, STOREKEY>> nodes = new ArrayList<>();
+
+        /**
+         * The index of the child descended to from each node.
+         */
+        private final List<Integer> children = new ArrayList<>();
+
+        private Path(final K key)
+        {
+            STOREKEY nodeKey = rootKey;
+            Node<K, STOREKEY> node = getRoot();
+
+            while (!node.isLeaf()) {
+                final int i = childIndex(node, key);
+                add(nodeKey, node, i);
+                nodeKey = node.getChildren().get(i);
+                node = nodeStore.loadNode(nodeKey);
+            }
+
+            add(nodeKey, node, -1);
+        }
+
+        private void add(final STOREKEY nodeKey, final Node<K, STOREKEY> node, final int child)
+        {
+            keys.add(nodeKey);
+            nodes.add(node);
+            children.add(child);
+        }
+
+        private int leafLevel()
+        {
+            return nodes.size() - 1;
+        }
+
+        private Node<K, STOREKEY> leaf()
+        {
+            return nodes.get(leafLevel());
+        }
+
+        private STOREKEY leafKey()
+        {
+            return keys.get(leafLevel());
+        }
+    }
+
+    /**
+     * Check the {@link NodeStore} for the given key.
+     *
+     * @return true if data is stored for the key.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean containsKey(final Object key)
+    {
+        return nodeStore.containsData(nodeStore.convert((K) key));
+    }
+
+    /**
+     * Retrieve the object from the {@link NodeStore}.
+     *
+     * @return The user data returned by {@link NodeStore#loadData(Object)}.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(final Object key)
+    {
+        return nodeStore.loadData(nodeStore.convert((K) key));
+    }
+
+    /**
+     * Put the value into the tree. If data is already stored for the key,
+     * no node is changed and the old value is returned.
+     *
+     * @param key The user key which will be converted to a STOREKEY
+     *            by {@link NodeStore#convert(Object)}.
+     * @param value The value stored.
+     */
+    @Override
+    public V put(final K key, final V value)
+    {
+        final STOREKEY storeKey = nodeStore.convert(key);
+
+        final V v = get(key);
+
+        if (v != null) {
+            nodeStore.store(storeKey, value);
+            return v;
+        }
+
+        putKey(key);
+        nodeStore.store(storeKey, value);
+
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean putKey(final K key)
+    {
+        final Path path = new Path(key);
+        final Node<K, STOREKEY> leaf = path.leaf();
+        final int i = binarySearch(leaf.getData(), key, null);
+
+        if (i >= 0) {
+            return false;
+        }
+
+        leaf.getData().add(-(i + 1), key);
+
+        int level = path.leafLevel();
+        Node<K, STOREKEY> node = leaf;
+
+        while (node.getData().size() > maxData) {
+            if (level == 0) {
+                splitRoot(node);
+                return true;
+            }
+
+            final Node<K, STOREKEY> sibling = newNode();
+            final STOREKEY siblingKey = nodeStore.generateKey(sibling, null);
+            final K separator = split(node, sibling, siblingKey);
+
+            // Store the new sibling before anything points to it.
+            nodeStore.store(siblingKey, sibling);
+            nodeStore.store(path.keys.get(level), node);
+
+            level--;
+            node = path.nodes.get(level);
+            final int child = path.children.get(level);
+            node.getData().add(child, separator);
+            node.getChildren().add(child + 1, siblingKey);
+        }
+
+        nodeStore.store(path.keys.get(level), node);
+
+        return true;
+    }
+
+    /**
+     * Move the upper half of {@code node} into the empty {@code sibling}.
+     *
+     * A leaf keeps its lower keys and is linked to the sibling, which is linked to the leaf
+     * that followed it. An internal node gives up its middle key as the separator.
+     *
+     * @return The separator to add to the parent, before {@code siblingKey}.
+     */
+    private K split(final Node<K, STOREKEY> node, final Node<K, STOREKEY> sibling, final STOREKEY siblingKey)
+    {
+        final List<K> data = node.getData();
+        final int mid = data.size() / 2;
+
+        if (node.isLeaf()) {
+            moveTail(data, mid, sibling.getData());
+            sibling.getAncestors().addAll(node.getAncestors());
+            node.getAncestors().clear();
+            node.getAncestors().add(siblingKey);
+            return sibling.getData().get(0);
+        }
+
+        final K separator = data.get(mid);
+        moveTail(data, mid + 1, sibling.getData());
+        data.remove(mid);
+        moveTail(node.getChildren(), mid + 1, sibling.getChildren());
+        return separator;
+    }
+
+    /**
+     * Split the root into two new nodes and make it their parent, so the root key never changes.
+     * The root is never linked to by a leaf, as it has no leaf to its left.
+     */
+    private void splitRoot(final Node<K, STOREKEY> root)
+    {
+        final Node<K, STOREKEY> left = newNode();
+        final STOREKEY leftKey = nodeStore.generateKey(left, null);
+        final Node<K, STOREKEY> right = newNode();
+        final STOREKEY rightKey = nodeStore.generateKey(right, null);
+
+        left.getData().addAll(root.getData());
+        left.getChildren().addAll(root.getChildren());
+        left.getAncestors().addAll(root.getAncestors());
+
+        final K separator = split(left, right, rightKey);
+
+        nodeStore.store(rightKey, right);
+        nodeStore.store(leftKey, left);
+
+        root.getData().clear();
+        root.getData().add(separator);
+        root.getChildren().clear();
+        root.getChildren().add(leftKey);
+        root.getChildren().add(rightKey);
+        root.getAncestors().clear();
+        nodeStore.store(rootKey, root);
+    }
+
+    private static <T> void moveTail(final List<T> from, final int start, final List<T> to)
+    {
+        final List<T> tail = from.subList(start, from.size());
+        to.addAll(tail);
+        tail.clear();
+    }
+
+    /**
+     * Remove a key from its leaf and remove its data.
+     *
+     * @return The data that was stored for the key.
+     * @throws ClassCastException if {@code keyObject} is not a key.
+     */
+    @Override
+    public V remove(final Object keyObject)
+    {
+        @SuppressWarnings("unchecked")
+        final K key = (K) keyObject;
+        final STOREKEY storeKey = nodeStore.convert(key);
+        final Path path = new Path(key);
+        final int i = binarySearch(path.leaf().getData(), key, null);
+
+        final V v = nodeStore.loadData(storeKey);
+
+        if (i >= 0) {
+            path.leaf().getData().remove(i);
+            if (path.leaf().getData().isEmpty() && path.leafLevel() > 0) {
+                removeLeaf(path);
+            }
+            else {
+                nodeStore.store(path.leafKey(), path.leaf());
+            }
+            nodeStore.removeData(storeKey);
+        }
+
+        return v;
+    }
+
+    /**
+     * Remove the empty leaf at the end of {@code path}.
+     *
+     * The previous leaf is linked to the next one first, then the leaf is removed from its parent.
+     * A parent left without children is removed from its parent in turn. Nodes are deleted
+     * only once nothing points to them.
+     */
+    private void removeLeaf(final Path path)
+    {
+        final STOREKEY previousKey = previousLeafKey(path);
+        if (previousKey != null) {
+            final Node<K, STOREKEY> previous = nodeStore.loadNode(previousKey);
+            previous.getAncestors().clear();
+            previous.getAncestors().addAll(path.leaf().getAncestors());
+            nodeStore.store(previousKey, previous);
+        }
+
+        final List<STOREKEY> removed = new ArrayList<>();
+        int level = path.leafLevel();
+        while (true) {
+            removed.add(path.keys.get(level));
+
+            level--;
+            final Node<K, STOREKEY> parent = path.nodes.get(level);
+            final int child = path.children.get(level);
+            parent.getChildren().remove(child);
+            if (!parent.getData().isEmpty()) {
+                // Keys of the removed child now belong to the child to its left, or to its right if it was first.
+                parent.getData().remove(child > 0 ? child - 1 : 0);
+            }
+
+            if (!parent.getChildren().isEmpty() || level == 0) {
+                nodeStore.store(path.keys.get(level), parent);
+                break;
+            }
+        }
+
+        for (final STOREKEY k : removed) {
+            nodeStore.removeNode(k);
+        }
+    }
+
+    /**
+     * @return The key of the leaf before the leaf of {@code path}, or null if it is the first leaf.
+     */
+    private STOREKEY previousLeafKey(final Path path)
+    {
+        for (int level = path.leafLevel() - 1; level >= 0; level--) {
+            final int child = path.children.get(level);
+            if (child > 0) {
+                STOREKEY key = path.nodes.get(level).getChildren().get(child - 1);
+                Node<K, STOREKEY> node = nodeStore.loadNode(key);
+                while (!node.isLeaf()) {
+                    key = node.getChildren().get(node.getChildren().size() - 1);
+                    node = nodeStore.loadNode(key);
+                }
+                return key;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Count the keys by walking the leaves.
+     */
+    @Override
+    public int size()
+    {
+        int size = 0;
+        for (Node<K, STOREKEY> leaf = firstLeaf(); leaf != null; leaf = nextLeaf(leaf)) {
+            size += leaf.getData().size();
+        }
+        return size;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isEmpty()
+    {
+        return !getIterator().hasNext();
+    }
+
+    /**
+     * Remove all user data and all nodes but the root, which is stored empty.
+     */
+    @Override
+    public void clear()
+    {
+        clear(getRoot());
+        nodeStore.store(rootKey, newNode());
+    }
+
+    private void clear(final Node<K, STOREKEY> node)
+    {
+        if (node.isLeaf()) {
+            for (final K k : node.getData()) {
+                nodeStore.removeData(nodeStore.convert(k));
+            }
+            return;
+        }
+
+        for (final STOREKEY k : node.getChildren()) {
+            clear(nodeStore.loadNode(k));
+            nodeStore.removeNode(k);
+        }
+    }
+
+    /**
+     * Calls {@link #clear()} and deletes the root node.
+     */
+    public void destroy()
+    {
+        clear();
+        nodeStore.removeNode(rootKey);
+    }
+
+    private Node<K, STOREKEY> firstLeaf()
+    {
+        Node<K, STOREKEY> node = getRoot();
+        while (!node.isLeaf()) {
+            node = nodeStore.loadNode(node.getChildren().get(0));
+        }
+        return node;
+    }
+
+    private Node<K, STOREKEY> nextLeaf(final Node<K, STOREKEY> leaf)
+    {
+        return leaf.getAncestors().isEmpty() ? null : nodeStore.loadNode(leaf.getAncestors().get(0));
+    }
+
+    /**
+     * @return All keys in order.
+     */
+    public Iterator<K> getIterator()
+    {
+        return new KeyIterator(firstLeaf(), 0, null);
+    }
+
+    /**
+     * Select the keys from {@code lower}, inclusive, to {@code upper}, exclusive.
+     * Each iterator descends to the leaf of {@code lower} once and then walks the leaves.
+     *
+     * @param lower The lower boundary of the selection, inclusive.
+     * @param upper The upper boundary of the selection, exclusive. If null, the selection is unbounded.
+     * @return The keys in the range, in order.
+     */
+    public Iterable<K> select(final K lower, final K upper)
+    {
+        return () -> {
+            final Path path = new Path(lower);
+            final int i = binarySearch(path.leaf().getData(), lower, null);
+            return new KeyIterator(path.leaf(), i >= 0 ? i : -(i + 1), upper);
+        };
+    }
+
+    /**
+     * Walks the leaves from a starting key until the keys reach an upper bound.
+     */
+    private final class KeyIterator implements Iterator<K>
+    {
+        private Node<K, STOREKEY> leaf;
+        private int index;
+        private final K upper;
+
+        private KeyIterator(final Node<K, STOREKEY> leaf, final int index, final K upper)
+        {
+            this.leaf = leaf;
+            this.index = index;
+            this.upper = upper;
+            skipExhaustedLeaves();
+        }
+
+        private void skipExhaustedLeaves()
+        {
+            while (leaf != null && index >= leaf.getData().size()) {
+                leaf = nextLeaf(leaf);
+                index = 0;
+            }
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean hasNext()
+        {
+            return leaf != null
+                && (upper == null || ((Comparable<? super K>) leaf.getData().get(index)).compareTo(upper) < 0);
+        }
+
+        @Override
+        public K next()
+        {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            final K k = leaf.getData().get(index++);
+            skipExhaustedLeaves();
+            return k;
+        }
+    }
+
+    /**
+     * Entries in key order. Values are loaded when first asked for.
+     */
+    @Override
+    public Set<Map.Entry<K, V>> entrySet()
+    {
+        return new AbstractSet<Map.Entry<K, V>>() {
+            @Override
+            public Iterator<Map.Entry<K, V>> iterator()
+            {
+                final Iterator<K> keys = getIterator();
+                return new Iterator<Map.Entry<K, V>>() {
+                    @Override
+                    public boolean hasNext()
+                    {
+                        return keys.hasNext();
+                    }
+
+                    @Override
+                    public Map.Entry<K, V> next()
+                    {
+                        final K key = keys.next();
+                        return new Map.Entry<K, V>() {
+                            private V value;
+
+                            @Override
+                            public K getKey()
+                            {
+                                return key;
+                            }
+
+                            @Override
+                            public V getValue()
+                            {
+                                if (value == null) {
+                                    value = get(key);
+                                }
+                                return value;
+                            }
+
+                            @Override
+                            public V setValue(final V value)
+                            {
+                                this.value = value;
+                                return put(key, value);
+                            }
+
+                            @Override
+                            public boolean equals(final Object o)
+                            {
+                                return o instanceof Map.Entry
+                                    && eq(key, ((Map.Entry<?, ?>) o).getKey())
+                                    && eq(getValue(), ((Map.Entry<?, ?>) o).getValue());
+                            }
+
+                            @Override
+                            public int hashCode()
+                            {
+                                return Objects.hashCode(key) ^ Objects.hashCode(getValue());
+                            }
+                        };
+                    }
+                };
+            }
+
+            @Override
+            public int size()
+            {
+                return BPlusTree.this.size();
+            }
+        };
+    }
+
+    private static boolean eq(final Object o1, final Object o2)
+    {
+        return o1 == null ? o2 == null : o1.equals(o2);
+    }
+
+    /**
+     * Two trees are equal if they have the same root key.
+     */
+    @Override
+    public boolean equals(final Object o)
+    {
+        return o instanceof BPlusTree && rootKey.equals(((BPlusTree<?, ?, ?>) o).rootKey);
+    }
+
+    /**
+     * @return The hash code of the root key.
+     */
+    @Override
+    public int hashCode()
+    {
+        return rootKey.hashCode();
+    }
+}
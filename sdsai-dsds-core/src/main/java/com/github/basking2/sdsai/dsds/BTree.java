@@ -22,14 +22,25 @@
 package com.github.basking2.sdsai.dsds;
 
 import com.github.basking2.sdsai.dsds.node.*;
+import com.github.basking2.sdsai.dsds.node.metrics.OperationTracer;
 
 import java.util.AbstractCollection;
 import java.util.AbstractSet;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 import static java.util.Collections.binarySearch;
 
@@ -67,60 +78,54 @@ public class BTree<K,STOREKEY, V> implements BTreeMap<K,V>
      * the root node is the exception to this rule. It may have less.
      */
     private int minData;
-    
-    /**
-     * The index of the first element split into a left node. 0.
-     * Used in node splitting. Set by {@link #updateIndexes()}.
-     */
-    private int leftDataStart;
-    
-    /**
-     * The exclusive index of the last element split into a left node.
-     * Used in node splitting. Set by {@link #updateIndexes()}.
-     */
-    private int leftDataEnd;
-    
+
     /**
-     * The index of the first element split into a left node. 0.
-     * Used in node splitting. Set by {@link #updateIndexes()}.
+     * Traces each public operation, or null if tracing is off.
      */
-    private int leftChildStart;
+    private OperationTracer tracer;
     
     /**
-     * The exclusive index of the last element split into a left node.
-     * Used in node splitting. Set by {@link #updateIndexes()}.
+     * Chooses where full nodes are split.
      */
-    private int leftChildEnd;
-    
+    private SplitPolicy splitPolicy = SplitPolicy.EVEN;
+
     /**
-     * The index of the center data index.
-     * Used in node splitting. Set by {@link #updateIndexes()}.
+     * Nodes holding this many keys or fewer are merged or refilled on removal.
+     * Never more than {@link #minData}. See {@link #mergeThreshold()}.
      */
-    private int middleData;
-    
+    private int mergeThreshold = Integer.MAX_VALUE;
+
     /**
-     * The index of the first element split into a right node.
-     * Used in node splitting. Set by {@link #updateIndexes()}.
+     * The store wrapped around {@link #nodeStore} by {@link #pinRoot(boolean)}, or null.
      */
-    private int rightDataStart;
-    
+    private PinnedNodeStore<K, STOREKEY, V> pinnedRoot;
+
     /**
-     * The exclusive index of the last element split into a right node.
-     * Used in node splitting. Set by {@link #updateIndexes()}.
+     * How {@link #putKey} splits full nodes.
      */
-    private int rightDataEnd;
-    
+    private InsertMode insertMode = InsertMode.TOP_DOWN;
+
     /**
-     * The index of the first element split into a right node.
-     * Used in node splitting. Set by {@link #updateIndexes()}.
+     * Answers lookups of keys that are not in the tree, or null.
      */
-    private int rightChildStart;
-    
+    private BloomFilter<K, STOREKEY> bloomFilter;
+
     /**
-     * The exclusive index of the last element split into a right node.
-     * Used in node splitting. Set by {@link #updateIndexes()}.
+     * How a new key is inserted.
      */
-    private int rightChildEnd;
+    public enum InsertMode {
+        /**
+         * Split every full node on the way down to the leaf. This is the default.
+         */
+        TOP_DOWN,
+
+        /**
+         * Find the leaf first, loading and keeping each node on the path,
+         * and then split full nodes on the way back up only as needed.
+         * Inserting a key that is already in the tree writes nothing.
+         */
+        BOTTOM_UP
+    }
 
     /**
      * @param rootKey
@@ -153,7 +158,6 @@ public class BTree<K,STOREKEY, V> implements BTreeMap<K,V>
         this.nodeStore = nodeStore;
         this.rootKey = nodeStore.convert(rootKey);
         this.minData = minData;
-        updateIndexes();
     }
     
     /**
@@ -169,7 +173,6 @@ public class BTree<K,STOREKEY, V> implements BTreeMap<K,V>
         try {
             root = nodeStore.loadNode(rootKey);
             this.minData = root.getDataCap() / 2;
-            updateIndexes();
         } catch (final NodeStoreNodeNotFoundException e) {
             root = newNode();
             nodeStore.store(rootKey, root);
@@ -179,29 +182,274 @@ public class BTree<K,STOREKEY, V> implements BTreeMap<K,V>
     }
     
     /**
-     * Any time minData is updated this is called to 
-     * recompute where a Node is split.
+     * Choose where full nodes are split. The default, {@link SplitPolicy#EVEN},
+     * leaves {@code minData} keys in each node. A policy that leaves more keys in
+     * one node, such as {@link SplitPolicy#rightmostAppend(double)}, leaves fewer
+     * than {@code minData} keys in the other.
+     *
+     * @param splitPolicy The split policy.
      */
-    private void updateIndexes() {
-        this.leftDataStart = 0;
-        this.leftDataEnd = minData;
-        this.leftChildStart = 0;
-        this.leftChildEnd = minData+1;
-        this.middleData = minData;
-        this.rightDataStart = minData+1;
-        this.rightDataEnd = 2*minData+1;
-        this.rightChildStart = minData+1;
-        this.rightChildEnd = 2*minData+2;
+    public void setSplitPolicy(final SplitPolicy splitPolicy)
+    {
+        this.splitPolicy = splitPolicy;
     }
-    
+
+    /**
+     * Keep the root node in memory. Every operation starts by loading the root,
+     * so this saves a {@link NodeStore#loadNode} per operation.
+     *
+     * @param validate If false, the root is read once and then only written,
+     *        so this tree must be the only writer of its root.
+     *        If true, the store must be a versioned {@link VersionedNodeStore}, or an
+     *        {@link com.github.basking2.sdsai.dsds.node.metrics.InstrumentedNodeStore} over one,
+     *        and each operation
+     *        asks for the root's version and reloads the root only if it changed.
+     * @see PinnedNodeStore
+     */
+    public void pinRoot(final boolean validate)
+    {
+        unpinRoot();
+        pinnedRoot = PinnedNodeStore.wrap(nodeStore, rootKey, validate);
+        nodeStore = pinnedRoot;
+    }
+
+    /**
+     * Stop keeping the root node in memory.
+     */
+    public void unpinRoot()
+    {
+        if ( pinnedRoot != null ) {
+            nodeStore = pinnedRoot.getNodeStore();
+            pinnedRoot = null;
+        }
+    }
+
+    /**
+     * <p>Keep a {@link BloomFilter} of this tree's keys. {@link #get}, {@link #containsKey},
+     * {@link #remove} and the many key lookups check it before loading data, so most
+     * lookups of keys that are not in the tree make no {@link NodeStore} call.</p>
+     *
+     * <p>If a filter is stored at {@code filterKey} it is loaded. Otherwise one is built from the
+     * tree's keys and stored. A stored filter that was not flushed, because its writer stopped,
+     * is rebuilt. Keys are added to the filter before they are added to the tree,
+     * so the filter never misses a key, but like {@link #pinRoot(boolean) pinRoot(false)}
+     * the in-memory filter does not see keys added by other writers.</p>
+     *
+     * <p>The filter stores its changed pages every {@link BloomFilter#getFlushInterval()} new keys
+     * rather than on every insert. Call {@link #flushBloomFilter()} before this tree is closed.</p>
+     *
+     * @param filterKey The key the filter's header node is stored at. It must not be a key of any tree.
+     * @param expectedKeys The number of keys the filter is sized for, if it is built.
+     * @param falsePositiveRate The chance, if it is built, that the filter lets a missing key through.
+     * @param codec Stores the filter's bits as keys of its nodes.
+     * @return The filter.
+     */
+    public BloomFilter<K, STOREKEY> enableBloomFilter(
+        final K filterKey,
+        final long expectedKeys,
+        final double falsePositiveRate,
+        final BloomFilter.Codec<K> codec)
+    {
+        traceBegin("BTree.enableBloomFilter");
+        try {
+            BloomFilter<K, STOREKEY> filter = BloomFilter.load(nodeStore, filterKey, codec);
+            if ( filter == null ) {
+                filter = BloomFilter.create(nodeStore, filterKey, expectedKeys, falsePositiveRate, codec);
+                filter.rebuild(this::getIterator);
+            } else if ( filter.isOpen() ) {
+                filter.rebuild(this::getIterator);
+            }
+
+            bloomFilter = filter;
+            return bloomFilter;
+        } finally {
+            traceEnd();
+        }
+    }
+
+    /**
+     * Flush and stop using the {@link BloomFilter}. It is left in the store and is stale if keys are added.
+     */
+    public void disableBloomFilter()
+    {
+        flushBloomFilter();
+        bloomFilter = null;
+    }
+
+    /**
+     * Store the pages of the {@link BloomFilter} changed by new keys and mark it closed,
+     * so it is loaded rather than rebuilt when the tree is opened again.
+     */
+    public void flushBloomFilter()
+    {
+        traceBegin("BTree.flushBloomFilter");
+        try {
+            if ( bloomFilter != null ) {
+                bloomFilter.flush();
+            }
+        } finally {
+            traceEnd();
+        }
+    }
+
+    /**
+     * Rebuild the {@link BloomFilter} from this tree's keys, dropping removed keys.
+     * The tree does this itself once enough keys are removed.
+     * See {@link BloomFilter#setRebuildFraction(double)}.
+     */
+    public void rebuildBloomFilter()
+    {
+        traceBegin("BTree.rebuildBloomFilter");
+        try {
+            if ( bloomFilter != null ) {
+                bloomFilter.rebuild(this::getIterator);
+            }
+        } finally {
+            traceEnd();
+        }
+    }
+
+    /**
+     * @return False if the {@link BloomFilter} rules out {@code key}.
+     */
+    private boolean mightContain(final K key)
+    {
+        return bloomFilter == null || bloomFilter.mightContain(key);
+    }
+
+    /**
+     * @return The keys the {@link BloomFilter} does not rule out.
+     */
+    private Collection<? extends K> mightContain(final Collection<? extends K> keys)
+    {
+        if ( bloomFilter == null ) {
+            return keys;
+        }
+
+        final List<K> candidates = new ArrayList<>(keys.size());
+        for ( final K key : keys ) {
+            if ( bloomFilter.mightContain(key) ) {
+                candidates.add(key);
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Add a key to the {@link BloomFilter}. Its pages are stored when it flushes.
+     */
+    private void bloomFilterAdd(final K key)
+    {
+        if ( bloomFilter != null ) {
+            bloomFilter.add(key);
+        }
+    }
+
+    /**
+     * Count removed keys and rebuild the {@link BloomFilter} if enough were removed.
+     */
+    private void bloomFilterRemoved(final int count)
+    {
+        if ( bloomFilter != null && count > 0 && bloomFilter.removed(count) ) {
+            bloomFilter.rebuild(this::getIterator);
+        }
+    }
+
+    /**
+     * @param insertMode How new keys are inserted. The default is {@link InsertMode#TOP_DOWN}.
+     */
+    public void setInsertMode(final InsertMode insertMode)
+    {
+        this.insertMode = insertMode;
+    }
+
+    /**
+     * Set how few keys a node may hold before {@link #remove} merges it with,
+     * or takes a key from, a sibling. The default is {@code minData}.
+     * A lower threshold merges lazily, restructuring less often at the cost of
+     * emptier nodes.
+     *
+     * @param mergeThreshold The threshold, at least 1. Values above {@code minData} act as {@code minData}.
+     */
+    public void setMergeThreshold(final int mergeThreshold)
+    {
+        if ( mergeThreshold < 1 ) {
+            throw new IllegalArgumentException("Merge threshold must be at least 1: "+mergeThreshold);
+        }
+        this.mergeThreshold = mergeThreshold;
+    }
+
+    /**
+     * @return The merge threshold set by {@link #setMergeThreshold(int)}, at most {@link #minData}.
+     */
+    private int mergeThreshold()
+    {
+        return Math.min(mergeThreshold, minData);
+    }
+
+    /**
+     * Ask the {@link #splitPolicy} where to split a full node.
+     *
+     * @param node The full node.
+     * @param insertionPoint Where the key being inserted falls in {@code node}.
+     * @param rightmost True if {@code node} is the last node of its level.
+     * @return The index of the key that moves up, leaving at least one key on each side
+     *         once the key is inserted.
+     */
+    private int splitIndex(final Node<K, STOREKEY> node, final int insertionPoint, final boolean rightmost)
+    {
+        final int size = node.getData().size();
+        final int middle = splitPolicy.split(size, insertionPoint, rightmost);
+
+        // A right leaf may be left empty if it receives the key being appended.
+        final int last = node.isLeaf() && insertionPoint == size ? size-1 : size-2;
+
+        return Math.max(1, Math.min(last, middle));
+    }
+
+    /**
+     * Trace the public operations of this tree. The same tracer should be given to the
+     * {@link com.github.basking2.sdsai.dsds.node.metrics.InstrumentedNodeStore} that
+     * this tree uses, so the {@link NodeStore} calls of an operation are attributed to it.
+     *
+     * @param tracer The tracer, or null to stop tracing.
+     */
+    public void setTracer(final OperationTracer tracer)
+    {
+        this.tracer = tracer;
+    }
+
+    private void traceBegin(final String operation)
+    {
+        if ( tracer != null ) {
+            tracer.begin(operation);
+        }
+    }
+
+    private void traceEnd()
+    {
+        if ( tracer != null ) {
+            tracer.end();
+        }
+    }
+
     /**
      * Check the {@link NodeStore} for the given key.
      * @return true of the key is found in the {@link NodeStore}.
      */
     @Override
     @SuppressWarnings("unchecked")
-    public boolean containsKey(Object key) { 
-        return null != nodeStore.loadData(nodeStore.convert((K)key));
+    public boolean containsKey(Object key) {
+        traceBegin("BTree.containsKey");
+        try {
+            if ( ! mightContain((K)key) ) {
+                return false;
+            }
+
+            return nodeStore.containsData(nodeStore.convert((K)key));
+        } finally {
+            traceEnd();
+        }
     }
     
     /**
@@ -210,24 +458,30 @@ public class BTree<K,STOREKEY, V> implements BTreeMap<K,V>
      * the {@link NodeStore}. This uses {@link #eachDepthFirst}
      * to visit each node. Notice that this will <em>not</em> delete
      * the root {@link Node} key as other pieces of code may
-     * be accessing this object.
+     * be accessing this object. An empty root is stored in its place.
      */
     @Override
     public void clear() {
-    
-        eachDepthFirst(new NodeFunction<K,STOREKEY>(){
-            public boolean call(final Node<K, STOREKEY> n) {
-                for (final K k : n.getData()) {
-                    nodeStore.removeData(nodeStore.convert(k));
-                }
-                
-                for (final STOREKEY k : n.getChildren()) {
-                    nodeStore.removeNode(k);
+        traceBegin("BTree.clear");
+        try {
+            eachDepthFirst(new NodeFunction<K,STOREKEY>(){
+                public boolean call(final Node<K, STOREKEY> n) {
+                    for (final K k : n.getData()) {
+                        nodeStore.removeData(nodeStore.convert(k));
+                    }
+
+                    for (final STOREKEY k : n.getChildren()) {
+                        nodeStore.removeNode(k);
+                    }
+
+                    return true;
                 }
-                
-                return true;
-            }
-        });
+            });
+
+            clearRoot();
+        } finally {
+            traceEnd();
+        }
     }
     
     /**
@@ -236,8 +490,141 @@ public class BTree<K,STOREKEY, V> implements BTreeMap<K,V>
      */
     public void destroy()
     {
-        clear();
+        traceBegin("BTree.destroy");
+        try {
+            clear();
+            destroyRoot();
+        } finally {
+            traceEnd();
+        }
+    }
+
+    /**
+     * Store an empty root and clear the Bloom filter once the rest of the tree is removed.
+     */
+    private void clearRoot() {
+        nodeStore.store(rootKey, newNode());
+
+        if ( bloomFilter != null ) {
+            bloomFilter.clear();
+        }
+    }
+
+    /**
+     * Remove the root and the Bloom filter of a cleared tree.
+     */
+    private void destroyRoot() {
         nodeStore.removeNode(rootKey);
+
+        if ( bloomFilter != null ) {
+            bloomFilter.destroy();
+            bloomFilter = null;
+        }
+    }
+
+    /**
+     * <p>Like {@link #clear()} but sibling subtrees are torn down in parallel
+     * as {@link RecursiveAction}s on {@code pool}. A subtree is removed
+     * bottom-up, so a failure part way through leaves no node unreachable.</p>
+     *
+     * <p>If the {@link NodeStore} is a {@link BatchNodeStore} the children of a node
+     * are loaded with one {@link BatchNodeStore#loadNodes(Collection)} and the data
+     * keys and children of a node are removed as one {@link NodeStoreBatch}.</p>
+     *
+     * <p>The Bloom filter, if any, is cleared as by {@link #clear()}. Store calls made
+     * on the pool's threads are not recorded by the {@link OperationTracer}, which traces per thread.</p>
+     *
+     * @param pool The pool to run the teardown on.
+     */
+    public void clear(final ForkJoinPool pool)
+    {
+        traceBegin("BTree.clear");
+        try {
+            pool.invoke(new ClearAction(rootKey, getRoot()));
+            clearRoot();
+        } finally {
+            traceEnd();
+        }
+    }
+
+    /**
+     * Clear this tree with {@link #clear(ForkJoinPool)} and delete the root node key.
+     *
+     * @param pool The pool to run the teardown on.
+     */
+    public void destroy(final ForkJoinPool pool)
+    {
+        traceBegin("BTree.destroy");
+        try {
+            clear(pool);
+            destroyRoot();
+        } finally {
+            traceEnd();
+        }
+    }
+
+    /**
+     * Remove the data and children of a node after removing the subtree
+     * of each child in parallel. The node itself is removed by its parent.
+     */
+    private final class ClearAction extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final STOREKEY nodeKey;
+        private Node<K, STOREKEY> node;
+
+        /**
+         * @param node The node, or null to load it when this action runs.
+         */
+        public ClearAction(final STOREKEY nodeKey, final Node<K, STOREKEY> node)
+        {
+            this.nodeKey = nodeKey;
+            this.node = node;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if ( node == null ) {
+                node = nodeStore.loadNode(nodeKey);
+            }
+
+            final List<STOREKEY> children = node.getChildren();
+
+            if ( ! children.isEmpty() ) {
+                final Map<STOREKEY, Node<K, STOREKEY>> loaded =
+                    nodeStore instanceof BatchNodeStore
+                        ? ((BatchNodeStore<K, STOREKEY, V>) nodeStore).loadNodes(children)
+                        : Collections.<STOREKEY, Node<K, STOREKEY>>emptyMap();
+
+                final List<ClearAction> actions = new ArrayList<>(children.size());
+                for (final STOREKEY k : children) {
+                    actions.add(new ClearAction(k, loaded.get(k)));
+                }
+                invokeAll(actions);
+            }
+
+            if ( nodeStore instanceof BatchNodeStore ) {
+                final NodeStoreBatch<K, STOREKEY, V> batch = new NodeStoreBatch<>();
+                for (final K k : node.getData()) {
+                    batch.removeData(nodeStore.convert(k));
+                }
+                for (final STOREKEY k : children) {
+                    batch.removeNode(k);
+                }
+                if ( ! batch.isEmpty() ) {
+                    ((BatchNodeStore<K, STOREKEY, V>) nodeStore).execute(batch);
+                }
+            } else {
+                for (final K k : node.getData()) {
+                    nodeStore.removeData(nodeStore.convert(k));
+                }
+                for (final STOREKEY k : children) {
+                    nodeStore.removeNode(k);
+                }
+            }
+        }
     }
     
     /**
@@ -425,7 +812,225 @@ public class BTree<K,STOREKEY, V> implements BTreeMap<K,V>
     @Override
     @SuppressWarnings("unchecked")
     public V get(Object key){
-        return nodeStore.loadData(nodeStore.convert((K)key));
+        traceBegin("BTree.get");
+        try {
+            if ( ! mightContain((K)key) ) {
+                return null;
+            }
+
+            return nodeStore.loadData(nodeStore.convert((K)key));
+        } finally {
+            traceEnd();
+        }
+    }
+
+    /**
+     * Load the data of many keys. If the {@link NodeStore} is a {@link BatchNodeStore}
+     * they are loaded with one {@link BatchNodeStore#loadData(Collection)}.
+     * Otherwise they are loaded one at a time.
+     *
+     * @param keys The keys to look up.
+     * @return The data found, by key, in the order of {@code keys}. Keys with no data are absent.
+     */
+    public Map<K, V> getAll(final Collection<? extends K> keys)
+    {
+        return getAll(keys, null);
+    }
+
+    /**
+     * Load the data of many keys. If the {@link NodeStore} is a {@link BatchNodeStore}
+     * they are loaded with one {@link BatchNodeStore#loadData(Collection)}.
+     * Otherwise each key is loaded by a task in {@code pool}.
+     *
+     * @param keys The keys to look up.
+     * @param pool The pool the loads run in, or null to load the keys one at a time.
+     * @return The data found, by key, in the order of {@code keys}. Keys with no data are absent.
+     */
+    public Map<K, V> getAll(final Collection<? extends K> keys, final ForkJoinPool pool)
+    {
+        traceBegin("BTree.getAll");
+        try {
+            final Map<K, V> found = new LinkedHashMap<>();
+            final Collection<? extends K> candidates = mightContain(keys);
+
+            if ( nodeStore instanceof BatchNodeStore ) {
+                final Map<STOREKEY, K> storeKeys = new LinkedHashMap<>();
+                for ( final K key : candidates ) {
+                    storeKeys.put(nodeStore.convert(key), key);
+                }
+
+                final Map<STOREKEY, V> data =
+                    ((BatchNodeStore<K, STOREKEY, V>) nodeStore).loadData(storeKeys.keySet());
+
+                for ( final Map.Entry<STOREKEY, K> e : storeKeys.entrySet() ) {
+                    final V value = data.get(e.getKey());
+                    if ( value != null ) {
+                        found.put(e.getValue(), value);
+                    }
+                }
+            } else if ( pool != null ) {
+                final Map<K, ForkJoinTask<V>> loads = new LinkedHashMap<>();
+                for ( final K key : candidates ) {
+                    final STOREKEY storeKey = nodeStore.convert(key);
+                    loads.put(key, pool.submit(() -> nodeStore.loadData(storeKey)));
+                }
+
+                for ( final Map.Entry<K, ForkJoinTask<V>> e : loads.entrySet() ) {
+                    final V value = e.getValue().join();
+                    if ( value != null ) {
+                        found.put(e.getKey(), value);
+                    }
+                }
+            } else {
+                for ( final K key : candidates ) {
+                    final V value = nodeStore.loadData(nodeStore.convert(key));
+                    if ( value != null ) {
+                        found.put(key, value);
+                    }
+                }
+            }
+
+            return found;
+        } finally {
+            traceEnd();
+        }
+    }
+
+    /**
+     * Check for many keys in the {@link NodeStore} with {@link NodeStore#containsData(Object)},
+     * one key at a time. No data is loaded.
+     *
+     * @param keys The keys to look up.
+     * @return The keys that have data, in the order of {@code keys}.
+     */
+    public Set<K> containsKeys(final Collection<? extends K> keys)
+    {
+        return containsKeys(keys, null);
+    }
+
+    /**
+     * Check for many keys in the {@link NodeStore} with {@link NodeStore#containsData(Object)},
+     * each key by a task in {@code pool}. No data is loaded.
+     *
+     * @param keys The keys to look up.
+     * @param pool The pool the checks run in, or null to check the keys one at a time.
+     * @return The keys that have data, in the order of {@code keys}.
+     */
+    public Set<K> containsKeys(final Collection<? extends K> keys, final ForkJoinPool pool)
+    {
+        traceBegin("BTree.containsKeys");
+        try {
+            final Set<K> found = new LinkedHashSet<>();
+            final Collection<? extends K> candidates = mightContain(keys);
+
+            if ( pool != null ) {
+                final Map<K, ForkJoinTask<Boolean>> checks = new LinkedHashMap<>();
+                for ( final K key : candidates ) {
+                    final STOREKEY storeKey = nodeStore.convert(key);
+                    checks.put(key, pool.submit(() -> nodeStore.containsData(storeKey)));
+                }
+
+                for ( final Map.Entry<K, ForkJoinTask<Boolean>> e : checks.entrySet() ) {
+                    if ( e.getValue().join() ) {
+                        found.add(e.getKey());
+                    }
+                }
+            } else {
+                for ( final K key : candidates ) {
+                    if ( nodeStore.containsData(nodeStore.convert(key)) ) {
+                        found.add(key);
+                    }
+                }
+            }
+
+            return found;
+        } finally {
+            traceEnd();
+        }
+    }
+
+    /**
+     * <p>Find which keys are in the tree by searching the tree's nodes rather than loading data.
+     * This suits trees built with {@link #putKey(Object)}, which have no data.</p>
+     *
+     * <p>The keys are sorted and the tree is descended one level at a time, so each node
+     * on the path to any key is loaded once. If the {@link NodeStore} is a {@link BatchNodeStore}
+     * the nodes of each level are loaded with one {@link BatchNodeStore#loadNodes(Collection)}.</p>
+     *
+     * @param keys The keys to look up.
+     * @return The keys in the tree, in sorted order.
+     */
+    public Set<K> findKeys(final Collection<? extends K> keys)
+    {
+        traceBegin("BTree.findKeys");
+        try {
+            final List<K> sorted = new ArrayList<>(mightContain(keys));
+            sorted.sort(this::compare);
+
+            final Set<K> found = new HashSet<>();
+
+            // The nodes of the current level and the sorted keys that may be in each.
+            Map<STOREKEY, List<K>> level = new LinkedHashMap<>();
+            Map<STOREKEY, Node<K, STOREKEY>> nodes = new HashMap<>();
+            level.put(rootKey, sorted);
+            nodes.put(rootKey, getRoot());
+
+            int depth = 0;
+            while ( ! level.isEmpty() ) {
+                final Map<STOREKEY, List<K>> next = new LinkedHashMap<>();
+
+                for ( final Map.Entry<STOREKEY, List<K>> e : level.entrySet() ) {
+                    final Node<K, STOREKEY> node = nodes.get(e.getKey());
+                    if ( node == null ) {
+                        throw new NodeStoreNodeNotFoundException("Node "+e.getKey()+" is missing.");
+                    }
+
+                    for ( final K key : e.getValue() ) {
+                        final int index = binarySearch(node.getData(), key, null);
+
+                        if ( index >= 0 ) {
+                            found.add(key);
+                        } else if ( ! node.isLeaf() ) {
+                            next.computeIfAbsent(
+                                node.getChildren().get(-(index+1)),
+                                k -> new ArrayList<>()
+                            ).add(key);
+                        }
+                    }
+                }
+
+                if ( next.isEmpty() ) {
+                    break;
+                }
+
+                if ( nodeStore instanceof BatchNodeStore ) {
+                    nodes = ((BatchNodeStore<K, STOREKEY, V>) nodeStore).loadNodes(next.keySet());
+                } else {
+                    nodes = new HashMap<>();
+                    for ( final STOREKEY k : next.keySet() ) {
+                        nodes.put(k, nodeStore.loadNode(k));
+                    }
+                }
+
+                level = next;
+
+                if ( tracer != null ) {
+                    tracer.depth(++depth);
+                }
+            }
+
+            // Keys are found level by level. Return them in order.
+            final Set<K> sortedFound = new LinkedHashSet<>();
+            for ( final K key : sorted ) {
+                if ( found.contains(key) ) {
+                    sortedFound.add(key);
+                }
+            }
+
+            return sortedFound;
+        } finally {
+            traceEnd();
+        }
     }
 
     /**
@@ -472,25 +1077,32 @@ public class BTree<K,STOREKEY, V> implements BTreeMap<K,V>
     @Override
     public V put(final K key, final V value)
     {
-        final STOREKEY storeKey = nodeStore.convert(key);
+        traceBegin("BTree.put");
+        try {
+            final STOREKEY storeKey = nodeStore.convert(key);
 
 
-        // If the key is already in the store, we are only replacing it.
-        // We have hard work to do only when a new key is added.
-        if ( containsKey(key) ) {
-            final V v = get(key);
-            nodeStore.store(storeKey, value);
-            return v;
-        }
+            // If the key is already in the store, we are only replacing it.
+            // We have hard work to do only when a new key is added.
+            if ( containsKey(key) ) {
+                final V v = get(key);
+                nodeStore.store(storeKey, value);
+                return v;
+            }
 
-        putKey(key, storeKey);
+            // The filter may have keys the tree does not, but never the other way.
+            bloomFilterAdd(key);
+            putKey(key, storeKey);
 
-        // Regardless of if the key was in the storage medium or not, we write the user's data.
-        nodeStore.store(storeKey, value);
+            // Regardless of if the key was in the storage medium or not, we write the user's data.
+            nodeStore.store(storeKey, value);
 
-        // We've already determined that there is not already a value.
-        // So this is always null.
-        return null; 
+            // We've already determined that there is not already a value.
+            // So this is always null.
+            return null; 
+        } finally {
+            traceEnd();
+        }
     }
 
     /**
@@ -504,7 +1116,13 @@ public class BTree<K,STOREKEY, V> implements BTreeMap<K,V>
      */
     @Override
     public boolean putKey(final K key) {
-        return putKey(key, nodeStore.convert(key));
+        traceBegin("BTree.putKey");
+        try {
+            bloomFilterAdd(key);
+            return putKey(key, nodeStore.convert(key));
+        } finally {
+            traceEnd();
+        }
     }
 
     /**
@@ -519,6 +1137,10 @@ public class BTree<K,STOREKEY, V> implements BTreeMap<K,V>
      */
     private boolean putKey(final K key, final STOREKEY storeKey) {
 
+        if ( insertMode == InsertMode.BOTTOM_UP ) {
+            return putKeyBottomUp(key);
+        }
+
         // A new key is being added.
         final NodeContext ctx = new NodeContext();
         int insertionPoint = -1;
@@ -531,32 +1153,151 @@ public class BTree<K,STOREKEY, V> implements BTreeMap<K,V>
             //   otherwise, (-(insertion point) - 1)
             final int index = binarySearch(ctx.node.getData(), key, null);
 
-            if (index >= 0) {
-                // The key is already in the tree. We are done.
-                return false;
+            if (index >= 0) {
+                // The key is already in the tree. We are done.
+                return false;
+            }
+
+            insertionPoint = -(index+1);
+
+            ctx.descend(insertionPoint);
+        }
+
+        // We've stepped into a leaf.
+        ctx.conditionallySplit(insertionPoint, key, storeKey);
+
+        final int index = binarySearch(ctx.node.getData(), key, null);
+
+        if (index >= 0) {
+            // The key is already in the tree. We are done.
+            return false;
+        }
+
+        insertionPoint = -(index+1);
+
+        ctx.node.getData().add(insertionPoint, key);
+        nodeStore.store(ctx.nodeKey, ctx.node);
+
+        return true;
+    }
+
+    /**
+     * Insert the key as {@link InsertMode#BOTTOM_UP} describes.
+     * Nothing is stored if the key is found on the way down.
+     *
+     * @param key The key to add to the structure.
+     * @return True if the key was inserted. False if the key already existed.
+     */
+    private boolean putKeyBottomUp(final K key) {
+
+        // The path from the root to the leaf and where the key falls in each node.
+        final List<STOREKEY> keys = new ArrayList<>();
+        final List<Node<K, STOREKEY>> nodes = new ArrayList<>();
+        final List<Integer> insertionPoints = new ArrayList<>();
+
+        // Nodes on the path down to this depth are the last of their level.
+        int rightmostDepth = 0;
+
+        STOREKEY nodeKey = rootKey;
+        Node<K, STOREKEY> node = getRoot();
+
+        while ( true ) {
+            final int index = binarySearch(node.getData(), key, null);
+
+            if ( index >= 0 ) {
+                // The key is already in the tree. We are done.
+                return false;
+            }
+
+            final int insertionPoint = -(index+1);
+
+            keys.add(nodeKey);
+            nodes.add(node);
+            insertionPoints.add(insertionPoint);
+
+            if ( node.isLeaf() ) {
+                break;
+            }
+
+            if ( rightmostDepth == nodes.size()-1 && insertionPoint == node.getChildren().size()-1 ) {
+                rightmostDepth++;
+            }
+
+            nodeKey = node.getChildren().get(insertionPoint);
+            node = nodeStore.loadNode(nodeKey);
+
+            if ( tracer != null ) {
+                tracer.depth(nodes.size());
+            }
+        }
+
+        // The key to insert at each level and, above the leaf, the right half of the split child.
+        K up = key;
+        STOREKEY upChild = null;
+
+        for ( int level = nodes.size()-1; ; level-- ) {
+            node = nodes.get(level);
+            nodeKey = keys.get(level);
+
+            final int insertionPoint = insertionPoints.get(level);
+            final boolean full = node.isDataFull();
+            final int middle = full ? splitIndex(node, insertionPoint, level <= rightmostDepth) : -1;
+
+            node.getData().add(insertionPoint, up);
+            if ( upChild != null ) {
+                node.getChildren().add(insertionPoint+1, upChild);
+            }
+
+            if ( ! full ) {
+                nodeStore.store(nodeKey, node);
+                return true;
             }
 
-            insertionPoint = -(index+1);
+            if ( tracer != null ) {
+                tracer.split();
+            }
 
-            ctx.descend(insertionPoint);
-        }
+            // The key inserted left of the middle key moved it right by one.
+            final int split = insertionPoint <= middle ? middle+1 : middle;
+            final List<K> data = node.getData();
+            final Node<K, STOREKEY> right = newNode();
 
-        // We've stepped into a leaf.
-        ctx.conditionallySplit(insertionPoint, key, storeKey);
+            up = data.get(split);
+            right.getData().addAll(data.subList(split+1, data.size()));
+            data.subList(split, data.size()).clear();
 
-        final int index = binarySearch(ctx.node.getData(), key, null);
+            if ( ! node.isLeaf() ) {
+                final List<STOREKEY> children = node.getChildren();
+                right.getChildren().addAll(children.subList(split+1, children.size()));
+                children.subList(split+1, children.size()).clear();
+            }
 
-        if (index >= 0) {
-            // The key is already in the tree. We are done.
-            return false;
-        }
+            upChild = nodeStore.generateKey(right, null);
+            nodeStore.store(upChild, right);
 
-        insertionPoint = -(index+1);
+            if ( level > 0 ) {
+                // The node keeps its key and the left half.
+                nodeStore.store(nodeKey, node);
+                continue;
+            }
 
-        ctx.node.getData().add(insertionPoint, key);
-        nodeStore.store(ctx.nodeKey, ctx.node);
+            // The root key never changes, so the left half moves to a new node.
+            final Node<K, STOREKEY> left = newNode();
+            left.getData().addAll(node.getData());
+            left.getChildren().addAll(node.getChildren());
 
-        return true;
+            final STOREKEY leftKey = nodeStore.generateKey(left, null);
+            nodeStore.store(leftKey, left);
+
+            node.getData().clear();
+            node.getChildren().clear();
+            node.getData().add(up);
+            node.getChildren().add(leftKey);
+            node.getChildren().add(upChild);
+            nodeStore.store(nodeKey, node);
+
+            return true;
+        }
     }
 
     /**
@@ -580,16 +1321,61 @@ public class BTree<K,STOREKEY, V> implements BTreeMap<K,V>
      */
     @Override
     public V remove(Object keyObject) {
-        @SuppressWarnings("unchecked")
-        final K userKey = (K) keyObject;
-        final STOREKEY storeKey = nodeStore.convert(userKey);
-        
-        final V v = nodeStore.loadData(storeKey);
+        traceBegin("BTree.remove");
+        try {
+            @SuppressWarnings("unchecked")
+            final K userKey = (K) keyObject;
+            if ( ! mightContain(userKey) ) {
+                return null;
+            }
+
+            final STOREKEY storeKey = nodeStore.convert(userKey);
+
+            final V v = nodeStore.loadData(storeKey);
+
+            if ( v == null ) {
+                return null;
+            }
+
+            removeFromTree(userKey, storeKey);
+            bloomFilterRemoved(1);
 
-        if ( v == null ) {
-            return null;
+            return v;
+        } finally {
+            traceEnd();
         }
-        
+    }
+
+    /**
+     * Remove a key from the structure without loading or removing its data.
+     * This undoes {@link #putKey(Object)}.
+     *
+     * @param key The key to remove.
+     * @return True if the key was removed. False if the key was not in the tree.
+     */
+    public boolean removeKey(final K key) {
+        traceBegin("BTree.removeKey");
+        try {
+            if ( findKeys(Collections.singleton(key)).isEmpty() ) {
+                return false;
+            }
+
+            removeFromTree(key, null);
+            bloomFilterRemoved(1);
+
+            return true;
+        } finally {
+            traceEnd();
+        }
+    }
+
+    /**
+     * Remove a key that is in the tree from the tree's nodes.
+     *
+     * @param userKey The key to remove.
+     * @param storeKey The key of the data to remove, or null to leave data alone.
+     */
+    private void removeFromTree(final K userKey, final STOREKEY storeKey) {
         final NodeContext ctx = new NodeContext();
 
         // Notice we never conditionallyCollapse the root node.
@@ -597,48 +1383,55 @@ public class BTree<K,STOREKEY, V> implements BTreeMap<K,V>
         //System.out.println("----------------"+storeKey);
 
         boolean deleted = false;
-        
+
         // Calls to internalNodeDelete can force us to continue searching
         // by setting deleted to false.
         while ( ! deleted ) {
-        
+
             // Find the key (or -(insertionPoint+1)).
             // This is called once to initialize and once if internalNodeDelete
             // return false.
             int index = binarySearch(ctx.node.getData(), userKey, null);
-        
+
             // While the key is in a child node.
             while ( index < 0 ) {
-            
+
                 //System.out.println("-----------------------------"+ctx.node);
                 //System.out.println("--|"+index);
 
                 final int insertionPoint = -(index+1);
-                
+
                 ctx.descend(insertionPoint);
 
                 // Now the insetionPoint is really the parentInsertionPoint.
                 // Pass it to the conditionallyCollapse method.
                 ctx.conditionallyCollapse(insertionPoint);
-                
+
                 // Setup for the next iteration. Did we find a node with the key?
                 index = binarySearch(ctx.node.getData(), userKey, null);
             }
-            
+
             //System.out.println("----------------------------+"+ctx.node);
             // When here the index is positive and is the location of the key.
 
             if ( ctx.node.isLeaf() ) {
                 ctx.node.getData().remove(index);
                 nodeStore.store(ctx.nodeKey, ctx.node);
-                nodeStore.removeData(storeKey);
+                removeData(storeKey);
                 deleted = true;
             } else {
                 deleted = internalNodeDelete(ctx, storeKey, index);
             }
         }
-        
-        return v;
+    }
+
+    /**
+     * Remove data unless {@code storeKey} is null.
+     */
+    private void removeData(final STOREKEY storeKey) {
+        if ( storeKey != null ) {
+            nodeStore.removeData(storeKey);
+        }
     }
     
     /**
@@ -668,8 +1461,8 @@ public class BTree<K,STOREKEY, V> implements BTreeMap<K,V>
         final Node<K, STOREKEY> leftChild = nodeStore.loadNode(leftChildKey);
         final Node<K, STOREKEY> rightChild = nodeStore.loadNode(rightChildKey);
         
-        if ( leftChild.getData().size() == minData ) {
-            if ( rightChild.getData().size() == minData ) {
+        if ( leftChild.getData().size() <= mergeThreshold() ) {
+            if ( rightChild.getData().size() <= mergeThreshold() ) {
             
                 leftChild.getData().add(ctx.node.getData().remove(index));
                 leftChild.getData().addAll(rightChild.getData());
@@ -682,6 +1475,10 @@ public class BTree<K,STOREKEY, V> implements BTreeMap<K,V>
                 nodeStore.store(ctx.nodeKey, ctx.node);
                 nodeStore.store(leftChildKey, leftChild);
                 nodeStore.removeNode(rightChildKey);
+
+                if ( tracer != null ) {
+                    tracer.merge();
+                }
                 
                 return false;
             } else {
@@ -689,20 +1486,22 @@ public class BTree<K,STOREKEY, V> implements BTreeMap<K,V>
                                                          ctx.node,
                                                          rightChildKey,
                                                          rightChild);
+                rctx.depth = ctx.depth + 1;
                 final K replacement = detachMin(rctx);
                 ctx.node.getData().set(index, replacement);
                 nodeStore.store(ctx.nodeKey, ctx.node);
-                nodeStore.removeData(storeKey);
+                removeData(storeKey);
             }
         } else {
             final NodeContext lctx = new NodeContext(ctx.nodeKey,
                                                      ctx.node,
                                                      leftChildKey,
                                                      leftChild);
+            lctx.depth = ctx.depth + 1;
             final K replacement = detachMax(lctx);
             ctx.node.getData().set(index, replacement);
             nodeStore.store(ctx.nodeKey, ctx.node);
-            nodeStore.removeData(storeKey);
+            removeData(storeKey);
         }
         
         return true;
@@ -752,24 +1551,420 @@ public class BTree<K,STOREKEY, V> implements BTreeMap<K,V>
         return key;
     }
     
+    /**
+     * <p>Remove every key from {@code lower}, inclusive, to {@code upper}, exclusive,
+     * and its data.</p>
+     *
+     * <p>Subtrees that lie wholly in the range are dropped with one
+     * {@link NodeStore#removeNode(Object)} per node, without rebalancing.
+     * Only the nodes on the paths to {@code lower} and {@code upper} are
+     * trimmed, joined and rebalanced. If the {@link NodeStore} is a
+     * {@link BatchNodeStore} the removes are sent as one batch after the
+     * tree has been restructured.</p>
+     *
+     * @param lower The lower boundary of the range, inclusive.
+     * @param upper The upper boundary of the range, exclusive.
+     * @return The number of keys removed.
+     */
+    public int removeRange(final K lower, final K upper)
+    {
+        traceBegin("BTree.removeRange");
+        try {
+            if ( compare(lower, upper) >= 0 ) {
+                return 0;
+            }
+
+            final Removals removals = new Removals();
+            final Node<K, STOREKEY> root = getRoot();
+            final int removed = cut(rootKey, root, lower, upper, null, null, removals);
+
+            // The root may be left with a single child. Pull it up,
+            // keeping the root key, until the root has a key or is a leaf.
+            if ( ! root.isLeaf() && root.getData().isEmpty() ) {
+                while ( ! root.isLeaf() && root.getData().isEmpty() ) {
+                    final STOREKEY onlyChildKey = root.getChildren().get(0);
+                    final Node<K, STOREKEY> onlyChild = nodeStore.loadNode(onlyChildKey);
+                    root.setData(onlyChild.getData());
+                    root.setChildren(onlyChild.getChildren());
+                    removals.removeNode(onlyChildKey);
+                }
+                nodeStore.store(rootKey, root);
+            }
+
+            removals.flush();
+            bloomFilterRemoved(removed);
+
+            return removed;
+        } finally {
+            traceEnd();
+        }
+    }
+
+    /**
+     * Removes of data and nodes, sent as one batch if the {@link NodeStore}
+     * is a {@link BatchNodeStore} and otherwise sent as they are made.
+     */
+    private final class Removals {
+        private final NodeStoreBatch<K, STOREKEY, V> batch =
+            nodeStore instanceof BatchNodeStore ? new NodeStoreBatch<K, STOREKEY, V>() : null;
+
+        public void removeData(final K key) {
+            if ( batch == null ) {
+                nodeStore.removeData(nodeStore.convert(key));
+            } else {
+                batch.removeData(nodeStore.convert(key));
+            }
+        }
+
+        public void removeNode(final STOREKEY key) {
+            if ( batch == null ) {
+                nodeStore.removeNode(key);
+            } else {
+                batch.removeNode(key);
+            }
+        }
+
+        public void flush() {
+            if ( batch != null && ! batch.isEmpty() ) {
+                ((BatchNodeStore<K, STOREKEY, V>) nodeStore).execute(batch);
+            }
+        }
+    }
+
+    /**
+     * The one or two nodes that two subtrees were joined into.
+     */
+    private final class Join {
+        public final List<STOREKEY> keys = new ArrayList<>(2);
+
+        /**
+         * The key between the two nodes, or null if there is one node.
+         */
+        public K separator;
+    }
+
+    /**
+     * @return The index of the first key in {@code data} that is not less than {@code key}.
+     */
+    private int lowerBound(final List<K> data, final K key)
+    {
+        final int i = binarySearch(data, key, null);
+        return i >= 0 ? i : -(i+1);
+    }
+
+    @SuppressWarnings("unchecked")
+    private int compare(final K k1, final K k2)
+    {
+        return ((Comparable<K>) k1).compareTo(k2);
+    }
+
+    /**
+     * <p>Remove the keys in the range from the subtree at {@code node}
+     * and store the node if it changed. The subtree must not lie wholly in the range.</p>
+     *
+     * <p>Afterwards {@code node} may hold fewer than {@link #minData} keys.
+     * Its descendants hold at least {@link #minData} keys except the only child
+     * of a node that was left with a single child, which {@link #fixChild}
+     * repairs once that node is merged with a sibling, along with any node that
+     * repair leaves too small.</p>
+     *
+     * @param low All keys in the subtree are greater than this. Null if there is no bound.
+     * @param high All keys in the subtree are less than this. Null if there is no bound.
+     * @return The number of keys removed.
+     */
+    private int cut(final STOREKEY nodeKey,
+                    final Node<K, STOREKEY> node,
+                    final K lower,
+                    final K upper,
+                    final K low,
+                    final K high,
+                    final Removals removals)
+    {
+        final List<K> data = node.getData();
+        final int i = lowerBound(data, lower);
+        final int j = lowerBound(data, upper);
+        int removed = j - i;
+
+        for (int k = i; k < j; k++) {
+            removals.removeData(data.get(k));
+        }
+
+        if ( node.isLeaf() ) {
+            data.subList(i, j).clear();
+        } else {
+            // Child i holds lower and child j holds upper. Those between lie in the range.
+            final List<STOREKEY> children = node.getChildren();
+
+            for (int k = i+1; k < j; k++) {
+                removed += drop(children.get(k), removals);
+            }
+
+            final K iLow = i > 0 ? data.get(i-1) : low;
+            final K jHigh = j < data.size() ? data.get(j) : high;
+            final STOREKEY iKey = children.get(i);
+            final STOREKEY jKey = children.get(j);
+
+            if ( i == j ) {
+                removed += cut(iKey, nodeStore.loadNode(iKey), lower, upper, iLow, jHigh, removals);
+                if ( removed > 0 ) {
+                    fixChild(node, i);
+                }
+            } else {
+                final List<STOREKEY> kept;
+                K separator = null;
+
+                if ( iLow != null && compare(iLow, lower) >= 0 ) {
+                    // Child i is the first child and lies in the range.
+                    removed += drop(iKey, removals);
+                    removed += cut(jKey, nodeStore.loadNode(jKey), lower, upper, data.get(j-1), jHigh, removals);
+                    kept = Collections.singletonList(jKey);
+                } else if ( jHigh != null && compare(jHigh, upper) <= 0 ) {
+                    // Child j is the last child and lies in the range.
+                    removed += drop(jKey, removals);
+                    removed += cut(iKey, nodeStore.loadNode(iKey), lower, upper, iLow, data.get(i), removals);
+                    kept = Collections.singletonList(iKey);
+                } else {
+                    final Node<K, STOREKEY> iNode = nodeStore.loadNode(iKey);
+                    final Node<K, STOREKEY> jNode = nodeStore.loadNode(jKey);
+                    removed += cut(iKey, iNode, lower, upper, iLow, data.get(i), removals);
+                    removed += cut(jKey, jNode, lower, upper, data.get(j-1), jHigh, removals);
+
+                    // No key is left between the two children. Join them.
+                    final Join join = join(iKey, iNode, jKey, jNode, removals);
+                    kept = join.keys;
+                    separator = join.separator;
+                }
+
+                data.subList(i, j).clear();
+                children.subList(i, j+1).clear();
+                children.addAll(i, kept);
+                if ( separator != null ) {
+                    data.add(i, separator);
+                } else {
+                    fixChild(node, i);
+                }
+            }
+        }
+
+        if ( removed > 0 ) {
+            nodeStore.store(nodeKey, node);
+        }
+
+        return removed;
+    }
+
+    /**
+     * Remove a subtree and all of its data.
+     *
+     * @return The number of keys removed.
+     */
+    private int drop(final STOREKEY nodeKey, final Removals removals)
+    {
+        final Node<K, STOREKEY> node = nodeStore.loadNode(nodeKey);
+        int removed = node.getData().size();
+
+        for (final K k : node.getData()) {
+            removals.removeData(k);
+        }
+
+        for (final STOREKEY k : node.getChildren()) {
+            removed += drop(k, removals);
+        }
+
+        removals.removeNode(nodeKey);
+
+        return removed;
+    }
+
+    /**
+     * Join two subtrees of the same height whose keys are all less, in {@code left},
+     * or all greater, in {@code right}, with no key between them. The last child of
+     * {@code left} and first child of {@code right} are joined first, so only
+     * the path along the seam is visited. If the joined node is too large it is split.
+     *
+     * @return The one or two nodes that hold the joined subtree.
+     */
+    private Join join(final STOREKEY leftKey,
+                      final Node<K, STOREKEY> left,
+                      final STOREKEY rightKey,
+                      final Node<K, STOREKEY> right,
+                      final Removals removals)
+    {
+        if ( left.isLeaf() ) {
+            left.getData().addAll(right.getData());
+        } else {
+            final int seam = left.getChildren().size() - 1;
+            final STOREKEY innerLeftKey = left.getChildren().remove(seam);
+            final STOREKEY innerRightKey = right.getChildren().remove(0);
+            final Join inner = join(
+                innerLeftKey, nodeStore.loadNode(innerLeftKey),
+                innerRightKey, nodeStore.loadNode(innerRightKey),
+                removals);
+
+            left.getChildren().addAll(inner.keys);
+            left.getChildren().addAll(right.getChildren());
+            if ( inner.separator != null ) {
+                left.getData().add(inner.separator);
+            }
+            left.getData().addAll(right.getData());
+
+            if ( inner.separator == null ) {
+                fixChild(left, seam);
+            }
+        }
+
+        removals.removeNode(rightKey);
+
+        final Join join = new Join();
+        join.keys.add(leftKey);
+
+        if ( left.getData().size() > 2*minData+1 ) {
+            if ( tracer != null ) {
+                tracer.split();
+            }
+
+            final Node<K, STOREKEY> split = newNode();
+            final List<K> data = left.getData();
+            final int mid = data.size() / 2;
+
+            join.separator = data.get(mid);
+            split.getData().addAll(data.subList(mid+1, data.size()));
+            data.subList(mid, data.size()).clear();
+
+            if ( ! left.isLeaf() ) {
+                final List<STOREKEY> children = left.getChildren();
+                split.getChildren().addAll(children.subList(mid+1, children.size()));
+                children.subList(mid+1, children.size()).clear();
+            }
+
+            final STOREKEY splitKey = nodeStore.generateKey(split, null);
+            nodeStore.store(splitKey, split);
+            join.keys.add(splitKey);
+        }
+
+        nodeStore.store(leftKey, left);
+
+        return join;
+    }
+
+    /**
+     * If the child at {@code index} holds fewer than {@link #minData} keys, merge it
+     * with a sibling or, if they hold too many keys together, share the keys evenly.
+     * {@code parent} is changed
+     * but not stored. Nothing is done if {@code parent} has a single child.
+     *
+     * <p>Repairing the only child of the child merges it into a sibling, which takes a
+     * key from the node that now holds it. If that node falls below {@link #minData}
+     * it is repaired in turn, so afterwards every child of {@code parent} holds at
+     * least {@link #minData} keys unless {@code parent} is left with a single child.</p>
+     */
+    private void fixChild(final Node<K, STOREKEY> parent, final int index)
+    {
+        if ( parent.getChildren().size() < 2 ) {
+            return;
+        }
+
+        final STOREKEY childKey = parent.getChildren().get(index);
+        final Node<K, STOREKEY> child = nodeStore.loadNode(childKey);
+
+        if ( child.getData().size() >= minData ) {
+            return;
+        }
+
+        // Merge with the left sibling unless this is the first child.
+        final int separator = index > 0 ? index - 1 : index;
+        final STOREKEY leftKey = parent.getChildren().get(separator);
+        final STOREKEY rightKey = parent.getChildren().get(separator + 1);
+        final Node<K, STOREKEY> left = index > 0 ? nodeStore.loadNode(leftKey) : child;
+        final Node<K, STOREKEY> right = index > 0 ? child : nodeStore.loadNode(rightKey);
+
+        // A child with a single child may have left that child too small. Find it after merging.
+        final int orphan =
+            child.getChildren().size() != 1 ? -1 : (child == left ? 0 : left.getChildren().size());
+
+        final List<K> data = new ArrayList<>(left.getData());
+        data.add(parent.getData().get(separator));
+        data.addAll(right.getData());
+
+        final List<STOREKEY> children = new ArrayList<>(left.getChildren());
+        children.addAll(right.getChildren());
+
+        if ( data.size() <= 2*minData+1 ) {
+            if ( tracer != null ) {
+                tracer.merge();
+            }
+
+            left.setData(data);
+            left.setChildren(children);
+            parent.getData().remove(separator);
+            parent.getChildren().remove(separator + 1);
+
+            if ( orphan >= 0 ) {
+                fixChild(left, orphan);
+            }
+
+            nodeStore.store(leftKey, left);
+            nodeStore.removeNode(rightKey);
+
+            if ( left.getData().size() < minData ) {
+                fixChild(parent, separator);
+            }
+        } else {
+            if ( tracer != null ) {
+                tracer.rotate();
+            }
+
+            final int mid = data.size() / 2;
+
+            left.setData(new ArrayList<>(data.subList(0, mid)));
+            right.setData(new ArrayList<>(data.subList(mid+1, data.size())));
+            parent.getData().set(separator, data.get(mid));
+
+            if ( ! children.isEmpty() ) {
+                left.setChildren(new ArrayList<>(children.subList(0, mid+1)));
+                right.setChildren(new ArrayList<>(children.subList(mid+1, children.size())));
+            }
+
+            if ( orphan > mid ) {
+                fixChild(right, orphan - mid - 1);
+            } else if ( orphan >= 0 ) {
+                fixChild(left, orphan);
+            }
+
+            nodeStore.store(leftKey, left);
+            nodeStore.store(rightKey, right);
+
+            if ( left.getData().size() < minData ) {
+                fixChild(parent, separator);
+            } else if ( right.getData().size() < minData ) {
+                fixChild(parent, separator + 1);
+            }
+        }
+    }
+
     /**
      * Iterate through the entire datastrucuture and counts each element.
      * Avoid using this.
      */
     @Override
     public int size() {
-        final Integer[] i = new Integer[1];
-        i[0] = 0;
-        
-        eachDepthFirst(new NodeFunction<K, STOREKEY>(){
-            @Override
-            public boolean call(final Node<K, STOREKEY> n) {
-                i[0] += n.getData().size();
-                return true;
-            }
-        } );
-        
-        return i[0];
+        traceBegin("BTree.size");
+        try {
+            final Integer[] i = new Integer[1];
+            i[0] = 0;
+
+            eachDepthFirst(new NodeFunction<K, STOREKEY>(){
+                @Override
+                public boolean call(final Node<K, STOREKEY> n) {
+                    i[0] += n.getData().size();
+                    return true;
+                }
+            } );
+
+            return i[0];
+        } finally {
+            traceEnd();
+        }
     }
     
     /**
@@ -818,6 +2013,17 @@ public class BTree<K,STOREKEY, V> implements BTreeMap<K,V>
         public Node<K, STOREKEY> node;
         public STOREKEY parentKey;
         public Node<K, STOREKEY> parent;
+
+        /**
+         * How far {@link #node} is below the root.
+         */
+        public int depth;
+
+        /**
+         * True if {@link #node} is the last node of its level.
+         * Kept by {@link #descend} and {@link #conditionallySplit}.
+         */
+        public boolean rightmost;
         
         /**
          * Construct a new NodeContext that has a null parent
@@ -825,6 +2031,7 @@ public class BTree<K,STOREKEY, V> implements BTreeMap<K,V>
          */
         public NodeContext() {
             this(null, null, rootKey, getRoot());
+            this.rightmost = true;
         }
         
         /**
@@ -847,7 +2054,7 @@ public class BTree<K,STOREKEY, V> implements BTreeMap<K,V>
         }
         
         /**
-         * If {@code node} is not null and has the minimum data lements in it
+         * If {@code node} is not null and has no more than {@link #mergeThreshold()} data elements in it
          * it will steal a key and node subtree from a neighbor and
          * {@link #parent} <em>or</em> it will be collapsed with
          * one of its siblings into a single node.
@@ -857,10 +2064,10 @@ public class BTree<K,STOREKEY, V> implements BTreeMap<K,V>
         public boolean conditionallyCollapse(final int parentInsertionPoint)
         {
             // This node is not the root and
-            // does not have minData+1 or more data elements.
+            // does not have more than mergeThreshold() data elements.
             // It needs another data element to ensure a child delete can
             // occur.
-            if ( ! atRoot() && node.getData().size() == minData )
+            if ( ! atRoot() && node.getData().size() <= mergeThreshold() )
             {
                 //System.out.println("Collapse "+parentInsertionPoint);
 
@@ -888,8 +2095,24 @@ public class BTree<K,STOREKEY, V> implements BTreeMap<K,V>
                     rightSiblingDataSize = rightSibling.getData().size();
                 }
                 
+                // A sibling may be merged if the keys of both nodes and
+                // the parent key between them fit in one node.
+                final int mergeLimit = 2*minData - node.getData().size();
+                final boolean mergeLeft =
+                    leftSibling != null && leftSiblingDataSize <= mergeLimit;
+                final boolean mergeRight =
+                    rightSibling != null && rightSiblingDataSize <= mergeLimit;
+
                 // Check for a merge opportunity. Avoids a log-n delete min/max.
-                if ( leftSiblingDataSize == minData ) {
+                if ( tracer != null ) {
+                    if ( mergeLeft || mergeRight ) {
+                        tracer.merge();
+                    } else {
+                        tracer.rotate();
+                    }
+                }
+
+                if ( mergeLeft ) {
                     // Collapse left.
                     // Add data to left sibling.
                     if ( ! node.isLeaf() )
@@ -919,7 +2142,7 @@ public class BTree<K,STOREKEY, V> implements BTreeMap<K,V>
                     
                     nodeStore.store(nodeKey, node);
                     
-                } else if ( rightSiblingDataSize == minData ) {
+                } else if ( mergeRight ) {
                     // Collapse the right node into node.
                     // Add data to node.
                     if ( ! rightSibling.isLeaf() )
@@ -947,7 +2170,7 @@ public class BTree<K,STOREKEY, V> implements BTreeMap<K,V>
                     
                     // NOTE: We do not reassign node because the right
                     // sibling is collapsed into the current node.
-                } else if ( leftSiblingDataSize > minData ) {
+                } else if ( leftSibling != null ) {
                     if ( ! leftSibling.isLeaf() ) {
                         final STOREKEY leftChild = 
                             leftSibling.getChildren().remove(
@@ -965,7 +2188,7 @@ public class BTree<K,STOREKEY, V> implements BTreeMap<K,V>
                     nodeStore.store(nodeKey, node);
                     nodeStore.store(leftSiblingKey, leftSibling);
                     nodeStore.store(parentKey, parent);
-                } else if ( rightSiblingDataSize > minData ) {
+                } else if ( rightSibling != null ) {
                     if ( ! rightSibling.isLeaf() ) {
                         final STOREKEY rightChild = rightSibling
                             .getChildren()
@@ -1004,33 +2227,32 @@ public class BTree<K,STOREKEY, V> implements BTreeMap<K,V>
         {
             if ( node.isDataFull() ) {
                 //System.out.println("Split "+parentInsertionPoint);
+
+                if ( tracer != null ) {
+                    tracer.split();
+                }
             
                 final Node<K, STOREKEY> left = newNode();
                 final Node<K, STOREKEY> right = newNode();
 
+                final int size = node.getData().size();
+                final int middle = splitIndex(userKey);
+
                 right.getData().addAll(
-                    node.getData().subList(rightDataStart, rightDataEnd));
+                    node.getData().subList(middle+1, size));
                 left.getData().addAll(
-                    node.getData().subList(leftDataStart, leftDataEnd));
-                    
-                assert(left.getData().size() == minData);
-                assert(right.getData().size() == minData);
+                    node.getData().subList(0, middle));
                 
                 if ( ! node.isLeaf() ) {
                     left.getChildren().addAll(
-                        node.getChildren().subList(
-                            leftChildStart, leftChildEnd));
+                        node.getChildren().subList(0, middle+1));
                     right.getChildren().addAll(
-                        node.getChildren().subList(
-                            rightChildStart, rightChildEnd));
-                        
-                    assert(left.getChildren().size() == minData+1);
-                    assert(right.getChildren().size() == minData+1);
+                        node.getChildren().subList(middle+1, size+1));
                 }
                 
                 final STOREKEY leftKey = nodeStore.generateKey(left, null);
                 final STOREKEY rightKey = nodeStore.generateKey(right, null);
-                final K dataKey = node.getData().get(middleData);
+                final K dataKey = node.getData().get(middle);
                                     
                 if ( atRoot() ) {
                     //System.out.println("SPLIT ROOT.");
@@ -1069,12 +2291,26 @@ public class BTree<K,STOREKEY, V> implements BTreeMap<K,V>
                 } else {
                     node = left;
                     nodeKey = leftKey;
+                    rightmost = false;
                 }
                 return true;
             }
             
             return false;
         }
+
+        /**
+         * Ask the {@link #splitPolicy} where to split {@link #node}.
+         *
+         * @param userKey The key being inserted.
+         * @return The index of the key that moves up.
+         */
+        private int splitIndex(final K userKey)
+        {
+            final int index = binarySearch(node.getData(), userKey, null);
+
+            return BTree.this.splitIndex(node, index < 0 ? -(index+1) : index, rightmost);
+        }
         
         /**
          * Return true if this context is positioned at the root node.
@@ -1091,11 +2327,17 @@ public class BTree<K,STOREKEY, V> implements BTreeMap<K,V>
          */      
         public void descend(final int i)
         {
+            rightmost = rightmost && i == node.getChildren().size()-1;
             parentKey = nodeKey;
             parent = node;
             //System.out.println("I="+i);
             nodeKey = node.getChildren().get(i);
             node = nodeStore.loadNode(nodeKey);
+            depth++;
+
+            if ( tracer != null ) {
+                tracer.depth(depth);
+            }
         }
     }
     
@@ -0,0 +1,562 @@
+package com.github.basking2.sdsai.dsds;
+
+import com.github.basking2.sdsai.dsds.node.BatchNodeStore;
+import com.github.basking2.sdsai.dsds.node.Node;
+import com.github.basking2.sdsai.dsds.node.NodeStore;
+import com.github.basking2.sdsai.dsds.node.NodeStoreBatch;
+import com.github.basking2.sdsai.dsds.node.NodeStoreException;
+import com.github.basking2.sdsai.dsds.node.NodeStoreNodeNotFoundException;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>A Bloom filter of the keys of a {@link BTree}, kept in memory and persisted through the tree's {@link NodeStore}.
+ * A key the filter does not contain is not in the tree, so the tree answers without a
+ * {@link NodeStore#loadData(Object)}.</p>
+ *
+ * <p>The bits are split into pages, each stored as a {@link Node} holding one key made by a {@link Codec}.
+ * All the bits of a key are in one page. A header node, stored at the filter key, holds the sizes
+ * and lists the pages as its children.</p>
+ *
+ * <p>Added keys change only the pages in memory. The first key added after a {@link #flush()} stores
+ * the header marked open, and the changed pages are stored every {@link #getFlushInterval()} keys or when
+ * the tree flushes the filter, after which the header is stored closed. A filter loaded with an open header
+ * may lack keys added before a crash, so the tree rebuilds it.</p>
+ *
+ * <p>A rebuild or resize stores every page under a new key, then the header listing the new pages,
+ * and only then removes the old pages, so the stored header never lists pages of another layout.
+ * A crash before the old pages are removed leaves them in the store unlisted.</p>
+ *
+ * <p>Keys are hashed by {@link Object#toString()}, as most stores {@link NodeStore#convert(Object) convert} them,
+ * so a filter read back by another process finds the same bits.</p>
+ *
+ * <p>Removed keys stay in the filter. After {@link #getRebuildFraction()} of its capacity has been removed,
+ * the {@link BTree} rebuilds the filter from its keys. Removals are counted from when the filter is opened.</p>
+ *
+ * @param <K> The user key type.
+ * @param <STOREKEY> The data store key type.
+ * @see BTree#enableBloomFilter(Object, long, double, Codec)
+ */
+public class BloomFilter<K, STOREKEY> {
+
+    /**
+     * The most 64 bit words in a page.
+     */
+    public static final int DEFAULT_PAGE_WORDS = 1024;
+
+    /**
+     * The share of capacity that may be removed before a rebuild.
+     */
+    public static final double DEFAULT_REBUILD_FRACTION = 0.25;
+
+    /**
+     * The keys added between flushes.
+     */
+    public static final int DEFAULT_FLUSH_INTERVAL = 1000;
+
+    /**
+     * The version of the header layout. Version 1 headers have no open word and are loaded as open.
+     */
+    private static final long FORMAT = 2;
+
+    /**
+     * Converts the 64 bit words of a page or the header to and from a key, which is stored in a {@link Node}.
+     *
+     * @param <K> The user key type.
+     */
+    public interface Codec<K> {
+        /**
+         * @param words The words to encode.
+         * @return A key holding {@code words}.
+         */
+        K encode(long[] words);
+
+        /**
+         * @param key A key made by {@link #encode(long[])}.
+         * @return The words.
+         */
+        long[] decode(K key);
+    }
+
+    /**
+     * @return A codec of Base64 strings, for stores of {@link String} keys.
+     */
+    public static Codec<String> base64() {
+        return new Codec<String>() {
+            @Override
+            public String encode(final long[] words) {
+                final ByteBuffer buffer = ByteBuffer.allocate(words.length * Long.BYTES);
+                buffer.asLongBuffer().put(words);
+                return Base64.getEncoder().encodeToString(buffer.array());
+            }
+
+            @Override
+            public long[] decode(final String key) {
+                final ByteBuffer buffer = ByteBuffer.wrap(Base64.getDecoder().decode(key));
+                final long[] words = new long[buffer.remaining() / Long.BYTES];
+                buffer.asLongBuffer().get(words);
+                return words;
+            }
+        };
+    }
+
+    private final NodeStore<K, STOREKEY, ?> nodeStore;
+
+    private final STOREKEY headerKey;
+
+    private final Codec<K> codec;
+
+    /**
+     * The keys this filter was sized for.
+     */
+    private long capacity;
+
+    private int hashes;
+
+    private int pageWords;
+
+    /**
+     * The stored keys of the pages. After a resize this is empty until the new pages are stored.
+     */
+    private final List<STOREKEY> pageKeys = new ArrayList<>();
+
+    /**
+     * Pages of the stored layout to remove once the header no longer lists them.
+     */
+    private final List<STOREKEY> retiredKeys = new ArrayList<>();
+
+    private final List<BitSet> pages = new ArrayList<>();
+
+    /**
+     * Pages changed since the last {@link #flush()}.
+     */
+    private final BitSet dirty = new BitSet();
+
+    /**
+     * True if the sizes or pages changed since the last {@link #flush()}.
+     */
+    private boolean headerDirty;
+
+    /**
+     * True if the stored header is marked open.
+     */
+    private boolean open;
+
+    /**
+     * Keys that changed a page since the last {@link #flush()}.
+     */
+    private int pendingAdds;
+
+    private int flushInterval = DEFAULT_FLUSH_INTERVAL;
+
+    private long removals;
+
+    private double rebuildFraction = DEFAULT_REBUILD_FRACTION;
+
+    private BloomFilter(final NodeStore<K, STOREKEY, ?> nodeStore, final STOREKEY headerKey, final Codec<K> codec) {
+        this.nodeStore = nodeStore;
+        this.headerKey = headerKey;
+        this.codec = codec;
+    }
+
+    /**
+     * Load the filter stored at {@code filterKey}.
+     *
+     * @return The filter, or null if none is stored.
+     * @throws NodeStoreException If a page is missing.
+     */
+    static <K, STOREKEY> BloomFilter<K, STOREKEY> load(
+        final NodeStore<K, STOREKEY, ?> nodeStore,
+        final K filterKey,
+        final Codec<K> codec
+    ) {
+        final STOREKEY headerKey = nodeStore.convert(filterKey);
+
+        final Node<K, STOREKEY> header;
+        try {
+            header = nodeStore.loadNode(headerKey);
+        }
+        catch (final NodeStoreNodeNotFoundException e) {
+            return null;
+        }
+
+        if (header == null) {
+            return null;
+        }
+
+        final long[] sizes = codec.decode(header.getData().get(0));
+        if (sizes[0] != FORMAT && sizes[0] != 1) {
+            throw new NodeStoreException("Unknown Bloom filter format " + sizes[0] + " at " + filterKey + ".");
+        }
+
+        final BloomFilter<K, STOREKEY> filter = new BloomFilter<>(nodeStore, headerKey, codec);
+        filter.capacity = sizes[1];
+        filter.hashes = (int) sizes[2];
+        filter.pageWords = (int) sizes[3];
+        filter.open = sizes[0] == 1 || sizes[4] != 0;
+        filter.pageKeys.addAll(header.getChildren());
+
+        final Map<STOREKEY, Node<K, STOREKEY>> nodes;
+        if (nodeStore instanceof BatchNodeStore) {
+            nodes = ((BatchNodeStore<K, STOREKEY, ?>) nodeStore).loadNodes(filter.pageKeys);
+        }
+        else {
+            nodes = new HashMap<>();
+            for (final STOREKEY k : filter.pageKeys) {
+                nodes.put(k, nodeStore.loadNode(k));
+            }
+        }
+
+        for (final STOREKEY k : filter.pageKeys) {
+            final Node<K, STOREKEY> page = nodes.get(k);
+            if (page == null) {
+                throw new NodeStoreNodeNotFoundException("Bloom filter page " + k + " is missing.");
+            }
+            filter.pages.add(BitSet.valueOf(codec.decode(page.getData().get(0))));
+        }
+
+        return filter;
+    }
+
+    /**
+     * Build an empty filter stored at {@code filterKey}. Nothing is stored until {@link #flush()}.
+     *
+     * @param capacity The number of keys expected.
+     * @param falsePositiveRate The chance, above 0 and below 1, that a key not added is reported present.
+     */
+    static <K, STOREKEY> BloomFilter<K, STOREKEY> create(
+        final NodeStore<K, STOREKEY, ?> nodeStore,
+        final K filterKey,
+        final long capacity,
+        final double falsePositiveRate,
+        final Codec<K> codec
+    ) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1: " + capacity);
+        }
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("False positive rate must be above 0 and below 1: " + falsePositiveRate);
+        }
+
+        final BloomFilter<K, STOREKEY> filter = new BloomFilter<>(nodeStore, nodeStore.convert(filterKey), codec);
+
+        final double ln2 = Math.log(2);
+        final long bits = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (ln2 * ln2));
+        final long words = (bits + Long.SIZE - 1) / Long.SIZE;
+
+        filter.capacity = capacity;
+        filter.hashes = (int) Math.max(1, Math.round((double) bits / capacity * ln2));
+        filter.pageWords = (int) Math.min(DEFAULT_PAGE_WORDS, words);
+        filter.resize((int) ((words + filter.pageWords - 1) / filter.pageWords));
+
+        return filter;
+    }
+
+    /**
+     * Make this an empty filter of {@code pageCount} pages. The stored pages are retired
+     * and every page is stored under a new key by the next {@link #flush()}.
+     */
+    private void resize(final int pageCount) {
+        pages.clear();
+        for (int i = 0; i < pageCount; i++) {
+            pages.add(new BitSet(pageWords * Long.SIZE));
+        }
+
+        retiredKeys.addAll(pageKeys);
+        pageKeys.clear();
+
+        dirty.clear();
+        dirty.set(0, pageCount);
+        headerDirty = true;
+        removals = 0;
+    }
+
+    /**
+     * @param key A key.
+     * @return False if the key was never added. True if it may have been.
+     */
+    public boolean mightContain(final K key) {
+        final long h = KeyHash.hash(key);
+        final BitSet page = pages.get(page(h));
+        final int bits = pageWords * Long.SIZE;
+
+        long bit = KeyHash.mix(h ^ 0x9e3779b97f4a7c15L);
+        final long step = KeyHash.mix(h ^ 0xc2b2ae3d27d4eb4fL) | 1;
+        for (int i = 0; i < hashes; i++, bit += step) {
+            if (!page.get((int) Long.remainderUnsigned(bit, bits))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Add a key before it is added to the tree. If a bit changed, the page is marked for the next
+     * {@link #flush()} and, if the stored header is closed, it is stored open first.
+     * Every {@link #getFlushInterval()} such keys the filter is flushed.
+     *
+     * @param key The key.
+     */
+    void add(final K key) {
+        if (!set(key)) {
+            return;
+        }
+
+        if (!open) {
+            if (headerDirty) {
+                // A new layout is stored before a header may list it.
+                flush();
+            }
+            storeHeader(true);
+        }
+
+        if (++pendingAdds >= flushInterval) {
+            flush();
+        }
+    }
+
+    /**
+     * Set the bits of a key.
+     *
+     * @return True if a bit changed.
+     */
+    private boolean set(final K key) {
+        boolean changed = false;
+        final long h = KeyHash.hash(key);
+        final int pageIndex = page(h);
+        final BitSet page = pages.get(pageIndex);
+        final int bits = pageWords * Long.SIZE;
+
+        long bit = KeyHash.mix(h ^ 0x9e3779b97f4a7c15L);
+        final long step = KeyHash.mix(h ^ 0xc2b2ae3d27d4eb4fL) | 1;
+        for (int i = 0; i < hashes; i++, bit += step) {
+            final int b = (int) Long.remainderUnsigned(bit, bits);
+            if (!page.get(b)) {
+                page.set(b);
+                dirty.set(pageIndex);
+                changed = true;
+            }
+        }
+
+        return changed;
+    }
+
+    /**
+     * Count removed keys, which stay in the filter until it is rebuilt.
+     *
+     * @param count The number of keys removed.
+     * @return True if the filter should be rebuilt.
+     */
+    boolean removed(final long count) {
+        removals += count;
+        return removals > rebuildFraction * capacity;
+    }
+
+    /**
+     * Empty the filter and add {@code keys}. If there are more keys than the capacity,
+     * the filter is rebuilt with twice as many keys as capacity.
+     * The filter is then {@link #flush() flushed}.
+     *
+     * @param keys The keys of the tree.
+     */
+    void rebuild(final Iterable<K> keys) {
+        long count = 0;
+
+        resize(pages.size());
+        for (final K key : keys) {
+            set(key);
+            count++;
+        }
+
+        if (count > capacity) {
+            // Keep the bits per key.
+            final long words = (long) pages.size() * pageWords * count * 2 / capacity;
+            capacity = count * 2;
+            resize((int) Math.min(Integer.MAX_VALUE, (words + pageWords - 1) / pageWords));
+
+            for (final K key : keys) {
+                set(key);
+            }
+        }
+
+        flush();
+    }
+
+    /**
+     * Empty the filter and flush it.
+     */
+    void clear() {
+        resize(pages.size());
+        flush();
+    }
+
+    /**
+     * Store the changed pages, then the header, closed, and then remove retired pages.
+     * Changed pages of the stored layout are stored in place. That is safe because the header
+     * is open while they change. If the store is a {@link BatchNodeStore} the pages are stored as one batch.
+     */
+    void flush() {
+        if (dirty.isEmpty() && !headerDirty && !open && retiredKeys.isEmpty()) {
+            return;
+        }
+
+        storePages(nodeStore);
+        storeHeader(false);
+        headerDirty = false;
+        pendingAdds = 0;
+
+        for (final STOREKEY k : retiredKeys) {
+            nodeStore.removeNode(k);
+        }
+        retiredKeys.clear();
+    }
+
+    private <V> void storePages(final NodeStore<K, STOREKEY, V> store) {
+        final NodeStoreBatch<K, STOREKEY, V> batch = new NodeStoreBatch<>();
+
+        for (int i = dirty.nextSetBit(0); i >= 0; i = dirty.nextSetBit(i + 1)) {
+            final Node<K, STOREKEY> page = new Node<>(0, 1, 0);
+            page.getData().add(codec.encode(words(pages.get(i))));
+
+            if (i < pageKeys.size()) {
+                batch.store(pageKeys.get(i), page);
+            }
+            else {
+                final STOREKEY pageKey = store.generateKey(page, null);
+                batch.store(pageKey, page);
+                pageKeys.add(pageKey);
+            }
+        }
+
+        if (store instanceof BatchNodeStore) {
+            ((BatchNodeStore<K, STOREKEY, V>) store).execute(batch);
+        }
+        else {
+            batch.executeOn(store);
+        }
+
+        dirty.clear();
+    }
+
+    /**
+     * Store the header listing the stored pages.
+     *
+     * @param open True to mark the filter open, so it is rebuilt if it is loaded before it is flushed.
+     */
+    private void storeHeader(final boolean open) {
+        final Node<K, STOREKEY> header = new Node<>(pageKeys.size(), 1, 0);
+        header.getData().add(codec.encode(new long[]{ FORMAT, capacity, hashes, pageWords, open ? 1 : 0 }));
+        header.getChildren().addAll(pageKeys);
+        nodeStore.store(headerKey, header);
+        this.open = open;
+    }
+
+    /**
+     * Remove the pages and the header from the store.
+     */
+    void destroy() {
+        nodeStore.removeNode(headerKey);
+        for (final STOREKEY k : pageKeys) {
+            nodeStore.removeNode(k);
+        }
+        for (final STOREKEY k : retiredKeys) {
+            nodeStore.removeNode(k);
+        }
+        pageKeys.clear();
+        retiredKeys.clear();
+    }
+
+    /**
+     * @return True if the stored header is open, so keys added since the last {@link #flush()}
+     *         may be missing from the stored pages.
+     */
+    boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * @param flushInterval The number of keys that change a page between flushes. At least 1.
+     */
+    public void setFlushInterval(final int flushInterval) {
+        if (flushInterval < 1) {
+            throw new IllegalArgumentException("Flush interval must be at least 1: " + flushInterval);
+        }
+        this.flushInterval = flushInterval;
+    }
+
+    /**
+     * @return The number of keys that change a page between flushes.
+     */
+    public int getFlushInterval() {
+        return flushInterval;
+    }
+
+    /**
+     * @param rebuildFraction The share of {@link #getCapacity()} that may be removed before the tree
+     *        rebuilds the filter. Above 0.
+     */
+    public void setRebuildFraction(final double rebuildFraction) {
+        if (rebuildFraction <= 0) {
+            throw new IllegalArgumentException("Rebuild fraction must be above 0: " + rebuildFraction);
+        }
+        this.rebuildFraction = rebuildFraction;
+    }
+
+    /**
+     * @return The share of {@link #getCapacity()} that may be removed before the tree rebuilds the filter.
+     */
+    public double getRebuildFraction() {
+        return rebuildFraction;
+    }
+
+    /**
+     * @return The number of keys this filter is sized for.
+     */
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return The number of bits set for each key.
+     */
+    public int getHashes() {
+        return hashes;
+    }
+
+    /**
+     * @return The number of pages.
+     */
+    public int getPages() {
+        return pages.size();
+    }
+
+    /**
+     * @return The number of keys removed since the filter was opened or rebuilt.
+     */
+    public long getRemovals() {
+        return removals;
+    }
+
+    private int page(final long hash) {
+        return (int) Long.remainderUnsigned(hash, pages.size());
+    }
+
+    private long[] words(final BitSet page) {
+        final long[] set = page.toLongArray();
+        if (set.length == pageWords) {
+            return set;
+        }
+
+        // Trailing zero words are not in set.
+        final long[] words = new long[pageWords];
+        System.arraycopy(set, 0, words, 0, set.length);
+        return words;
+    }
+}
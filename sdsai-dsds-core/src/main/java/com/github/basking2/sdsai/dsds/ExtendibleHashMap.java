@@ -0,0 +1,659 @@
+package com.github.basking2.sdsai.dsds;
+
+import com.github.basking2.sdsai.dsds.node.Node;
+import com.github.basking2.sdsai.dsds.node.NodeStore;
+import com.github.basking2.sdsai.dsds.node.NodeStoreNodeNotFoundException;
+import com.github.basking2.sdsai.dsds.node.metrics.OperationTracer;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * <p>An unordered map stored in a {@link NodeStore} by extendible hashing.</p>
+ *
+ * <p>A directory node, stored at the root key, lists {@code 2^depth} bucket nodes as its children.
+ * The low {@code depth} bits of a key's hash pick its bucket, and a bucket may be listed by
+ * many directory entries. A bucket holds the keys; values are stored at their keys
+ * as {@link BTree} stores them. A full bucket is split in two and a nearly empty bucket is merged
+ * with its buddy, doubling or halving the directory as needed.</p>
+ *
+ * <p>{@link #get} and {@link #containsKey} load only data. Inserting or removing a key loads the
+ * directory and one bucket, and a merge loads one more bucket, however many keys the map holds.
+ * Keys are hashed by {@link Object#toString()}.</p>
+ *
+ * <p>The bucket size is stored in the directory, so a map reopened with another size keeps the first.</p>
+ *
+ * @param <K> The user key type.
+ * @param <STOREKEY> The data store key type.
+ * @param <V> The user value type.
+ */
+public class ExtendibleHashMap<K, STOREKEY, V> extends AbstractMap<K, V> implements BTreeMap<K, V>
+{
+    /**
+     * The default most keys in a bucket.
+     */
+    public static final int DEFAULT_BUCKET_SIZE = 100;
+
+    /**
+     * Buckets at this depth are not split, so a directory has at most {@code 2^MAX_DEPTH} entries.
+     * Only keys whose {@link Object#toString()} hashes collide fill a bucket this deep.
+     */
+    public static final int MAX_DEPTH = 24;
+
+    /**
+     * The key of the directory node.
+     */
+    private final STOREKEY rootKey;
+
+    private final NodeStore<K, STOREKEY, V> nodeStore;
+
+    /**
+     * The most keys in a bucket before it is split.
+     */
+    private int bucketSize;
+
+    /**
+     * Traces each public operation, or null if tracing is off.
+     */
+    private OperationTracer tracer;
+
+    /**
+     * @param rootKey The key the directory is stored at.
+     * @param nodeStore The store.
+     */
+    public ExtendibleHashMap(final K rootKey, final NodeStore<K, STOREKEY, V> nodeStore)
+    {
+        this(rootKey, nodeStore, DEFAULT_BUCKET_SIZE);
+    }
+
+    /**
+     * @param rootKey The key the directory is stored at.
+     * @param nodeStore The store.
+     * @param bucketSize The most keys in a bucket, at least 2, if the map is new.
+     */
+    public ExtendibleHashMap(final K rootKey, final NodeStore<K, STOREKEY, V> nodeStore, final int bucketSize)
+    {
+        if ( bucketSize < 2 ) {
+            throw new IllegalArgumentException("Bucket size must be at least 2: "+bucketSize);
+        }
+
+        this.nodeStore = nodeStore;
+        this.rootKey = nodeStore.convert(rootKey);
+        this.bucketSize = bucketSize;
+    }
+
+    /**
+     * Trace the public operations of this map.
+     *
+     * @param tracer The tracer, or null to stop tracing.
+     * @see BTree#setTracer(OperationTracer)
+     */
+    public void setTracer(final OperationTracer tracer)
+    {
+        this.tracer = tracer;
+    }
+
+    private void traceBegin(final String operation)
+    {
+        if ( tracer != null ) {
+            tracer.begin(operation);
+        }
+    }
+
+    private void traceEnd()
+    {
+        if ( tracer != null ) {
+            tracer.end();
+        }
+    }
+
+    /**
+     * Load the directory or, if there is none, store a directory of one empty bucket.
+     */
+    private Node<K, STOREKEY> getDirectory()
+    {
+        try {
+            final Node<K, STOREKEY> directory = nodeStore.loadNode(rootKey);
+            bucketSize = directory.getDataCap();
+            return directory;
+        } catch (final NodeStoreNodeNotFoundException e) {
+            final Node<K, STOREKEY> bucket = newBucket();
+            final STOREKEY bucketKey = nodeStore.generateKey(bucket, null);
+            nodeStore.store(bucketKey, bucket);
+
+            final Node<K, STOREKEY> directory = new Node<>(1, bucketSize, 0);
+            directory.getChildren().add(bucketKey);
+            nodeStore.store(rootKey, directory);
+            return directory;
+        }
+    }
+
+    private Node<K, STOREKEY> newBucket()
+    {
+        return new Node<>(0, bucketSize, 0);
+    }
+
+    /**
+     * @return The directory entry of {@code key}.
+     */
+    private static int slot(final Node<?, ?> directory, final Object key)
+    {
+        return (int) (KeyHash.hash(key) & (directory.getChildren().size() - 1));
+    }
+
+    /**
+     * @return The number of hash bits that pick the bucket at {@code slot}.
+     */
+    private static int localDepth(final Node<?, ?> directory, final int slot)
+    {
+        final List<?> children = directory.getChildren();
+        final Object bucketKey = children.get(slot);
+
+        int listings = 0;
+        for ( final Object k : children ) {
+            if ( k.equals(bucketKey) ) {
+                listings++;
+            }
+        }
+
+        return Integer.numberOfTrailingZeros(children.size()) - Integer.numberOfTrailingZeros(listings);
+    }
+
+    /**
+     * @return The data of {@code key}, loading no nodes.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(final Object key)
+    {
+        traceBegin("ExtendibleHashMap.get");
+        try {
+            return nodeStore.loadData(nodeStore.convert((K)key));
+        } finally {
+            traceEnd();
+        }
+    }
+
+    /**
+     * @return True if {@code key} has data, loading no nodes.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean containsKey(final Object key)
+    {
+        traceBegin("ExtendibleHashMap.containsKey");
+        try {
+            return nodeStore.containsData(nodeStore.convert((K)key));
+        } finally {
+            traceEnd();
+        }
+    }
+
+    /**
+     * Store a value. A value that replaces another changes no nodes.
+     *
+     * @param key The key.
+     * @param value The value.
+     * @return The previous value, or null.
+     */
+    @Override
+    public V put(final K key, final V value)
+    {
+        traceBegin("ExtendibleHashMap.put");
+        try {
+            final STOREKEY storeKey = nodeStore.convert(key);
+            final V previous = nodeStore.loadData(storeKey);
+
+            if ( previous != null ) {
+                nodeStore.store(storeKey, value);
+                return previous;
+            }
+
+            insert(key);
+            nodeStore.store(storeKey, value);
+
+            return null;
+        } finally {
+            traceEnd();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean putKey(final K key)
+    {
+        traceBegin("ExtendibleHashMap.putKey");
+        try {
+            return insert(key);
+        } finally {
+            traceEnd();
+        }
+    }
+
+    /**
+     * Add a key to its bucket, splitting the bucket while it is over full.
+     *
+     * @return True if the key was added. False if it was already listed.
+     */
+    private boolean insert(final K key)
+    {
+        final Node<K, STOREKEY> directory = getDirectory();
+        int slot = slot(directory, key);
+        STOREKEY bucketKey = directory.getChildren().get(slot);
+        Node<K, STOREKEY> bucket = nodeStore.loadNode(bucketKey);
+
+        if ( bucket.getData().contains(key) ) {
+            return false;
+        }
+
+        bucket.getData().add(key);
+
+        boolean directoryChanged = false;
+
+        while ( bucket.getData().size() > bucketSize ) {
+            final int depth = localDepth(directory, slot);
+            if ( depth >= MAX_DEPTH ) {
+                break;
+            }
+
+            final List<STOREKEY> children = directory.getChildren();
+            if ( depth == Integer.numberOfTrailingZeros(children.size()) ) {
+                children.addAll(new ArrayList<>(children));
+            }
+
+            // Keys and entries with bit depth set move to the new bucket.
+            final long bit = 1L << depth;
+            final Node<K, STOREKEY> split = newBucket();
+            for ( final Iterator<K> i = bucket.getData().iterator(); i.hasNext(); ) {
+                final K k = i.next();
+                if ( (KeyHash.hash(k) & bit) != 0 ) {
+                    split.getData().add(k);
+                    i.remove();
+                }
+            }
+
+            final STOREKEY splitKey = nodeStore.generateKey(split, null);
+            for ( int i = 0; i < children.size(); i++ ) {
+                if ( (i & bit) != 0 && children.get(i).equals(bucketKey) ) {
+                    children.set(i, splitKey);
+                }
+            }
+
+            directoryChanged = true;
+
+            // One of the two may still be over full if the keys share more bits.
+            slot = slot(directory, key);
+            if ( children.get(slot).equals(splitKey) ) {
+                nodeStore.store(bucketKey, bucket);
+                bucketKey = splitKey;
+                bucket = split;
+            }
+            else {
+                nodeStore.store(splitKey, split);
+            }
+        }
+
+        nodeStore.store(bucketKey, bucket);
+
+        if ( directoryChanged ) {
+            storeDirectory(directory);
+        }
+
+        return true;
+    }
+
+    /**
+     * Remove the key and its data. Removing a key that is listed loads the directory
+     * and its bucket, and may load the bucket's buddy to merge them.
+     *
+     * @return The removed data, or null.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public V remove(final Object keyObject)
+    {
+        traceBegin("ExtendibleHashMap.remove");
+        try {
+            final K key = (K) keyObject;
+            final STOREKEY storeKey = nodeStore.convert(key);
+            final V v = nodeStore.loadData(storeKey);
+
+            if ( v == null ) {
+                return null;
+            }
+
+            unlist(key);
+            nodeStore.removeData(storeKey);
+
+            return v;
+        } finally {
+            traceEnd();
+        }
+    }
+
+    /**
+     * Remove a key from its bucket without loading or removing its data.
+     * This undoes {@link #putKey(Object)}.
+     *
+     * @param key The key.
+     * @return True if the key was removed. False if it was not listed.
+     */
+    public boolean removeKey(final K key)
+    {
+        traceBegin("ExtendibleHashMap.removeKey");
+        try {
+            return unlist(key);
+        } finally {
+            traceEnd();
+        }
+    }
+
+    /**
+     * Remove a key from its bucket. While the bucket is a quarter full or less, it is merged
+     * with its buddy, the bucket that differs in the last bit of its depth, if they fit in half a bucket.
+     * Each merge loads one more bucket.
+     *
+     * @return True if the key was removed. False if it was not listed.
+     */
+    private boolean unlist(final K key)
+    {
+        final Node<K, STOREKEY> directory = getDirectory();
+        final List<STOREKEY> children = directory.getChildren();
+        int slot = slot(directory, key);
+        STOREKEY bucketKey = children.get(slot);
+        Node<K, STOREKEY> bucket = nodeStore.loadNode(bucketKey);
+
+        if ( ! bucket.getData().remove(key) ) {
+            return false;
+        }
+
+        // Removed once the directory no longer lists them.
+        final List<STOREKEY> merged = new ArrayList<>();
+
+        for (
+            int depth = localDepth(directory, slot);
+            depth > 0 && bucket.getData().size() <= bucketSize / 4;
+            depth--
+        ) {
+            final int buddySlot = slot ^ (1 << (depth - 1));
+            if ( localDepth(directory, buddySlot) != depth ) {
+                break;
+            }
+
+            final STOREKEY buddyKey = children.get(buddySlot);
+            final Node<K, STOREKEY> buddy = nodeStore.loadNode(buddyKey);
+            if ( bucket.getData().size() + buddy.getData().size() > bucketSize / 2 ) {
+                break;
+            }
+
+            // The bucket keeps its key and takes the buddy's keys and directory entries.
+            bucket.getData().addAll(buddy.getData());
+            for ( int i = 0; i < children.size(); i++ ) {
+                if ( children.get(i).equals(buddyKey) ) {
+                    children.set(i, bucketKey);
+                }
+            }
+            merged.add(buddyKey);
+
+            // Halve the directory while its halves are the same.
+            while ( children.size() > 1 &&
+                    children.subList(0, children.size() / 2).equals(
+                        children.subList(children.size() / 2, children.size())) )
+            {
+                children.subList(children.size() / 2, children.size()).clear();
+            }
+
+            slot = slot(directory, key);
+        }
+
+        nodeStore.store(bucketKey, bucket);
+
+        if ( ! merged.isEmpty() ) {
+            storeDirectory(directory);
+            for ( final STOREKEY k : merged ) {
+                nodeStore.removeNode(k);
+            }
+        }
+
+        return true;
+    }
+
+    private void storeDirectory(final Node<K, STOREKEY> directory)
+    {
+        directory.setChildCap(directory.getChildren().size());
+        nodeStore.store(rootKey, directory);
+    }
+
+    /**
+     * @return The distinct buckets, in directory order.
+     */
+    private Set<STOREKEY> bucketKeys()
+    {
+        return new LinkedHashSet<>(getDirectory().getChildren());
+    }
+
+    /**
+     * Remove all data and buckets and store a directory of one empty bucket.
+     */
+    @Override
+    public void clear()
+    {
+        traceBegin("ExtendibleHashMap.clear");
+        try {
+            for ( final STOREKEY bucketKey : bucketKeys() ) {
+                for ( final K k : nodeStore.loadNode(bucketKey).getData() ) {
+                    nodeStore.removeData(nodeStore.convert(k));
+                }
+                nodeStore.removeNode(bucketKey);
+            }
+
+            nodeStore.removeNode(rootKey);
+            getDirectory();
+        } finally {
+            traceEnd();
+        }
+    }
+
+    /**
+     * Call {@link #clear()} and remove the directory.
+     */
+    public void destroy()
+    {
+        clear();
+        for ( final STOREKEY bucketKey : bucketKeys() ) {
+            nodeStore.removeNode(bucketKey);
+        }
+        nodeStore.removeNode(rootKey);
+    }
+
+    /**
+     * Count the keys by loading every bucket.
+     */
+    @Override
+    public int size()
+    {
+        traceBegin("ExtendibleHashMap.size");
+        try {
+            int size = 0;
+            for ( final STOREKEY bucketKey : bucketKeys() ) {
+                size += nodeStore.loadNode(bucketKey).getData().size();
+            }
+            return size;
+        } finally {
+            traceEnd();
+        }
+    }
+
+    /**
+     * @return True if the directory lists one empty bucket.
+     */
+    @Override
+    public boolean isEmpty()
+    {
+        final Node<K, STOREKEY> directory = getDirectory();
+        return directory.getChildren().size() == 1 &&
+            nodeStore.loadNode(directory.getChildren().get(0)).getData().isEmpty();
+    }
+
+    /**
+     * @return The keys, loading one bucket at a time as they are iterated. Not in any order.
+     */
+    public Iterator<K> getIterator()
+    {
+        final Iterator<STOREKEY> buckets = bucketKeys().iterator();
+
+        return new Iterator<K>() {
+            private Iterator<K> keys = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext()
+            {
+                while ( ! keys.hasNext() && buckets.hasNext() ) {
+                    keys = nodeStore.loadNode(buckets.next()).getData().iterator();
+                }
+                return keys.hasNext();
+            }
+
+            @Override
+            public K next()
+            {
+                if ( ! hasNext() ) {
+                    throw new NoSuchElementException();
+                }
+                return keys.next();
+            }
+        };
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<K> keySet()
+    {
+        return new AbstractSet<K>() {
+            @Override
+            public Iterator<K> iterator()
+            {
+                return getIterator();
+            }
+
+            @Override
+            public boolean contains(final Object o)
+            {
+                return containsKey(o);
+            }
+
+            @Override
+            public int size()
+            {
+                return ExtendibleHashMap.this.size();
+            }
+        };
+    }
+
+    /**
+     * The entries, whose values are loaded when first read.
+     */
+    @Override
+    public Set<Map.Entry<K, V>> entrySet()
+    {
+        return new AbstractSet<Map.Entry<K, V>>() {
+            @Override
+            public Iterator<Map.Entry<K, V>> iterator()
+            {
+                final Iterator<K> keys = getIterator();
+
+                return new Iterator<Map.Entry<K, V>>() {
+                    @Override
+                    public boolean hasNext()
+                    {
+                        return keys.hasNext();
+                    }
+
+                    @Override
+                    public Map.Entry<K, V> next()
+                    {
+                        final K key = keys.next();
+
+                        return new AbstractMap.SimpleEntry<K, V>(key, null) {
+                            private static final long serialVersionUID = 1L;
+
+                            private boolean loaded;
+
+                            @Override
+                            public V getValue()
+                            {
+                                if ( ! loaded ) {
+                                    super.setValue(nodeStore.loadData(nodeStore.convert(key)));
+                                    loaded = true;
+                                }
+                                return super.getValue();
+                            }
+
+                            @Override
+                            public V setValue(final V value)
+                            {
+                                loaded = true;
+                                super.setValue(value);
+                                return ExtendibleHashMap.this.put(key, value);
+                            }
+
+                            @Override
+                            public boolean equals(final Object o)
+                            {
+                                getValue();
+                                return super.equals(o);
+                            }
+
+                            @Override
+                            public int hashCode()
+                            {
+                                getValue();
+                                return super.hashCode();
+                            }
+                        };
+                    }
+                };
+            }
+
+            @Override
+            public int size()
+            {
+                return ExtendibleHashMap.this.size();
+            }
+        };
+    }
+
+    /**
+     * Two maps are equal if they are stored at the same root key.
+     */
+    @Override
+    public boolean equals(final Object o)
+    {
+        if ( ! ( o instanceof ExtendibleHashMap ) ) {
+            return false;
+        }
+
+        return rootKey.equals(((ExtendibleHashMap<?, ?, ?>) o).rootKey);
+    }
+
+    /**
+     * @return The hash code of the root key.
+     */
+    @Override
+    public int hashCode()
+    {
+        return rootKey.hashCode();
+    }
+}
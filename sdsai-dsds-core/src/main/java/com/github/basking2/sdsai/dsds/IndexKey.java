@@ -0,0 +1,120 @@
+package com.github.basking2.sdsai.dsds;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * A key of a secondary index kept by {@link IndexedMap}. It orders by the indexed value
+ * and then by the primary key, so every entry is unique and all entries with a value are adjacent.
+ *
+ * Bounds sort before or after every entry with their value and are used to select ranges.
+ *
+ * @param <K> The primary key type.
+ */
+public final class IndexKey<K> implements Comparable<IndexKey<K>>, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Object value;
+
+    private final K key;
+
+    /**
+     * -1 for a lower bound, 1 for an upper bound and 0 for an entry.
+     */
+    private final int bound;
+
+    private IndexKey(final Object value, final K key, final int bound) {
+        this.value = value;
+        this.key = key;
+        this.bound = bound;
+    }
+
+    /**
+     * @param value The indexed value. This must be {@link Comparable} with the other values of the index.
+     * @param key The primary key. This must be {@link Comparable} with the other primary keys.
+     */
+    public IndexKey(final Object value, final K key) {
+        this(value, key, 0);
+    }
+
+    /**
+     * @param value The indexed value.
+     * @param <K> The primary key type.
+     * @return A key before every entry with {@code value}.
+     */
+    public static <K> IndexKey<K> lowerBound(final Object value) {
+        return new IndexKey<>(value, null, -1);
+    }
+
+    /**
+     * @param value The indexed value.
+     * @param <K> The primary key type.
+     * @return A key after every entry with {@code value}.
+     */
+    public static <K> IndexKey<K> upperBound(final Object value) {
+        return new IndexKey<>(value, null, 1);
+    }
+
+    /**
+     * @return The indexed value.
+     */
+    public Object getValue() {
+        return value;
+    }
+
+    /**
+     * @return The primary key, or null for a bound.
+     */
+    public K getKey() {
+        return key;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public int compareTo(final IndexKey<K> that) {
+        final int c = ((Comparable<Object>) value).compareTo(that.value);
+        if (c != 0) {
+            return c;
+        }
+
+        if (bound != that.bound) {
+            return Integer.compare(bound, that.bound);
+        }
+
+        return bound != 0 ? 0 : ((Comparable<K>) key).compareTo(that.key);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(final Object o) {
+        if (!(o instanceof IndexKey)) {
+            return false;
+        }
+
+        final IndexKey<?> that = (IndexKey<?>) o;
+        return bound == that.bound && value.equals(that.value) && Objects.equals(key, that.key);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        return Objects.hash(value, key, bound);
+    }
+
+    /**
+     * Stores that convert keys with {@link Object#toString()}, such as
+     * {@link com.github.basking2.sdsai.dsds.mem.ConcurrentMemoryNodeStore}, name index roots with this.
+     */
+    @Override
+    public String toString() {
+        return "IndexKey(" + value + ", " + key + ")";
+    }
+}
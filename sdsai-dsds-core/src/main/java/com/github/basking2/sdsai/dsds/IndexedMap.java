@@ -0,0 +1,383 @@
+package com.github.basking2.sdsai.dsds;
+
+import com.github.basking2.sdsai.dsds.node.BatchNodeStore;
+import com.github.basking2.sdsai.dsds.node.NodeStore;
+import com.github.basking2.sdsai.dsds.node.tx.TransactionalNodeStore;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * <p>A primary {@link BTree} and any number of secondary indexes that are kept consistent with it.</p>
+ *
+ * <p>An index is a {@link BTree} of {@link IndexKey}s built with {@link BTree#putKey(Object)}.
+ * Each key pairs a value extracted from a primary value with the primary key.
+ * The primary write and every index update of a {@link #put} or {@link #remove} are made through
+ * one {@link TransactionalNodeStore} and committed together. With a {@link BatchNodeStore}
+ * that is one batch. If the store given is a {@link TransactionalNodeStore}, writes join it
+ * and the caller commits.</p>
+ *
+ * <p>The store must be able to hold nodes whose keys are {@link IndexKey}s. This holds for
+ * {@link com.github.basking2.sdsai.dsds.mem.ConcurrentMemoryNodeStore} and for the stores
+ * that serialize keys if the values and keys are {@link java.io.Serializable}.</p>
+ *
+ * <p>Primary keys and indexed values must be {@link Comparable}. Null values are not indexed.</p>
+ *
+ * @param <K> The primary key type.
+ * @param <STOREKEY> The data store key type.
+ * @param <V> The value type.
+ */
+public class IndexedMap<K, STOREKEY, V> {
+
+    /**
+     * How many primary values {@link #scan} loads at a time by default.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 100;
+
+    private final K rootKey;
+
+    private final NodeStore<K, STOREKEY, V> nodeStore;
+
+    private final int minData;
+
+    /**
+     * Reads the primary tree.
+     */
+    private final BTree<K, STOREKEY, V> primary;
+
+    private final Map<String, Index> indexes = new LinkedHashMap<>();
+
+    /**
+     * A secondary index.
+     */
+    private final class Index {
+        private final Function<? super V, ?> extractor;
+        private final IndexKey<K> rootKey;
+
+        /**
+         * Reads the index.
+         */
+        private final BTree<IndexKey<K>, STOREKEY, V> tree;
+
+        private Index(final String name, final Function<? super V, ?> extractor) {
+            this.extractor = extractor;
+            this.rootKey = new IndexKey<>(name, IndexedMap.this.rootKey);
+            this.tree = indexTree(nodeStore, rootKey);
+        }
+    }
+
+    /**
+     * @param rootKey The root key of the primary tree. Index roots are derived from it.
+     * @param nodeStore The store.
+     * @param minData The minimum data of the nodes of every tree. See {@link BTree#BTree(Object, NodeStore, int)}.
+     */
+    public IndexedMap(final K rootKey, final NodeStore<K, STOREKEY, V> nodeStore, final int minData) {
+        this.rootKey = rootKey;
+        this.nodeStore = nodeStore;
+        this.minData = minData;
+        this.primary = new BTree<>(rootKey, nodeStore, minData);
+    }
+
+    /**
+     * Add an index. An index added to a map that already holds values is not filled;
+     * call {@link #reindex(String)} to fill it.
+     *
+     * @param name The name of the index. Index roots are named after it and the primary root key.
+     * @param extractor Gets the indexed value from a primary value. A null result is not indexed.
+     * @throws IllegalArgumentException If there is already an index with this name.
+     */
+    public void addIndex(final String name, final Function<? super V, ?> extractor) {
+        if (indexes.containsKey(name)) {
+            throw new IllegalArgumentException("Index " + name + " exists.");
+        }
+
+        indexes.put(name, new Index(name, extractor));
+    }
+
+    /**
+     * Make an index match every primary value, in one transaction.
+     * Entries that are missing are added and entries that are wrong are removed,
+     * so a consistent index is not written.
+     *
+     * @param name The name of the index.
+     */
+    public void reindex(final String name) {
+        final Index index = index(name);
+
+        final Set<IndexKey<K>> expected = new HashSet<>();
+        for (final Map.Entry<K, V> e : primary.entrySet()) {
+            final Object value = index.extractor.apply(e.getValue());
+            if (value != null) {
+                expected.add(new IndexKey<>(value, e.getKey()));
+            }
+        }
+
+        final List<IndexKey<K>> stale = new ArrayList<>();
+        for (final Iterator<IndexKey<K>> i = index.tree.getIterator(); i.hasNext(); ) {
+            final IndexKey<K> k = i.next();
+            if (!expected.remove(k)) {
+                stale.add(k);
+            }
+        }
+
+        final TransactionalNodeStore<K, STOREKEY, V> tx = begin();
+        final BTree<IndexKey<K>, STOREKEY, V> tree = indexTree(tx, index.rootKey);
+
+        for (final IndexKey<K> k : stale) {
+            tree.removeKey(k);
+        }
+        for (final IndexKey<K> k : expected) {
+            tree.putKey(k);
+        }
+
+        commit(tx);
+    }
+
+    /**
+     * @param key The primary key.
+     * @return The value, or null.
+     */
+    public V get(final K key) {
+        return primary.get(key);
+    }
+
+    /**
+     * @param key The primary key.
+     * @return True if the key has a value.
+     */
+    public boolean containsKey(final K key) {
+        return primary.containsKey(key);
+    }
+
+    /**
+     * @param keys Primary keys.
+     * @return The values found, as {@link BTree#getAll(java.util.Collection)} returns them.
+     */
+    public Map<K, V> getAll(final Collection<? extends K> keys) {
+        return primary.getAll(keys);
+    }
+
+    /**
+     * Store a value and update every index in one transaction.
+     *
+     * @param key The primary key.
+     * @param value The value.
+     * @return The previous value, or null.
+     */
+    public V put(final K key, final V value) {
+        final TransactionalNodeStore<K, STOREKEY, V> tx = begin();
+
+        final V previous = new BTree<>(rootKey, tx, minData).put(key, value);
+        for (final Index index : indexes.values()) {
+            final Object oldValue = previous == null ? null : index.extractor.apply(previous);
+            final Object newValue = index.extractor.apply(value);
+
+            if (!Objects.equals(oldValue, newValue)) {
+                final BTree<IndexKey<K>, STOREKEY, V> tree = indexTree(tx, index.rootKey);
+                if (oldValue != null) {
+                    tree.removeKey(new IndexKey<>(oldValue, key));
+                }
+                if (newValue != null) {
+                    tree.putKey(new IndexKey<>(newValue, key));
+                }
+            }
+        }
+
+        commit(tx);
+
+        return previous;
+    }
+
+    /**
+     * Remove a value and its index entries in one transaction.
+     *
+     * @param key The primary key.
+     * @return The removed value, or null.
+     */
+    public V remove(final K key) {
+        final TransactionalNodeStore<K, STOREKEY, V> tx = begin();
+
+        final V previous = new BTree<>(rootKey, tx, minData).remove(key);
+        if (previous != null) {
+            for (final Index index : indexes.values()) {
+                final Object oldValue = index.extractor.apply(previous);
+                if (oldValue != null) {
+                    indexTree(tx, index.rootKey).removeKey(new IndexKey<>(oldValue, key));
+                }
+            }
+        }
+
+        commit(tx);
+
+        return previous;
+    }
+
+    /**
+     * The primary keys whose indexed value equals {@code value}, read from the index as iterated.
+     *
+     * @param name The index name.
+     * @param value The indexed value.
+     * @return The primary keys in order.
+     */
+    public Iterable<K> lookup(final String name, final Object value) {
+        return keys(index(name).tree, IndexKey.lowerBound(value), IndexKey.upperBound(value));
+    }
+
+    /**
+     * The primary keys whose indexed value is in {@code [lower, upper)}, read from the index as iterated.
+     *
+     * @param name The index name.
+     * @param lower The lowest value, inclusive.
+     * @param upper The highest value, exclusive.
+     * @return The primary keys in order of indexed value and then primary key.
+     */
+    public Iterable<K> range(final String name, final Object lower, final Object upper) {
+        return keys(index(name).tree, IndexKey.lowerBound(lower), IndexKey.lowerBound(upper));
+    }
+
+    /**
+     * Scan {@link #range(String, Object, Object)} with {@link #DEFAULT_BATCH_SIZE}.
+     *
+     * @param name The index name.
+     * @param lower The lowest value, inclusive.
+     * @param upper The highest value, exclusive.
+     * @return The primary entries in index order.
+     */
+    public Iterator<Map.Entry<K, V>> scan(final String name, final Object lower, final Object upper) {
+        return scan(name, lower, upper, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * The primary entries whose indexed value is in {@code [lower, upper)}.
+     * Primary values are loaded {@code batchSize} at a time with {@link BTree#getAll(java.util.Collection)},
+     * which is one request per batch for a {@link BatchNodeStore}.
+     *
+     * @param name The index name.
+     * @param lower The lowest value, inclusive.
+     * @param upper The highest value, exclusive.
+     * @param batchSize How many values to load at once.
+     * @return The primary entries in index order. Entries whose value is gone are skipped.
+     */
+    public Iterator<Map.Entry<K, V>> scan(final String name, final Object lower, final Object upper, final int batchSize) {
+        final Iterator<K> keys = range(name, lower, upper).iterator();
+
+        return new Iterator<Map.Entry<K, V>>() {
+            private Iterator<Map.Entry<K, V>> batch = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!batch.hasNext() && keys.hasNext()) {
+                    final List<K> next = new ArrayList<>(batchSize);
+                    while (next.size() < batchSize && keys.hasNext()) {
+                        next.add(keys.next());
+                    }
+                    batch = primary.getAll(next).entrySet().iterator();
+                }
+
+                return batch.hasNext();
+            }
+
+            @Override
+            public Map.Entry<K, V> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return batch.next();
+            }
+        };
+    }
+
+    private Index index(final String name) {
+        final Index index = indexes.get(name);
+        if (index == null) {
+            throw new IllegalArgumentException("No index " + name + ".");
+        }
+        return index;
+    }
+
+    /**
+     * The primary keys of the index entries between two bounds.
+     * Bounds are never in the tree, so this walks {@link BTreeLocation}s from where the lower bound
+     * would be and compares keys, rather than using {@link BTree#select(Object, Object)}.
+     *
+     * @param tree The index.
+     * @param lower The lower bound, inclusive.
+     * @param upper The upper bound, exclusive.
+     * @return The primary keys, read as they are iterated.
+     */
+    private Iterable<K> keys(final BTree<IndexKey<K>, STOREKEY, V> tree, final IndexKey<K> lower, final IndexKey<K> upper) {
+        return () -> new Iterator<K>() {
+            private BTreeLocation<IndexKey<K>, STOREKEY> location = start();
+
+            private BTreeLocation<IndexKey<K>, STOREKEY> start() {
+                final BTreeLocation<IndexKey<K>, STOREKEY> l = tree.getLocation(lower);
+                final int size = l.getNode().getData().size();
+
+                if (size == 0) {
+                    return null;
+                }
+
+                // After the last key of a leaf. The next key is in a parent.
+                if (l.index >= size) {
+                    return l.go(size - 1).next();
+                }
+
+                return l;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return location != null && location.getKey().compareTo(upper) < 0;
+            }
+
+            @Override
+            public K next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+
+                final K key = location.getKey().getKey();
+                location = location.next();
+                return key;
+            }
+        };
+    }
+
+    /**
+     * @param store The store, which must also hold nodes keyed by {@link IndexKey}s.
+     * @param rootKey The index root.
+     * @return A tree of the index.
+     */
+    @SuppressWarnings("unchecked")
+    private BTree<IndexKey<K>, STOREKEY, V> indexTree(final NodeStore<K, STOREKEY, V> store, final IndexKey<K> rootKey) {
+        return new BTree<>(rootKey, (NodeStore<IndexKey<K>, STOREKEY, V>) (NodeStore<?, STOREKEY, V>) store, minData);
+    }
+
+    @SuppressWarnings("unchecked")
+    private TransactionalNodeStore<K, STOREKEY, V> begin() {
+        if (nodeStore instanceof TransactionalNodeStore) {
+            return (TransactionalNodeStore<K, STOREKEY, V>) nodeStore;
+        }
+
+        return new TransactionalNodeStore<>(nodeStore);
+    }
+
+    /**
+     * Commit a transaction made by {@link #begin()}. The caller commits its own transaction.
+     */
+    private void commit(final TransactionalNodeStore<K, STOREKEY, V> tx) {
+        if (tx != nodeStore) {
+            tx.commit();
+        }
+    }
+}
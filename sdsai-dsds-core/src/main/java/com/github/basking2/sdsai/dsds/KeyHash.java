@@ -0,0 +1,41 @@
+package com.github.basking2.sdsai.dsds;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Hashes keys by {@link Object#toString()}, as most stores {@link com.github.basking2.sdsai.dsds.node.NodeStore#convert(Object) convert}
+ * them, so a hash stored by one process is found by another. {@link Object#hashCode()} makes no such promise.
+ */
+final class KeyHash {
+
+    private KeyHash() {
+    }
+
+    /**
+     * @param key A key.
+     * @return The 64 bit FNV-1a of the UTF-8 of {@link Object#toString()}, {@link #mix(long) mixed}.
+     */
+    static long hash(final Object key) {
+        long h = 0xcbf29ce484222325L;
+        for (final byte b : key.toString().getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    /**
+     * The MurmurHash3 64 bit finalizer.
+     *
+     * @param h A value.
+     * @return The value with every bit depending on every other bit.
+     */
+    static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
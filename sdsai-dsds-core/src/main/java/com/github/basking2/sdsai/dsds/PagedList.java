@@ -21,15 +21,21 @@
  */
 package com.github.basking2.sdsai.dsds;
 
+import com.github.basking2.sdsai.dsds.node.BatchNodeStore;
 import com.github.basking2.sdsai.dsds.node.Node;
 import com.github.basking2.sdsai.dsds.node.NodeFunction;
 import com.github.basking2.sdsai.dsds.node.NodeStore;
+import com.github.basking2.sdsai.dsds.node.NodeStoreBatch;
 import com.github.basking2.sdsai.dsds.node.NodeStoreNodeNotFoundException;
+import com.github.basking2.sdsai.dsds.node.metrics.OperationTracer;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.ListIterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import static java.util.Arrays.fill;
 
@@ -52,6 +58,11 @@ implements List<V>
     /**
      */
     private int pageSize;
+
+    /**
+     * Traces each public operation, or null if tracing is off.
+     */
+    private OperationTracer tracer;
     
     public PagedList(final STOREKEY headKey,
                      final NodeStore<STOREKEY, STOREKEY, V> nodeStore,
@@ -71,6 +82,31 @@ implements List<V>
         this(headKey, nodeStore, 100);
     }
     
+    /**
+     * Trace the public operations of this list. The same tracer should be given to the
+     * {@link com.github.basking2.sdsai.dsds.node.metrics.InstrumentedNodeStore} that
+     * this list uses, so the {@link NodeStore} calls of an operation are attributed to it.
+     * The depth of a trace is the number of pages walked past the head.
+     *
+     * @param tracer The tracer, or null to stop tracing.
+     */
+    public void setTracer(final OperationTracer tracer)
+    {
+        this.tracer = tracer;
+    }
+
+    private void traceBegin(final String operation)
+    {
+        if ( tracer != null )
+            tracer.begin(operation);
+    }
+
+    private void traceEnd()
+    {
+        if ( tracer != null )
+            tracer.end();
+    }
+
     private Node<STOREKEY, STOREKEY> getHead()
     {
         Node<STOREKEY, STOREKEY> root;
@@ -224,6 +260,9 @@ implements List<V>
     {
         final Node<STOREKEY, STOREKEY> node = newNode(prevKey, nextKey);
         final STOREKEY key = nodeStore.generateKey(node, null);
+
+        if ( tracer != null )
+            tracer.split();
         
         if ( prevKey.equals(nextKey) )
         {
@@ -262,6 +301,9 @@ implements List<V>
         final Node<STOREKEY, STOREKEY> node = newNode(prevKey, nextKey);
 
         final STOREKEY key = nodeStore.generateKey(node, null);
+
+        if ( tracer != null )
+            tracer.split();
         
         final List<STOREKEY> l = 
             prevNode.getData().subList(pageSize/2, prevNode.getData().size());
@@ -321,6 +363,9 @@ implements List<V>
         // This also catches lists of page-size=1.
         if ( prevLoc.getKey().equals(loc.getKey()) )
             return;
+
+        if ( tracer != null )
+            tracer.merge();
         
         if ( loc.size() > 0 )
             prevLoc.getNode().getData().addAll(loc.getNode().getData());
@@ -372,11 +417,15 @@ implements List<V>
             new PagedListLocation<STOREKEY>(nodeStore, headKey);
         
         // NOTE: > not >=.
+        int pages = 0;
         while (index > ctx.size())
         {
             index -= ctx.size();
             ctx = ctx.next();
 
+            if ( tracer != null )
+                tracer.depth(++pages);
+
             if ( headKey.equals(ctx.getKey()) )
             {
                 // NOTE: Last index, at this point, will be the size of the list.
@@ -402,11 +451,15 @@ implements List<V>
             new PagedListLocation<STOREKEY>(nodeStore, headKey);
         
         // NOTE: >= not >.
+        int pages = 0;
         while (index >= ctx.size())
         {
             index -= ctx.size();
             ctx = ctx.next();
 
+            if ( tracer != null )
+                tracer.depth(++pages);
+
             if ( headKey.equals(ctx.getKey()) )
             {
                 // NOTE: Last index, at this point, will be the size of the list.
@@ -424,11 +477,19 @@ implements List<V>
     @Override
     public boolean add(final V value)
     {
-        PagedListLocation<STOREKEY> ctx = findLastInsertionPoint();
-        
-        add(ctx, value);
-        
-        return true;
+        traceBegin("PagedList.add");
+        try
+        {
+            PagedListLocation<STOREKEY> ctx = findLastInsertionPoint();
+
+            add(ctx, value);
+
+            return true;
+        }
+        finally
+        {
+            traceEnd();
+        }
     }
     
     /**
@@ -437,9 +498,17 @@ implements List<V>
     @Override
     public void add(final int index, final V value)
     {
-        PagedListLocation<STOREKEY> ctx = findInsertionPoint(index);
-        
-        add(ctx, value);
+        traceBegin("PagedList.add");
+        try
+        {
+            PagedListLocation<STOREKEY> ctx = findInsertionPoint(index);
+
+            add(ctx, value);
+        }
+        finally
+        {
+            traceEnd();
+        }
     }
     
     /**
@@ -448,10 +517,18 @@ implements List<V>
     @Override
     public boolean addAll(final Collection<? extends V> c)
     {
-        if ( c.isEmpty() )
-            return false;
-    
-        return addAll(findLastInsertionPoint(), c);
+        traceBegin("PagedList.addAll");
+        try
+        {
+            if ( c.isEmpty() )
+                return false;
+
+            return addAll(findLastInsertionPoint(), c);
+        }
+        finally
+        {
+            traceEnd();
+        }
     }
     
     /**
@@ -460,10 +537,18 @@ implements List<V>
     @Override
     public boolean addAll(final int index, final Collection<? extends V> c)
     {
-        if ( c.isEmpty() )
-            return false;
-            
-        return addAll(findInsertionPoint(index), c);
+        traceBegin("PagedList.addAll");
+        try
+        {
+            if ( c.isEmpty() )
+                return false;
+
+            return addAll(findInsertionPoint(index), c);
+        }
+        finally
+        {
+            traceEnd();
+        }
     }
     
     /**
@@ -589,30 +674,38 @@ implements List<V>
     @Override
     public void clear()
     {
-        Node<STOREKEY, STOREKEY> head = getHead();
-        STOREKEY nextKey = nextKey(head);
-        while ( ! headKey.equals(nextKey) )
+        traceBegin("PagedList.clear");
+        try
         {
-            Node<STOREKEY, STOREKEY> node = nodeStore.loadNode(nextKey);
+            Node<STOREKEY, STOREKEY> head = getHead();
+            STOREKEY nextKey = nextKey(head);
+            while ( ! headKey.equals(nextKey) )
+            {
+                Node<STOREKEY, STOREKEY> node = nodeStore.loadNode(nextKey);
 
-            for ( final STOREKEY k : node.getData() )
-                nodeStore.removeData(k);
-                
-            nodeStore.removeNode(nextKey);
-            
-            nextKey = nextKey(node);
-        }
-        
-        // When here, we've walked around the loop and are back at the head.
+                for ( final STOREKEY k : node.getData() )
+                    nodeStore.removeData(k);
 
-        // Clear all data.
-        for ( final STOREKEY k : head.getData() )
-            nodeStore.removeData(k);
+                nodeStore.removeNode(nextKey);
 
-        head.getData().clear();
-        head.getChildren().set(0, headKey);
-        head.getAncestors().set(0, headKey);
-        nodeStore.store(headKey, head);
+                nextKey = nextKey(node);
+            }
+
+            // When here, we've walked around the loop and are back at the head.
+
+            // Clear all data.
+            for ( final STOREKEY k : head.getData() )
+                nodeStore.removeData(k);
+
+            head.getData().clear();
+            head.getChildren().set(0, headKey);
+            head.getAncestors().set(0, headKey);
+            nodeStore.store(headKey, head);
+        }
+        finally
+        {
+            traceEnd();
+        }
     }
     
     /**
@@ -621,9 +714,113 @@ implements List<V>
      */
     public void destroy()
     {
-        clear();
-        
-        nodeStore.removeNode(headKey);
+        traceBegin("PagedList.destroy");
+        try
+        {
+            clear();
+
+            nodeStore.removeNode(headKey);
+        }
+        finally
+        {
+            traceEnd();
+        }
+    }
+
+    /**
+     * Like {@link #clear()} but the data and node of each page are removed
+     * in parallel on {@code pool} while the ring is walked. If the
+     * {@link NodeStore} is a {@link BatchNodeStore} each page is removed with
+     * one {@link NodeStoreBatch}.
+     *
+     * @param pool The pool to remove pages on.
+     */
+    public void clear(final ForkJoinPool pool)
+    {
+        traceBegin("PagedList.clear");
+        try
+        {
+            final Node<STOREKEY, STOREKEY> head = getHead();
+            final List<ForkJoinTask<?>> removals = new ArrayList<ForkJoinTask<?>>();
+
+            STOREKEY nextKey = nextKey(head);
+            while ( ! headKey.equals(nextKey) )
+            {
+                final STOREKEY pageKey = nextKey;
+                final Node<STOREKEY, STOREKEY> page = nodeStore.loadNode(pageKey);
+
+                removals.add(pool.submit(new Runnable() {
+                    public void run() {
+                        removePage(pageKey, page.getData(), true);
+                    }
+                }));
+
+                nextKey = nextKey(page);
+            }
+
+            removePage(headKey, head.getData(), false);
+
+            for ( final ForkJoinTask<?> removal : removals )
+                removal.join();
+
+            head.getData().clear();
+            head.getChildren().set(0, headKey);
+            head.getAncestors().set(0, headKey);
+            nodeStore.store(headKey, head);
+        }
+        finally
+        {
+            traceEnd();
+        }
+    }
+
+    /**
+     * Clear this list with {@link #clear(ForkJoinPool)} and then delete the
+     * empty head node.
+     *
+     * @param pool The pool to remove pages on.
+     */
+    public void destroy(final ForkJoinPool pool)
+    {
+        traceBegin("PagedList.destroy");
+        try
+        {
+            clear(pool);
+
+            nodeStore.removeNode(headKey);
+        }
+        finally
+        {
+            traceEnd();
+        }
+    }
+
+    private void removePage(final STOREKEY pageKey,
+                            final List<STOREKEY> data,
+                            final boolean removeNode)
+    {
+        if ( nodeStore instanceof BatchNodeStore )
+        {
+            final NodeStoreBatch<STOREKEY, STOREKEY, V> batch =
+                new NodeStoreBatch<STOREKEY, STOREKEY, V>();
+
+            for ( final STOREKEY k : data )
+                batch.removeData(k);
+
+            if ( removeNode )
+                batch.removeNode(pageKey);
+
+            if ( ! batch.isEmpty() )
+                ((BatchNodeStore<STOREKEY, STOREKEY, V>) nodeStore).execute(batch);
+        }
+        else
+        {
+            for ( final STOREKEY k : data )
+                nodeStore.removeData(k);
+
+            if ( removeNode )
+                nodeStore.removeNode(pageKey);
+        }
     }
     
     /**
@@ -705,23 +902,35 @@ implements List<V>
     @Override
     public V get(int index)
     {
-        final int originalSize = index;
-        final Iterator<Node<STOREKEY, STOREKEY>> pages = pageIterator();
-        
-        while (pages.hasNext())
+        traceBegin("PagedList.get");
+        try
         {
-            final Node<STOREKEY, STOREKEY> node = pages.next();
-            
-            if ( index < node.getData().size() )
+            final int originalSize = index;
+            final Iterator<Node<STOREKEY, STOREKEY>> pageIterator = pageIterator();
+            int pages = 0;
+
+            while (pageIterator.hasNext())
             {
-                return nodeStore.loadData(node.getData().get(index));
+                final Node<STOREKEY, STOREKEY> node = pageIterator.next();
+
+                if ( index < node.getData().size() )
+                {
+                    return nodeStore.loadData(node.getData().get(index));
+                }
+
+                index -= node.getData().size();
+
+                if ( tracer != null )
+                    tracer.depth(++pages);
             }
-            
-            index -= node.getData().size();
+
+            throw new IndexOutOfBoundsException(
+                "Index "+originalSize+" in list of size "+size());
+        }
+        finally
+        {
+            traceEnd();
         }
-        
-        throw new IndexOutOfBoundsException(
-            "Index "+originalSize+" in list of size "+size());
     }
     
     /**
@@ -942,10 +1151,18 @@ implements List<V>
     @Override
     public V remove(final int index)
     {
-        final PagedListLocation<STOREKEY> l = seek(index);
-        final V value = removeData(l);
-        removeFrom(l);
-        return value;
+        traceBegin("PagedList.remove");
+        try
+        {
+            final PagedListLocation<STOREKEY> l = seek(index);
+            final V value = removeData(l);
+            removeFrom(l);
+            return value;
+        }
+        finally
+        {
+            traceEnd();
+        }
     }
     
     /**
@@ -954,15 +1171,23 @@ implements List<V>
     @Override
     public boolean remove(final Object o)
     {
-        // FIXME - could be faster without the index call and then remove.
-        final int i = indexOf(o);
-        
-        if ( i < 0 )
-            return false;
-        
-        remove(i);
-        
-        return true;
+        traceBegin("PagedList.remove");
+        try
+        {
+            // FIXME - could be faster without the index call and then remove.
+            final int i = indexOf(o);
+
+            if ( i < 0 )
+                return false;
+
+            remove(i);
+
+            return true;
+        }
+        finally
+        {
+            traceEnd();
+        }
     }
     
     /**
@@ -1025,15 +1250,23 @@ implements List<V>
     @Override
     public V set(final int index, final V value)
     {
-        final PagedListLocation<STOREKEY> ctx = seek(index);
-        
-        final STOREKEY k = ctx.getNode().getData().get(ctx.getIndex());
+        traceBegin("PagedList.set");
+        try
+        {
+            final PagedListLocation<STOREKEY> ctx = seek(index);
 
-        final V v = nodeStore.loadData(k);
-        
-        nodeStore.store(k, value);
-        
-        return v;
+            final STOREKEY k = ctx.getNode().getData().get(ctx.getIndex());
+
+            final V v = nodeStore.loadData(k);
+
+            nodeStore.store(k, value);
+
+            return v;
+        }
+        finally
+        {
+            traceEnd();
+        }
     }
     
     /**
@@ -0,0 +1,463 @@
+package com.github.basking2.sdsai.dsds;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+
+/**
+ * A map that partitions its keys across independent {@link BTree}s, each with its own root.
+ *
+ * Writes to keys in different shards do not touch the same nodes, so they may be made
+ * concurrently if each shard is guarded separately and the shards may be kept in different
+ * {@link com.github.basking2.sdsai.dsds.node.NodeStore}s. Like {@link BTree}, this class does
+ * no locking of its own.
+ *
+ * Iteration merges the sorted keys of every shard, so keys are visited in order no matter
+ * how they are partitioned. {@link #size()}, {@link #clear()} and {@link #destroy()} visit
+ * the shards in parallel.
+ *
+ * @param <K> The user key type. Keys must be {@link Comparable}, as they are for {@link BTree}.
+ * @param <V> The user value type.
+ */
+public class ShardedBTreeMap<K, V> extends AbstractMap<K, V> implements BTreeMap<K, V>
+{
+    /**
+     * Chooses the shard of a key.
+     *
+     * @param <K> The key type.
+     */
+    @FunctionalInterface
+    public interface Partitioner<K>
+    {
+        /**
+         * @param key The key.
+         * @param shards The number of shards.
+         * @return The shard of the key, from 0 up to but not including {@code shards}.
+         */
+        int shard(K key, int shards);
+
+        /**
+         * @param <K> The key type.
+         * @return A partitioner that spreads keys by their {@link Object#hashCode()}.
+         */
+        static <K> Partitioner<K> hash()
+        {
+            return (key, shards) -> {
+                final int h = key.hashCode();
+                return Math.floorMod(h ^ (h >>> 16), shards);
+            };
+        }
+
+        /**
+         * A partitioner that gives each shard a range of keys. Keys less than
+         * {@code splits.get(0)} go to shard 0, keys from {@code splits.get(i-1)} up to
+         * {@code splits.get(i)} go to shard {@code i}, and the remaining keys go to the last shard.
+         *
+         * @param splits Sorted keys, one fewer than the number of shards.
+         * @param <K> The key type.
+         * @return A range partitioner.
+         */
+        static <K extends Comparable<? super K>> Partitioner<K> range(final List<K> splits)
+        {
+            final List<K> sorted = new ArrayList<>(splits);
+
+            return (key, shards) -> {
+                final int i = Collections.binarySearch(sorted, key);
+
+                // A key equal to a split is the first key of the next shard.
+                return Math.min(i >= 0 ? i + 1 : -(i + 1), shards - 1);
+            };
+        }
+    }
+
+    private final List<BTree<K, ?, V>> shards;
+
+    private final Partitioner<? super K> partitioner;
+
+    private final Executor executor;
+
+    /**
+     * Hash partition keys and visit shards in parallel with the {@link ForkJoinPool#commonPool()}.
+     *
+     * @param shards The trees to partition keys across.
+     */
+    public ShardedBTreeMap(final List<? extends BTree<K, ?, V>> shards)
+    {
+        this(shards, Partitioner.hash(), ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param shards The trees to partition keys across. The same keys must always be given
+     *               the same trees in the same order.
+     * @param partitioner Chooses the tree of each key.
+     * @param executor Runs the per-shard work of {@link #size()}, {@link #clear()} and {@link #destroy()}.
+     */
+    public ShardedBTreeMap(
+        final List<? extends BTree<K, ?, V>> shards,
+        final Partitioner<? super K> partitioner,
+        final Executor executor
+    )
+    {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("At least one shard is required.");
+        }
+
+        this.shards = new ArrayList<>(shards);
+        this.partitioner = partitioner;
+        this.executor = executor;
+    }
+
+    /**
+     * @return The shards, in order.
+     */
+    public List<BTree<K, ?, V>> getShards()
+    {
+        return Collections.unmodifiableList(shards);
+    }
+
+    /**
+     * @param key A key.
+     * @return The shard that the key is, or would be, stored in.
+     */
+    public BTree<K, ?, V> getShard(final K key)
+    {
+        return shards.get(partitioner.shard(key, shards.size()));
+    }
+
+    @SuppressWarnings("unchecked")
+    private BTree<K, ?, V> shardOf(final Object key)
+    {
+        return getShard((K) key);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public V get(final Object key)
+    {
+        return shardOf(key).get(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean containsKey(final Object key)
+    {
+        return shardOf(key).containsKey(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public V put(final K key, final V value)
+    {
+        return getShard(key).put(key, value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean putKey(final K key)
+    {
+        return getShard(key).putKey(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public V remove(final Object key)
+    {
+        return shardOf(key).remove(key);
+    }
+
+    /**
+     * Count the keys of every shard in parallel.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public int size()
+    {
+        int size = 0;
+        for (final int shardSize : eachShard(BTree::size)) {
+            size += shardSize;
+        }
+        return size;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isEmpty()
+    {
+        for (final BTree<K, ?, V> shard : shards) {
+            if (!shard.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Clear every shard in parallel. As with {@link BTree#clear()}, the root nodes are kept.
+     */
+    @Override
+    public void clear()
+    {
+        eachShard(shard -> {
+            shard.clear();
+            return null;
+        });
+    }
+
+    /**
+     * Destroy every shard in parallel.
+     *
+     * @see BTree#destroy()
+     */
+    public void destroy()
+    {
+        eachShard(shard -> {
+            shard.destroy();
+            return null;
+        });
+    }
+
+    /**
+     * @return The keys of all shards in sorted order.
+     */
+    public Iterator<K> getIterator()
+    {
+        final List<Iterator<K>> iterators = new ArrayList<>(shards.size());
+        for (final BTree<K, ?, V> shard : shards) {
+            iterators.add(shard.getIterator());
+        }
+
+        return new MergeIterator<>(iterators);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<K> keySet()
+    {
+        return new AbstractSet<K>() {
+            @Override
+            public Iterator<K> iterator()
+            {
+                return getIterator();
+            }
+
+            @Override
+            public int size()
+            {
+                return ShardedBTreeMap.this.size();
+            }
+        };
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Collection<V> values()
+    {
+        return new AbstractCollection<V>() {
+            @Override
+            public Iterator<V> iterator()
+            {
+                final Iterator<K> keys = getIterator();
+                return new Iterator<V>() {
+                    @Override
+                    public boolean hasNext()
+                    {
+                        return keys.hasNext();
+                    }
+
+                    @Override
+                    public V next()
+                    {
+                        return get(keys.next());
+                    }
+                };
+            }
+
+            @Override
+            public int size()
+            {
+                return ShardedBTreeMap.this.size();
+            }
+        };
+    }
+
+    /**
+     * Entries in sorted key order. Values are loaded as each entry is visited.
+     */
+    @Override
+    public Set<Map.Entry<K, V>> entrySet()
+    {
+        return new AbstractSet<Map.Entry<K, V>>() {
+            @Override
+            public Iterator<Map.Entry<K, V>> iterator()
+            {
+                final Iterator<K> keys = getIterator();
+                return new Iterator<Map.Entry<K, V>>() {
+                    @Override
+                    public boolean hasNext()
+                    {
+                        return keys.hasNext();
+                    }
+
+                    @Override
+                    public Map.Entry<K, V> next()
+                    {
+                        final K key = keys.next();
+                        return new SimpleEntry<K, V>(key, get(key)) {
+                            @Override
+                            public V setValue(final V value)
+                            {
+                                super.setValue(value);
+                                return put(key, value);
+                            }
+                        };
+                    }
+                };
+            }
+
+            @Override
+            public int size()
+            {
+                return ShardedBTreeMap.this.size();
+            }
+        };
+    }
+
+    /**
+     * Two sharded maps are equal if they have equal shards in the same order.
+     */
+    @Override
+    public boolean equals(final Object o)
+    {
+        return o instanceof ShardedBTreeMap && shards.equals(((ShardedBTreeMap<?, ?>) o).shards);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode()
+    {
+        return shards.hashCode();
+    }
+
+    /**
+     * Apply a function to every shard using the {@link #executor} and wait for the results.
+     *
+     * @throws RuntimeException The first exception thrown by the function, unwrapped.
+     */
+    private <T> List<T> eachShard(final Function<BTree<K, ?, V>, T> function)
+    {
+        final List<CompletableFuture<T>> futures = new ArrayList<>(shards.size());
+        for (final BTree<K, ?, V> shard : shards) {
+            futures.add(CompletableFuture.supplyAsync(() -> function.apply(shard), executor));
+        }
+
+        final List<T> results = new ArrayList<>(futures.size());
+        RuntimeException failure = null;
+        for (final CompletableFuture<T> future : futures) {
+            try {
+                results.add(future.join());
+            }
+            catch (final CompletionException e) {
+                if (failure == null) {
+                    failure = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+                }
+            }
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+
+        return results;
+    }
+
+    /**
+     * Merge sorted iterators by keeping the next key of each in a priority queue.
+     */
+    private static final class MergeIterator<K> implements Iterator<K>
+    {
+        /**
+         * The next key of an iterator and the iterator it came from.
+         */
+        private static final class Head<K>
+        {
+            private final K key;
+            private final Iterator<K> iterator;
+
+            private Head(final K key, final Iterator<K> iterator)
+            {
+                this.key = key;
+                this.iterator = iterator;
+            }
+        }
+
+        private final PriorityQueue<Head<K>> heads;
+
+        @SuppressWarnings("unchecked")
+        private MergeIterator(final List<Iterator<K>> iterators)
+        {
+            final Comparator<Head<K>> byKey = (a, b) -> ((Comparable<? super K>) a.key).compareTo(b.key);
+
+            heads = new PriorityQueue<>(Math.max(1, iterators.size()), byKey);
+            for (final Iterator<K> i : iterators) {
+                if (i.hasNext()) {
+                    heads.add(new Head<>(i.next(), i));
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return !heads.isEmpty();
+        }
+
+        @Override
+        public K next()
+        {
+            final Head<K> head = heads.poll();
+            if (head == null) {
+                throw new NoSuchElementException();
+            }
+
+            if (head.iterator.hasNext()) {
+                heads.add(new Head<>(head.iterator.next(), head.iterator));
+            }
+
+            return head.key;
+        }
+    }
+}
@@ -0,0 +1,1593 @@
+package com.github.basking2.sdsai.dsds;
+
+import com.github.basking2.sdsai.dsds.node.Node;
+import com.github.basking2.sdsai.dsds.node.NodeStore;
+import com.github.basking2.sdsai.dsds.node.NodeStoreNodeNotFoundException;
+import com.github.basking2.sdsai.dsds.node.metrics.OperationTracer;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * <p>An ordered map stored in a {@link NodeStore} as a skip list of pages.</p>
+ *
+ * <p>Each page is a {@link Node} whose data are up to {@code pageSize} sorted keys and whose children
+ * are its forward pointers, one per level of its tower. The head node, stored at the root key, has
+ * a pointer at every level and no keys. A pointer to the root key marks the end of a level.
+ * Values are stored at their keys as {@link BTree} stores them.</p>
+ *
+ * <p>Every change is a sequence of single node writes, each of which leaves a list readers can
+ * follow: a key is added or removed by rewriting its page, a full page is split by storing the
+ * new page before pointing to it, and a page is unlinked from the top level down before it is removed.
+ * Readers take no lock. A reader that follows a pointer to a page that was just removed searches again.
+ * Writers are serialized, so one writer at a time edits the list while any number of threads read it.</p>
+ *
+ * <p>Because writers edit the nodes they load before storing them, lock-free readers are only safe if
+ * {@link NodeStore#loadNode(Object)} returns a node no other thread holds. Stores that deserialize each
+ * load do; a {@link com.github.basking2.sdsai.dsds.mem.ConcurrentMemoryNodeStore} must be built to
+ * copy nodes, as its default constructor does.</p>
+ *
+ * <p>Keys must be {@link Comparable}.</p>
+ *
+ * @param <K> The user key type.
+ * @param <STOREKEY> The data store key type.
+ * @param <V> The user value type.
+ */
+public class SkipListMap<K, STOREKEY, V> extends AbstractMap<K, V> implements NavigableMap<K, V>, BTreeMap<K, V>
+{
+    /**
+     * The default most keys in a page.
+     */
+    public static final int DEFAULT_PAGE_SIZE = 100;
+
+    /**
+     * The levels of the head. Page towers are at most this tall.
+     */
+    public static final int MAX_LEVEL = 32;
+
+    /**
+     * How many times a reader searches again after following a pointer to a removed page.
+     */
+    private static final int READ_ATTEMPTS = 16;
+
+    /**
+     * The key of the head node. Pointers to it end a level.
+     */
+    private final STOREKEY rootKey;
+
+    private final NodeStore<K, STOREKEY, V> nodeStore;
+
+    /**
+     * The most keys in a page before it is split.
+     */
+    private int pageSize;
+
+    /**
+     * Serializes writers. Readers never take it.
+     */
+    private final Object writeLock = new Object();
+
+    /**
+     * Traces each public operation, or null if tracing is off.
+     */
+    private OperationTracer tracer;
+
+    /**
+     * The whole map, to which the {@link NavigableMap} methods are delegated.
+     */
+    private final Range all = new Range(null, false, null, false, false);
+
+    /**
+     * @param rootKey The key the head is stored at.
+     * @param nodeStore The store.
+     */
+    public SkipListMap(final K rootKey, final NodeStore<K, STOREKEY, V> nodeStore)
+    {
+        this(rootKey, nodeStore, DEFAULT_PAGE_SIZE);
+    }
+
+    /**
+     * @param rootKey The key the head is stored at.
+     * @param nodeStore The store.
+     * @param pageSize The most keys in a page, at least 2, if the map is new.
+     *        The page size is stored in the head, so a reopened map keeps the first.
+     */
+    public SkipListMap(final K rootKey, final NodeStore<K, STOREKEY, V> nodeStore, final int pageSize)
+    {
+        if ( pageSize < 2 ) {
+            throw new IllegalArgumentException("Page size must be at least 2: "+pageSize);
+        }
+
+        this.nodeStore = nodeStore;
+        this.rootKey = nodeStore.convert(rootKey);
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Trace the public operations of this map.
+     *
+     * @param tracer The tracer, or null to stop tracing.
+     * @see BTree#setTracer(OperationTracer)
+     */
+    public void setTracer(final OperationTracer tracer)
+    {
+        this.tracer = tracer;
+    }
+
+    private void traceBegin(final String operation)
+    {
+        if ( tracer != null ) {
+            tracer.begin(operation);
+        }
+    }
+
+    private void traceEnd()
+    {
+        if ( tracer != null ) {
+            tracer.end();
+        }
+    }
+
+    /**
+     * Load the head or, if there is none, store an empty head.
+     */
+    private Node<K, STOREKEY> getHead()
+    {
+        try {
+            final Node<K, STOREKEY> head = nodeStore.loadNode(rootKey);
+            pageSize = head.getDataCap();
+            return head;
+        } catch (final NodeStoreNodeNotFoundException e) {
+            final Node<K, STOREKEY> head = new Node<>(MAX_LEVEL, pageSize, 0);
+            for ( int i = 0; i < MAX_LEVEL; i++ ) {
+                head.getChildren().add(rootKey);
+            }
+            synchronized (writeLock) {
+                nodeStore.store(rootKey, head);
+            }
+            return head;
+        }
+    }
+
+    /**
+     * @return A tower height from 1 to {@link #MAX_LEVEL}, each level half as likely as the one below.
+     */
+    private static int randomLevel()
+    {
+        final int bits = ThreadLocalRandom.current().nextInt();
+        return Math.min(MAX_LEVEL, Integer.numberOfTrailingZeros(bits) + 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    private int compare(final K k1, final K k2)
+    {
+        return ((Comparable<K>) k1).compareTo(k2);
+    }
+
+    /**
+     * Run a read, searching again if it follows a pointer to a page a writer has just removed.
+     */
+    private <T> T read(final Supplier<T> read)
+    {
+        for ( int attempt = 1; ; attempt++ ) {
+            try {
+                return read.get();
+            } catch (final NodeStoreNodeNotFoundException e) {
+                if ( attempt >= READ_ATTEMPTS ) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <K, STOREKEY> Node<K, STOREKEY>[] newNodes(final int length)
+    {
+        return (Node<K, STOREKEY>[]) new Node[length];
+    }
+
+    /**
+     * The last node at each level whose first key is before {@code key}, or the head.
+     */
+    private final class Path {
+        @SuppressWarnings("unchecked")
+        private final STOREKEY[] keys = (STOREKEY[]) new Object[MAX_LEVEL];
+
+        private final Node<K, STOREKEY>[] nodes = newNodes(MAX_LEVEL);
+
+        /**
+         * @param key The key searched for.
+         * @param inclusive If true, nodes whose first key equals {@code key} are included.
+         */
+        private Path(final K key, final boolean inclusive)
+        {
+            STOREKEY nodeKey = rootKey;
+            Node<K, STOREKEY> node = getHead();
+
+            // The node last found to be past the key, which the level below usually checks again.
+            STOREKEY pastKey = null;
+            Node<K, STOREKEY> past = null;
+
+            for ( int level = MAX_LEVEL - 1; level >= 0; level-- ) {
+                while ( true ) {
+                    final STOREKEY nextKey = node.getChildren().get(level);
+                    if ( nextKey.equals(rootKey) ) {
+                        break;
+                    }
+
+                    final Node<K, STOREKEY> next = nextKey.equals(pastKey) ? past : nodeStore.loadNode(nextKey);
+                    final int c = compare(next.getData().get(0), key);
+                    if ( c < 0 || ( inclusive && c == 0 ) ) {
+                        nodeKey = nextKey;
+                        node = next;
+                    } else {
+                        pastKey = nextKey;
+                        past = next;
+                        break;
+                    }
+                }
+
+                keys[level] = nodeKey;
+                nodes[level] = node;
+            }
+        }
+
+        /**
+         * @return True if no page starts before the key, so {@link #nodes}{@code [0]} is the head.
+         */
+        private boolean atHead()
+        {
+            return keys[0].equals(rootKey);
+        }
+    }
+
+    /**
+     * @return The data of {@code key}, loading no nodes.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(final Object key)
+    {
+        traceBegin("SkipListMap.get");
+        try {
+            return nodeStore.loadData(nodeStore.convert((K)key));
+        } finally {
+            traceEnd();
+        }
+    }
+
+    /**
+     * @return True if {@code key} has data, loading no nodes.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean containsKey(final Object key)
+    {
+        traceBegin("SkipListMap.containsKey");
+        try {
+            return nodeStore.containsData(nodeStore.convert((K)key));
+        } finally {
+            traceEnd();
+        }
+    }
+
+    /**
+     * Store a value. A value that replaces another changes no pages.
+     *
+     * @param key The key.
+     * @param value The value.
+     * @return The previous value, or null.
+     */
+    @Override
+    public V put(final K key, final V value)
+    {
+        traceBegin("SkipListMap.put");
+        try {
+            synchronized (writeLock) {
+                final STOREKEY storeKey = nodeStore.convert(key);
+                final V previous = nodeStore.loadData(storeKey);
+
+                if ( previous != null ) {
+                    nodeStore.store(storeKey, value);
+                    return previous;
+                }
+
+                insert(key);
+                nodeStore.store(storeKey, value);
+
+                return null;
+            }
+        } finally {
+            traceEnd();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean putKey(final K key)
+    {
+        traceBegin("SkipListMap.putKey");
+        try {
+            synchronized (writeLock) {
+                return insert(key);
+            }
+        } finally {
+            traceEnd();
+        }
+    }
+
+    /**
+     * Add a key to the page it falls in, splitting the page if it is over full.
+     *
+     * @return True if the key was added. False if it was already listed.
+     */
+    private boolean insert(final K key)
+    {
+        final Path path = new Path(key, true);
+
+        final STOREKEY pageKey;
+        final Node<K, STOREKEY> page;
+
+        if ( path.atHead() ) {
+            // The key is before every page. It goes in the first page, if there is one.
+            final Node<K, STOREKEY> head = path.nodes[0];
+            final STOREKEY firstKey = head.getChildren().get(0);
+
+            if ( firstKey.equals(rootKey) ) {
+                final int level = randomLevel();
+                final Node<K, STOREKEY> first = new Node<>(level, pageSize + 1, 0);
+                first.getData().add(key);
+                for ( int i = 0; i < level; i++ ) {
+                    first.getChildren().add(rootKey);
+                }
+
+                final STOREKEY newKey = nodeStore.generateKey(first, null);
+                nodeStore.store(newKey, first);
+
+                for ( int i = 0; i < level; i++ ) {
+                    head.getChildren().set(i, newKey);
+                }
+                nodeStore.store(rootKey, head);
+
+                return true;
+            }
+
+            pageKey = firstKey;
+            page = nodeStore.loadNode(firstKey);
+        } else {
+            pageKey = path.keys[0];
+            page = path.nodes[0];
+        }
+
+        final int index = Collections.binarySearch(page.getData(), key, this::compare);
+        if ( index >= 0 ) {
+            return false;
+        }
+
+        page.getData().add(-(index + 1), key);
+
+        if ( page.getData().size() <= pageSize ) {
+            nodeStore.store(pageKey, page);
+        } else {
+            split(path, pageKey, page);
+        }
+
+        return true;
+    }
+
+    /**
+     * Move the upper half of an over full page to a new page. The new page is stored,
+     * then the page is stored pointing to it, then the new page's taller levels are linked from the
+     * nodes of {@code path}. A reader sees each key in one page or the other.
+     */
+    private void split(final Path path, final STOREKEY pageKey, final Node<K, STOREKEY> page)
+    {
+        final List<K> data = page.getData();
+        final List<STOREKEY> pointers = page.getChildren();
+        final int level = randomLevel();
+
+        final Node<K, STOREKEY> split = new Node<>(level, pageSize + 1, 0);
+        split.getData().addAll(data.subList(data.size() / 2, data.size()));
+        for ( int i = 0; i < level; i++ ) {
+            split.getChildren().add(i < pointers.size() ? pointers.get(i) : path.nodes[i].getChildren().get(i));
+        }
+
+        final STOREKEY splitKey = nodeStore.generateKey(split, null);
+        nodeStore.store(splitKey, split);
+
+        data.subList(data.size() / 2, data.size()).clear();
+        for ( int i = 0; i < Math.min(level, pointers.size()); i++ ) {
+            pointers.set(i, splitKey);
+        }
+        nodeStore.store(pageKey, page);
+
+        final Map<STOREKEY, Node<K, STOREKEY>> predecessors = new LinkedHashMap<>();
+        for ( int i = pointers.size(); i < level; i++ ) {
+            path.nodes[i].getChildren().set(i, splitKey);
+            predecessors.put(path.keys[i], path.nodes[i]);
+        }
+        for ( final Map.Entry<STOREKEY, Node<K, STOREKEY>> e : predecessors.entrySet() ) {
+            nodeStore.store(e.getKey(), e.getValue());
+        }
+    }
+
+    /**
+     * Remove the key and its data.
+     *
+     * @return The removed data, or null.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public V remove(final Object keyObject)
+    {
+        traceBegin("SkipListMap.remove");
+        try {
+            synchronized (writeLock) {
+                final K key = (K) keyObject;
+                final STOREKEY storeKey = nodeStore.convert(key);
+                final V v = nodeStore.loadData(storeKey);
+
+                if ( v == null ) {
+                    return null;
+                }
+
+                unlist(key);
+                nodeStore.removeData(storeKey);
+
+                return v;
+            }
+        } finally {
+            traceEnd();
+        }
+    }
+
+    /**
+     * Remove a key from its page without loading or removing its data.
+     * This undoes {@link #putKey(Object)}.
+     *
+     * @param key The key.
+     * @return True if the key was removed. False if it was not listed.
+     */
+    public boolean removeKey(final K key)
+    {
+        traceBegin("SkipListMap.removeKey");
+        try {
+            synchronized (writeLock) {
+                return unlist(key);
+            }
+        } finally {
+            traceEnd();
+        }
+    }
+
+    /**
+     * Remove a key from its page. An emptied page is unlinked. A page a quarter full or less takes
+     * the keys of the next page, if they fit in half a page, and the next page is unlinked.
+     * Until it is, readers may find those keys in both pages.
+     *
+     * @return True if the key was removed. False if it was not listed.
+     */
+    private boolean unlist(final K key)
+    {
+        final Path path = new Path(key, true);
+        if ( path.atHead() ) {
+            return false;
+        }
+
+        final STOREKEY pageKey = path.keys[0];
+        final Node<K, STOREKEY> page = path.nodes[0];
+        if ( ! page.getData().remove(key) ) {
+            return false;
+        }
+
+        if ( page.getData().isEmpty() ) {
+            // The stored page keeps the key until it is unlinked.
+            unlink(pageKey, page, key);
+            return true;
+        }
+
+        final STOREKEY nextKey = page.getChildren().get(0);
+        if ( page.getData().size() <= pageSize / 4 && ! nextKey.equals(rootKey) ) {
+            final Node<K, STOREKEY> next = nodeStore.loadNode(nextKey);
+            if ( page.getData().size() + next.getData().size() <= pageSize / 2 ) {
+                page.getData().addAll(next.getData());
+                nodeStore.store(pageKey, page);
+                unlink(nextKey, next, next.getData().get(0));
+                return true;
+            }
+        }
+
+        nodeStore.store(pageKey, page);
+        return true;
+    }
+
+    /**
+     * Point the predecessors of a page past it, from its top level down, and then remove it.
+     *
+     * @param first The first key of the page as it is stored.
+     */
+    private void unlink(final STOREKEY pageKey, final Node<K, STOREKEY> page, final K first)
+    {
+        final Path path = new Path(first, false);
+        final List<STOREKEY> pointers = page.getChildren();
+
+        final Map<STOREKEY, Node<K, STOREKEY>> predecessors = new LinkedHashMap<>();
+        for ( int i = pointers.size() - 1; i >= 0; i-- ) {
+            path.nodes[i].getChildren().set(i, pointers.get(i));
+            predecessors.put(path.keys[i], path.nodes[i]);
+        }
+        for ( final Map.Entry<STOREKEY, Node<K, STOREKEY>> e : predecessors.entrySet() ) {
+            nodeStore.store(e.getKey(), e.getValue());
+        }
+
+        nodeStore.removeNode(pageKey);
+    }
+
+    /**
+     * @param key A key, or null for the first key.
+     * @param inclusive If true, {@code key} itself may be returned.
+     * @return The first key after {@code key}, or null.
+     */
+    private K higher(final K key, final boolean inclusive)
+    {
+        return read(() -> {
+            final Node<K, STOREKEY> page;
+            final int index;
+
+            if ( key == null ) {
+                page = getHead();
+                index = 0;
+            } else {
+                page = new Path(key, true).nodes[0];
+                final int i = Collections.binarySearch(page.getData(), key, this::compare);
+                index = i < 0 ? -(i + 1) : inclusive ? i : i + 1;
+            }
+
+            if ( index < page.getData().size() ) {
+                return page.getData().get(index);
+            }
+
+            final STOREKEY nextKey = page.getChildren().get(0);
+            if ( nextKey.equals(rootKey) ) {
+                return null;
+            }
+
+            return nodeStore.loadNode(nextKey).getData().get(0);
+        });
+    }
+
+    /**
+     * @param key A key, or null for the last key.
+     * @param inclusive If true, {@code key} itself may be returned.
+     * @return The last key before {@code key}, or null.
+     */
+    private K lower(final K key, final boolean inclusive)
+    {
+        return read(() -> {
+            final Node<K, STOREKEY> page;
+            final int index;
+
+            if ( key == null ) {
+                page = lastPage();
+                index = page.getData().size() - 1;
+            } else {
+                page = new Path(key, inclusive).nodes[0];
+                final int i = Collections.binarySearch(page.getData(), key, this::compare);
+                index = i < 0 ? -(i + 1) - 1 : inclusive ? i : i - 1;
+            }
+
+            return index < 0 ? null : page.getData().get(index);
+        });
+    }
+
+    /**
+     * @return The last page, or the head if there are no pages.
+     */
+    private Node<K, STOREKEY> lastPage()
+    {
+        Node<K, STOREKEY> node = getHead();
+        for ( int level = MAX_LEVEL - 1; level >= 0; level-- ) {
+            STOREKEY nextKey;
+            while ( ! ( nextKey = node.getChildren().get(level) ).equals(rootKey) ) {
+                node = nodeStore.loadNode(nextKey);
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Keys in order, read a page at a time. A page removed while it is iterated is found again
+     * by searching from the last key returned. Keys are returned once even if a merge lists them twice.
+     */
+    private final class AscendingKeys implements Iterator<K> {
+        /**
+         * Keys at or after this are returned next.
+         */
+        private K bound;
+        private boolean inclusive;
+
+        private List<K> keys = Collections.emptyList();
+        private int index;
+        private STOREKEY nextKey;
+
+        private AscendingKeys(final K from, final boolean inclusive)
+        {
+            this.bound = from;
+            this.inclusive = inclusive;
+            seek();
+        }
+
+        private void seek()
+        {
+            read(() -> {
+                final Node<K, STOREKEY> page;
+                if ( bound == null ) {
+                    page = getHead();
+                    index = 0;
+                } else {
+                    page = new Path(bound, true).nodes[0];
+                    final int i = Collections.binarySearch(page.getData(), bound, SkipListMap.this::compare);
+                    index = i < 0 ? -(i + 1) : inclusive ? i : i + 1;
+                }
+                keys = page.getData();
+                nextKey = page.getChildren().get(0);
+                return null;
+            });
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            while ( index < keys.size() || ! nextKey.equals(rootKey) ) {
+                if ( index < keys.size() ) {
+                    final K k = keys.get(index);
+                    if ( bound == null || compare(k, bound) > 0 || ( inclusive && compare(k, bound) == 0 ) ) {
+                        return true;
+                    }
+                    index++;
+                } else {
+                    try {
+                        final Node<K, STOREKEY> page = nodeStore.loadNode(nextKey);
+                        keys = page.getData();
+                        index = 0;
+                        nextKey = page.getChildren().get(0);
+                    } catch (final NodeStoreNodeNotFoundException e) {
+                        seek();
+                    }
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public K next()
+        {
+            if ( ! hasNext() ) {
+                throw new NoSuchElementException();
+            }
+            bound = keys.get(index++);
+            inclusive = false;
+            return bound;
+        }
+    }
+
+    /**
+     * Keys in reverse order, read a page at a time. Pages have no backward pointers,
+     * so each page is found by a search for the keys before the last page read.
+     */
+    private final class DescendingKeys implements Iterator<K> {
+        /**
+         * Keys at or before this are returned next.
+         */
+        private K bound;
+        private boolean inclusive;
+        private boolean done;
+
+        private List<K> keys = Collections.emptyList();
+        private int index = -1;
+
+        private DescendingKeys(final K from, final boolean inclusive)
+        {
+            this.bound = from;
+            this.inclusive = inclusive;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            while ( ! done ) {
+                if ( index >= 0 ) {
+                    final K k = keys.get(index);
+                    if ( bound == null || compare(k, bound) < 0 || ( inclusive && compare(k, bound) == 0 ) ) {
+                        return true;
+                    }
+                    index--;
+                } else {
+                    // The page found starts within the bound, so its first key is returned and the
+                    // next search, from that key, finds the page before it. Only the head has no keys.
+                    final Node<K, STOREKEY> page = read(() -> bound == null ? lastPage() : new Path(bound, inclusive).nodes[0]);
+                    keys = page.getData();
+                    index = keys.size() - 1;
+                    done = keys.isEmpty();
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public K next()
+        {
+            if ( ! hasNext() ) {
+                throw new NoSuchElementException();
+            }
+            final K k = keys.get(index--);
+            bound = k;
+            inclusive = false;
+            return k;
+        }
+    }
+
+    /**
+     * Remove all data and pages and store an empty head.
+     */
+    @Override
+    public void clear()
+    {
+        traceBegin("SkipListMap.clear");
+        try {
+            synchronized (writeLock) {
+                STOREKEY pageKey = getHead().getChildren().get(0);
+
+                final Node<K, STOREKEY> head = new Node<>(MAX_LEVEL, pageSize, 0);
+                for ( int i = 0; i < MAX_LEVEL; i++ ) {
+                    head.getChildren().add(rootKey);
+                }
+                nodeStore.store(rootKey, head);
+
+                while ( ! pageKey.equals(rootKey) ) {
+                    final Node<K, STOREKEY> page = nodeStore.loadNode(pageKey);
+                    for ( final K k : page.getData() ) {
+                        nodeStore.removeData(nodeStore.convert(k));
+                    }
+                    nodeStore.removeNode(pageKey);
+                    pageKey = page.getChildren().get(0);
+                }
+            }
+        } finally {
+            traceEnd();
+        }
+    }
+
+    /**
+     * Call {@link #clear()} and remove the head.
+     */
+    public void destroy()
+    {
+        clear();
+        nodeStore.removeNode(rootKey);
+    }
+
+    /**
+     * Count the keys by loading every page.
+     */
+    @Override
+    public int size()
+    {
+        traceBegin("SkipListMap.size");
+        try {
+            return read(() -> {
+                int size = 0;
+                for ( STOREKEY k = getHead().getChildren().get(0); ! k.equals(rootKey); ) {
+                    final Node<K, STOREKEY> page = nodeStore.loadNode(k);
+                    size += page.getData().size();
+                    k = page.getChildren().get(0);
+                }
+                return size;
+            });
+        } finally {
+            traceEnd();
+        }
+    }
+
+    /**
+     * @return True if the head points to no page.
+     */
+    @Override
+    public boolean isEmpty()
+    {
+        return getHead().getChildren().get(0).equals(rootKey);
+    }
+
+    /**
+     * Two maps are equal if they are stored at the same root key.
+     */
+    @Override
+    public boolean equals(final Object o)
+    {
+        if ( ! ( o instanceof SkipListMap ) ) {
+            return false;
+        }
+
+        return rootKey.equals(((SkipListMap<?, ?, ?>) o).rootKey);
+    }
+
+    /**
+     * @return The hash code of the root key.
+     */
+    @Override
+    public int hashCode()
+    {
+        return rootKey.hashCode();
+    }
+
+    /**
+     * @return The keys in order, read a page at a time.
+     */
+    public Iterator<K> getIterator()
+    {
+        return new AscendingKeys(null, false);
+    }
+
+    /**
+     * @return The keys in reverse order.
+     */
+    public Iterator<K> getReverseIterator()
+    {
+        return new DescendingKeys(null, false);
+    }
+
+    /**
+     * A view of the keys from {@code lo} to {@code hi}, either of which may be null for no bound,
+     * in ascending or descending order. Writes through the view change the map.
+     */
+    private final class Range extends AbstractMap<K, V> implements NavigableMap<K, V>
+    {
+        private final K lo;
+        private final boolean loInclusive;
+        private final K hi;
+        private final boolean hiInclusive;
+        private final boolean descending;
+
+        private Range(final K lo, final boolean loInclusive, final K hi, final boolean hiInclusive, final boolean descending)
+        {
+            this.lo = lo;
+            this.loInclusive = loInclusive;
+            this.hi = hi;
+            this.hiInclusive = hiInclusive;
+            this.descending = descending;
+        }
+
+        private boolean tooLow(final K key)
+        {
+            if ( lo == null ) {
+                return false;
+            }
+            final int c = compare(key, lo);
+            return c < 0 || ( c == 0 && ! loInclusive );
+        }
+
+        private boolean tooHigh(final K key)
+        {
+            if ( hi == null ) {
+                return false;
+            }
+            final int c = compare(key, hi);
+            return c > 0 || ( c == 0 && ! hiInclusive );
+        }
+
+        private boolean inRange(final K key)
+        {
+            return ! tooLow(key) && ! tooHigh(key);
+        }
+
+        private K checkHigh(final K key)
+        {
+            return key == null || tooHigh(key) ? null : key;
+        }
+
+        private K checkLow(final K key)
+        {
+            return key == null || tooLow(key) ? null : key;
+        }
+
+        private K absLowest()
+        {
+            return checkHigh(higher(lo, loInclusive || lo == null));
+        }
+
+        private K absHighest()
+        {
+            return checkLow(lower(hi, hiInclusive || hi == null));
+        }
+
+        private K absCeiling(final K key)
+        {
+            return tooLow(key) ? absLowest() : checkHigh(higher(key, true));
+        }
+
+        private K absHigher(final K key)
+        {
+            return tooLow(key) ? absLowest() : checkHigh(higher(key, false));
+        }
+
+        private K absFloor(final K key)
+        {
+            return tooHigh(key) ? absHighest() : checkLow(lower(key, true));
+        }
+
+        private K absLower(final K key)
+        {
+            return tooHigh(key) ? absHighest() : checkLow(lower(key, false));
+        }
+
+        private Map.Entry<K, V> entry(final K key)
+        {
+            return key == null ? null : new AbstractMap.SimpleImmutableEntry<>(key, SkipListMap.this.get(key));
+        }
+
+        private K key(final K key)
+        {
+            if ( key == null ) {
+                throw new NoSuchElementException();
+            }
+            return key;
+        }
+
+        /**
+         * @return The keys of this range in its order.
+         */
+        private Iterator<K> keyIterator()
+        {
+            final Iterator<K> keys = descending ?
+                new DescendingKeys(hi, hiInclusive || hi == null) :
+                new AscendingKeys(lo, loInclusive || lo == null);
+
+            return new Iterator<K>() {
+                private K next;
+                private K last;
+
+                @Override
+                public boolean hasNext()
+                {
+                    if ( next == null && keys.hasNext() ) {
+                        final K k = keys.next();
+                        if ( descending ? ! tooLow(k) : ! tooHigh(k) ) {
+                            next = k;
+                        }
+                    }
+                    return next != null;
+                }
+
+                @Override
+                public K next()
+                {
+                    if ( ! hasNext() ) {
+                        throw new NoSuchElementException();
+                    }
+                    last = next;
+                    next = null;
+                    return last;
+                }
+
+                @Override
+                public void remove()
+                {
+                    if ( last == null ) {
+                        throw new IllegalStateException();
+                    }
+                    SkipListMap.this.remove(last);
+                    last = null;
+                }
+            };
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public V get(final Object key)
+        {
+            return inRange((K) key) ? SkipListMap.this.get(key) : null;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean containsKey(final Object key)
+        {
+            return inRange((K) key) && SkipListMap.this.containsKey(key);
+        }
+
+        @Override
+        public V put(final K key, final V value)
+        {
+            if ( ! inRange(key) ) {
+                throw new IllegalArgumentException("Key out of range: "+key);
+            }
+            return SkipListMap.this.put(key, value);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public V remove(final Object key)
+        {
+            return inRange((K) key) ? SkipListMap.this.remove(key) : null;
+        }
+
+        @Override
+        public int size()
+        {
+            int size = 0;
+            for ( final Iterator<K> i = keyIterator(); i.hasNext(); i.next() ) {
+                size++;
+            }
+            return size;
+        }
+
+        @Override
+        public boolean isEmpty()
+        {
+            return ! keyIterator().hasNext();
+        }
+
+        @Override
+        public Set<Map.Entry<K, V>> entrySet()
+        {
+            return new AbstractSet<Map.Entry<K, V>>() {
+                @Override
+                public Iterator<Map.Entry<K, V>> iterator()
+                {
+                    final Iterator<K> keys = keyIterator();
+                    return new Iterator<Map.Entry<K, V>>() {
+                        @Override
+                        public boolean hasNext()
+                        {
+                            return keys.hasNext();
+                        }
+
+                        @Override
+                        public Map.Entry<K, V> next()
+                        {
+                            return entry(keys.next());
+                        }
+
+                        @Override
+                        public void remove()
+                        {
+                            keys.remove();
+                        }
+                    };
+                }
+
+                @Override
+                public int size()
+                {
+                    return Range.this.size();
+                }
+            };
+        }
+
+        @Override
+        public Comparator<? super K> comparator()
+        {
+            return descending ? Collections.reverseOrder() : null;
+        }
+
+        @Override
+        public K firstKey()
+        {
+            return key(descending ? absHighest() : absLowest());
+        }
+
+        @Override
+        public K lastKey()
+        {
+            return key(descending ? absLowest() : absHighest());
+        }
+
+        @Override
+        public K lowerKey(final K key)
+        {
+            return descending ? absHigher(key) : absLower(key);
+        }
+
+        @Override
+        public K floorKey(final K key)
+        {
+            return descending ? absCeiling(key) : absFloor(key);
+        }
+
+        @Override
+        public K ceilingKey(final K key)
+        {
+            return descending ? absFloor(key) : absCeiling(key);
+        }
+
+        @Override
+        public K higherKey(final K key)
+        {
+            return descending ? absLower(key) : absHigher(key);
+        }
+
+        @Override
+        public Map.Entry<K, V> lowerEntry(final K key)
+        {
+            return entry(lowerKey(key));
+        }
+
+        @Override
+        public Map.Entry<K, V> floorEntry(final K key)
+        {
+            return entry(floorKey(key));
+        }
+
+        @Override
+        public Map.Entry<K, V> ceilingEntry(final K key)
+        {
+            return entry(ceilingKey(key));
+        }
+
+        @Override
+        public Map.Entry<K, V> higherEntry(final K key)
+        {
+            return entry(higherKey(key));
+        }
+
+        @Override
+        public Map.Entry<K, V> firstEntry()
+        {
+            return entry(descending ? absHighest() : absLowest());
+        }
+
+        @Override
+        public Map.Entry<K, V> lastEntry()
+        {
+            return entry(descending ? absLowest() : absHighest());
+        }
+
+        @Override
+        public Map.Entry<K, V> pollFirstEntry()
+        {
+            synchronized (writeLock) {
+                return poll(firstEntry());
+            }
+        }
+
+        @Override
+        public Map.Entry<K, V> pollLastEntry()
+        {
+            synchronized (writeLock) {
+                return poll(lastEntry());
+            }
+        }
+
+        private Map.Entry<K, V> poll(final Map.Entry<K, V> entry)
+        {
+            if ( entry != null ) {
+                SkipListMap.this.remove(entry.getKey());
+            }
+            return entry;
+        }
+
+        @Override
+        public NavigableMap<K, V> descendingMap()
+        {
+            return new Range(lo, loInclusive, hi, hiInclusive, ! descending);
+        }
+
+        @Override
+        public NavigableSet<K> navigableKeySet()
+        {
+            return new KeySet(this);
+        }
+
+        @Override
+        public Set<K> keySet()
+        {
+            return navigableKeySet();
+        }
+
+        @Override
+        public NavigableSet<K> descendingKeySet()
+        {
+            return new KeySet(new Range(lo, loInclusive, hi, hiInclusive, ! descending));
+        }
+
+        /**
+         * A range within this one, in absolute order.
+         */
+        private Range range(
+            final K from,
+            final boolean fromInclusive,
+            final K to,
+            final boolean toInclusive)
+        {
+            if ( from != null && to != null && compare(from, to) > 0 ) {
+                throw new IllegalArgumentException("Lower bound "+from+" is after upper bound "+to+".");
+            }
+            if ( from != null && ! inRange(from) && ! ( from.equals(lo) && ! fromInclusive ) ) {
+                throw new IllegalArgumentException("Key out of range: "+from);
+            }
+            if ( to != null && ! inRange(to) && ! ( to.equals(hi) && ! toInclusive ) ) {
+                throw new IllegalArgumentException("Key out of range: "+to);
+            }
+
+            return new Range(
+                from == null ? lo : from,
+                from == null ? loInclusive : fromInclusive,
+                to == null ? hi : to,
+                to == null ? hiInclusive : toInclusive,
+                descending);
+        }
+
+        @Override
+        public NavigableMap<K, V> subMap(
+            final K fromKey,
+            final boolean fromInclusive,
+            final K toKey,
+            final boolean toInclusive)
+        {
+            if ( fromKey == null || toKey == null ) {
+                throw new NullPointerException();
+            }
+            return descending ?
+                range(toKey, toInclusive, fromKey, fromInclusive) :
+                range(fromKey, fromInclusive, toKey, toInclusive);
+        }
+
+        @Override
+        public NavigableMap<K, V> headMap(final K toKey, final boolean inclusive)
+        {
+            if ( toKey == null ) {
+                throw new NullPointerException();
+            }
+            return descending ? range(toKey, inclusive, null, false) : range(null, false, toKey, inclusive);
+        }
+
+        @Override
+        public NavigableMap<K, V> tailMap(final K fromKey, final boolean inclusive)
+        {
+            if ( fromKey == null ) {
+                throw new NullPointerException();
+            }
+            return descending ? range(null, false, fromKey, inclusive) : range(fromKey, inclusive, null, false);
+        }
+
+        @Override
+        public SortedMap<K, V> subMap(final K fromKey, final K toKey)
+        {
+            return subMap(fromKey, true, toKey, false);
+        }
+
+        @Override
+        public SortedMap<K, V> headMap(final K toKey)
+        {
+            return headMap(toKey, false);
+        }
+
+        @Override
+        public SortedMap<K, V> tailMap(final K fromKey)
+        {
+            return tailMap(fromKey, true);
+        }
+    }
+
+    /**
+     * The keys of a {@link Range}.
+     */
+    private final class KeySet extends AbstractSet<K> implements NavigableSet<K>
+    {
+        private final Range range;
+
+        private KeySet(final Range range)
+        {
+            this.range = range;
+        }
+
+        @Override
+        public Iterator<K> iterator()
+        {
+            return range.keyIterator();
+        }
+
+        @Override
+        public int size()
+        {
+            return range.size();
+        }
+
+        @Override
+        public boolean isEmpty()
+        {
+            return range.isEmpty();
+        }
+
+        @Override
+        public boolean contains(final Object o)
+        {
+            return range.containsKey(o);
+        }
+
+        @Override
+        public boolean remove(final Object o)
+        {
+            return range.remove(o) != null;
+        }
+
+        @Override
+        public Comparator<? super K> comparator()
+        {
+            return range.comparator();
+        }
+
+        @Override
+        public K first()
+        {
+            return range.firstKey();
+        }
+
+        @Override
+        public K last()
+        {
+            return range.lastKey();
+        }
+
+        @Override
+        public K lower(final K k)
+        {
+            return range.lowerKey(k);
+        }
+
+        @Override
+        public K floor(final K k)
+        {
+            return range.floorKey(k);
+        }
+
+        @Override
+        public K ceiling(final K k)
+        {
+            return range.ceilingKey(k);
+        }
+
+        @Override
+        public K higher(final K k)
+        {
+            return range.higherKey(k);
+        }
+
+        @Override
+        public K pollFirst()
+        {
+            final Map.Entry<K, V> e = range.pollFirstEntry();
+            return e == null ? null : e.getKey();
+        }
+
+        @Override
+        public K pollLast()
+        {
+            final Map.Entry<K, V> e = range.pollLastEntry();
+            return e == null ? null : e.getKey();
+        }
+
+        @Override
+        public NavigableSet<K> descendingSet()
+        {
+            return range.descendingKeySet();
+        }
+
+        @Override
+        public Iterator<K> descendingIterator()
+        {
+            return descendingSet().iterator();
+        }
+
+        @Override
+        public NavigableSet<K> subSet(final K from, final boolean fromInclusive, final K to, final boolean toInclusive)
+        {
+            return range.subMap(from, fromInclusive, to, toInclusive).navigableKeySet();
+        }
+
+        @Override
+        public NavigableSet<K> headSet(final K to, final boolean inclusive)
+        {
+            return range.headMap(to, inclusive).navigableKeySet();
+        }
+
+        @Override
+        public NavigableSet<K> tailSet(final K from, final boolean inclusive)
+        {
+            return range.tailMap(from, inclusive).navigableKeySet();
+        }
+
+        @Override
+        public SortedSet<K> subSet(final K from, final K to)
+        {
+            return subSet(from, true, to, false);
+        }
+
+        @Override
+        public SortedSet<K> headSet(final K to)
+        {
+            return headSet(to, false);
+        }
+
+        @Override
+        public SortedSet<K> tailSet(final K from)
+        {
+            return tailSet(from, true);
+        }
+    }
+
+    /**
+     * The entries in order, whose values are loaded as they are iterated.
+     */
+    @Override
+    public Set<Map.Entry<K, V>> entrySet()
+    {
+        return all.entrySet();
+    }
+
+    @Override
+    public NavigableSet<K> keySet()
+    {
+        return all.navigableKeySet();
+    }
+
+    @Override
+    public Comparator<? super K> comparator()
+    {
+        return null;
+    }
+
+    @Override
+    public K firstKey()
+    {
+        return all.firstKey();
+    }
+
+    @Override
+    public K lastKey()
+    {
+        return all.lastKey();
+    }
+
+    @Override
+    public Map.Entry<K, V> lowerEntry(final K key)
+    {
+        return all.lowerEntry(key);
+    }
+
+    @Override
+    public K lowerKey(final K key)
+    {
+        return all.lowerKey(key);
+    }
+
+    @Override
+    public Map.Entry<K, V> floorEntry(final K key)
+    {
+        return all.floorEntry(key);
+    }
+
+    @Override
+    public K floorKey(final K key)
+    {
+        return all.floorKey(key);
+    }
+
+    @Override
+    public Map.Entry<K, V> ceilingEntry(final K key)
+    {
+        return all.ceilingEntry(key);
+    }
+
+    @Override
+    public K ceilingKey(final K key)
+    {
+        return all.ceilingKey(key);
+    }
+
+    @Override
+    public Map.Entry<K, V> higherEntry(final K key)
+    {
+        return all.higherEntry(key);
+    }
+
+    @Override
+    public K higherKey(final K key)
+    {
+        return all.higherKey(key);
+    }
+
+    @Override
+    public Map.Entry<K, V> firstEntry()
+    {
+        return all.firstEntry();
+    }
+
+    @Override
+    public Map.Entry<K, V> lastEntry()
+    {
+        return all.lastEntry();
+    }
+
+    @Override
+    public Map.Entry<K, V> pollFirstEntry()
+    {
+        return all.pollFirstEntry();
+    }
+
+    @Override
+    public Map.Entry<K, V> pollLastEntry()
+    {
+        return all.pollLastEntry();
+    }
+
+    @Override
+    public NavigableMap<K, V> descendingMap()
+    {
+        return all.descendingMap();
+    }
+
+    @Override
+    public NavigableSet<K> navigableKeySet()
+    {
+        return all.navigableKeySet();
+    }
+
+    @Override
+    public NavigableSet<K> descendingKeySet()
+    {
+        return all.descendingKeySet();
+    }
+
+    @Override
+    public NavigableMap<K, V> subMap(final K fromKey, final boolean fromInclusive, final K toKey, final boolean toInclusive)
+    {
+        return all.subMap(fromKey, fromInclusive, toKey, toInclusive);
+    }
+
+    @Override
+    public NavigableMap<K, V> headMap(final K toKey, final boolean inclusive)
+    {
+        return all.headMap(toKey, inclusive);
+    }
+
+    @Override
+    public NavigableMap<K, V> tailMap(final K fromKey, final boolean inclusive)
+    {
+        return all.tailMap(fromKey, inclusive);
+    }
+
+    @Override
+    public SortedMap<K, V> subMap(final K fromKey, final K toKey)
+    {
+        return all.subMap(fromKey, toKey);
+    }
+
+    @Override
+    public SortedMap<K, V> headMap(final K toKey)
+    {
+        return all.headMap(toKey);
+    }
+
+    @Override
+    public SortedMap<K, V> tailMap(final K fromKey)
+    {
+        return all.tailMap(fromKey);
+    }
+}
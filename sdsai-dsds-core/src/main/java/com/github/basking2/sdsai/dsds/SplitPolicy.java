@@ -0,0 +1,53 @@
+package com.github.basking2.sdsai.dsds;
+
+/**
+ * Chooses where a full {@link BTree} node is split.
+ *
+ * The key at the returned index moves up into the parent. The keys before it
+ * stay in the left node and the keys after it go to the right node.
+ * The {@link BTree} clamps the index so that each node holds at least one key
+ * once the key being inserted is added.
+ *
+ * @see BTree#setSplitPolicy(SplitPolicy)
+ */
+@FunctionalInterface
+public interface SplitPolicy {
+
+    /**
+     * Split at the middle so each node holds {@code minData} keys.
+     */
+    SplitPolicy EVEN = (size, insertionPoint, rightmost) -> size / 2;
+
+    /**
+     * @param size The number of keys in the full node.
+     * @param insertionPoint Where the key being inserted falls among the node's keys.
+     * @param rightmost True if the node is the last node of its level in the tree.
+     * @return The index of the key that moves up into the parent.
+     */
+    int split(int size, int insertionPoint, boolean rightmost);
+
+    /**
+     * Split evenly except when a key greater than every key in the tree is inserted.
+     * Then the left node keeps {@code fillFactor} of the keys and the right node,
+     * which receives the following appends, the rest.
+     *
+     * Monotonic keys, such as timestamps or sequence numbers, then fill nodes
+     * rather than leaving every node half full.
+     *
+     * @param fillFactor The share of keys, from 0.5 to 1.0, that the left node keeps.
+     * @return The split policy.
+     */
+    static SplitPolicy rightmostAppend(final double fillFactor) {
+        if (fillFactor < 0.5 || fillFactor > 1.0) {
+            throw new IllegalArgumentException("Fill factor must be from 0.5 to 1.0: "+fillFactor);
+        }
+
+        return (size, insertionPoint, rightmost) -> {
+            if (rightmost && insertionPoint == size) {
+                return Math.max(size / 2, (int) (fillFactor * size));
+            }
+
+            return size / 2;
+        };
+    }
+}
@@ -24,11 +24,21 @@ package com.github.basking2.sdsai.dsds.fs;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.FileInputStream;
+import java.io.Flushable;
 import java.io.IOException;
 import java.io.FileNotFoundException;
 import java.io.Serializable;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.UUID;
 
 import com.github.basking2.sdsai.dsds.node.Node;
 import com.github.basking2.sdsai.dsds.node.NodeStore;
@@ -36,22 +46,74 @@ import com.github.basking2.sdsai.dsds.node.NodeStoreException;
 import com.github.basking2.sdsai.dsds.node.NodeStoreNodeNotFoundException;
 
 /**
- * A trivial storage class that puts all nodes into a single directory
+ * A trivial storage class that puts all nodes into a directory
  * with filenames represented by the hex-encoding of their key names.
+ *
+ * By default every file is put directly in the directory and written
+ * in place. For large stores, {@link Layout#SHARDED} hashes each name into
+ * two levels of subdirectories, 256 wide each, so no single directory grows huge.
+ *
+ * With atomic writes, each file is written to a temporary file in the same
+ * directory and then moved over the target, so readers and a crashed process
+ * see either the old or the new file. Files may also be synced to
+ * the device. With a sync batch of 1 each temporary file is synced before it is
+ * moved, so a crash of the machine also leaves either the old or the new file,
+ * never a truncated one. With a larger batch, written files and their directories are synced
+ * together after that many writes, or on {@link #flush()}. This trades a window in which
+ * a crash may lose recent writes for far fewer sync calls. In that window the move may
+ * reach the device before the data it names, so a crash of the machine may leave a
+ * truncated file even with atomic writes. The same is true with a sync batch of 0.
  */
 public class DirectoryNodeStore<K extends Serializable, D extends Serializable> 
-implements NodeStore<K, File, D>
+implements NodeStore<K, File, D>, Flushable
 {
+    /**
+     * How files are placed within the store's directory.
+     */
+    public enum Layout {
+        /**
+         * All files are in the store's directory.
+         */
+        FLAT,
+
+        /**
+         * Files are in two levels of subdirectories chosen by a hash of the file name.
+         */
+        SHARDED
+    }
 
     private File directory;
     private long idGenerator;
+    private final Layout layout;
+    private final boolean atomicWrites;
+    private final int syncBatch;
+
+    /**
+     * Files written since the last group sync.
+     */
+    private final Set<Path> unsynced = new LinkedHashSet<>();
     
     public DirectoryNodeStore(final String directory) {
         this(new File(directory));
     }
     
     public DirectoryNodeStore(final File directory) {
+        this(directory, Layout.FLAT, false, 0);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param directory The directory to store files in.
+     * @param layout How files are placed in the directory.
+     * @param atomicWrites Write to a temporary file and move it into place.
+     * @param syncBatch 0 never syncs. 1 syncs each write. Larger values sync files in groups of this size.
+     */
+    public DirectoryNodeStore(final File directory, final Layout layout, final boolean atomicWrites, final int syncBatch) {
         this.directory = directory;
+        this.layout = layout;
+        this.atomicWrites = atomicWrites;
+        this.syncBatch = syncBatch;
         
         if ( ! directory.exists() )
             directory.mkdirs();
@@ -140,28 +202,132 @@ implements NodeStore<K, File, D>
     throws NodeStoreException 
     {
         try {
-            final FileOutputStream fos = new FileOutputStream(file);
+            final File parent = file.getParentFile();
+            if (layout == Layout.SHARDED && !parent.isDirectory()) {
+                parent.mkdirs();
+            }
+
+            final File target = atomicWrites ?
+                new File(parent, "."+file.getName()+"."+UUID.randomUUID()+".tmp") :
+                file;
+
+            final FileOutputStream fos = new FileOutputStream(target);
             final ObjectOutputStream oos = new ObjectOutputStream(fos);
                 
             oos.writeObject(d);
+            oos.flush();
+
+            if (syncBatch == 1) {
+                fos.getFD().sync();
+            }
                 
             oos.close();
             fos.close();
+
+            if (atomicWrites) {
+                try {
+                    Files.move(target.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                } catch (final AtomicMoveNotSupportedException e) {
+                    Files.move(target.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+
+            if (syncBatch == 1) {
+                if (atomicWrites) {
+                    sync(parent.toPath(), true);
+                }
+            } else if (syncBatch > 1) {
+                groupSync(file.toPath());
+            }
         } catch (final IOException e) {
             throw new NodeStoreException(e);
         }            
     }
 
+    private synchronized void groupSync(final Path path) throws IOException {
+        unsynced.add(path);
+        if (unsynced.size() >= syncBatch) {
+            syncUnsynced();
+        }
+    }
+
+    private void syncUnsynced() throws IOException {
+        final Set<Path> directories = new LinkedHashSet<>();
+        for (final Path path : unsynced) {
+            if (Files.exists(path)) {
+                sync(path, false);
+            }
+            directories.add(path.getParent());
+        }
+
+        if (atomicWrites) {
+            for (final Path dir : directories) {
+                sync(dir, true);
+            }
+        }
+
+        unsynced.clear();
+    }
+
+    /**
+     * Sync a file or directory. Some platforms cannot open directories, which is ignored.
+     */
+    private static void sync(final Path path, final boolean isDirectory) throws IOException {
+        try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (final IOException e) {
+            if (!isDirectory) {
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Sync any files written since the last group sync.
+     */
+    @Override
+    public synchronized void flush() {
+        try {
+            syncUnsynced();
+        } catch (final IOException e) {
+            throw new NodeStoreException(e);
+        }
+    }
+
+    /**
+     * The directory a file name is placed in.
+     */
+    private File directoryFor(final String name) {
+        if (layout == Layout.FLAT) {
+            return directory;
+        }
+
+        int h = name.hashCode();
+        h ^= h >>> 16;
+        h *= 0x45d9f3b;
+        h ^= h >>> 16;
+
+        return new File(
+            new File(directory, String.format("%02x", h & 0xff)),
+            String.format("%02x", (h >>> 8) & 0xff));
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public File generateKey(final Node<K,File> node, final D d)
     {
+        if (layout == Layout.SHARDED) {
+            // A random UUID will not collide, so save the stat call.
+            final String name = UUID.randomUUID().toString();
+            return new File(directoryFor(name), name);
+        }
+
         File f;
         
         do {
-            f = new File( directory, java.util.UUID.randomUUID().toString());
+            f = new File( directory, UUID.randomUUID().toString());
         } while ( f.exists());
         
         return f;
@@ -173,6 +339,7 @@ implements NodeStore<K, File, D>
     @Override
     public File convert(K key) throws NodeStoreException
     {
-        return new File(directory, key.toString());
+        final String name = key.toString();
+        return new File(directoryFor(name), name);
     }
 } 
@@ -0,0 +1,539 @@
+package com.github.basking2.sdsai.dsds.fs;
+
+import com.github.basking2.sdsai.dsds.node.Node;
+import com.github.basking2.sdsai.dsds.node.NodeStore;
+import com.github.basking2.sdsai.dsds.node.NodeStoreException;
+import com.github.basking2.sdsai.dsds.node.NodeStoreNodeNotFoundException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * A {@link NodeStore} that appends every write to a log of segment files.
+ *
+ * Each store or remove appends one record to the active segment. Removes append a tombstone.
+ * When the active segment reaches {@code maxSegmentBytes}, a new one is started. A hash index
+ * in memory maps each key to the location of its latest record. It is rebuilt by replaying the
+ * segments on open. Reads are positional reads ({@code pread}) against the segment files and do
+ * not lock.
+ *
+ * Superseded records are garbage. {@link #compact()} rewrites the live records of every sealed
+ * segment whose live fraction is below {@code compactThreshold}, then deletes that segment. A
+ * tombstone is only carried forward while an older segment that may still hold the removed
+ * record exists. {@link #startCompactor(long, TimeUnit)} runs compaction on a background thread.
+ *
+ * Writes are serialized. They reach the operating system when made, and reach the device on
+ * {@link #flush()} or {@link #close()}. A segment is also forced to the device when it is sealed,
+ * and compaction forces the records it moved before it deletes their old segment.
+ *
+ * @param <K> The user key type. Keys are converted to store keys with {@link Object#toString()}.
+ * @param <D> The user data type.
+ */
+public class LogStructuredNodeStore<K extends Serializable, D extends Serializable>
+    implements NodeStore<K, String, D>, Closeable, Flushable
+{
+    private static final Logger logger = LoggerFactory.getLogger(LogStructuredNodeStore.class);
+
+    public static final long DEFAULT_MAX_SEGMENT_BYTES = 64L * 1024L * 1024L;
+    public static final double DEFAULT_COMPACT_THRESHOLD = 0.5;
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    /* Record layout: crc, kind, op, key length, value length, key, value. */
+    private static final int R_HEADER = 4 + 1 + 1 + 4 + 4;
+    private static final byte NODE = 1;
+    private static final byte DATA = 2;
+    private static final byte PUT = 1;
+    private static final byte TOMBSTONE = 2;
+
+    private final File directory;
+    private final long maxSegmentBytes;
+    private final double compactThreshold;
+
+    private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+    private final Map<String, Location> nodes = new ConcurrentHashMap<>();
+    private final Map<String, Location> values = new ConcurrentHashMap<>();
+
+    private Segment active;
+    private ScheduledExecutorService compactor;
+
+    public LogStructuredNodeStore(final String directory) {
+        this(new File(directory));
+    }
+
+    public LogStructuredNodeStore(final File directory) {
+        this(directory, DEFAULT_MAX_SEGMENT_BYTES, DEFAULT_COMPACT_THRESHOLD);
+    }
+
+    /**
+     * Open or create a log.
+     *
+     * @param directory The directory holding the segment files.
+     * @param maxSegmentBytes The size at which the active segment is sealed and a new one started.
+     * @param compactThreshold Sealed segments with a smaller fraction of live bytes are compacted.
+     */
+    public LogStructuredNodeStore(final File directory, final long maxSegmentBytes, final double compactThreshold) {
+        this.directory = directory;
+        this.maxSegmentBytes = maxSegmentBytes;
+        this.compactThreshold = compactThreshold;
+
+        if (!directory.exists()) {
+            directory.mkdirs();
+        }
+
+        final File[] files = directory.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        if (files != null) {
+            for (final File f : files) {
+                final String id = f.getName().substring(SEGMENT_PREFIX.length(), f.getName().length() - SEGMENT_SUFFIX.length());
+                final long segmentId = Long.parseLong(id, 16);
+                segments.put(segmentId, new Segment(segmentId, f));
+            }
+        }
+
+        for (final Segment segment : segments.values()) {
+            replay(segment, segment == segments.lastEntry().getValue());
+        }
+
+        active = segments.isEmpty() ? newSegment(0) : segments.lastEntry().getValue();
+    }
+
+    /**
+     * Start compacting on a background thread.
+     *
+     * @param period The time between compactions.
+     * @param unit The unit of {@code period}.
+     */
+    public synchronized void startCompactor(final long period, final TimeUnit unit) {
+        if (compactor == null) {
+            compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+                final Thread t = new Thread(r, "compactor-"+directory.getName());
+                t.setDaemon(true);
+                return t;
+            });
+            compactor.scheduleWithFixedDelay(() -> {
+                try {
+                    compact();
+                }
+                catch (final RuntimeException e) {
+                    logger.error("Compacting "+directory, e);
+                }
+            }, period, period, unit);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public D loadData(final String key) throws NodeStoreException {
+        final byte[] value = read(values, key);
+        return value == null ? null : Serialization.fromBytes(value, 0, value.length);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Node<K, String> loadNode(final String key) throws NodeStoreException {
+        final byte[] value = read(nodes, key);
+        if (value == null) {
+            throw new NodeStoreNodeNotFoundException("Could not find node "+key);
+        }
+        return Serialization.fromBytes(value, 0, value.length);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void store(final String key, final D data) throws NodeStoreException {
+        append(DATA, PUT, key, Serialization.toBytes(data));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void store(final String key, final Node<K, String> node) throws NodeStoreException {
+        append(NODE, PUT, key, Serialization.toBytes(node));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeNode(final String key) throws NodeStoreException {
+        if (nodes.containsKey(key)) {
+            append(NODE, TOMBSTONE, key, new byte[0]);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeData(final String key) throws NodeStoreException {
+        if (values.containsKey(key)) {
+            append(DATA, TOMBSTONE, key, new byte[0]);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String generateKey(final Node<K, String> node, final D value) {
+        return UUID.randomUUID().toString();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String convert(final K key) throws NodeStoreException {
+        return key.toString();
+    }
+
+    /**
+     * Force the active segment to the device.
+     */
+    @Override
+    public synchronized void flush() {
+        try {
+            active.channel.force(false);
+        }
+        catch (final IOException e) {
+            throw new NodeStoreException("Flushing "+active.file, e);
+        }
+    }
+
+    /**
+     * Stop the compactor, flush, and close all segments.
+     */
+    @Override
+    public void close() {
+        final ScheduledExecutorService c;
+        synchronized (this) {
+            c = compactor;
+            compactor = null;
+        }
+
+        // Do not interrupt a running compaction. An interrupted read closes the segment's channel.
+        if (c != null) {
+            c.shutdown();
+            try {
+                c.awaitTermination(1, TimeUnit.MINUTES);
+            }
+            catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        synchronized (this) {
+            flush();
+
+            for (final Segment segment : segments.values()) {
+                segment.close();
+            }
+        }
+    }
+
+    /**
+     * Compact sealed segments whose fraction of live bytes is below the compaction threshold.
+     *
+     * @return The number of segments removed.
+     */
+    public synchronized int compact() {
+        int compacted = 0;
+
+        for (final Segment segment : new ArrayList<>(segments.headMap(active.id).values())) {
+            final long size = segment.size.get();
+            if (size == 0 || (double) segment.live.get() / size < compactThreshold) {
+                compact(segment);
+                compacted++;
+            }
+        }
+
+        return compacted;
+    }
+
+    /**
+     * @return The number of segment files.
+     */
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    private void compact(final Segment segment) {
+        final boolean olderSegments = segments.lowerKey(segment.id) != null;
+
+        try {
+            final long size = segment.channel.size();
+            final ByteBuffer header = ByteBuffer.allocate(R_HEADER);
+            for (long position = 0; position + R_HEADER <= size; ) {
+                header.clear();
+                readFully(segment.channel, header, position);
+                final byte kind = header.get(4);
+                final byte op = header.get(5);
+                final int keyLength = header.getInt(6);
+                final int valueLength = header.getInt(10);
+                final int length = R_HEADER + keyLength + valueLength;
+                final ByteBuffer key = ByteBuffer.allocate(keyLength);
+                readFully(segment.channel, key, position + R_HEADER);
+                final String k = new String(key.array(), StandardCharsets.UTF_8);
+                final Map<String, Location> index = index(kind);
+
+                if (op == PUT) {
+                    final Location location = index.get(k);
+                    if (location != null && location.segment == segment && location.offset == position) {
+                        final ByteBuffer value = ByteBuffer.allocate(valueLength);
+                        readFully(segment.channel, value, position + R_HEADER + keyLength);
+                        append(kind, PUT, k, value.array());
+                    }
+                }
+                else if (olderSegments && !index.containsKey(k)) {
+                    // The removed record may still be in an older segment.
+                    append(kind, TOMBSTONE, k, new byte[0]);
+                }
+
+                position += length;
+            }
+        }
+        catch (final IOException e) {
+            throw new NodeStoreException("Compacting "+segment.file, e);
+        }
+
+        // The moved records must be durable before their only other copy is deleted.
+        flush();
+
+        segments.remove(segment.id);
+        segment.close();
+        try {
+            Files.deleteIfExists(segment.file.toPath());
+        }
+        catch (final IOException e) {
+            throw new NodeStoreException("Deleting "+segment.file, e);
+        }
+        syncDirectory();
+    }
+
+    /**
+     * Force the directory so that created and deleted segment files survive a crash.
+     */
+    private void syncDirectory() {
+        try (final FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+        catch (final IOException e) {
+            // Some platforms, such as Windows, cannot open a directory.
+            logger.debug("Could not force directory {}.", directory, e);
+        }
+    }
+
+    private Map<String, Location> index(final byte kind) {
+        return kind == NODE ? nodes : values;
+    }
+
+    private byte[] read(final Map<String, Location> index, final String key) {
+        while (true) {
+            final Location location = index.get(key);
+            if (location == null) {
+                return null;
+            }
+
+            final ByteBuffer value = ByteBuffer.allocate(location.valueLength);
+            try {
+                readFully(location.segment.channel, value, location.valueOffset);
+                return value.array();
+            }
+            catch (final ClosedChannelException e) {
+                // The segment was compacted away. The index now points at the record's new location.
+                if (index.get(key) == location) {
+                    throw new NodeStoreException("Segment closed reading "+key, e);
+                }
+            }
+            catch (final IOException e) {
+                throw new NodeStoreException("Reading "+key, e);
+            }
+        }
+    }
+
+    private synchronized void append(final byte kind, final byte op, final String key, final byte[] value) {
+        final byte[] k = key.getBytes(StandardCharsets.UTF_8);
+        final int length = R_HEADER + k.length + value.length;
+        final ByteBuffer record = ByteBuffer.allocate(length);
+        record.putInt(0).put(kind).put(op).putInt(k.length).putInt(value.length).put(k).put(value);
+
+        final CRC32 crc = new CRC32();
+        crc.update(record.array(), 4, length - 4);
+        record.putInt(0, (int) crc.getValue());
+        record.flip();
+
+        if (active.size.get() >= maxSegmentBytes) {
+            try {
+                active.channel.force(false);
+            }
+            catch (final IOException e) {
+                throw new NodeStoreException("Sealing "+active.file, e);
+            }
+            active = newSegment(active.id + 1);
+            syncDirectory();
+        }
+
+        final long offset = active.size.get();
+        try {
+            while (record.hasRemaining()) {
+                active.channel.write(record, offset + record.position());
+            }
+        }
+        catch (final IOException e) {
+            throw new NodeStoreException("Appending to "+active.file, e);
+        }
+        active.size.addAndGet(length);
+
+        apply(kind, op, key, new Location(active, offset, length, offset + R_HEADER + k.length, value.length));
+    }
+
+    /**
+     * Update the index and the live byte counts for a record that was appended or replayed.
+     */
+    private void apply(final byte kind, final byte op, final String key, final Location location) {
+        final Map<String, Location> index = index(kind);
+        final Location old = op == PUT ? index.put(key, location) : index.remove(key);
+        if (old != null) {
+            old.segment.live.addAndGet(-old.length);
+        }
+        if (op == PUT) {
+            location.segment.live.addAndGet(location.length);
+        }
+    }
+
+    /**
+     * Rebuild the index from a segment. A torn record at the end of the last segment is truncated.
+     */
+    private void replay(final Segment segment, final boolean last) {
+        try {
+            final long size = segment.channel.size();
+            final ByteBuffer header = ByteBuffer.allocate(R_HEADER);
+            long position = 0;
+            while (position + R_HEADER <= size) {
+                header.clear();
+                readFully(segment.channel, header, position);
+                final int keyLength = header.getInt(6);
+                final int valueLength = header.getInt(10);
+                if (keyLength < 0 || valueLength < 0 || position + R_HEADER + keyLength + valueLength > size) {
+                    break;
+                }
+
+                final int length = R_HEADER + keyLength + valueLength;
+                final ByteBuffer record = ByteBuffer.allocate(length);
+                readFully(segment.channel, record, position);
+                final CRC32 crc = new CRC32();
+                crc.update(record.array(), 4, length - 4);
+                if ((int) crc.getValue() != record.getInt(0)) {
+                    break;
+                }
+
+                final String key = new String(record.array(), R_HEADER, keyLength, StandardCharsets.UTF_8);
+                apply(record.get(4), record.get(5), key, new Location(segment, position, length, position + R_HEADER + keyLength, valueLength));
+                position += length;
+            }
+
+            if (position != size) {
+                if (last) {
+                    logger.warn("Truncating torn record at {} in {}.", position, segment.file);
+                    segment.channel.truncate(position);
+                }
+                else {
+                    throw new NodeStoreException("Corrupt record at "+position+" in "+segment.file);
+                }
+            }
+
+            segment.size.set(position);
+        }
+        catch (final IOException e) {
+            throw new NodeStoreException("Replaying "+segment.file, e);
+        }
+    }
+
+    private Segment newSegment(final long id) {
+        final Segment segment = new Segment(id, new File(directory, String.format("%s%016x%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX)));
+        segments.put(id, segment);
+        return segment;
+    }
+
+    private static void readFully(final FileChannel channel, final ByteBuffer buffer, final long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of segment.");
+            }
+        }
+    }
+
+    private static final class Segment {
+        final long id;
+        final File file;
+        final FileChannel channel;
+        final AtomicLong size = new AtomicLong();
+        final AtomicLong live = new AtomicLong();
+
+        Segment(final long id, final File file) {
+            this.id = id;
+            this.file = file;
+            try {
+                this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                this.size.set(channel.size());
+            }
+            catch (final IOException e) {
+                throw new NodeStoreException("Opening "+file, e);
+            }
+        }
+
+        void close() {
+            try {
+                channel.close();
+            }
+            catch (final IOException e) {
+                throw new NodeStoreException("Closing "+file, e);
+            }
+        }
+    }
+
+    private static final class Location {
+        final Segment segment;
+        final long offset;
+        final int length;
+        final long valueOffset;
+        final int valueLength;
+
+        Location(final Segment segment, final long offset, final int length, final long valueOffset, final int valueLength) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.valueOffset = valueOffset;
+            this.valueLength = valueLength;
+        }
+    }
+}
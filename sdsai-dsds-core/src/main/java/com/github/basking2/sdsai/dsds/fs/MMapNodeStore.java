@@ -0,0 +1,775 @@
+package com.github.basking2.sdsai.dsds.fs;
+
+import com.github.basking2.sdsai.dsds.node.Node;
+import com.github.basking2.sdsai.dsds.node.NodeStore;
+import com.github.basking2.sdsai.dsds.node.NodeStoreException;
+import com.github.basking2.sdsai.dsds.node.NodeStoreNodeNotFoundException;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+/**
+ * A {@link NodeStore} that keeps every node and value in a single memory-mapped file.
+ *
+ * The file is divided into fixed-size pages. Page 0 is a header. Small records share slotted
+ * pages, each holding a slot directory that grows from the front and record bytes that grow from
+ * the back. A record too large for a slotted page is written to a run of contiguous pages.
+ * Pages are mapped into memory in regions of {@code pagesPerRegion} pages, so a file only ever
+ * has a few mappings.
+ *
+ * Keys are held in memory, mapping each key to a page and slot. {@link #flush()} and
+ * {@link #close()} write this index as a footer after the last page. On open the index is read back
+ * from the footer. If the file was not closed cleanly the pages are scanned instead; every record
+ * carries its key and a sequence number for this purpose. A free-space map of the slotted pages
+ * is rebuilt from the page headers on open.
+ *
+ * Writes land in the page cache when they are made. They are only forced to the device by
+ * {@link #flush()} or {@link #close()}.
+ *
+ * All methods are synchronized.
+ *
+ * @param <K> The user key type. Keys are converted to store keys with {@link Object#toString()}.
+ * @param <D> The user data type.
+ */
+public class MMapNodeStore<K extends Serializable, D extends Serializable>
+    implements NodeStore<K, String, D>, Closeable, Flushable
+{
+    public static final int DEFAULT_PAGE_SIZE = 4096;
+    public static final int DEFAULT_PAGES_PER_REGION = 16384;
+
+    private static final int MAGIC = 0x44534d4d;
+    private static final int VERSION = 1;
+
+    /* Header page layout. */
+    private static final int H_MAGIC = 0;
+    private static final int H_VERSION = 4;
+    private static final int H_PAGE_SIZE = 8;
+    private static final int H_PAGES_PER_REGION = 12;
+    private static final int H_CLEAN = 16;
+    private static final int H_PAGE_COUNT = 20;
+    private static final int H_FOOTER_OFFSET = 24;
+    private static final int H_FOOTER_LENGTH = 32;
+    private static final int H_FOOTER_CRC = 36;
+
+    /* Page types. */
+    private static final byte FREE = 0;
+    private static final byte SLOTTED = 1;
+    private static final byte OVERFLOW = 2;
+
+    /* Page header layout. A slotted page stores a slot count and the start of its record data.
+     * An overflow page stores the number of pages in its run and the length of its record. */
+    private static final int P_TYPE = 0;
+    private static final int P_SLOTS = 4;
+    private static final int P_PAGES = 4;
+    private static final int P_DATA_START = 8;
+    private static final int P_LENGTH = 8;
+    private static final int P_HEADER = 12;
+    private static final int SLOT_SIZE = 8;
+    private static final int OVERFLOW_SLOT = 0xffff;
+
+    /* Record layout: kind, sequence number, key length, key, payload. */
+    private static final byte NODE = 1;
+    private static final byte DATA = 2;
+    private static final int R_HEADER = 1 + 8 + 4;
+
+    private static final int FREE_BUCKETS = 16;
+
+    private final FileChannel channel;
+    private final int pageSize;
+    private final int pagesPerRegion;
+    private final List<MappedByteBuffer> regions = new ArrayList<>();
+
+    private final Map<String, Long> nodes = new HashMap<>();
+    private final Map<String, Long> values = new HashMap<>();
+
+    /**
+     * Free bytes in each slotted page, or -1 for pages that are not slotted.
+     */
+    private int[] pageFree = new int[64];
+
+    /**
+     * Slotted pages bucketed by their free bytes.
+     */
+    private final BitSet[] freeBuckets = new BitSet[FREE_BUCKETS];
+
+    /**
+     * Pages that hold nothing.
+     */
+    private final BitSet freePages = new BitSet();
+
+    private int pageCount;
+    private long sequence;
+    private boolean clean;
+
+    public MMapNodeStore(final String file) {
+        this(new File(file));
+    }
+
+    public MMapNodeStore(final File file) {
+        this(file, DEFAULT_PAGE_SIZE, DEFAULT_PAGES_PER_REGION);
+    }
+
+    /**
+     * Open or create a store.
+     *
+     * @param file The file to store everything in.
+     * @param pageSize The page size for a new file. An existing file keeps its page size.
+     * @param pagesPerRegion The pages in each mapped region for a new file. This also bounds
+     *                       the largest record. An existing file keeps its region size.
+     */
+    public MMapNodeStore(final File file, final int pageSize, final int pagesPerRegion) {
+        for (int i = 0; i < freeBuckets.length; i++) {
+            freeBuckets[i] = new BitSet();
+        }
+        Arrays.fill(pageFree, -1);
+
+        try {
+            final File parent = file.getAbsoluteFile().getParentFile();
+            if (!parent.exists()) {
+                parent.mkdirs();
+            }
+
+            channel = FileChannel.open(
+                file.toPath(),
+                StandardOpenOption.CREATE,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+
+            if (channel.size() == 0) {
+                if (pageSize < 512 || Integer.bitCount(pageSize) != 1) {
+                    throw new NodeStoreException("Page size must be a power of 2 of at least 512.");
+                }
+                this.pageSize = pageSize;
+                this.pagesPerRegion = pagesPerRegion;
+                create();
+            }
+            else {
+                final ByteBuffer header = ByteBuffer.allocate(H_FOOTER_CRC + 8);
+                channel.read(header, 0);
+                if (header.getInt(H_MAGIC) != MAGIC || header.getInt(H_VERSION) != VERSION) {
+                    throw new NodeStoreException("Not a store file: "+file);
+                }
+                this.pageSize = header.getInt(H_PAGE_SIZE);
+                this.pagesPerRegion = header.getInt(H_PAGES_PER_REGION);
+                open();
+            }
+        }
+        catch (final IOException e) {
+            throw new NodeStoreException("Opening "+file, e);
+        }
+    }
+
+    private void create() throws IOException {
+        mapThrough(0);
+        final ByteBuffer h = regions.get(0);
+        h.putInt(H_MAGIC, MAGIC);
+        h.putInt(H_VERSION, VERSION);
+        h.putInt(H_PAGE_SIZE, pageSize);
+        h.putInt(H_PAGES_PER_REGION, pagesPerRegion);
+        h.putInt(H_CLEAN, 1);
+        h.putInt(H_PAGE_COUNT, 1);
+        h.putLong(H_FOOTER_OFFSET, 0);
+        h.putInt(H_FOOTER_LENGTH, 0);
+        h.putLong(H_FOOTER_CRC, 0);
+        pageCount = 1;
+        sequence = 0;
+        clean = true;
+    }
+
+    private void open() throws IOException {
+        mapThrough(0);
+        final ByteBuffer h = regions.get(0);
+        pageCount = h.getInt(H_PAGE_COUNT);
+        mapThrough(pageCount - 1);
+        ensurePageFree(pageCount);
+
+        if (h.getInt(H_CLEAN) != 1 || !readFooter(h.getLong(H_FOOTER_OFFSET), h.getInt(H_FOOTER_LENGTH), h.getLong(H_FOOTER_CRC))) {
+            nodes.clear();
+            values.clear();
+            scanRecords();
+        }
+
+        scanFreeSpace();
+        clean = h.getInt(H_CLEAN) == 1;
+    }
+
+    private boolean readFooter(final long offset, final int length, final long crc) throws IOException {
+        if (length <= 0) {
+            return offset == 0;
+        }
+
+        final ByteBuffer footer = ByteBuffer.allocate(length);
+        while (footer.hasRemaining()) {
+            if (channel.read(footer, offset + footer.position()) < 0) {
+                return false;
+            }
+        }
+
+        final CRC32 check = new CRC32();
+        check.update(footer.array(), 0, length);
+        if (check.getValue() != crc) {
+            return false;
+        }
+
+        footer.flip();
+        sequence = footer.getLong();
+        for (int count = footer.getInt(); count > 0; count--) {
+            final byte kind = footer.get();
+            final byte[] key = new byte[footer.getInt()];
+            footer.get(key);
+            index(kind).put(new String(key, StandardCharsets.UTF_8), footer.getLong());
+        }
+
+        return true;
+    }
+
+    /**
+     * Rebuild the key index by reading every record. Where a crash left two copies of a key
+     * the one with the larger sequence number wins and the other is deleted.
+     */
+    private void scanRecords() {
+        final Map<String, Long> nodeSequences = new HashMap<>();
+        final Map<String, Long> valueSequences = new HashMap<>();
+        sequence = 0;
+
+        for (int p = 1; p < pageCount; ) {
+            final ByteBuffer page = pages(p, 1);
+            final byte type = page.get(P_TYPE);
+            if (type == SLOTTED) {
+                final int slots = page.getInt(P_SLOTS);
+                for (int s = 0; s < slots; s++) {
+                    if (page.getInt(P_HEADER + s * SLOT_SIZE + 4) >= 0) {
+                        scanRecord(location(p, s), nodeSequences, valueSequences);
+                    }
+                }
+                p++;
+            }
+            else if (type == OVERFLOW) {
+                scanRecord(location(p, OVERFLOW_SLOT), nodeSequences, valueSequences);
+                p += page.getInt(P_PAGES);
+            }
+            else {
+                p++;
+            }
+        }
+    }
+
+    private void scanRecord(final long location, final Map<String, Long> nodeSequences, final Map<String, Long> valueSequences) {
+        final byte[] record = read(location);
+        final ByteBuffer b = ByteBuffer.wrap(record);
+        final byte kind = b.get();
+        final long seq = b.getLong();
+        final String key = new String(record, R_HEADER, b.getInt(), StandardCharsets.UTF_8);
+        final Map<String, Long> sequences = kind == NODE ? nodeSequences : valueSequences;
+        final Map<String, Long> index = index(kind);
+
+        sequence = Math.max(sequence, seq);
+
+        final Long previous = sequences.get(key);
+        if (previous == null || previous < seq) {
+            final Long old = index.put(key, location);
+            sequences.put(key, seq);
+            if (old != null) {
+                free(old);
+            }
+        }
+        else {
+            free(location);
+        }
+    }
+
+    /**
+     * Rebuild the free-space map from the page headers.
+     */
+    private void scanFreeSpace() {
+        for (int p = 1; p < pageCount; ) {
+            final ByteBuffer page = pages(p, 1);
+            final byte type = page.get(P_TYPE);
+            if (type == SLOTTED) {
+                setPageFree(p, computeFree(page));
+                p++;
+            }
+            else if (type == OVERFLOW) {
+                p += page.getInt(P_PAGES);
+            }
+            else {
+                freePages.set(p);
+                p++;
+            }
+        }
+    }
+
+    private Map<String, Long> index(final byte kind) {
+        return kind == NODE ? nodes : values;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized D loadData(final String key) throws NodeStoreException {
+        final Long location = values.get(key);
+        if (location == null) {
+            return null;
+        }
+
+        return payload(read(location));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized Node<K, String> loadNode(final String key) throws NodeStoreException {
+        final Long location = nodes.get(key);
+        if (location == null) {
+            throw new NodeStoreNodeNotFoundException("Could not find node "+key);
+        }
+
+        return payload(read(location));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void store(final String key, final D data) throws NodeStoreException {
+        put(DATA, key, data);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void store(final String key, final Node<K, String> node) throws NodeStoreException {
+        put(NODE, key, node);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void removeNode(final String key) throws NodeStoreException {
+        final Long location = nodes.remove(key);
+        if (location != null) {
+            markDirty();
+            free(location);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void removeData(final String key) throws NodeStoreException {
+        final Long location = values.remove(key);
+        if (location != null) {
+            markDirty();
+            free(location);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String generateKey(final Node<K, String> node, final D value) {
+        return UUID.randomUUID().toString();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String convert(final K key) throws NodeStoreException {
+        return key.toString();
+    }
+
+    /**
+     * Write the key index to the footer and force all pages to the device.
+     */
+    @Override
+    public synchronized void flush() {
+        try {
+            final ByteBuffer h = regions.get(0);
+
+            // Write and force the data pages before the header claims the file is clean.
+            for (final MappedByteBuffer region : regions) {
+                region.force();
+            }
+
+            final byte[] footer = footer();
+            final long offset = (long) pageCount * pageSize;
+            final ByteBuffer buffer = ByteBuffer.wrap(footer);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, offset + buffer.position());
+            }
+            channel.force(false);
+
+            final CRC32 crc = new CRC32();
+            crc.update(footer);
+            h.putLong(H_FOOTER_OFFSET, offset);
+            h.putInt(H_FOOTER_LENGTH, footer.length);
+            h.putLong(H_FOOTER_CRC, crc.getValue());
+            h.putInt(H_CLEAN, 1);
+            regions.get(0).force();
+            clean = true;
+        }
+        catch (final IOException e) {
+            throw new NodeStoreException("Flushing store.", e);
+        }
+    }
+
+    /**
+     * Flush and close the store.
+     */
+    @Override
+    public synchronized void close() {
+        if (channel.isOpen()) {
+            flush();
+            regions.clear();
+            try {
+                channel.close();
+            }
+            catch (final IOException e) {
+                throw new NodeStoreException("Closing store.", e);
+            }
+        }
+    }
+
+    private byte[] footer() {
+        int length = 8 + 4;
+        for (final Map<String, Long> index : Arrays.asList(nodes, values)) {
+            for (final String key : index.keySet()) {
+                length += 1 + 4 + key.getBytes(StandardCharsets.UTF_8).length + 8;
+            }
+        }
+
+        final ByteBuffer footer = ByteBuffer.allocate(length);
+        footer.putLong(sequence);
+        footer.putInt(nodes.size() + values.size());
+        for (final byte kind : new byte[]{NODE, DATA}) {
+            for (final Map.Entry<String, Long> entry : index(kind).entrySet()) {
+                final byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                footer.put(kind);
+                footer.putInt(key.length);
+                footer.put(key);
+                footer.putLong(entry.getValue());
+            }
+        }
+
+        return footer.array();
+    }
+
+    /**
+     * Once modified, the header is marked unclean until the next flush so a crash causes a scan.
+     */
+    private void markDirty() {
+        if (clean) {
+            final MappedByteBuffer h = regions.get(0);
+            h.putInt(H_CLEAN, 0);
+            h.force();
+            clean = false;
+        }
+    }
+
+    private void put(final byte kind, final String key, final Object o) {
+        markDirty();
+
+        final byte[] k = key.getBytes(StandardCharsets.UTF_8);
+        final byte[] payload = Serialization.toBytes(o);
+        final ByteBuffer record = ByteBuffer.allocate(R_HEADER + k.length + payload.length);
+        record.put(kind).putLong(++sequence).putInt(k.length).put(k).put(payload);
+
+        // Write the new record before freeing the old one so a crash never loses both.
+        final long location = write(record.array());
+        final Long old = index(kind).put(key, location);
+        if (old != null) {
+            free(old);
+        }
+    }
+
+    private <T> T payload(final byte[] record) {
+        final int keyLength = ByteBuffer.wrap(record).getInt(1 + 8);
+        final int offset = R_HEADER + keyLength;
+        return Serialization.fromBytes(record, offset, record.length - offset);
+    }
+
+    private static long location(final int page, final int slot) {
+        return ((long) page << 16) | slot;
+    }
+
+    private static int page(final long location) {
+        return (int) (location >>> 16);
+    }
+
+    private static int slot(final long location) {
+        return (int) (location & 0xffff);
+    }
+
+    private byte[] read(final long location) {
+        final ByteBuffer page = pages(page(location), 1);
+        final int slot = slot(location);
+        if (slot == OVERFLOW_SLOT) {
+            final int pages = page.getInt(P_PAGES);
+            final int length = page.getInt(P_LENGTH);
+            final ByteBuffer run = pages(page(location), pages);
+            final byte[] record = new byte[length];
+            run.position(P_HEADER);
+            run.get(record);
+            return record;
+        }
+        else {
+            final int offset = page.getInt(P_HEADER + slot * SLOT_SIZE);
+            final int length = page.getInt(P_HEADER + slot * SLOT_SIZE + 4);
+            final byte[] record = new byte[length];
+            page.position(offset);
+            page.get(record);
+            return record;
+        }
+    }
+
+    private long write(final byte[] record) {
+        final int need = record.length + SLOT_SIZE;
+
+        if (need > pageSize - P_HEADER) {
+            final int pages = (P_HEADER + record.length + pageSize - 1) / pageSize;
+            if (pages > pagesPerRegion) {
+                throw new NodeStoreException("Record of "+record.length+" bytes is larger than a region.");
+            }
+
+            final int p = allocatePages(pages);
+            final ByteBuffer run = pages(p, pages);
+            run.put(P_TYPE, OVERFLOW);
+            run.putInt(P_PAGES, pages);
+            run.putInt(P_LENGTH, record.length);
+            run.position(P_HEADER);
+            run.put(record);
+            return location(p, OVERFLOW_SLOT);
+        }
+
+        int p = findPage(need);
+        if (p < 0) {
+            p = allocatePages(1);
+            final ByteBuffer page = pages(p, 1);
+            page.put(P_TYPE, SLOTTED);
+            page.putInt(P_SLOTS, 0);
+            page.putInt(P_DATA_START, pageSize);
+        }
+
+        final ByteBuffer page = pages(p, 1);
+        final int slots = page.getInt(P_SLOTS);
+
+        int slot = 0;
+        while (slot < slots && page.getInt(P_HEADER + slot * SLOT_SIZE + 4) >= 0) {
+            slot++;
+        }
+
+        // Compact before a new slot is written, as the slot may overlap record bytes.
+        final int newSlots = Math.max(slots, slot + 1);
+        if (page.getInt(P_DATA_START) - (P_HEADER + newSlots * SLOT_SIZE) < record.length) {
+            compact(page);
+        }
+        page.putInt(P_SLOTS, newSlots);
+
+        final int offset = page.getInt(P_DATA_START) - record.length;
+        page.position(offset);
+        page.put(record);
+        page.putInt(P_DATA_START, offset);
+        page.putInt(P_HEADER + slot * SLOT_SIZE, offset);
+        page.putInt(P_HEADER + slot * SLOT_SIZE + 4, record.length);
+        setPageFree(p, computeFree(page));
+
+        return location(p, slot);
+    }
+
+    private void free(final long location) {
+        final int p = page(location);
+        final ByteBuffer page = pages(p, 1);
+        final int slot = slot(location);
+
+        if (slot == OVERFLOW_SLOT) {
+            final int pages = page.getInt(P_PAGES);
+            final ByteBuffer run = pages(p, pages);
+            for (int i = 0; i < pages; i++) {
+                run.put(i * pageSize + P_TYPE, FREE);
+            }
+            freePages.set(p, p + pages);
+            return;
+        }
+
+        page.putInt(P_HEADER + slot * SLOT_SIZE + 4, -1);
+
+        int slots = page.getInt(P_SLOTS);
+        while (slots > 0 && page.getInt(P_HEADER + (slots - 1) * SLOT_SIZE + 4) < 0) {
+            slots--;
+        }
+        page.putInt(P_SLOTS, slots);
+
+        if (slots == 0) {
+            page.put(P_TYPE, FREE);
+            setPageFree(p, -1);
+            freePages.set(p);
+        }
+        else {
+            setPageFree(p, computeFree(page));
+        }
+    }
+
+    /**
+     * Move all live records in a slotted page to its end, keeping their slot numbers.
+     */
+    private void compact(final ByteBuffer page) {
+        final int slots = page.getInt(P_SLOTS);
+        final byte[][] records = new byte[slots][];
+        for (int s = 0; s < slots; s++) {
+            final int length = page.getInt(P_HEADER + s * SLOT_SIZE + 4);
+            if (length >= 0) {
+                records[s] = new byte[length];
+                page.position(page.getInt(P_HEADER + s * SLOT_SIZE));
+                page.get(records[s]);
+            }
+        }
+
+        int offset = pageSize;
+        for (int s = 0; s < slots; s++) {
+            if (records[s] != null) {
+                offset -= records[s].length;
+                page.position(offset);
+                page.put(records[s]);
+                page.putInt(P_HEADER + s * SLOT_SIZE, offset);
+            }
+        }
+        page.putInt(P_DATA_START, offset);
+    }
+
+    private int computeFree(final ByteBuffer page) {
+        final int slots = page.getInt(P_SLOTS);
+        int free = pageSize - P_HEADER - slots * SLOT_SIZE;
+        for (int s = 0; s < slots; s++) {
+            free -= Math.max(0, page.getInt(P_HEADER + s * SLOT_SIZE + 4));
+        }
+        return free;
+    }
+
+    private int bucket(final int free) {
+        return Math.min(FREE_BUCKETS - 1, (int) ((long) free * FREE_BUCKETS / pageSize));
+    }
+
+    private void ensurePageFree(final int pages) {
+        if (pages > pageFree.length) {
+            final int old = pageFree.length;
+            pageFree = Arrays.copyOf(pageFree, Math.max(pages, old * 2));
+            Arrays.fill(pageFree, old, pageFree.length, -1);
+        }
+    }
+
+    private void setPageFree(final int page, final int free) {
+        ensurePageFree(page + 1);
+        if (pageFree[page] >= 0) {
+            freeBuckets[bucket(pageFree[page])].clear(page);
+        }
+        pageFree[page] = free;
+        if (free >= 0) {
+            freeBuckets[bucket(free)].set(page);
+        }
+    }
+
+    /**
+     * Find a slotted page with at least {@code need} free bytes.
+     *
+     * @return The page or -1.
+     */
+    private int findPage(final int need) {
+        final int first = bucket(need);
+        for (int p = freeBuckets[first].nextSetBit(0); p >= 0; p = freeBuckets[first].nextSetBit(p + 1)) {
+            if (pageFree[p] >= need) {
+                return p;
+            }
+        }
+
+        for (int b = first + 1; b < FREE_BUCKETS; b++) {
+            final int p = freeBuckets[b].nextSetBit(0);
+            if (p >= 0) {
+                return p;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Allocate a run of free pages that does not cross a region, growing the file if needed.
+     */
+    private int allocatePages(final int count) {
+        for (int p = freePages.nextSetBit(0); p >= 0; p = freePages.nextSetBit(p + 1)) {
+            final int end = freePages.nextClearBit(p);
+            final int regionEnd = (p / pagesPerRegion + 1) * pagesPerRegion;
+            final int runEnd = Math.min(end, regionEnd);
+            if (runEnd - p >= count) {
+                freePages.clear(p, p + count);
+                return p;
+            }
+            p = runEnd - 1;
+        }
+
+        int start = pageCount;
+        if (start / pagesPerRegion != (start + count - 1) / pagesPerRegion) {
+            final int regionStart = (start / pagesPerRegion + 1) * pagesPerRegion;
+            mapThrough(regionStart - 1);
+            for (int p = start; p < regionStart; p++) {
+                pages(p, 1).put(P_TYPE, FREE);
+                freePages.set(p);
+            }
+            start = regionStart;
+        }
+
+        mapThrough(start + count - 1);
+        pageCount = start + count;
+        ensurePageFree(pageCount);
+        regions.get(0).putInt(H_PAGE_COUNT, pageCount);
+        return start;
+    }
+
+    /**
+     * Map regions until the given page is mapped.
+     */
+    private void mapThrough(final int page) {
+        final long regionBytes = (long) pagesPerRegion * pageSize;
+        try {
+            while (regions.size() <= page / pagesPerRegion) {
+                regions.add(channel.map(FileChannel.MapMode.READ_WRITE, regions.size() * regionBytes, regionBytes));
+            }
+        }
+        catch (final IOException e) {
+            throw new NodeStoreException("Mapping page "+page, e);
+        }
+    }
+
+    /**
+     * A view of {@code count} pages starting at {@code page}. The pages must be in one region.
+     */
+    private ByteBuffer pages(final int page, final int count) {
+        final ByteBuffer region = regions.get(page / pagesPerRegion).duplicate();
+        final int offset = (page % pagesPerRegion) * pageSize;
+        region.position(offset);
+        region.limit(offset + count * pageSize);
+        return region.slice();
+    }
+}
@@ -0,0 +1,44 @@
+package com.github.basking2.sdsai.dsds.fs;
+
+import com.github.basking2.sdsai.dsds.node.NodeStoreException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * Java serialization to and from byte arrays, as used by the file based stores.
+ */
+final class Serialization {
+    private Serialization() {
+    }
+
+    static byte[] toBytes(final Object o) throws NodeStoreException {
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (final ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+                oos.writeObject(o);
+            }
+            return bytes.toByteArray();
+        }
+        catch (final IOException e) {
+            throw new NodeStoreException(e);
+        }
+    }
+
+    static <T> T fromBytes(final byte[] bytes, final int offset, final int length) throws NodeStoreException {
+        try (final ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes, offset, length))) {
+            @SuppressWarnings("unchecked")
+            final T t = (T) ois.readObject();
+            return t;
+        }
+        catch (final IOException e) {
+            throw new NodeStoreException(e);
+        }
+        catch (final ClassNotFoundException e) {
+            throw new NodeStoreException(e);
+        }
+    }
+}
@@ -3,17 +3,33 @@ package com.github.basking2.sdsai.dsds.io;
 import com.github.basking2.sdsai.dsds.node.Node;
 import com.github.basking2.sdsai.dsds.node.NodeStore;
 import com.github.basking2.sdsai.dsds.node.NodeStoreException;
+import com.github.basking2.sdsai.dsds.node.NodeStoreNodeNotFoundException;
 import com.github.basking2.sdsai.dsds.node.NodeUtil;
 
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.UUID;
 
 
 /**
  * An implementation of {@link NodeStore} that stores and returns streams of data.
  *
+ * Values are never buffered in memory. {@link #loadData(byte[])} returns an open stream that
+ * the caller owns and must close. Streams passed to {@link #store(byte[], InputStream)} are
+ * consumed, but not closed, as they are owned by the caller.
+ *
+ * When the source and destination of a copy are both files the bytes are moved with
+ * {@link FileChannel#transferTo(long, long, WritableByteChannel)} or
+ * {@link FileChannel#transferFrom(ReadableByteChannel, long, long)}, letting the
+ * operating system copy the data without it passing through the JVM.
+ *
  * @param <USERKEY> The user key.
  *
  */
@@ -28,19 +44,48 @@ public class IONodeStore<USERKEY> implements NodeStore<USERKEY, byte[], InputStr
         this.accessor = accessor;
     }
 
+    /**
+     * Open the value stored at the given key.
+     *
+     * The returned stream is open and is read lazily. The caller owns it and must close it.
+     *
+     * @param key The key of the data.
+     * @return An open stream of the data or null if there is no such data.
+     */
     @Override
     public InputStream loadData(final byte[] key) {
-        try (final InputStream in = accessor.reader(key)) {
-            return in;
-        }
-        catch (final IOException e) {
-            throw new NodeStoreException("Opening "+key, e);
-        }
+        return accessor.reader(key);
+    }
+
+    /**
+     * Check for a value without opening it.
+     *
+     * @param key The key of the data.
+     * @return true if there is data at the key.
+     */
+    @Override
+    public boolean containsData(final byte[] key) {
+        return accessor.exists(key);
+    }
+
+    /**
+     * Open the value stored at the given key as a channel.
+     *
+     * As with {@link #loadData(byte[])}, the caller owns the returned channel and must close it.
+     *
+     * @param key The key of the data.
+     * @return An open channel of the data or null if there is no such data.
+     */
+    public ReadableByteChannel loadDataChannel(final byte[] key) {
+        return accessor.readChannel(key);
     }
 
     @Override
     public Node<USERKEY, byte[]> loadNode(final byte[] key) {
         try (final InputStream in = accessor.reader(key)) {
+            if (in == null) {
+                throw new NodeStoreNodeNotFoundException("Node "+new String(key)+" not found.");
+            }
 
             return NodeUtil.readNode(
                     in,
@@ -53,19 +98,36 @@ public class IONodeStore<USERKEY> implements NodeStore<USERKEY, byte[], InputStr
         }
     }
 
+    /**
+     * Copy the stream to the given key.
+     *
+     * The stream is read to its end but is not closed. If the stream is a {@link FileInputStream}
+     * its channel is used so a file-to-file copy avoids user space buffers.
+     *
+     * @param key The key to store the data under.
+     * @param data The data to copy.
+     */
     @Override
     public void store(final byte[] key, final InputStream data) {
-        final byte[] buffer = new byte[1024 * 4];
-        try (final OutputStream out = accessor.writer(key)) {
-            while (true) {
-                final int read = data.read(buffer);
-                if (read < 0) {
-                    return;
-                }
-                else {
-                    out.write(buffer, 0, read);
-                }
-            }
+        if (data instanceof FileInputStream) {
+            store(key, ((FileInputStream) data).getChannel());
+        }
+        else {
+            store(key, Channels.newChannel(data));
+        }
+    }
+
+    /**
+     * Copy the channel to the given key.
+     *
+     * The channel is read to its end but is not closed.
+     *
+     * @param key The key to store the data under.
+     * @param data The data to copy.
+     */
+    public void store(final byte[] key, final ReadableByteChannel data) {
+        try (final WritableByteChannel out = accessor.writeChannel(key)) {
+            transfer(data, out);
         }
         catch (final IOException e) {
             throw new NodeStoreException(e.getMessage(), e);
@@ -114,8 +176,74 @@ public class IONodeStore<USERKEY> implements NodeStore<USERKEY, byte[], InputStr
         return accessor.storeUserKey(key);
     }
 
+    /**
+     * Copy all of {@code in} to {@code out}.
+     *
+     * File channels are copied with transferTo or transferFrom. Anything else goes
+     * through a single direct buffer.
+     *
+     * @param in The source, read until its end.
+     * @param out The destination.
+     * @return The number of bytes copied.
+     * @throws IOException On any error.
+     */
+    public static long transfer(final ReadableByteChannel in, final WritableByteChannel out) throws IOException {
+        long total = 0;
+
+        if (in instanceof FileChannel) {
+            final FileChannel fin = (FileChannel) in;
+            for (long position = fin.position(), size = fin.size(); position < size; ) {
+                final long sent = fin.transferTo(position, size - position, out);
+                if (sent <= 0) {
+                    break;
+                }
+                position += sent;
+                total += sent;
+            }
+            fin.position(fin.position() + total);
+            return total;
+        }
+
+        if (out instanceof FileChannel) {
+            final FileChannel fout = (FileChannel) out;
+            while (true) {
+                final long received = fout.transferFrom(in, fout.position(), TRANSFER_CHUNK);
+                if (received <= 0) {
+                    break;
+                }
+                fout.position(fout.position() + received);
+                total += received;
+            }
+
+            // transferFrom returns 0 at end of stream and when a non-blocking source is empty.
+            // Finish any remaining bytes with a plain copy.
+            return total + copy(in, out);
+        }
+
+        return copy(in, out);
+    }
+
+    private static final long TRANSFER_CHUNK = 1024L * 1024L * 8L;
+
+    private static long copy(final ReadableByteChannel in, final WritableByteChannel out) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(1024 * 64);
+        long total = 0;
+        while (in.read(buffer) >= 0 || buffer.position() > 0) {
+            buffer.flip();
+            total += out.write(buffer);
+            buffer.compact();
+        }
+        return total;
+    }
+
     /**
      * How a {@link IONodeStore} accesses {@link Node} data.
+     *
+     * Readers return null when there is no such key.
+     *
+     * Implementations that can hand out {@link FileChannel}s should override
+     * {@link #readChannel(byte[])} and {@link #writeChannel(byte[])} so value
+     * copies may use zero-copy transfers.
      */
     public interface NodeAccessor<USERKEY> {
 
@@ -123,6 +251,31 @@ public class IONodeStore<USERKEY> implements NodeStore<USERKEY, byte[], InputStr
         OutputStream writer(byte[] key);
         void delete(byte[] key);
 
+        /**
+         * By default this opens and closes a reader.
+         * Implementations that can check for a key without opening it should override this.
+         *
+         * @param key The key.
+         * @return true if there is data at the key.
+         */
+        default boolean exists(final byte[] key) {
+            try (final InputStream in = reader(key)) {
+                return in != null;
+            }
+            catch (final IOException e) {
+                throw new NodeStoreException("Closing "+new String(key), e);
+            }
+        }
+
+        default ReadableByteChannel readChannel(final byte[] key) {
+            final InputStream in = reader(key);
+            return in == null ? null : Channels.newChannel(in);
+        }
+
+        default WritableByteChannel writeChannel(final byte[] key) {
+            return Channels.newChannel(writer(key));
+        }
+
         USERKEY loadUserKey(byte[] key);
         byte[] storeUserKey(USERKEY key);
     }
@@ -1,7 +1,19 @@
 package com.github.basking2.sdsai.dsds.io;
 
+import com.github.basking2.sdsai.dsds.node.NodeStoreException;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
@@ -41,4 +53,110 @@ public class IONodeStoreFactory {
         );
 
     }
+
+    /**
+     * Build a store that keeps each node and value in a file under the given directory.
+     *
+     * Keys are used as relative file names. Because the accessor hands out {@link FileChannel}s,
+     * storing a value read from a file is a zero-copy transfer.
+     *
+     * @param directory The directory to store files in. It is created if it does not exist.
+     * @return A store of files.
+     */
+    public static IONodeStore<String> buildFileStore(final File directory) {
+        return new IONodeStore<String>(
+                new IONodeStore.NodeAccessor<String>() {
+                    private File file(final byte[] key) {
+                        return new File(directory, new String(key));
+                    }
+
+                    private File parentMustExist(final File file) {
+                        final File parent = file.getParentFile();
+                        if (!parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+                            throw new NodeStoreException("Could not create directory "+parent);
+                        }
+                        return file;
+                    }
+
+                    @Override
+                    public InputStream reader(final byte[] key) {
+                        final File file = file(key);
+                        if (!file.exists()) {
+                            return null;
+                        }
+
+                        try {
+                            return new FileInputStream(file);
+                        }
+                        catch (final FileNotFoundException e) {
+                            throw new NodeStoreException("Opening "+new String(key), e);
+                        }
+                    }
+
+                    @Override
+                    public OutputStream writer(final byte[] key) {
+                        try {
+                            return new FileOutputStream(parentMustExist(file(key)));
+                        }
+                        catch (final FileNotFoundException e) {
+                            throw new NodeStoreException("Opening "+new String(key), e);
+                        }
+                    }
+
+                    @Override
+                    public boolean exists(final byte[] key) {
+                        return file(key).isFile();
+                    }
+
+                    @Override
+                    public ReadableByteChannel readChannel(final byte[] key) {
+                        final File file = file(key);
+                        if (!file.exists()) {
+                            return null;
+                        }
+
+                        try {
+                            return FileChannel.open(file.toPath(), StandardOpenOption.READ);
+                        }
+                        catch (final IOException e) {
+                            throw new NodeStoreException("Opening "+new String(key), e);
+                        }
+                    }
+
+                    @Override
+                    public WritableByteChannel writeChannel(final byte[] key) {
+                        try {
+                            return FileChannel.open(
+                                    parentMustExist(file(key)).toPath(),
+                                    StandardOpenOption.WRITE,
+                                    StandardOpenOption.CREATE,
+                                    StandardOpenOption.TRUNCATE_EXISTING);
+                        }
+                        catch (final IOException e) {
+                            throw new NodeStoreException("Opening "+new String(key), e);
+                        }
+                    }
+
+                    @Override
+                    public void delete(final byte[] key) {
+                        try {
+                            Files.deleteIfExists(file(key).toPath());
+                        }
+                        catch (final IOException e) {
+                            throw new NodeStoreException("Deleting "+new String(key), e);
+                        }
+                    }
+
+                    @Override
+                    public String loadUserKey(final byte[] key) {
+                        return new String(key);
+                    }
+
+                    @Override
+                    public byte[] storeUserKey(final String key) {
+                        return key.getBytes();
+                    }
+                }
+        );
+    }
 }
@@ -0,0 +1,198 @@
+package com.github.basking2.sdsai.dsds.mem;
+
+import com.github.basking2.sdsai.dsds.node.Node;
+import com.github.basking2.sdsai.dsds.node.NodeStore;
+import com.github.basking2.sdsai.dsds.node.NodeStoreException;
+import com.github.basking2.sdsai.dsds.node.NodeStoreNodeNotFoundException;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * A {@link NodeStore} that keeps nodes and values in {@link ConcurrentHashMap}s.
+ *
+ * Data structures edit the {@link Node} objects they load in place before storing them. To prevent a
+ * loaded node from aliasing a stored one, nodes are copied when stored and when loaded. This may be
+ * turned off when every caller stores the nodes it edits, as the data structures in this library do.
+ * Values are never copied.
+ *
+ * Generated keys are a per-store random prefix followed by a counter, so generating a key never
+ * has to check for a collision.
+ *
+ * If a bound is given, entries beyond it are moved to a spill store. The values are moved first,
+ * as nodes are read on every search. Within each map the entries moved are those a
+ * {@link ConcurrentHashMap} iterates first, which follows key hashes rather than insertion order or use,
+ * so any node, the root included, may be spilled. Loads that miss in memory go to the spill store. The
+ * bound is not exact while other threads store concurrently.
+ *
+ * @param <USERKEY> The user key type. Keys are converted to store keys with {@link Object#toString()}.
+ * @param <VALUE> The user data type.
+ */
+public class ConcurrentMemoryNodeStore<USERKEY, VALUE> implements NodeStore<USERKEY, String, VALUE> {
+
+    private final Map<String, Node<USERKEY, String>> nodes = new ConcurrentHashMap<>();
+    private final Map<String, VALUE> values = new ConcurrentHashMap<>();
+
+    private final boolean copyNodes;
+    private final int maxEntries;
+    private final NodeStore<USERKEY, String, VALUE> spill;
+
+    private final String keyPrefix = UUID.randomUUID().toString() + "-";
+    private final AtomicLong keyGenerator = new AtomicLong();
+
+    /**
+     * An unbounded store that copies nodes.
+     */
+    public ConcurrentMemoryNodeStore() {
+        this(true);
+    }
+
+    /**
+     * An unbounded store.
+     *
+     * @param copyNodes If true, nodes are copied when stored and loaded.
+     */
+    public ConcurrentMemoryNodeStore(final boolean copyNodes) {
+        this(copyNodes, Integer.MAX_VALUE, null);
+    }
+
+    /**
+     * A store bounded to {@code maxEntries} nodes and values, the rest being spilled.
+     *
+     * @param copyNodes If true, nodes are copied when stored and loaded.
+     * @param maxEntries The number of nodes and values to hold in memory.
+     * @param spill Where entries beyond {@code maxEntries} are written. May be null if unbounded.
+     */
+    public ConcurrentMemoryNodeStore(
+        final boolean copyNodes,
+        final int maxEntries,
+        final NodeStore<USERKEY, String, VALUE> spill
+    ) {
+        if (spill == null && maxEntries != Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("A bounded store requires a spill store.");
+        }
+
+        this.copyNodes = copyNodes;
+        this.maxEntries = maxEntries;
+        this.spill = spill;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public VALUE loadData(final String key) throws NodeStoreException {
+        final VALUE value = values.get(key);
+        if (value == null && spill != null) {
+            return spill.loadData(key);
+        }
+        return value;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Node<USERKEY, String> loadNode(final String key) throws NodeStoreException {
+        final Node<USERKEY, String> node = nodes.get(key);
+        if (node == null) {
+            if (spill != null) {
+                return spill.loadNode(key);
+            }
+            throw new NodeStoreNodeNotFoundException("Could not find node "+key);
+        }
+        return copy(node);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void store(final String key, final VALUE value) throws NodeStoreException {
+        values.put(key, value);
+        conditionallySpill();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void store(final String key, final Node<USERKEY, String> node) throws NodeStoreException {
+        nodes.put(key, copy(node));
+        conditionallySpill();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeNode(final String key) throws NodeStoreException {
+        nodes.remove(key);
+        if (spill != null) {
+            spill.removeNode(key);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeData(final String key) throws NodeStoreException {
+        values.remove(key);
+        if (spill != null) {
+            spill.removeData(key);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String generateKey(final Node<USERKEY, String> node, final VALUE value) {
+        return keyPrefix + Long.toString(keyGenerator.incrementAndGet(), 36);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String convert(final USERKEY key) throws NodeStoreException {
+        return key.toString();
+    }
+
+    /**
+     * @return The number of nodes and values held in memory.
+     */
+    public int size() {
+        return nodes.size() + values.size();
+    }
+
+    private Node<USERKEY, String> copy(final Node<USERKEY, String> node) {
+        return copyNodes ? new Node<>(node) : node;
+    }
+
+    private void conditionallySpill() {
+        if (spill == null) {
+            return;
+        }
+
+        spill(values, (k, v) -> spill.store(k, v));
+        spill(nodes, (k, n) -> spill.store(k, n));
+    }
+
+    /**
+     * Move entries from {@code map} to the spill store, in the map's iteration order, until the bound is met.
+     * An entry is only removed from memory if it was not replaced while being spilled.
+     */
+    private <T> void spill(final Map<String, T> map, final BiConsumer<String, T> store) {
+        for (final Iterator<Map.Entry<String, T>> i = map.entrySet().iterator(); size() > maxEntries && i.hasNext(); ) {
+            final Map.Entry<String, T> entry = i.next();
+            store.accept(entry.getKey(), entry.getValue());
+            map.remove(entry.getKey(), entry.getValue());
+        }
+    }
+}
@@ -0,0 +1,4 @@
+/**
+ * In-memory storage.
+ */
+package com.github.basking2.sdsai.dsds.mem;
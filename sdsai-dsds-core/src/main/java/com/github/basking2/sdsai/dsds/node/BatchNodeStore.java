@@ -0,0 +1,41 @@
+package com.github.basking2.sdsai.dsds.node;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * A {@link NodeStore} that can read and write many keys in few requests.
+ *
+ * @param <USERKEY> The user's key.
+ * @param <STOREKEY> The key type used by the storage medium.
+ * @param <VALUE> The values stored.
+ */
+public interface BatchNodeStore<USERKEY, STOREKEY, VALUE> extends NodeStore<USERKEY, STOREKEY, VALUE> {
+
+    /**
+     * Apply every write in the batch. Data writes should be applied before node writes,
+     * though a store may not be able to promise this.
+     *
+     * @param batch The writes.
+     * @throws NodeStoreException If any write fails. Some writes may have been applied.
+     */
+    void execute(NodeStoreBatch<USERKEY, STOREKEY, VALUE> batch);
+
+    /**
+     * Load many nodes.
+     *
+     * @param keys The node keys.
+     * @return The nodes found, by key. Keys with no node are absent.
+     * @throws NodeStoreException
+     */
+    Map<STOREKEY, Node<USERKEY, STOREKEY>> loadNodes(Collection<STOREKEY> keys);
+
+    /**
+     * Load many data objects.
+     *
+     * @param keys The data keys.
+     * @return The data found, by key. Keys with no data are absent.
+     * @throws NodeStoreException
+     */
+    Map<STOREKEY, VALUE> loadData(Collection<STOREKEY> keys);
+}
@@ -104,6 +104,22 @@ public class Node<USERKEY, STOREKEY> implements Serializable
         this.children = new ArrayList<>(childCap);
         this.ancestors = new ArrayList<>(ancestorsCap);
     }
+
+    /**
+     * Copy a Node. The key lists are copied, the keys themselves are not.
+     *
+     * @param node The node to copy.
+     */
+    public Node(final Node<USERKEY, STOREKEY> node)
+    {
+        this.childCap = node.childCap;
+        this.dataCap = node.dataCap;
+        this.ancestorsCap = node.ancestorsCap;
+
+        this.data = new ArrayList<>(node.data);
+        this.children = new ArrayList<>(node.children);
+        this.ancestors = new ArrayList<>(node.ancestors);
+    }
     
     public List<USERKEY> getData() {
         return data;
@@ -48,6 +48,20 @@ public interface NodeStore<USERKEY, STOREKEY, VALUE>
      */
     VALUE loadData(STOREKEY key);
 
+    /**
+     * Check if user data is stored at a key.
+     *
+     * By default this loads the data. Stores whose values are costly to load, or that
+     * return values the caller must close, should check without loading it.
+     *
+     * @param key The key of the data.
+     * @return true if data is stored at the key.
+     * @throws NodeStoreException
+     */
+    default boolean containsData(final STOREKEY key) {
+        return loadData(key) != null;
+    }
+
     /**
      * Load a node object from {@link NodeStore}.
      * @throws NodeStoreException
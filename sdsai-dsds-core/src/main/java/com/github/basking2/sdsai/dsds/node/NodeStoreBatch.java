@@ -0,0 +1,142 @@
+package com.github.basking2.sdsai.dsds.node;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Writes to be sent to a {@link BatchNodeStore} together.
+ *
+ * Only the last write to a key is kept, so a batch holds at most one node write and one data
+ * write per key and the writes to different keys may be applied in any order.
+ *
+ * @param <USERKEY> The user's key.
+ * @param <STOREKEY> The key type used by the storage medium.
+ * @param <VALUE> The values stored.
+ */
+public class NodeStoreBatch<USERKEY, STOREKEY, VALUE> {
+
+    /**
+     * A store or a remove of one key.
+     *
+     * @param <KEY> The key type.
+     * @param <T> The type stored.
+     */
+    public static final class Write<KEY, T> {
+        private final KEY key;
+        private final T value;
+        private final boolean remove;
+
+        private Write(final KEY key, final T value, final boolean remove) {
+            this.key = key;
+            this.value = value;
+            this.remove = remove;
+        }
+
+        public KEY getKey() {
+            return key;
+        }
+
+        /**
+         * @return The node or data to store, or null if this is a remove.
+         */
+        public T getValue() {
+            return value;
+        }
+
+        public boolean isRemove() {
+            return remove;
+        }
+    }
+
+    private final Map<STOREKEY, Write<STOREKEY, Node<USERKEY, STOREKEY>>> nodes = new LinkedHashMap<>();
+
+    private final Map<STOREKEY, Write<STOREKEY, VALUE>> data = new LinkedHashMap<>();
+
+    /**
+     * @see NodeStore#store(Object, Node)
+     */
+    public NodeStoreBatch<USERKEY, STOREKEY, VALUE> store(final STOREKEY key, final Node<USERKEY, STOREKEY> node) {
+        nodes.remove(key);
+        nodes.put(key, new Write<>(key, node, false));
+        return this;
+    }
+
+    /**
+     * @see NodeStore#store(Object, Object)
+     */
+    public NodeStoreBatch<USERKEY, STOREKEY, VALUE> store(final STOREKEY key, final VALUE value) {
+        data.remove(key);
+        data.put(key, new Write<>(key, value, false));
+        return this;
+    }
+
+    /**
+     * @see NodeStore#removeNode(Object)
+     */
+    public NodeStoreBatch<USERKEY, STOREKEY, VALUE> removeNode(final STOREKEY key) {
+        nodes.remove(key);
+        nodes.put(key, new Write<>(key, null, true));
+        return this;
+    }
+
+    /**
+     * @see NodeStore#removeData(Object)
+     */
+    public NodeStoreBatch<USERKEY, STOREKEY, VALUE> removeData(final STOREKEY key) {
+        data.remove(key);
+        data.put(key, new Write<>(key, null, true));
+        return this;
+    }
+
+    /**
+     * @return Node writes in the order their keys were last written.
+     */
+    public Collection<Write<STOREKEY, Node<USERKEY, STOREKEY>>> getNodeWrites() {
+        return Collections.unmodifiableCollection(nodes.values());
+    }
+
+    /**
+     * @return Data writes in the order their keys were last written.
+     */
+    public Collection<Write<STOREKEY, VALUE>> getDataWrites() {
+        return Collections.unmodifiableCollection(data.values());
+    }
+
+    public boolean isEmpty() {
+        return nodes.isEmpty() && data.isEmpty();
+    }
+
+    /**
+     * @return The number of writes.
+     */
+    public int size() {
+        return nodes.size() + data.size();
+    }
+
+    /**
+     * Apply this batch one write at a time to a store, data writes first.
+     *
+     * @param nodeStore The store.
+     */
+    public void executeOn(final NodeStore<USERKEY, STOREKEY, VALUE> nodeStore) {
+        for (final Write<STOREKEY, VALUE> w : data.values()) {
+            if (w.isRemove()) {
+                nodeStore.removeData(w.getKey());
+            }
+            else {
+                nodeStore.store(w.getKey(), w.getValue());
+            }
+        }
+
+        for (final Write<STOREKEY, Node<USERKEY, STOREKEY>> w : nodes.values()) {
+            if (w.isRemove()) {
+                nodeStore.removeNode(w.getKey());
+            }
+            else {
+                nodeStore.store(w.getKey(), w.getValue());
+            }
+        }
+    }
+}
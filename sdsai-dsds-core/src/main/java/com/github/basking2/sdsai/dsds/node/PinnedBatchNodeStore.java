@@ -0,0 +1,69 @@
+package com.github.basking2.sdsai.dsds.node;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * A {@link PinnedNodeStore} of a {@link BatchNodeStore}.
+ * A batch that writes the pinned node drops the pinned copy. Batch loads are not served from the pin.
+ *
+ * @param <USERKEY> The user key type.
+ * @param <STOREKEY> The data store key type.
+ * @param <VALUE> The value being stored.
+ */
+public class PinnedBatchNodeStore<USERKEY, STOREKEY, VALUE>
+    extends PinnedNodeStore<USERKEY, STOREKEY, VALUE>
+    implements BatchNodeStore<USERKEY, STOREKEY, VALUE>
+{
+    private final BatchNodeStore<USERKEY, STOREKEY, VALUE> nodeStore;
+
+    /**
+     * @param nodeStore The store to wrap.
+     * @param pinnedKey The key of the node to keep in memory.
+     * @param validate Check the version of the node before each use of the pinned copy.
+     */
+    public PinnedBatchNodeStore(
+        final BatchNodeStore<USERKEY, STOREKEY, VALUE> nodeStore,
+        final STOREKEY pinnedKey,
+        final boolean validate
+    ) {
+        super(nodeStore, pinnedKey, validate);
+        this.nodeStore = nodeStore;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void execute(final NodeStoreBatch<USERKEY, STOREKEY, VALUE> batch) {
+        boolean writesPin = false;
+        for (final NodeStoreBatch.Write<STOREKEY, Node<USERKEY, STOREKEY>> w : batch.getNodeWrites()) {
+            writesPin |= isPinned(w.getKey());
+        }
+
+        try {
+            nodeStore.execute(batch);
+        }
+        finally {
+            if (writesPin) {
+                invalidate();
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<STOREKEY, Node<USERKEY, STOREKEY>> loadNodes(final Collection<STOREKEY> keys) {
+        return nodeStore.loadNodes(keys);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<STOREKEY, VALUE> loadData(final Collection<STOREKEY> keys) {
+        return nodeStore.loadData(keys);
+    }
+}
@@ -0,0 +1,220 @@
+package com.github.basking2.sdsai.dsds.node;
+
+import java.util.Objects;
+
+/**
+ * A {@link NodeStore} that keeps one node, such as the root of a tree, in memory.
+ *
+ * Without validation the pinned node is loaded once and then kept up to date by the writes made
+ * through this store. That is only correct if nothing else writes the node.
+ *
+ * With validation the wrapped store must be a {@link VersionedNodeStore} that {@link VersionedNodeStore#isVersioned()},
+ * such as an {@link com.github.basking2.sdsai.dsds.node.metrics.InstrumentedNodeStore} over a versioned store.
+ * Each load asks for the node's
+ * version and loads the node again only if the version differs from that of the pinned copy.
+ *
+ * Callers receive copies, so a caller that changes a node but fails to store it does not change the pin.
+ * Use {@link #wrap(NodeStore, Object, boolean)} to keep a {@link BatchNodeStore} a {@link BatchNodeStore}.
+ *
+ * @param <USERKEY> The user key type.
+ * @param <STOREKEY> The data store key type.
+ * @param <VALUE> The value being stored.
+ */
+public class PinnedNodeStore<USERKEY, STOREKEY, VALUE> implements NodeStore<USERKEY, STOREKEY, VALUE> {
+
+    private final NodeStore<USERKEY, STOREKEY, VALUE> nodeStore;
+
+    private final STOREKEY pinnedKey;
+
+    /**
+     * The store that versions {@link #pinnedKey}, or null if the pin is not validated.
+     */
+    private final VersionedNodeStore<USERKEY, STOREKEY, VALUE> versions;
+
+    /**
+     * The pinned node, or null if it must be loaded.
+     */
+    private Node<USERKEY, STOREKEY> pinned;
+
+    /**
+     * The version of {@link #pinned} if it is validated.
+     */
+    private Object version;
+
+    /**
+     * @param nodeStore The store to wrap.
+     * @param pinnedKey The key of the node to keep in memory.
+     * @param validate Check the version of the node before each use of the pinned copy.
+     * @throws IllegalArgumentException If {@code validate} is true and the store is not versioned.
+     */
+    @SuppressWarnings("unchecked")
+    public PinnedNodeStore(
+        final NodeStore<USERKEY, STOREKEY, VALUE> nodeStore,
+        final STOREKEY pinnedKey,
+        final boolean validate
+    ) {
+        if (validate && !(nodeStore instanceof VersionedNodeStore && ((VersionedNodeStore<?, ?, ?>) nodeStore).isVersioned())) {
+            throw new IllegalArgumentException("Validating a pinned node requires a VersionedNodeStore.");
+        }
+
+        this.nodeStore = nodeStore;
+        this.pinnedKey = pinnedKey;
+        this.versions = validate ? (VersionedNodeStore<USERKEY, STOREKEY, VALUE>) nodeStore : null;
+    }
+
+    /**
+     * Pin a node, returning a {@link PinnedBatchNodeStore} if the store is a {@link BatchNodeStore}.
+     *
+     * @param nodeStore The store to wrap.
+     * @param pinnedKey The key of the node to keep in memory.
+     * @param validate Check the version of the node before each use of the pinned copy.
+     * @param <USERKEY> The user key type.
+     * @param <STOREKEY> The data store key type.
+     * @param <VALUE> The value being stored.
+     * @return The wrapped store.
+     */
+    public static <USERKEY, STOREKEY, VALUE> PinnedNodeStore<USERKEY, STOREKEY, VALUE> wrap(
+        final NodeStore<USERKEY, STOREKEY, VALUE> nodeStore,
+        final STOREKEY pinnedKey,
+        final boolean validate
+    ) {
+        if (nodeStore instanceof BatchNodeStore) {
+            return new PinnedBatchNodeStore<>((BatchNodeStore<USERKEY, STOREKEY, VALUE>) nodeStore, pinnedKey, validate);
+        }
+
+        return new PinnedNodeStore<>(nodeStore, pinnedKey, validate);
+    }
+
+    /**
+     * @return The wrapped store.
+     */
+    public NodeStore<USERKEY, STOREKEY, VALUE> getNodeStore() {
+        return nodeStore;
+    }
+
+    /**
+     * Drop the pinned copy so the next load reads the node.
+     */
+    public synchronized void invalidate() {
+        pinned = null;
+        version = null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public VALUE loadData(final STOREKEY key) {
+        return nodeStore.loadData(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean containsData(final STOREKEY key) {
+        return nodeStore.containsData(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Node<USERKEY, STOREKEY> loadNode(final STOREKEY key) {
+        if (!pinnedKey.equals(key)) {
+            return nodeStore.loadNode(key);
+        }
+
+        synchronized (this) {
+            if (pinned != null && versions != null && !Objects.equals(version, versions.nodeVersion(key))) {
+                pinned = null;
+            }
+
+            if (pinned == null) {
+                // Read the version first. If the node changes in between, the next load sees a new version.
+                final Object v = versions == null ? null : versions.nodeVersion(key);
+                pinned = new Node<>(nodeStore.loadNode(key));
+                version = v;
+            }
+
+            return new Node<>(pinned);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void store(final STOREKEY key, final VALUE data) {
+        nodeStore.store(key, data);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void store(final STOREKEY key, final Node<USERKEY, STOREKEY> node) {
+        if (!pinnedKey.equals(key)) {
+            nodeStore.store(key, node);
+            return;
+        }
+
+        synchronized (this) {
+            // Should the write fail, what is stored is unknown.
+            pinned = null;
+
+            if (versions == null) {
+                nodeStore.store(key, node);
+            }
+            else {
+                version = versions.storeVersioned(key, node);
+            }
+
+            pinned = new Node<>(node);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeNode(final STOREKEY key) {
+        if (pinnedKey.equals(key)) {
+            invalidate();
+        }
+
+        nodeStore.removeNode(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeData(final STOREKEY key) {
+        nodeStore.removeData(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public STOREKEY generateKey(final Node<USERKEY, STOREKEY> node, final VALUE value) {
+        return nodeStore.generateKey(node, value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public STOREKEY convert(final USERKEY key) {
+        return nodeStore.convert(key);
+    }
+
+    /**
+     * @param key A node key.
+     * @return True if {@code key} is the pinned key.
+     */
+    protected boolean isPinned(final STOREKEY key) {
+        return pinnedKey.equals(key);
+    }
+}
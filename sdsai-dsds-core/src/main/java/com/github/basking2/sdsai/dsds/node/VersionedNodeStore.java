@@ -0,0 +1,47 @@
+package com.github.basking2.sdsai.dsds.node;
+
+/**
+ * A {@link NodeStore} that can report a version of a stored node more cheaply than loading it.
+ * A version is opaque, such as an ETag, and must change whenever the node is stored.
+ *
+ * @param <USERKEY> The user's key.
+ * @param <STOREKEY> The key type used by the storage medium.
+ * @param <VALUE> The values stored.
+ *
+ * @see PinnedNodeStore
+ */
+public interface VersionedNodeStore<USERKEY, STOREKEY, VALUE> extends NodeStore<USERKEY, STOREKEY, VALUE> {
+
+    /**
+     * @param key The node key.
+     * @return The version of the node, or null if there is no node.
+     * @throws NodeStoreException
+     */
+    Object nodeVersion(STOREKEY key);
+
+    /**
+     * A decorator may implement this interface for any store it wraps and report here
+     * whether the wrapped store is versioned.
+     *
+     * @return True if {@link #nodeVersion(Object)} and {@link #storeVersioned(Object, Node)} may be called.
+     */
+    default boolean isVersioned() {
+        return true;
+    }
+
+    /**
+     * Store a node and return the version it was stored as.
+     *
+     * The default stores the node and then asks for its version.
+     * A store that learns the version when writing should override this.
+     *
+     * @param key The node key.
+     * @param node The node.
+     * @return The version of the stored node.
+     * @throws NodeStoreException
+     */
+    default Object storeVersioned(final STOREKEY key, final Node<USERKEY, STOREKEY> node) {
+        store(key, node);
+        return nodeVersion(key);
+    }
+}
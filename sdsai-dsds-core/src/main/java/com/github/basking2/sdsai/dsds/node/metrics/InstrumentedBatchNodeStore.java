@@ -0,0 +1,102 @@
+package com.github.basking2.sdsai.dsds.node.metrics;
+
+import com.github.basking2.sdsai.dsds.node.BatchNodeStore;
+import com.github.basking2.sdsai.dsds.node.Node;
+import com.github.basking2.sdsai.dsds.node.NodeStoreBatch;
+import com.github.basking2.sdsai.dsds.node.metrics.NodeStoreMetrics.Operation;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * An {@link InstrumentedNodeStore} that also times the calls of a {@link BatchNodeStore}.
+ * A batch is reported as one call whose size is that of all the nodes and data it stores or loads.
+ *
+ * @param <USERKEY> The user key type.
+ * @param <STOREKEY> The data store key type.
+ * @param <VALUE> The value being stored.
+ */
+public class InstrumentedBatchNodeStore<USERKEY, STOREKEY, VALUE>
+    extends InstrumentedNodeStore<USERKEY, STOREKEY, VALUE>
+    implements BatchNodeStore<USERKEY, STOREKEY, VALUE>
+{
+    private final BatchNodeStore<USERKEY, STOREKEY, VALUE> nodeStore;
+
+    /**
+     * Report calls without byte sizes.
+     *
+     * @param nodeStore The store to instrument.
+     * @param metrics Where calls are reported.
+     */
+    public InstrumentedBatchNodeStore(
+        final BatchNodeStore<USERKEY, STOREKEY, VALUE> nodeStore,
+        final NodeStoreMetrics metrics
+    ) {
+        this(nodeStore, metrics, n -> 0, v -> 0);
+    }
+
+    /**
+     * @param nodeStore The store to instrument.
+     * @param metrics Where calls are reported.
+     * @param nodeSize Measures the bytes of a node.
+     * @param valueSize Measures the bytes of a value.
+     */
+    public InstrumentedBatchNodeStore(
+        final BatchNodeStore<USERKEY, STOREKEY, VALUE> nodeStore,
+        final NodeStoreMetrics metrics,
+        final ToLongFunction<? super Node<USERKEY, STOREKEY>> nodeSize,
+        final ToLongFunction<? super VALUE> valueSize
+    ) {
+        super(nodeStore, metrics, nodeSize, valueSize);
+        this.nodeStore = nodeStore;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void execute(final NodeStoreBatch<USERKEY, STOREKEY, VALUE> batch) {
+        long bytes = 0;
+        for (final NodeStoreBatch.Write<STOREKEY, VALUE> w : batch.getDataWrites()) {
+            if (!w.isRemove()) {
+                bytes += valueSize.applyAsLong(w.getValue());
+            }
+        }
+        for (final NodeStoreBatch.Write<STOREKEY, Node<USERKEY, STOREKEY>> w : batch.getNodeWrites()) {
+            if (!w.isRemove()) {
+                bytes += nodeSize.applyAsLong(w.getValue());
+            }
+        }
+
+        record(Operation.EXECUTE_BATCH, bytes, () -> nodeStore.execute(batch));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<STOREKEY, Node<USERKEY, STOREKEY>> loadNodes(final Collection<STOREKEY> keys) {
+        return record(Operation.LOAD_NODES, () -> nodeStore.loadNodes(keys), nodes -> {
+            long bytes = 0;
+            for (final Node<USERKEY, STOREKEY> node : nodes.values()) {
+                bytes += nodeSize.applyAsLong(node);
+            }
+            return bytes;
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<STOREKEY, VALUE> loadData(final Collection<STOREKEY> keys) {
+        return record(Operation.LOAD_DATA_MANY, () -> nodeStore.loadData(keys), values -> {
+            long bytes = 0;
+            for (final VALUE value : values.values()) {
+                bytes += valueSize.applyAsLong(value);
+            }
+            return bytes;
+        });
+    }
+}
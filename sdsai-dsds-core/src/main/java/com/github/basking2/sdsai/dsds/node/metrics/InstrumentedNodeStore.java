@@ -0,0 +1,315 @@
+package com.github.basking2.sdsai.dsds.node.metrics;
+
+import com.github.basking2.sdsai.dsds.node.BatchNodeStore;
+import com.github.basking2.sdsai.dsds.node.Node;
+import com.github.basking2.sdsai.dsds.node.NodeStore;
+import com.github.basking2.sdsai.dsds.node.NodeStoreException;
+import com.github.basking2.sdsai.dsds.node.NodeUtil;
+import com.github.basking2.sdsai.dsds.node.VersionedNodeStore;
+import com.github.basking2.sdsai.dsds.node.metrics.NodeStoreMetrics.Operation;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * A {@link NodeStore} that times every call to another {@link NodeStore} and reports it to a {@link NodeStoreMetrics}.
+ *
+ * Wrapping the store given to a data structure shows how many backend calls each of its operations makes.
+ * Byte sizes are only reported if functions to measure nodes and data are given, as measuring may cost
+ * as much as serializing. See {@link #serializedSize(Function, Function)}.
+ *
+ * Use {@link #wrap(NodeStore, NodeStoreMetrics)} to keep a {@link BatchNodeStore} a {@link BatchNodeStore}.
+ *
+ * Node versions are forwarded if the wrapped store is a {@link VersionedNodeStore}, see {@link #isVersioned()},
+ * so a validated {@link com.github.basking2.sdsai.dsds.node.PinnedNodeStore} may be put over this store.
+ *
+ * @param <USERKEY> The user key type.
+ * @param <STOREKEY> The data store key type.
+ * @param <VALUE> The value being stored.
+ */
+public class InstrumentedNodeStore<USERKEY, STOREKEY, VALUE> implements VersionedNodeStore<USERKEY, STOREKEY, VALUE> {
+
+    private final NodeStore<USERKEY, STOREKEY, VALUE> nodeStore;
+
+    protected final NodeStoreMetrics metrics;
+
+    protected final ToLongFunction<? super Node<USERKEY, STOREKEY>> nodeSize;
+
+    protected final ToLongFunction<? super VALUE> valueSize;
+
+    /**
+     * Report calls without byte sizes.
+     *
+     * @param nodeStore The store to instrument.
+     * @param metrics Where calls are reported.
+     */
+    public InstrumentedNodeStore(
+        final NodeStore<USERKEY, STOREKEY, VALUE> nodeStore,
+        final NodeStoreMetrics metrics
+    ) {
+        this(nodeStore, metrics, n -> 0, v -> 0);
+    }
+
+    /**
+     * @param nodeStore The store to instrument.
+     * @param metrics Where calls are reported.
+     * @param nodeSize Measures the bytes of a node.
+     * @param valueSize Measures the bytes of a value.
+     */
+    public InstrumentedNodeStore(
+        final NodeStore<USERKEY, STOREKEY, VALUE> nodeStore,
+        final NodeStoreMetrics metrics,
+        final ToLongFunction<? super Node<USERKEY, STOREKEY>> nodeSize,
+        final ToLongFunction<? super VALUE> valueSize
+    ) {
+        this.nodeStore = nodeStore;
+        this.metrics = metrics;
+        this.nodeSize = nodeSize;
+        this.valueSize = valueSize;
+    }
+
+    /**
+     * Instrument a store, returning an {@link InstrumentedBatchNodeStore} if it is a {@link BatchNodeStore}.
+     *
+     * @param nodeStore The store to instrument.
+     * @param metrics Where calls are reported.
+     * @param <USERKEY> The user key type.
+     * @param <STOREKEY> The data store key type.
+     * @param <VALUE> The value being stored.
+     * @return The instrumented store.
+     */
+    public static <USERKEY, STOREKEY, VALUE> InstrumentedNodeStore<USERKEY, STOREKEY, VALUE> wrap(
+        final NodeStore<USERKEY, STOREKEY, VALUE> nodeStore,
+        final NodeStoreMetrics metrics
+    ) {
+        if (nodeStore instanceof BatchNodeStore) {
+            return new InstrumentedBatchNodeStore<>((BatchNodeStore<USERKEY, STOREKEY, VALUE>) nodeStore, metrics);
+        }
+
+        return new InstrumentedNodeStore<>(nodeStore, metrics);
+    }
+
+    /**
+     * Instrument a store with a new {@link JmxNodeStoreMetrics} registered under {@code name}.
+     *
+     * @param nodeStore The store to instrument.
+     * @param name The name of the MBean. See {@link JmxNodeStoreMetrics#register(String)}.
+     * @param <USERKEY> The user key type.
+     * @param <STOREKEY> The data store key type.
+     * @param <VALUE> The value being stored.
+     * @return The instrumented store.
+     */
+    public static <USERKEY, STOREKEY, VALUE> InstrumentedNodeStore<USERKEY, STOREKEY, VALUE> wrap(
+        final NodeStore<USERKEY, STOREKEY, VALUE> nodeStore,
+        final String name
+    ) {
+        final JmxNodeStoreMetrics metrics = new JmxNodeStoreMetrics();
+        metrics.register(name);
+        return wrap(nodeStore, metrics);
+    }
+
+    /**
+     * Measure a node by the length of its {@link NodeUtil#storeNode(OutputStream, Node, Function, Function)} form.
+     *
+     * @param storeUserKey How to convert a key for the user to bytes.
+     * @param storeStoreKey How to convert a key that the storage system uses to bytes.
+     * @param <USERKEY> The user key type.
+     * @param <STOREKEY> The data store key type.
+     * @return A function that gives the serialized size of a node.
+     */
+    public static <USERKEY, STOREKEY> ToLongFunction<Node<USERKEY, STOREKEY>> serializedSize(
+        final Function<USERKEY, byte[]> storeUserKey,
+        final Function<STOREKEY, byte[]> storeStoreKey
+    ) {
+        return node -> {
+            final CountingOutputStream out = new CountingOutputStream();
+            try {
+                NodeUtil.storeNode(out, node, storeUserKey, storeStoreKey);
+            }
+            catch (final IOException e) {
+                throw new NodeStoreException(e);
+            }
+            return out.count;
+        };
+    }
+
+    /**
+     * @return Where calls are reported.
+     */
+    public NodeStoreMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Time a call and report it with the size of its result.
+     */
+    protected <T> T record(final Operation operation, final Supplier<T> call, final ToLongFunction<? super T> size) {
+        final long start = System.nanoTime();
+        final T result;
+        try {
+            result = call.get();
+        }
+        catch (final RuntimeException e) {
+            metrics.record(operation, System.nanoTime() - start, 0, true);
+            throw e;
+        }
+        final long nanos = System.nanoTime() - start;
+
+        metrics.record(operation, nanos, result == null ? 0 : size.applyAsLong(result), false);
+
+        return result;
+    }
+
+    /**
+     * Time a call that returns nothing and report it with a size measured before the call.
+     */
+    protected void record(final Operation operation, final long bytes, final Runnable call) {
+        final long start = System.nanoTime();
+        try {
+            call.run();
+        }
+        catch (final RuntimeException e) {
+            metrics.record(operation, System.nanoTime() - start, bytes, true);
+            throw e;
+        }
+
+        metrics.record(operation, System.nanoTime() - start, bytes, false);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public VALUE loadData(final STOREKEY key) {
+        return record(Operation.LOAD_DATA, () -> nodeStore.loadData(key), valueSize);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * This is recorded as a {@link Operation#LOAD_DATA} of no bytes.
+     */
+    @Override
+    public boolean containsData(final STOREKEY key) {
+        return record(Operation.LOAD_DATA, () -> nodeStore.containsData(key), found -> 0L);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Node<USERKEY, STOREKEY> loadNode(final STOREKEY key) {
+        return record(Operation.LOAD_NODE, () -> nodeStore.loadNode(key), nodeSize);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void store(final STOREKEY key, final VALUE data) {
+        record(Operation.STORE_DATA, valueSize.applyAsLong(data), () -> nodeStore.store(key, data));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void store(final STOREKEY key, final Node<USERKEY, STOREKEY> node) {
+        record(Operation.STORE_NODE, nodeSize.applyAsLong(node), () -> nodeStore.store(key, node));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeNode(final STOREKEY key) {
+        record(Operation.REMOVE_NODE, 0, () -> nodeStore.removeNode(key));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeData(final STOREKEY key) {
+        record(Operation.REMOVE_DATA, 0, () -> nodeStore.removeData(key));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public STOREKEY generateKey(final Node<USERKEY, STOREKEY> node, final VALUE value) {
+        return record(Operation.GENERATE_KEY, () -> nodeStore.generateKey(node, value), k -> 0);
+    }
+
+    /**
+     * @return True if the wrapped store is a {@link VersionedNodeStore} that is versioned.
+     */
+    @Override
+    public boolean isVersioned() {
+        return nodeStore instanceof VersionedNodeStore && ((VersionedNodeStore<?, ?, ?>) nodeStore).isVersioned();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws UnsupportedOperationException If the wrapped store is not versioned.
+     */
+    @Override
+    public Object nodeVersion(final STOREKEY key) {
+        final VersionedNodeStore<USERKEY, STOREKEY, VALUE> versions = versions();
+        return record(Operation.NODE_VERSION, () -> versions.nodeVersion(key), v -> 0L);
+    }
+
+    /**
+     * This is recorded as a {@link Operation#STORE_NODE}.
+     *
+     * {@inheritDoc}
+     *
+     * @throws UnsupportedOperationException If the wrapped store is not versioned.
+     */
+    @Override
+    public Object storeVersioned(final STOREKEY key, final Node<USERKEY, STOREKEY> node) {
+        final VersionedNodeStore<USERKEY, STOREKEY, VALUE> versions = versions();
+        final long bytes = nodeSize.applyAsLong(node);
+        return record(Operation.STORE_NODE, () -> versions.storeVersioned(key, node), v -> bytes);
+    }
+
+    @SuppressWarnings("unchecked")
+    private VersionedNodeStore<USERKEY, STOREKEY, VALUE> versions() {
+        if (!isVersioned()) {
+            throw new UnsupportedOperationException("The wrapped store is not versioned.");
+        }
+        return (VersionedNodeStore<USERKEY, STOREKEY, VALUE>) nodeStore;
+    }
+
+    /**
+     * Conversion is not reported as it is not expected to call the backend.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public STOREKEY convert(final USERKEY key) {
+        return nodeStore.convert(key);
+    }
+
+    /**
+     * Counts and discards the bytes written to it.
+     */
+    private static final class CountingOutputStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(final int b) {
+            count++;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) {
+            count += len;
+        }
+    }
+}
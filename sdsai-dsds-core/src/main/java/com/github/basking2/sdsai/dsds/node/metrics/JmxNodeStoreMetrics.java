@@ -0,0 +1,191 @@
+package com.github.basking2.sdsai.dsds.node.metrics;
+
+import com.github.basking2.sdsai.dsds.node.NodeStoreException;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps counts, failures, byte totals and an HDR latency histogram per {@link NodeStoreMetrics.Operation}
+ * and exposes them as a {@link NodeStoreMetricsMXBean}.
+ *
+ * Histograms record nanoseconds to 3 significant digits and grow as needed.
+ */
+public class JmxNodeStoreMetrics implements NodeStoreMetrics, NodeStoreMetricsMXBean {
+
+    /**
+     * The JMX domain that {@link #register(String)} registers under.
+     */
+    public static final String DOMAIN = "com.github.basking2.sdsai.dsds";
+
+    /**
+     * Everything recorded about one operation.
+     */
+    private static final class Stats {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final ConcurrentHistogram latency = new ConcurrentHistogram(3);
+    }
+
+    private final Map<Operation, Stats> stats = new EnumMap<>(Operation.class);
+
+    private ObjectName objectName;
+
+    public JmxNodeStoreMetrics() {
+        for (final Operation operation : Operation.values()) {
+            stats.put(operation, new Stats());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void record(final Operation operation, final long nanos, final long bytes, final boolean failed) {
+        final Stats s = stats.get(operation);
+
+        s.count.increment();
+        s.bytes.add(bytes);
+        s.latency.recordValue(Math.max(0, nanos));
+        if (failed) {
+            s.failures.increment();
+        }
+    }
+
+    /**
+     * @param operation The operation.
+     * @return The number of calls.
+     */
+    public long getCount(final Operation operation) {
+        return stats.get(operation).count.sum();
+    }
+
+    /**
+     * @param operation The operation.
+     * @return The number of calls that threw an exception.
+     */
+    public long getFailures(final Operation operation) {
+        return stats.get(operation).failures.sum();
+    }
+
+    /**
+     * @param operation The operation.
+     * @return The bytes loaded or stored.
+     */
+    public long getBytes(final Operation operation) {
+        return stats.get(operation).bytes.sum();
+    }
+
+    /**
+     * @param operation The operation.
+     * @return A copy of the latency histogram, in nanoseconds.
+     */
+    public Histogram getHistogram(final Operation operation) {
+        return stats.get(operation).latency.copy();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<OperationStatistics> getOperations() {
+        final List<OperationStatistics> operations = new ArrayList<>(stats.size());
+
+        for (final Map.Entry<Operation, Stats> e : stats.entrySet()) {
+            final Stats s = e.getValue();
+            final Histogram h = s.latency.copy();
+
+            operations.add(new OperationStatistics(
+                e.getKey().name(),
+                s.count.sum(),
+                s.failures.sum(),
+                s.bytes.sum(),
+                h.getMean(),
+                h.getValueAtPercentile(50),
+                h.getValueAtPercentile(99),
+                h.getValueAtPercentile(99.9),
+                h.getMaxValue()
+            ));
+        }
+
+        return operations;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void reset() {
+        for (final Stats s : stats.values()) {
+            s.count.reset();
+            s.failures.reset();
+            s.bytes.reset();
+            s.latency.reset();
+        }
+    }
+
+    /**
+     * Register with the platform {@link MBeanServer} as {@code com.github.basking2.sdsai.dsds:type=NodeStore,name=<name>}.
+     *
+     * @param name The name of this store's metrics.
+     * @throws NodeStoreException If registration fails, such as when the name is taken.
+     */
+    public synchronized void register(final String name) {
+        try {
+            register(new ObjectName(DOMAIN + ":type=NodeStore,name=" + ObjectName.quote(name)));
+        }
+        catch (final JMException e) {
+            throw new NodeStoreException("Registering metrics "+name, e);
+        }
+    }
+
+    /**
+     * Register with the platform {@link MBeanServer}.
+     *
+     * @param objectName The name to register as.
+     * @throws NodeStoreException If registration fails, such as when the name is taken.
+     */
+    public synchronized void register(final ObjectName objectName) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            this.objectName = objectName;
+        }
+        catch (final JMException e) {
+            throw new NodeStoreException("Registering metrics "+objectName, e);
+        }
+    }
+
+    /**
+     * Unregister from the platform {@link MBeanServer} if registered.
+     */
+    public synchronized void unregister() {
+        if (objectName == null) {
+            return;
+        }
+
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            objectName = null;
+        }
+        catch (final JMException e) {
+            throw new NodeStoreException("Unregistering metrics "+objectName, e);
+        }
+    }
+
+    /**
+     * @return The name this is registered as, or null.
+     */
+    public synchronized ObjectName getObjectName() {
+        return objectName;
+    }
+}
@@ -0,0 +1,56 @@
+package com.github.basking2.sdsai.dsds.node.metrics;
+
+import com.github.basking2.sdsai.dsds.node.NodeStore;
+
+/**
+ * Receives a record of each call an {@link InstrumentedNodeStore} makes to the {@link NodeStore} it wraps.
+ *
+ * Records are made on the calling thread, so implementations must be thread safe and should be cheap.
+ * {@link JmxNodeStoreMetrics} is the default implementation.
+ */
+public interface NodeStoreMetrics {
+
+    /**
+     * The calls that are recorded.
+     */
+    enum Operation {
+        LOAD_NODE,
+        LOAD_DATA,
+        STORE_NODE,
+        STORE_DATA,
+        REMOVE_NODE,
+        REMOVE_DATA,
+        GENERATE_KEY,
+
+        /**
+         * {@link com.github.basking2.sdsai.dsds.node.BatchNodeStore#loadNodes(java.util.Collection)}.
+         */
+        LOAD_NODES,
+
+        /**
+         * {@link com.github.basking2.sdsai.dsds.node.BatchNodeStore#loadData(java.util.Collection)}.
+         */
+        LOAD_DATA_MANY,
+
+        /**
+         * {@link com.github.basking2.sdsai.dsds.node.BatchNodeStore#execute(com.github.basking2.sdsai.dsds.node.NodeStoreBatch)}.
+         */
+        EXECUTE_BATCH,
+
+        /**
+         * {@link com.github.basking2.sdsai.dsds.node.VersionedNodeStore#nodeVersion(Object)}.
+         */
+        NODE_VERSION
+    }
+
+    /**
+     * Record one call.
+     *
+     * @param operation The call.
+     * @param nanos How long the call took.
+     * @param bytes The size of the nodes and data loaded or stored, as measured by the
+     *              {@link InstrumentedNodeStore}. This is 0 if sizes are not measured.
+     * @param failed True if the call threw an exception.
+     */
+    void record(Operation operation, long nanos, long bytes, boolean failed);
+}
@@ -0,0 +1,96 @@
+package com.github.basking2.sdsai.dsds.node.metrics;
+
+import java.beans.ConstructorProperties;
+import java.util.List;
+
+/**
+ * The management interface of {@link JmxNodeStoreMetrics}.
+ */
+public interface NodeStoreMetricsMXBean {
+
+    /**
+     * @return The statistics of every operation, in {@link NodeStoreMetrics.Operation} order.
+     */
+    List<OperationStatistics> getOperations();
+
+    /**
+     * Zero every count and histogram.
+     */
+    void reset();
+
+    /**
+     * A snapshot of the calls of one {@link NodeStoreMetrics.Operation}. Latencies are in nanoseconds.
+     */
+    final class OperationStatistics {
+        private final String operation;
+        private final long count;
+        private final long failures;
+        private final long bytes;
+        private final double meanNanos;
+        private final long p50Nanos;
+        private final long p99Nanos;
+        private final long p999Nanos;
+        private final long maxNanos;
+
+        @ConstructorProperties({
+            "operation", "count", "failures", "bytes", "meanNanos", "p50Nanos", "p99Nanos", "p999Nanos", "maxNanos"
+        })
+        public OperationStatistics(
+            final String operation,
+            final long count,
+            final long failures,
+            final long bytes,
+            final double meanNanos,
+            final long p50Nanos,
+            final long p99Nanos,
+            final long p999Nanos,
+            final long maxNanos
+        ) {
+            this.operation = operation;
+            this.count = count;
+            this.failures = failures;
+            this.bytes = bytes;
+            this.meanNanos = meanNanos;
+            this.p50Nanos = p50Nanos;
+            this.p99Nanos = p99Nanos;
+            this.p999Nanos = p999Nanos;
+            this.maxNanos = maxNanos;
+        }
+
+        public String getOperation() {
+            return operation;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getFailures() {
+            return failures;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public double getMeanNanos() {
+            return meanNanos;
+        }
+
+        public long getP50Nanos() {
+            return p50Nanos;
+        }
+
+        public long getP99Nanos() {
+            return p99Nanos;
+        }
+
+        public long getP999Nanos() {
+            return p999Nanos;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+    }
+}
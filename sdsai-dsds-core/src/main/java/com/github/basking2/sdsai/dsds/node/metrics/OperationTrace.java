@@ -0,0 +1,138 @@
+package com.github.basking2.sdsai.dsds.node.metrics;
+
+import com.github.basking2.sdsai.dsds.node.metrics.NodeStoreMetrics.Operation;
+
+import java.util.Arrays;
+
+/**
+ * The {@link com.github.basking2.sdsai.dsds.node.NodeStore} calls made by one public operation
+ * of a data structure, such as {@code BTree.remove}, and the restructuring it did.
+ *
+ * Traces are built by an {@link OperationTracer} and given to an {@link OperationTraceListener}.
+ */
+public class OperationTrace {
+    private final String operation;
+    private final long[] calls = new long[Operation.values().length];
+    private final long start = System.nanoTime();
+    private long nanos;
+    private long bytes;
+    private int depth;
+    private int splits;
+    private int merges;
+    private int rotations;
+
+    /**
+     * How many operations are running in this one. Only the outermost operation is reported.
+     */
+    int nesting = 1;
+
+    OperationTrace(final String operation) {
+        this.operation = operation;
+    }
+
+    void record(final Operation call, final long bytes) {
+        calls[call.ordinal()]++;
+        this.bytes += bytes;
+    }
+
+    void depth(final int depth) {
+        this.depth = Math.max(this.depth, depth);
+    }
+
+    void split() {
+        splits++;
+    }
+
+    void merge() {
+        merges++;
+    }
+
+    void rotate() {
+        rotations++;
+    }
+
+    void finish() {
+        nanos = System.nanoTime() - start;
+    }
+
+    /**
+     * @return The operation, such as {@code BTree.put}.
+     */
+    public String getOperation() {
+        return operation;
+    }
+
+    /**
+     * @param call A {@link com.github.basking2.sdsai.dsds.node.NodeStore} call.
+     * @return The number of times the operation made that call.
+     */
+    public long getCalls(final Operation call) {
+        return calls[call.ordinal()];
+    }
+
+    /**
+     * @return The number of {@link com.github.basking2.sdsai.dsds.node.NodeStore} calls the operation made.
+     */
+    public long getTotalCalls() {
+        long total = 0;
+        for (final long c : calls) {
+            total += c;
+        }
+        return total;
+    }
+
+    /**
+     * @return The bytes loaded and stored, if the store measures them.
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return How long the operation took.
+     */
+    public long getNanos() {
+        return nanos;
+    }
+
+    /**
+     * @return The deepest level reached below the root of a tree, or the number of pages walked past
+     *         the head of a list.
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * @return The number of nodes split, or pages added.
+     */
+    public int getSplits() {
+        return splits;
+    }
+
+    /**
+     * @return The number of nodes, or pages, merged into a sibling.
+     */
+    public int getMerges() {
+        return merges;
+    }
+
+    /**
+     * @return The number of times keys were moved between sibling nodes through their parent.
+     */
+    public int getRotations() {
+        return rotations;
+    }
+
+    @Override
+    public String toString() {
+        return operation
+            + " calls=" + getTotalCalls() + Arrays.toString(calls)
+            + " bytes=" + bytes
+            + " nanos=" + nanos
+            + " depth=" + depth
+            + " splits=" + splits
+            + " merges=" + merges
+            + " rotations=" + rotations;
+    }
+}
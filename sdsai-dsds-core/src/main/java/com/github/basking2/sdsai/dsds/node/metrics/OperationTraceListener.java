@@ -0,0 +1,15 @@
+package com.github.basking2.sdsai.dsds.node.metrics;
+
+/**
+ * Receives the {@link OperationTrace} of each data structure operation traced by an {@link OperationTracer}.
+ */
+@FunctionalInterface
+public interface OperationTraceListener {
+
+    /**
+     * Called on the thread that ran the operation once it returns or throws.
+     *
+     * @param trace The trace. It is not changed after this call.
+     */
+    void onTrace(OperationTrace trace);
+}
@@ -0,0 +1,125 @@
+package com.github.basking2.sdsai.dsds.node.metrics;
+
+/**
+ * Attributes {@link com.github.basking2.sdsai.dsds.node.NodeStore} calls to the data structure
+ * operation that made them.
+ *
+ * This is a {@link NodeStoreMetrics} to give to an {@link InstrumentedNodeStore}. The same tracer is given
+ * to the data structures using that store, such as with {@code BTree.setTracer}. A data structure calls
+ * {@link #begin(String)} and {@link #end()} around each public operation and reports restructuring
+ * as it happens. Every call recorded on the same thread in between is added to the operation's
+ * {@link OperationTrace}, which is given to the {@link OperationTraceListener} when the outermost
+ * operation ends.
+ *
+ * Calls made on other threads, such as by {@code BTree.clear(ForkJoinPool)}, are not attributed.
+ */
+public class OperationTracer implements NodeStoreMetrics {
+
+    private final OperationTraceListener listener;
+
+    private final NodeStoreMetrics metrics;
+
+    private final ThreadLocal<OperationTrace> current = new ThreadLocal<>();
+
+    /**
+     * @param listener Receives each trace.
+     */
+    public OperationTracer(final OperationTraceListener listener) {
+        this(listener, null);
+    }
+
+    /**
+     * @param listener Receives each trace.
+     * @param metrics Every call is also recorded here. May be null.
+     */
+    public OperationTracer(final OperationTraceListener listener, final NodeStoreMetrics metrics) {
+        this.listener = listener;
+        this.metrics = metrics;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void record(final Operation operation, final long nanos, final long bytes, final boolean failed) {
+        if (metrics != null) {
+            metrics.record(operation, nanos, bytes, failed);
+        }
+
+        final OperationTrace trace = current.get();
+        if (trace != null) {
+            trace.record(operation, bytes);
+        }
+    }
+
+    /**
+     * Start tracing an operation on this thread. If an operation is already being traced
+     * the new one is made part of it.
+     *
+     * @param operation The name of the operation, such as {@code BTree.put}.
+     */
+    public void begin(final String operation) {
+        final OperationTrace trace = current.get();
+        if (trace == null) {
+            current.set(new OperationTrace(operation));
+        }
+        else {
+            trace.nesting++;
+        }
+    }
+
+    /**
+     * End the operation started by the matching {@link #begin(String)}. If it is the outermost
+     * operation its trace is given to the listener.
+     */
+    public void end() {
+        final OperationTrace trace = current.get();
+        if (trace == null || --trace.nesting > 0) {
+            return;
+        }
+
+        current.remove();
+        trace.finish();
+        listener.onTrace(trace);
+    }
+
+    /**
+     * @param depth A depth reached by the current operation.
+     */
+    public void depth(final int depth) {
+        final OperationTrace trace = current.get();
+        if (trace != null) {
+            trace.depth(depth);
+        }
+    }
+
+    /**
+     * The current operation split a node.
+     */
+    public void split() {
+        final OperationTrace trace = current.get();
+        if (trace != null) {
+            trace.split();
+        }
+    }
+
+    /**
+     * The current operation merged a node into a sibling.
+     */
+    public void merge() {
+        final OperationTrace trace = current.get();
+        if (trace != null) {
+            trace.merge();
+        }
+    }
+
+    /**
+     * The current operation moved keys between siblings.
+     */
+    public void rotate() {
+        final OperationTrace trace = current.get();
+        if (trace != null) {
+            trace.rotate();
+        }
+    }
+}
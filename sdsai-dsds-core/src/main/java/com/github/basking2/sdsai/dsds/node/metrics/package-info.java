@@ -0,0 +1,4 @@
+/**
+ * Metrics of the calls made to a {@link com.github.basking2.sdsai.dsds.node.NodeStore}.
+ */
+package com.github.basking2.sdsai.dsds.node.metrics;
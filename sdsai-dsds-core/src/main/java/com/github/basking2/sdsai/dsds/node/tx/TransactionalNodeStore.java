@@ -1,7 +1,9 @@
 package com.github.basking2.sdsai.dsds.node.tx;
 
+import com.github.basking2.sdsai.dsds.node.BatchNodeStore;
 import com.github.basking2.sdsai.dsds.node.Node;
 import com.github.basking2.sdsai.dsds.node.NodeStore;
+import com.github.basking2.sdsai.dsds.node.NodeStoreBatch;
 import com.github.basking2.sdsai.dsds.node.NodeStoreNodeNotFoundException;
 
 import java.util.List;
@@ -19,6 +21,12 @@ import java.util.HashMap;
  * to the transaction are directly proxied to the {@link NodeStore} used to
  * initialize this object.
  *
+ * If the {@link NodeStore} is a {@link BatchNodeStore}, a commit sends all writes as one {@link NodeStoreBatch}.
+ *
+ * Node versions are not forwarded, as a buffered write has no version until it is committed.
+ * A validated {@link com.github.basking2.sdsai.dsds.node.PinnedNodeStore} must be put over the
+ * versioned store, beneath the transaction, rather than over the transaction.
+ *
  * @param <USERKEY> The user key type.
  * @param <STOREKEY> The data store key type.
  * @param <VALUE> The value being stored.
@@ -33,7 +41,7 @@ public class TransactionalNodeStore<USERKEY, STOREKEY, VALUE>
      *
      * This preserves ordering.
      */
-    private final List<Operation<?, ?>> operations;
+    private final List<WriteOperation<?, ?>> operations;
 
     /**
      * Operations added to {@link #operations} are indexed here so the value can be read or the operation can be obviated.
@@ -91,13 +99,34 @@ public class TransactionalNodeStore<USERKEY, STOREKEY, VALUE>
 
     /**
      * Execute all operations in this transaction.
+     *
+     * For a {@link BatchNodeStore} the operations are sent as one batch, so their order
+     * is only kept for operations on the same key.
      */
     public void commit()
     {
-        for (final Operation<?, ?> o : operations)
+        if (nodeStore instanceof BatchNodeStore)
+        {
+            final NodeStoreBatch<USERKEY, STOREKEY, VALUE> batch = new NodeStoreBatch<>();
+
+            for (final WriteOperation<?, ?> o : operations)
+            {
+                if (!o.isDeleted()) {
+                    o.addTo(batch);
+                }
+            }
+
+            if (!batch.isEmpty()) {
+                ((BatchNodeStore<USERKEY, STOREKEY, VALUE>) nodeStore).execute(batch);
+            }
+        }
+        else
         {
-            if (!o.isDeleted()) {
-                o.execute();
+            for (final WriteOperation<?, ?> o : operations)
+            {
+                if (!o.isDeleted()) {
+                    o.execute();
+                }
             }
         }
 
@@ -161,6 +190,26 @@ public class TransactionalNodeStore<USERKEY, STOREKEY, VALUE>
         }
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * Data this transaction has not read or written is checked in the wrapped store and is not cached.
+     */
+    @Override
+    public boolean containsData(final STOREKEY key)
+    {
+        final Operation<STOREKEY, VALUE> readOperation = loadDataReadOperation(key);
+
+        if ( readOperation == null )
+        {
+            return nodeStore.containsData(key);
+        }
+        else
+        {
+            return readOperation.getValue() != null;
+        }
+    }
+
     /**
      * Attempt to find a read operation in this transaction or any parent transaction.
      */
@@ -203,7 +252,7 @@ public class TransactionalNodeStore<USERKEY, STOREKEY, VALUE>
     @Override
     public void removeNode(final STOREKEY key)
     {
-        final Operation<STOREKEY, Node<USERKEY, STOREKEY>> o = new Operation<STOREKEY, Node<USERKEY, STOREKEY>>()
+        final WriteOperation<STOREKEY, Node<USERKEY, STOREKEY>> o = new WriteOperation<STOREKEY, Node<USERKEY, STOREKEY>>(key, null)
         {
             @Override
             protected void doExecute()
@@ -211,6 +260,12 @@ public class TransactionalNodeStore<USERKEY, STOREKEY, VALUE>
                 nodeStore.removeNode(key);
             }
 
+            @Override
+            void addTo(final NodeStoreBatch<USERKEY, STOREKEY, VALUE> batch)
+            {
+                batch.removeNode(key);
+            }
+
             @Override
             public Node<USERKEY, STOREKEY> getValue()
             {
@@ -232,13 +287,19 @@ public class TransactionalNodeStore<USERKEY, STOREKEY, VALUE>
     @Override
     public void removeData(final STOREKEY key)
     {
-        final Operation<STOREKEY, VALUE> o = new Operation<STOREKEY, VALUE>(key, null)
+        final WriteOperation<STOREKEY, VALUE> o = new WriteOperation<STOREKEY, VALUE>(key, null)
         {
             @Override
             protected void doExecute()
             {
                 nodeStore.removeData(key);
             }
+
+            @Override
+            void addTo(final NodeStoreBatch<USERKEY, STOREKEY, VALUE> batch)
+            {
+                batch.removeData(key);
+            }
         };
 
         if ( values.containsKey(key) ) {
@@ -255,14 +316,20 @@ public class TransactionalNodeStore<USERKEY, STOREKEY, VALUE>
     @Override
     public void store(final STOREKEY key, final Node<USERKEY, STOREKEY> node)
     {
-        final Operation<STOREKEY, Node<USERKEY, STOREKEY>> o =
-            new Operation<STOREKEY, Node<USERKEY, STOREKEY>>(key, node)
+        final WriteOperation<STOREKEY, Node<USERKEY, STOREKEY>> o =
+            new WriteOperation<STOREKEY, Node<USERKEY, STOREKEY>>(key, node)
             {
                 @Override
                 protected void doExecute()
                 {
                     nodeStore.store(key, node);
                 }
+
+                @Override
+                void addTo(final NodeStoreBatch<USERKEY, STOREKEY, VALUE> batch)
+                {
+                    batch.store(key, node);
+                }
             };
 
         if ( nodes.containsKey(key) ) {
@@ -279,14 +346,20 @@ public class TransactionalNodeStore<USERKEY, STOREKEY, VALUE>
     @Override
     public void store(final STOREKEY key, final VALUE value)
     {
-        final Operation<STOREKEY, VALUE> o =
-            new Operation<STOREKEY, VALUE>(key, value)
+        final WriteOperation<STOREKEY, VALUE> o =
+            new WriteOperation<STOREKEY, VALUE>(key, value)
             {
                 @Override
                 protected void doExecute()
                 {
                     nodeStore.store(key, value);
                 }
+
+                @Override
+                void addTo(final NodeStoreBatch<USERKEY, STOREKEY, VALUE> batch)
+                {
+                    batch.store(key, value);
+                }
             };
 
         if ( values.containsKey(key) ) {
@@ -297,6 +370,22 @@ public class TransactionalNodeStore<USERKEY, STOREKEY, VALUE>
         values.put(key, o);
     }
 
+    /**
+     * An operation that writes to the {@link NodeStore} and so can be added to a {@link NodeStoreBatch}.
+     */
+    private abstract class WriteOperation<K, V> extends Operation<K, V>
+    {
+        WriteOperation(final K key, final V value)
+        {
+            super(key, value);
+        }
+
+        /**
+         * Add this operation's write to the batch instead of executing it.
+         */
+        abstract void addTo(NodeStoreBatch<USERKEY, STOREKEY, VALUE> batch);
+    }
+
     /**
      * An interface to provide a callback for doing operations on sub-{@link TransactionalNodeStore}s.
      */
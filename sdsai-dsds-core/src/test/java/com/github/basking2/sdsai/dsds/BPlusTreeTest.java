@@ -0,0 +1,157 @@
+package com.github.basking2.sdsai.dsds;
+
+import com.github.basking2.sdsai.dsds.mem.ConcurrentMemoryNodeStore;
+import com.github.basking2.sdsai.dsds.mem.CountingNodeStore;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BPlusTreeTest {
+
+    private static <T> List<T> list(final Iterable<T> iterable) {
+        final List<T> list = new ArrayList<>();
+        for (final T t : iterable) {
+            list.add(t);
+        }
+        return list;
+    }
+
+    @Test
+    public void putIterateAndRemove() {
+        final BPlusTree<Integer, String, String> tree =
+            new BPlusTree<>(-1, new ConcurrentMemoryNodeStore<Integer, String>(), 1);
+        final TreeMap<Integer, String> expected = new TreeMap<>();
+        final Random random = new Random(11);
+
+        for (int i = 0; i < 500; i++) {
+            final int k = random.nextInt(2000);
+            assertEquals(expected.put(k, "v" + k), tree.put(k, "v" + k));
+        }
+
+        assertEquals(expected.size(), tree.size());
+        assertEquals(new ArrayList<>(expected.keySet()), list(tree::getIterator));
+        assertEquals(expected.get(expected.firstKey()), tree.get(expected.firstKey()));
+
+        assertEquals(new ArrayList<>(expected.subMap(100, 900).keySet()), list(tree.select(100, 900)));
+        assertEquals(new ArrayList<>(expected.tailMap(1500).keySet()), list(tree.select(1500, null)));
+        assertFalse(tree.select(5000, 6000).iterator().hasNext());
+
+        for (final Integer k : new ArrayList<>(expected.keySet())) {
+            if (k % 2 == 0) {
+                assertEquals("v" + k, tree.remove(k));
+                expected.remove(k);
+            }
+        }
+        assertNull(tree.remove(-5));
+
+        assertEquals(expected.size(), tree.size());
+        assertEquals(new ArrayList<>(expected.keySet()), list(tree.keySet()));
+        assertFalse(tree.putKey(expected.firstKey()));
+
+        tree.clear();
+        assertTrue(tree.isEmpty());
+        assertEquals(0, tree.size());
+        assertNull(tree.get(expected.firstKey()));
+
+        tree.destroy();
+    }
+
+    @Test
+    public void rangeScanWalksLeaves() {
+        final CountingNodeStore<Integer, String> store = new CountingNodeStore<>();
+        final BPlusTree<Integer, String, String> tree = new BPlusTree<>(-1, store, 1);
+
+        for (int i = 0; i < 500; i++) {
+            tree.put(i, "v" + i);
+        }
+
+        store.nodeLoads.set(0);
+        final Iterator<Integer> keys = tree.select(200, 300).iterator();
+        for (int i = 200; i < 300; i++) {
+            assertEquals(Integer.valueOf(i), keys.next());
+        }
+        assertFalse(keys.hasNext());
+
+        // Leaves hold at least two keys, so 100 keys span at most 51 leaves,
+        // plus the root and internal nodes of one descent of a tree of fewer than 9 levels.
+        assertTrue("Loaded " + store.nodeLoads.get() + " nodes.", store.nodeLoads.get() <= 60);
+
+        // Reopening the tree reads the node size from the root.
+        final BPlusTree<Integer, String, String> reopened = new BPlusTree<>(-1, store, 50);
+        reopened.put(1000, "v1000");
+        assertEquals(501, reopened.size());
+    }
+
+    @Test
+    public void removalsFreeEmptyLeaves() {
+        final ConcurrentMemoryNodeStore<Integer, String> store = new ConcurrentMemoryNodeStore<>();
+        final BPlusTree<Integer, String, String> tree = new BPlusTree<>(-1, store, 1);
+        final TreeMap<Integer, String> expected = new TreeMap<>();
+        final Random random = new Random(12);
+
+        for (int i = 0; i < 4000; i++) {
+            final int k = random.nextInt(500);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(k), tree.remove(k));
+            }
+            else {
+                assertEquals(expected.put(k, "v" + k), tree.put(k, "v" + k));
+            }
+        }
+
+        assertEquals(new ArrayList<>(expected.keySet()), list(tree::getIterator));
+        assertEquals(new ArrayList<>(expected.subMap(100, 300).keySet()), list(tree.select(100, 300)));
+
+        // Remove from both ends and the middle so that first, last and inner leaves are freed.
+        for (final Integer k : new ArrayList<>(expected.keySet())) {
+            if (k < 150 || k > 350 || (k > 200 && k < 250)) {
+                assertEquals(expected.remove(k), tree.remove(k));
+            }
+        }
+        assertEquals(new ArrayList<>(expected.keySet()), list(tree::getIterator));
+        assertEquals(new ArrayList<>(expected.subMap(160, 260).keySet()), list(tree.select(160, 260)));
+        assertEquals(expected, tree);
+
+        for (final Integer k : new ArrayList<>(expected.keySet())) {
+            tree.remove(k);
+        }
+        assertTrue(tree.isEmpty());
+
+        // Only the root and no values are left.
+        assertEquals(1, store.size());
+
+        tree.put(7, "v7");
+        assertEquals(Collections.singletonList(7), list(tree::getIterator));
+    }
+
+    @Test
+    public void entriesHashLikeMapEntries() {
+        final BPlusTree<Integer, String, String> tree =
+            new BPlusTree<>(-1, new ConcurrentMemoryNodeStore<Integer, String>(), 1);
+        final TreeMap<Integer, String> expected = new TreeMap<>();
+        for (int i = 0; i < 50; i++) {
+            tree.put(i, "v" + i);
+            expected.put(i, "v" + i);
+        }
+
+        final Iterator<Map.Entry<Integer, String>> entries = tree.entrySet().iterator();
+        for (final Map.Entry<Integer, String> e : expected.entrySet()) {
+            final Map.Entry<Integer, String> entry = entries.next();
+            assertEquals(e, entry);
+            assertEquals(e.hashCode(), entry.hashCode());
+        }
+        assertEquals(expected.entrySet(), new HashSet<>(tree.entrySet()));
+    }
+}
@@ -0,0 +1,219 @@
+package com.github.basking2.sdsai.dsds;
+
+import com.github.basking2.sdsai.dsds.mem.CountingNodeStore;
+import com.github.basking2.sdsai.dsds.node.NodeStoreException;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BTreeBloomFilterTest {
+
+    private static BTree<String, String, String> tree(final CountingNodeStore<String, String> store) {
+        final BTree<String, String, String> bt = new BTree<>("root", store, 3);
+        bt.enableBloomFilter("bloom", 2000, 0.01, BloomFilter.base64());
+        return bt;
+    }
+
+    @Test
+    public void missesSkipTheStore() {
+        final CountingNodeStore<String, String> store = new CountingNodeStore<>();
+        final BTree<String, String, String> bt = tree(store);
+        for (int i = 0; i < 1000; i++) {
+            bt.put("k" + i, "v" + i);
+        }
+
+        store.dataLoads.set(0);
+        for (int i = 0; i < 1000; i++) {
+            assertNull(bt.get("missing" + i));
+            assertFalse(bt.containsKey("missing" + i));
+            assertNull(bt.remove("missing" + i));
+        }
+
+        // Each of the three calls loads data only on a false positive.
+        assertTrue(store.dataLoads.get() < 3 * 50);
+
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("v" + i, bt.get("k" + i));
+        }
+
+        final List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            keys.add("k" + i);
+            keys.add("missing" + i);
+        }
+        assertEquals(100, bt.getAll(keys).size());
+        assertEquals(100, bt.findKeys(keys).size());
+    }
+
+    @Test
+    public void filterIsReloaded() {
+        final CountingNodeStore<String, String> store = new CountingNodeStore<>();
+        final BTree<String, String, String> bt = tree(store);
+        for (int i = 0; i < 500; i++) {
+            bt.put("k" + i, "v" + i);
+        }
+        bt.flushBloomFilter();
+
+        // A new tree reads the stored filter rather than building one from the keys.
+        final BTree<String, String, String> reopened = new BTree<>("root", store, 3);
+        final BloomFilter<String, String> filter =
+            reopened.enableBloomFilter("bloom", 10, 0.5, BloomFilter.base64());
+        assertEquals(2000, filter.getCapacity());
+
+        for (int i = 0; i < 500; i++) {
+            assertTrue(filter.mightContain("k" + i));
+        }
+
+        store.dataLoads.set(0);
+        for (int i = 0; i < 500; i++) {
+            reopened.get("missing" + i);
+        }
+        assertTrue(store.dataLoads.get() < 25);
+    }
+
+    @Test
+    public void removalsRebuildTheFilter() {
+        final BTree<String, String, String> bt = new BTree<>("root", new CountingNodeStore<String, String>(), 3);
+        final BloomFilter<String, String> filter =
+            bt.enableBloomFilter("bloom", 2000, 0.01, BloomFilter.base64());
+        for (int i = 0; i < 1000; i++) {
+            bt.put("k" + i, "v" + i);
+        }
+
+        // 500 of the 2000 capacity is the default rebuild fraction.
+        for (int i = 0; i < 501; i++) {
+            bt.remove("k" + i);
+        }
+        assertEquals(0, filter.getRemovals());
+
+        int stale = 0;
+        for (int i = 0; i < 501; i++) {
+            if (filter.mightContain("k" + i)) {
+                stale++;
+            }
+        }
+        assertTrue(stale < 25);
+        for (int i = 501; i < 1000; i++) {
+            assertTrue(filter.mightContain("k" + i));
+        }
+    }
+
+    @Test
+    public void rebuildGrowsAnOverfullFilter() {
+        final BTree<String, String, String> bt = new BTree<>("root", new CountingNodeStore<String, String>(), 3);
+        for (int i = 0; i < 1000; i++) {
+            bt.putKey("k" + i);
+        }
+
+        final BloomFilter<String, String> filter =
+            bt.enableBloomFilter("bloom", 100, 0.01, BloomFilter.base64());
+        assertEquals(2000, filter.getCapacity());
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(filter.mightContain("k" + i));
+        }
+
+        bt.clear();
+        assertFalse(filter.mightContain("k1"));
+    }
+
+    @Test
+    public void insertsDoNotStoreTheFilter() {
+        final CountingNodeStore<String, String> store = new CountingNodeStore<>();
+        final BTree<String, String, String> bt = tree(store);
+        final BloomFilter<String, String> filter = bt.enableBloomFilter("bloom", 2000, 0.01, BloomFilter.base64());
+        filter.setFlushInterval(100);
+
+        final int headerStores = store.nodeStores("bloom");
+        for (int i = 0; i < 1000; i++) {
+            bt.put("k" + i, "v" + i);
+        }
+
+        // Opened and closed once per 100 new keys.
+        assertEquals(20, store.nodeStores("bloom") - headerStores);
+    }
+
+    @Test
+    public void anUnflushedFilterIsRebuilt() {
+        final CountingNodeStore<String, String> store = new CountingNodeStore<>();
+        final BTree<String, String, String> bt = tree(store);
+        for (int i = 0; i < 500; i++) {
+            bt.put("k" + i, "v" + i);
+        }
+
+        // The writer stops without flushing, so the stored pages lack the keys.
+        final BTree<String, String, String> reopened = new BTree<>("root", store, 3);
+        final BloomFilter<String, String> filter =
+            reopened.enableBloomFilter("bloom", 10, 0.5, BloomFilter.base64());
+        assertFalse(filter.isOpen());
+
+        for (int i = 0; i < 500; i++) {
+            assertTrue(reopened.containsKey("k" + i));
+        }
+    }
+
+    @Test
+    public void aFailedGrowthKeepsTheStoredFilter() {
+        final CountingNodeStore<String, String> store = new CountingNodeStore<>();
+        final BTree<String, String, String> bt = new BTree<>("root", store, 3);
+        bt.enableBloomFilter("bloom", 100, 0.01, BloomFilter.base64());
+        for (int i = 0; i < 1000; i++) {
+            bt.put("k" + i, "v" + i);
+        }
+        bt.flushBloomFilter();
+
+        // The rebuild grows the filter to 2000 keys and fails after storing one new page.
+        store.failNodeStoresAfter(1);
+        try {
+            bt.rebuildBloomFilter();
+            fail("The store did not fail.");
+        }
+        catch (final NodeStoreException e) {
+            // Expected.
+        }
+        store.failNodeStoresAfter(Integer.MAX_VALUE);
+
+        final BTree<String, String, String> reopened = new BTree<>("root", store, 3);
+        reopened.enableBloomFilter("bloom", 10, 0.5, BloomFilter.base64());
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(reopened.containsKey("k" + i));
+        }
+    }
+
+    @Test
+    public void parallelDestroyRemovesTheFilter() {
+        final CountingNodeStore<String, String> store = new CountingNodeStore<>();
+        final BTree<String, String, String> bt = tree(store);
+        final ForkJoinPool pool = new ForkJoinPool(4);
+
+        try {
+            for (int i = 0; i < 1000; i++) {
+                bt.put("k" + i, "v" + i);
+            }
+            bt.flushBloomFilter();
+
+            bt.clear(pool);
+            assertTrue(bt.isEmpty());
+            store.dataLoads.set(0);
+            for (int i = 0; i < 1000; i++) {
+                assertFalse(bt.containsKey("k" + i));
+            }
+            assertTrue(store.dataLoads.get() < 50);
+
+            bt.put("k1", "v1");
+            bt.flushBloomFilter();
+            bt.destroy(pool);
+            assertEquals(0, store.size());
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.github.basking2.sdsai.dsds;
+
+import com.github.basking2.sdsai.dsds.mem.ConcurrentMemoryNodeStore;
+import com.github.basking2.sdsai.dsds.mem.CountingNodeStore;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BTreeGetAllTest {
+
+    private static List<Integer> evensAndOdds() {
+        final List<Integer> keys = new ArrayList<>();
+        for (int i = 999; i >= 0; i--) {
+            keys.add(i);
+        }
+        return keys;
+    }
+
+    @Test
+    public void getAllWithoutBatches() {
+        final BTree<Integer, String, String> bt = new BTree<>(-1, new ConcurrentMemoryNodeStore<Integer, String>(), 3);
+        for (int i = 0; i < 1000; i += 2) {
+            bt.put(i, "v" + i);
+        }
+
+        final Map<Integer, String> found = bt.getAll(evensAndOdds());
+        assertEquals(500, found.size());
+        assertEquals(Integer.valueOf(998), found.keySet().iterator().next());
+        for (final Map.Entry<Integer, String> e : found.entrySet()) {
+            assertEquals("v" + e.getKey(), e.getValue());
+        }
+
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertEquals(found, bt.getAll(evensAndOdds(), pool));
+            assertEquals(found.keySet(), bt.containsKeys(evensAndOdds(), pool));
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void getAllWithBatches() {
+        final CountingNodeStore<Integer, String> store = new CountingNodeStore<>();
+        final BTree<Integer, String, String> bt = new BTree<>(-1, store, 3);
+        for (int i = 0; i < 1000; i += 2) {
+            bt.put(i, "v" + i);
+        }
+
+        store.reset();
+        final Map<Integer, String> found = bt.getAll(evensAndOdds());
+        assertEquals(500, found.size());
+        assertEquals("v0", found.get(0));
+        assertEquals(0, store.nodeLoads.get() + store.dataLoads.get());
+        assertEquals(1, store.batchLoads.get());
+
+        // Presence is checked per key, without a batch load of the data.
+        store.reset();
+        assertEquals(found.keySet(), bt.containsKeys(evensAndOdds()));
+        assertEquals(0, store.nodeLoads.get() + store.batchLoads.get());
+    }
+
+    @Test
+    public void findKeysSearchesNodes() {
+        final CountingNodeStore<Integer, String> store = new CountingNodeStore<>();
+        final BTree<Integer, String, String> bt = new BTree<>(-1, store, 2);
+        final Set<Integer> expected = new TreeSet<>();
+        for (int i = 0; i < 1000; i += 3) {
+            bt.putKey(i);
+            expected.add(i);
+        }
+
+        store.reset();
+        final Set<Integer> found = bt.findKeys(evensAndOdds());
+        assertEquals(new ArrayList<>(expected), new ArrayList<>(found));
+
+        // Only the root is loaded alone. Each lower level is one batch.
+        assertEquals(1, store.nodeLoads.get() + store.dataLoads.get());
+        assertTrue(store.batchLoads.get() <= 6);
+
+        // Without batches, each node on the path to a key is loaded once.
+        final ConcurrentMemoryNodeStore<Integer, String> plain = new ConcurrentMemoryNodeStore<>();
+        final BTree<Integer, String, String> plainTree = new BTree<>(-1, plain, 2);
+        for (final Integer i : expected) {
+            plainTree.putKey(i);
+        }
+        assertEquals(new TreeSet<>(Arrays.asList(0, 3, 999)), plainTree.findKeys(Arrays.asList(999, 1, 3, 0, 3)));
+        assertTrue(plainTree.findKeys(Arrays.asList(-5, 1000)).isEmpty());
+    }
+}
@@ -0,0 +1,154 @@
+package com.github.basking2.sdsai.dsds;
+
+import com.github.basking2.sdsai.dsds.mem.ConcurrentMemoryNodeStore;
+import com.github.basking2.sdsai.dsds.node.Node;
+import com.github.basking2.sdsai.dsds.node.metrics.InstrumentedNodeStore;
+import com.github.basking2.sdsai.dsds.node.metrics.JmxNodeStoreMetrics;
+import com.github.basking2.sdsai.dsds.node.metrics.NodeStoreMetrics.Operation;
+import org.junit.Test;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BTreeInsertModeTest {
+
+    /**
+     * Check the size and order of every node and that all leaves are at one depth.
+     *
+     * @return The number of nodes in the subtree.
+     */
+    private static int check(
+        final ConcurrentMemoryNodeStore<Integer, String> store,
+        final String key,
+        final int minData,
+        final int depth,
+        final int[] leafDepth
+    ) {
+        final Node<Integer, String> node = store.loadNode(key);
+        final List<Integer> data = node.getData();
+
+        assertTrue(data.size() <= 2 * minData + 1);
+        if (depth > 0) {
+            assertTrue("Node has " + data.size() + " keys.", data.size() >= minData);
+        }
+        for (int i = 1; i < data.size(); i++) {
+            assertTrue(data.get(i - 1) < data.get(i));
+        }
+
+        if (node.isLeaf()) {
+            if (leafDepth[0] < 0) {
+                leafDepth[0] = depth;
+            }
+            assertEquals(leafDepth[0], depth);
+            return 1;
+        }
+
+        assertEquals(data.size() + 1, node.getChildren().size());
+
+        int nodes = 1;
+        for (final String child : node.getChildren()) {
+            nodes += check(store, child, minData, depth + 1, leafDepth);
+        }
+        return nodes;
+    }
+
+    private static void check(
+        final ConcurrentMemoryNodeStore<Integer, String> store,
+        final BTree<Integer, String, String> tree,
+        final TreeMap<Integer, String> expected,
+        final int minData
+    ) {
+        final int nodes = check(store, "-1", minData, 0, new int[]{ -1 });
+
+        assertEquals(nodes + expected.size(), store.size());
+
+        final Iterator<Integer> keys = tree.getIterator();
+        for (final Integer k : expected.keySet()) {
+            assertEquals(k, keys.next());
+        }
+        assertFalse(keys.hasNext());
+    }
+
+    private void randomInsertsAndRemoves(final int minData) {
+        final ConcurrentMemoryNodeStore<Integer, String> store = new ConcurrentMemoryNodeStore<>();
+        final BTree<Integer, String, String> tree = new BTree<>(-1, store, minData);
+        final TreeMap<Integer, String> expected = new TreeMap<>();
+        final Random random = new Random(minData);
+        tree.setInsertMode(BTree.InsertMode.BOTTOM_UP);
+
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 200; i++) {
+                final int k = random.nextInt(1000);
+                assertEquals(expected.put(k, "v" + k), tree.put(k, "v" + k));
+            }
+            for (int i = 0; i < 100; i++) {
+                final int k = random.nextInt(1000);
+                assertEquals(expected.remove(k), tree.remove(k));
+            }
+            check(store, tree, expected, minData);
+        }
+    }
+
+    @Test
+    public void bottomUpKeepsInvariants() {
+        randomInsertsAndRemoves(1);
+        randomInsertsAndRemoves(2);
+        randomInsertsAndRemoves(5);
+    }
+
+    @Test
+    public void duplicateKeysWriteNothing() {
+        final JmxNodeStoreMetrics metrics = new JmxNodeStoreMetrics();
+        final ConcurrentMemoryNodeStore<Integer, String> store = new ConcurrentMemoryNodeStore<>();
+        final BTree<Integer, String, String> tree =
+            new BTree<>(-1, InstrumentedNodeStore.wrap(store, metrics), 2);
+        tree.setInsertMode(BTree.InsertMode.BOTTOM_UP);
+
+        // A new key in a leaf with room is one write.
+        assertTrue(tree.putKey(0));
+        metrics.reset();
+        assertTrue(tree.putKey(1));
+        assertEquals(1, metrics.getCount(Operation.STORE_NODE));
+
+        for (int i = 2; i < 500; i++) {
+            assertTrue(tree.putKey(i));
+        }
+
+        metrics.reset();
+        for (int i = 0; i < 500; i++) {
+            assertFalse(tree.putKey(i));
+        }
+        assertEquals(0, metrics.getCount(Operation.STORE_NODE));
+        assertEquals(0, metrics.getCount(Operation.REMOVE_NODE));
+    }
+
+    @Test
+    public void bottomUpWithRightmostAppend() {
+        final ConcurrentMemoryNodeStore<Integer, String> topDown = new ConcurrentMemoryNodeStore<>();
+        final ConcurrentMemoryNodeStore<Integer, String> bottomUp = new ConcurrentMemoryNodeStore<>();
+        final BTree<Integer, String, String> t1 = new BTree<>(-1, topDown, 5);
+        final BTree<Integer, String, String> t2 = new BTree<>(-1, bottomUp, 5);
+        t1.setSplitPolicy(SplitPolicy.rightmostAppend(1.0));
+        t2.setSplitPolicy(SplitPolicy.rightmostAppend(1.0));
+        t2.setInsertMode(BTree.InsertMode.BOTTOM_UP);
+
+        for (int i = 0; i < 2000; i++) {
+            t1.put(i, "v" + i);
+            t2.put(i, "v" + i);
+        }
+
+        // Both fill the left nodes. Only top-down splits a full root ahead of need.
+        assertTrue(bottomUp.size() <= topDown.size());
+        // Full leaves hold 10 of 11 keys where even splits leave 5.
+        assertTrue(bottomUp.size() - 2000 < 250);
+        for (int i = 0; i < 2000; i++) {
+            assertEquals("v" + i, t2.get(i));
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.github.basking2.sdsai.dsds;
+
+import com.github.basking2.sdsai.dsds.mem.ConcurrentMemoryNodeStore;
+import com.github.basking2.sdsai.dsds.node.Node;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BTreeRemoveRangeTest {
+
+    /**
+     * Check the size and order of every node and that all leaves are at one depth.
+     *
+     * @return The number of nodes in the subtree.
+     */
+    private static int check(
+        final ConcurrentMemoryNodeStore<Integer, String> store,
+        final String key,
+        final int minData,
+        final boolean root,
+        final int depth,
+        final int[] leafDepth
+    ) {
+        final Node<Integer, String> node = store.loadNode(key);
+        final List<Integer> data = node.getData();
+
+        assertTrue("Node has " + data.size() + " keys.", data.size() <= 2 * minData + 1);
+        if (!root) {
+            assertTrue("Node has " + data.size() + " keys.", data.size() >= minData);
+        }
+        for (int i = 1; i < data.size(); i++) {
+            assertTrue(data.get(i - 1) < data.get(i));
+        }
+
+        if (node.isLeaf()) {
+            if (leafDepth[0] < 0) {
+                leafDepth[0] = depth;
+            }
+            assertEquals(leafDepth[0], depth);
+            return 1;
+        }
+
+        assertEquals(data.size() + 1, node.getChildren().size());
+
+        int nodes = 1;
+        for (final String child : node.getChildren()) {
+            nodes += check(store, child, minData, false, depth + 1, leafDepth);
+        }
+        return nodes;
+    }
+
+    private static void check(
+        final ConcurrentMemoryNodeStore<Integer, String> store,
+        final BTree<Integer, String, String> tree,
+        final TreeMap<Integer, String> expected,
+        final int minData
+    ) {
+        final int nodes = check(store, "-1", minData, true, 0, new int[]{ -1 });
+
+        // No node or value is left behind.
+        assertEquals(nodes + expected.size(), store.size());
+
+        final Iterator<Integer> keys = tree.getIterator();
+        for (final Integer k : expected.keySet()) {
+            assertEquals(k, keys.next());
+        }
+        assertTrue(!keys.hasNext());
+        assertEquals(expected.size(), tree.size());
+    }
+
+    private void removeRanges(final int minData) {
+        final ConcurrentMemoryNodeStore<Integer, String> store = new ConcurrentMemoryNodeStore<>();
+        final BTree<Integer, String, String> tree = new BTree<>(-1, store, minData);
+        final TreeMap<Integer, String> expected = new TreeMap<>();
+        final Random random = new Random(39 + minData);
+
+        for (int i = 0; i < 1000; i++) {
+            final int k = random.nextInt(5000);
+            tree.put(k, "v" + k);
+            expected.put(k, "v" + k);
+        }
+        check(store, tree, expected, minData);
+
+        for (int r = 0; r < 20; r++) {
+            final int lower = random.nextInt(5200) - 100;
+            final int upper = lower + random.nextInt(r % 4 == 0 ? 2000 : 200);
+            final TreeMap<Integer, String> range = new TreeMap<>(expected.subMap(lower, upper));
+
+            assertEquals(range.size(), tree.removeRange(lower, upper));
+            expected.keySet().removeAll(range.keySet());
+            check(store, tree, expected, minData);
+
+            for (final Integer k : range.keySet()) {
+                assertNull(tree.get(k));
+            }
+
+            // The tree still takes puts and removes.
+            for (int i = 0; i < 20; i++) {
+                final int k = random.nextInt(5000);
+                if (i % 2 == 0) {
+                    assertEquals(expected.put(k, "w" + k), tree.put(k, "w" + k));
+                } else {
+                    assertEquals(expected.remove(k), tree.remove(k));
+                }
+            }
+            check(store, tree, expected, minData);
+        }
+
+        assertEquals(0, tree.removeRange(10, 10));
+        assertEquals(expected.size(), tree.removeRange(-100, 6000));
+        expected.clear();
+        check(store, tree, expected, minData);
+
+        tree.put(7, "v7");
+        assertEquals("v7", tree.get(7));
+        assertEquals(1, tree.size());
+    }
+
+    /**
+     * Remove ranges from trees shaped by mixed puts and removes, checking every node after each range.
+     */
+    private void removeRangesAfterChurn(final int minData, final BTree.InsertMode insertMode) {
+        for (int seed = 0; seed < 40; seed++) {
+            final ConcurrentMemoryNodeStore<Integer, String> store = new ConcurrentMemoryNodeStore<>();
+            final BTree<Integer, String, String> tree = new BTree<>(-1, store, minData);
+            tree.setInsertMode(insertMode);
+            final TreeMap<Integer, String> expected = new TreeMap<>();
+            final Random random = new Random(seed);
+
+            for (int r = 0; r < 10; r++) {
+                for (int i = 0; i < 300; i++) {
+                    final int k = random.nextInt(1000);
+                    if (random.nextInt(3) == 0) {
+                        assertEquals(expected.remove(k), tree.remove(k));
+                    } else {
+                        assertEquals(expected.put(k, "v" + k), tree.put(k, "v" + k));
+                    }
+                }
+
+                final int lower = random.nextInt(1000);
+                final int upper = lower + random.nextInt(100);
+                final TreeMap<Integer, String> range = new TreeMap<>(expected.subMap(lower, upper));
+
+                assertEquals(range.size(), tree.removeRange(lower, upper));
+                expected.keySet().removeAll(range.keySet());
+                check(store, tree, expected, minData);
+            }
+        }
+    }
+
+    @Test
+    public void removeRangesAfterChurnMinData1() {
+        removeRangesAfterChurn(1, BTree.InsertMode.TOP_DOWN);
+    }
+
+    @Test
+    public void removeRangesAfterChurnMinData2BottomUp() {
+        removeRangesAfterChurn(2, BTree.InsertMode.BOTTOM_UP);
+    }
+
+    @Test
+    public void removeRangesMinData1() {
+        removeRanges(1);
+    }
+
+    @Test
+    public void removeRangesMinData2() {
+        removeRanges(2);
+    }
+
+    @Test
+    public void removeRangesMinData5() {
+        removeRanges(5);
+    }
+}
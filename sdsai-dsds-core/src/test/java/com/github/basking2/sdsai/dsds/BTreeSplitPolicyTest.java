@@ -0,0 +1,152 @@
+package com.github.basking2.sdsai.dsds;
+
+import com.github.basking2.sdsai.dsds.mem.ConcurrentMemoryNodeStore;
+import com.github.basking2.sdsai.dsds.node.Node;
+import org.junit.Test;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BTreeSplitPolicyTest {
+
+    /**
+     * Check that every node is ordered and holds at least one key and that all leaves are at one depth.
+     *
+     * @return The number of nodes in the subtree.
+     */
+    private static int check(
+        final ConcurrentMemoryNodeStore<Integer, String> store,
+        final String key,
+        final int minData,
+        final int depth,
+        final int[] leafDepth
+    ) {
+        final Node<Integer, String> node = store.loadNode(key);
+        final List<Integer> data = node.getData();
+
+        assertTrue(data.size() <= 2 * minData + 1);
+        if (depth > 0) {
+            assertFalse(data.isEmpty());
+        }
+        for (int i = 1; i < data.size(); i++) {
+            assertTrue(data.get(i - 1) < data.get(i));
+        }
+
+        if (node.isLeaf()) {
+            if (leafDepth[0] < 0) {
+                leafDepth[0] = depth;
+            }
+            assertEquals(leafDepth[0], depth);
+            return 1;
+        }
+
+        assertEquals(data.size() + 1, node.getChildren().size());
+
+        int nodes = 1;
+        for (final String child : node.getChildren()) {
+            nodes += check(store, child, minData, depth + 1, leafDepth);
+        }
+        return nodes;
+    }
+
+    private static int check(
+        final ConcurrentMemoryNodeStore<Integer, String> store,
+        final BTree<Integer, String, String> tree,
+        final TreeMap<Integer, String> expected,
+        final int minData
+    ) {
+        final int nodes = check(store, "-1", minData, 0, new int[]{ -1 });
+
+        assertEquals(nodes + expected.size(), store.size());
+
+        final Iterator<Integer> keys = tree.getIterator();
+        for (final Integer k : expected.keySet()) {
+            assertEquals(k, keys.next());
+        }
+        assertFalse(keys.hasNext());
+
+        return nodes;
+    }
+
+    private static int appendNodes(final SplitPolicy policy, final int minData, final int count) {
+        final ConcurrentMemoryNodeStore<Integer, String> store = new ConcurrentMemoryNodeStore<>();
+        final BTree<Integer, String, String> tree = new BTree<>(-1, store, minData);
+        final TreeMap<Integer, String> expected = new TreeMap<>();
+        tree.setSplitPolicy(policy);
+
+        for (int i = 0; i < count; i++) {
+            tree.put(i, "v" + i);
+            expected.put(i, "v" + i);
+        }
+
+        return check(store, tree, expected, minData);
+    }
+
+    @Test
+    public void rightmostAppendHalvesNodes() {
+        for (final int minData : new int[]{ 2, 5, 10 }) {
+            final int even = appendNodes(SplitPolicy.EVEN, minData, 2000);
+            final int full = appendNodes(SplitPolicy.rightmostAppend(1.0), minData, 2000);
+            final int ninety = appendNodes(SplitPolicy.rightmostAppend(0.9), minData, 2000);
+
+            assertTrue(even + " vs " + full, full * 10 < even * 6);
+            assertTrue(ninety <= even);
+            assertTrue(full <= ninety);
+        }
+    }
+
+    @Test
+    public void evenPolicyIsUnchanged() {
+        assertEquals(appendNodes(SplitPolicy.EVEN, 3, 500), appendNodes(SplitPolicy.rightmostAppend(0.5), 3, 500));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void badFillFactor() {
+        SplitPolicy.rightmostAppend(0.4);
+    }
+
+    private void mixedWorkload(final SplitPolicy policy, final int minData, final int mergeThreshold) {
+        final ConcurrentMemoryNodeStore<Integer, String> store = new ConcurrentMemoryNodeStore<>();
+        final BTree<Integer, String, String> tree = new BTree<>(-1, store, minData);
+        final TreeMap<Integer, String> expected = new TreeMap<>();
+        final Random random = new Random(minData * 31 + mergeThreshold);
+        tree.setSplitPolicy(policy);
+        tree.setMergeThreshold(mergeThreshold);
+
+        int next = 0;
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < 100; i++) {
+                // Mostly appends with a few keys inserted into the middle.
+                final int k = random.nextInt(4) == 0 ? random.nextInt(next + 1) : (next += 1 + random.nextInt(3));
+                assertEquals(expected.put(k, "v" + k), tree.put(k, "v" + k));
+            }
+            for (int i = 0; i < 60; i++) {
+                final int k = random.nextInt(next + 1);
+                assertEquals(expected.remove(k), tree.remove(k));
+            }
+            check(store, tree, expected, minData);
+        }
+
+        for (final Integer k : expected.keySet().toArray(new Integer[0])) {
+            assertEquals(expected.remove(k), tree.remove(k));
+        }
+        check(store, tree, expected, minData);
+        assertEquals(0, tree.size());
+    }
+
+    @Test
+    public void lazyMerging() {
+        for (final int minData : new int[]{ 1, 2, 5 }) {
+            for (int threshold = 1; threshold <= minData; threshold++) {
+                mixedWorkload(SplitPolicy.EVEN, minData, threshold);
+                mixedWorkload(SplitPolicy.rightmostAppend(1.0), minData, threshold);
+            }
+        }
+    }
+}
@@ -21,6 +21,8 @@
  */
 package com.github.basking2.sdsai.dsds;
 
+import com.github.basking2.sdsai.dsds.mem.ConcurrentMemoryNodeStore;
+
 import org.junit.Test;
 
 import org.slf4j.Logger;
@@ -30,8 +32,11 @@ import java.io.File;
 import java.util.UUID;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import static java.util.UUID.randomUUID;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class BTreeTest extends BaseTest<UUID>
 {
@@ -140,6 +145,32 @@ public class BTreeTest extends BaseTest<UUID>
             bt.destroy();
         }
     }
-    
-    
+
+    @Test
+    public void parallelClearAndDestroy() {
+        final ConcurrentMemoryNodeStore<Integer, String> store = new ConcurrentMemoryNodeStore<>();
+        final BTree<Integer, String, String> bt = new BTree<>(-1, store, 2);
+        final ForkJoinPool pool = new ForkJoinPool(4);
+
+        try {
+            for (int i = 0; i < 2000; i++) {
+                bt.put(i, "a"+i);
+            }
+
+            bt.clear(pool);
+
+            // Only the empty root is left.
+            assertEquals(1, store.size());
+            assertTrue(bt.isEmpty());
+
+            bt.put(1, "b1");
+            assertEquals("b1", bt.get(1));
+
+            bt.destroy(pool);
+            assertEquals(0, store.size());
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
 }
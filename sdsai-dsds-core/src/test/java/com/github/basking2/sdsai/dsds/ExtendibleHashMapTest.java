@@ -0,0 +1,118 @@
+package com.github.basking2.sdsai.dsds;
+
+import com.github.basking2.sdsai.dsds.mem.ConcurrentMemoryNodeStore;
+import com.github.basking2.sdsai.dsds.mem.CountingNodeStore;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ExtendibleHashMapTest {
+
+    @Test
+    public void putGetAndRemove() {
+        final CountingNodeStore<Integer, String> store = new CountingNodeStore<>();
+        final ExtendibleHashMap<Integer, String, String> map = new ExtendibleHashMap<>(-1, store, 8);
+        final Map<Integer, String> expected = new HashMap<>();
+
+        for (int i = 0; i < 2000; i++) {
+            store.nodeLoads.set(0);
+            assertNull(map.put(i, "v" + i));
+            expected.put(i, "v" + i);
+
+            // The directory and one bucket, however large the map is.
+            assertTrue(store.nodeLoads.get() <= 2);
+        }
+
+        assertEquals("v7", map.put(7, "w7"));
+        expected.put(7, "w7");
+
+        store.nodeLoads.set(0);
+        for (int i = 0; i < 2000; i++) {
+            assertEquals(expected.get(i), map.get(i));
+            assertTrue(map.containsKey(i));
+        }
+        assertFalse(map.containsKey(2000));
+        assertEquals(0, store.nodeLoads.get());
+
+        assertEquals(2000, map.size());
+        assertEquals(expected, new HashMap<>(map));
+        assertEquals(expected.keySet(), map.keySet());
+
+        final int grown = store.nodes.size();
+        store.nodeLoads.set(0);
+        for (int i = 0; i < 2000; i++) {
+            assertEquals(expected.remove(i), map.remove(i));
+
+            if (i % 250 == 0) {
+                final int loads = store.nodeLoads.get();
+                assertEquals(expected, new HashMap<>(map));
+                store.nodeLoads.set(loads);
+            }
+        }
+
+        // The directory, the bucket and now and then a buddy per removal.
+        assertTrue(store.nodeLoads.get() < 2000 * 3);
+
+        assertTrue(map.isEmpty());
+        assertNull(map.remove(1));
+        assertTrue(store.nodes.size() < grown / 10);
+    }
+
+    @Test
+    public void reopenKeepsTheBucketSize() {
+        final CountingNodeStore<Integer, String> store = new CountingNodeStore<>();
+        final ExtendibleHashMap<Integer, String, String> map = new ExtendibleHashMap<>(-1, store, 4);
+        for (int i = 0; i < 100; i++) {
+            map.put(i, "v" + i);
+        }
+
+        final ExtendibleHashMap<Integer, String, String> reopened = new ExtendibleHashMap<>(-1, store, 1000);
+        assertEquals(map, reopened);
+        assertEquals(100, reopened.size());
+        for (int i = 100; i < 200; i++) {
+            reopened.put(i, "v" + i);
+        }
+
+        // Buckets of 4 keys need at least 50 buckets, and a directory.
+        assertTrue(store.nodes.size() > 50);
+
+        reopened.destroy();
+        assertTrue(store.nodes.isEmpty());
+        assertNull(map.get(5));
+    }
+
+    @Test
+    public void keysWithoutData() {
+        final ExtendibleHashMap<Integer, String, String> map =
+            new ExtendibleHashMap<>(-1, new ConcurrentMemoryNodeStore<Integer, String>(), 4);
+
+        for (int i = 0; i < 100; i++) {
+            assertTrue(map.putKey(i));
+        }
+        assertFalse(map.putKey(5));
+        assertEquals(100, map.size());
+
+        for (int i = 0; i < 100; i += 2) {
+            assertTrue(map.removeKey(i));
+        }
+        assertFalse(map.removeKey(0));
+
+        final Set<Integer> keys = new HashSet<>();
+        map.getIterator().forEachRemaining(keys::add);
+        assertEquals(50, keys.size());
+        for (int i = 1; i < 100; i += 2) {
+            assertTrue(keys.contains(i));
+        }
+
+        map.clear();
+        assertTrue(map.isEmpty());
+    }
+}
@@ -0,0 +1,147 @@
+package com.github.basking2.sdsai.dsds;
+
+import com.github.basking2.sdsai.dsds.mem.ConcurrentMemoryNodeStore;
+import com.github.basking2.sdsai.dsds.mem.CountingNodeStore;
+import com.github.basking2.sdsai.dsds.node.tx.TransactionalNodeStore;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class IndexedMapTest {
+
+    private static <T> List<T> list(final Iterable<T> i) {
+        final List<T> l = new ArrayList<>();
+        i.forEach(l::add);
+        return l;
+    }
+
+    private static IndexedMap<Object, String, String> map(final CountingNodeStore<Object, String> store) {
+        final IndexedMap<Object, String, String> map = new IndexedMap<>("root", store, 2);
+        map.addIndex("length", String::length);
+        map.addIndex("first", v -> v.isEmpty() ? null : v.substring(0, 1));
+        return map;
+    }
+
+    @Test
+    public void indexesFollowPutsAndRemoves() {
+        final CountingNodeStore<Object, String> store = new CountingNodeStore<>();
+        final IndexedMap<Object, String, String> map = map(store);
+
+        map.put("a", "apple");
+        map.put("b", "banana");
+        map.put("c", "cherry");
+        map.put("d", "");
+
+        // One batch holds the primary write and every index update.
+        assertEquals(4, store.batches.size());
+
+        assertEquals(Arrays.asList("b", "c"), list(map.lookup("length", 6)));
+        assertEquals(Arrays.asList("a"), list(map.lookup("first", "a")));
+        assertEquals(Arrays.asList("d"), list(map.lookup("length", 0)));
+        assertTrue(list(map.lookup("first", "")).isEmpty());
+
+        assertEquals("cherry", map.put("c", "avocado"));
+        assertEquals(Arrays.asList("b"), list(map.lookup("length", 6)));
+        assertEquals(Arrays.asList("c"), list(map.lookup("length", 7)));
+        assertEquals(Arrays.asList("a", "c"), list(map.lookup("first", "a")));
+
+        assertEquals("apple", map.remove("a"));
+        assertNull(map.remove("a"));
+        assertFalse(map.containsKey("a"));
+        assertEquals(Arrays.asList("c"), list(map.lookup("first", "a")));
+        assertTrue(list(map.lookup("length", 5)).isEmpty());
+        assertEquals(Arrays.asList("d", "b", "c"), list(map.range("length", 0, 100)));
+    }
+
+    @Test
+    public void scanLoadsValuesInBatches() {
+        final CountingNodeStore<Object, String> store = new CountingNodeStore<>();
+        final IndexedMap<Object, String, String> map = map(store);
+
+        for (int i = 0; i < 100; i++) {
+            map.put(i, "v" + i);
+        }
+
+        // Values "v10" through "v99" have length 3.
+        store.batchLoads.set(0);
+        final Iterator<Map.Entry<Object, String>> i = map.scan("length", 3, 4, 25);
+        int count = 0;
+        while (i.hasNext()) {
+            final Map.Entry<Object, String> e = i.next();
+            assertEquals("v" + e.getKey(), e.getValue());
+            count++;
+        }
+        assertEquals(90, count);
+        assertEquals(4, store.batchLoads.get());
+    }
+
+    @Test
+    public void reindexFillsANewIndex() {
+        final CountingNodeStore<Object, String> store = new CountingNodeStore<>();
+        final IndexedMap<Object, String, String> map = map(store);
+        for (int i = 0; i < 50; i++) {
+            map.put(i, "v" + i);
+        }
+
+        map.addIndex("last", v -> v.substring(v.length() - 1));
+        assertTrue(list(map.lookup("last", "7")).isEmpty());
+
+        store.batches.clear();
+        map.reindex("last");
+        assertEquals(1, store.batches.size());
+        assertEquals(Arrays.asList(7, 17, 27, 37, 47), list(map.lookup("last", "7")));
+
+        // A consistent index is not written.
+        store.batches.clear();
+        map.reindex("last");
+        assertEquals(0, store.batches.size());
+        assertEquals(5, list(map.lookup("last", "7")).size());
+    }
+
+    @Test
+    public void callerTransactionsAreNotCommitted() {
+        final ConcurrentMemoryNodeStore<Object, String> store = new ConcurrentMemoryNodeStore<>();
+        final TransactionalNodeStore<Object, String, String> tx = new TransactionalNodeStore<>(store);
+        final IndexedMap<Object, String, String> map = new IndexedMap<>("root", tx, 2);
+        map.addIndex("length", String::length);
+
+        map.put("a", "apple");
+        assertTrue(new BTree<Object, String, String>("root", store, 2).isEmpty());
+
+        tx.commit();
+        assertEquals("apple", new BTree<Object, String, String>("root", store, 2).get("a"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownIndex() {
+        map(new CountingNodeStore<>()).lookup("nope", 1);
+    }
+
+    @Test
+    public void removeKeyRemovesOnlyKeys() {
+        final BTree<Integer, String, String> bt = new BTree<>(-1, new ConcurrentMemoryNodeStore<Integer, String>(), 2);
+        for (int i = 0; i < 100; i++) {
+            bt.putKey(i);
+        }
+
+        for (int i = 0; i < 100; i += 2) {
+            assertTrue(bt.removeKey(i));
+        }
+        assertFalse(bt.removeKey(0));
+
+        final Iterator<Integer> keys = bt.getIterator();
+        for (int i = 1; i < 100; i += 2) {
+            assertEquals(Integer.valueOf(i), keys.next());
+        }
+        assertFalse(keys.hasNext());
+    }
+}
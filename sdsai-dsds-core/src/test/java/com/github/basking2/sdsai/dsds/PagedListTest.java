@@ -21,6 +21,7 @@
  */
 package com.github.basking2.sdsai.dsds;
 
+import com.github.basking2.sdsai.dsds.mem.ConcurrentMemoryNodeStore;
 import com.github.basking2.sdsai.dsds.node.Node;
 
 import org.junit.Test;
@@ -30,6 +31,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.util.Iterator;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.junit.Assert.assertEquals;
 
@@ -165,4 +167,38 @@ public class PagedListTest extends BaseTest<File>
             pl.destroy();
         }
     }
+
+    @Test
+    public void testParallelClear()
+    {
+        final ConcurrentMemoryNodeStore<String, String> store =
+            new ConcurrentMemoryNodeStore<String, String>();
+        final PagedList<String, String> pl =
+            new PagedList<String, String>(store.generateKey(null, null), store, 3);
+        final ForkJoinPool pool = new ForkJoinPool(4);
+
+        try
+        {
+            for( int i = 0 ; i < 100 ; i++ )
+            {
+                pl.add(""+i);
+            }
+
+            pl.clear(pool);
+
+            // Only the empty head is left.
+            assertEquals(1, store.size());
+            assertEquals(0, pl.size());
+
+            pl.add("a");
+            assertEquals("a", pl.get(0));
+
+            pl.destroy(pool);
+            assertEquals(0, store.size());
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
 }
@@ -0,0 +1,101 @@
+package com.github.basking2.sdsai.dsds;
+
+import com.github.basking2.sdsai.dsds.mem.ConcurrentMemoryNodeStore;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ShardedBTreeMapTest {
+
+    private static List<BTree<Integer, String, String>> shards(final int count) {
+        final List<BTree<Integer, String, String>> shards = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            shards.add(new BTree<>(-1 - i, new ConcurrentMemoryNodeStore<Integer, String>(), 2));
+        }
+        return shards;
+    }
+
+    @Test
+    public void iteratesAllShardsInOrder() {
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final ShardedBTreeMap<Integer, String> map =
+                new ShardedBTreeMap<>(shards(4), ShardedBTreeMap.Partitioner.hash(), executor);
+            final TreeMap<Integer, String> expected = new TreeMap<>();
+            final Random random = new Random(37);
+
+            for (int i = 0; i < 300; i++) {
+                final int k = random.nextInt(10000);
+                map.put(k, "v" + k);
+                expected.put(k, "v" + k);
+            }
+
+            assertEquals(expected.size(), map.size());
+            for (final BTree<Integer, ?, String> shard : map.getShards()) {
+                assertFalse(shard.isEmpty());
+            }
+
+            final Iterator<Integer> keys = map.getIterator();
+            for (final Integer k : expected.keySet()) {
+                assertEquals(k, keys.next());
+            }
+            assertFalse(keys.hasNext());
+
+            for (final Map.Entry<Integer, String> e : map.entrySet()) {
+                assertEquals(expected.get(e.getKey()), e.getValue());
+            }
+
+            final Integer first = expected.firstKey();
+            assertEquals("v" + first, map.remove(first));
+            assertNull(map.get(first));
+            assertEquals(expected.size() - 1, map.size());
+
+            map.clear();
+            assertTrue(map.isEmpty());
+            assertEquals(0, map.size());
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void rangePartitions() {
+        final ShardedBTreeMap.Partitioner<Integer> range = ShardedBTreeMap.Partitioner.range(Arrays.asList(10, 20));
+
+        assertEquals(0, range.shard(-5, 3));
+        assertEquals(0, range.shard(9, 3));
+        assertEquals(1, range.shard(10, 3));
+        assertEquals(1, range.shard(19, 3));
+        assertEquals(2, range.shard(20, 3));
+        assertEquals(2, range.shard(1000, 3));
+
+        final List<BTree<Integer, String, String>> shards = shards(3);
+        final ShardedBTreeMap<Integer, String> map = new ShardedBTreeMap<>(shards, range, Runnable::run);
+        for (int i = 0; i < 30; i++) {
+            map.put(i, "v" + i);
+        }
+
+        assertSame(shards.get(1), map.getShard(15));
+        assertEquals(10, shards.get(0).size());
+        assertEquals(10, shards.get(1).size());
+        assertEquals(10, shards.get(2).size());
+        assertEquals(30, map.size());
+
+        map.destroy();
+    }
+}
@@ -0,0 +1,189 @@
+package com.github.basking2.sdsai.dsds;
+
+import com.github.basking2.sdsai.dsds.mem.ConcurrentMemoryNodeStore;
+import com.github.basking2.sdsai.dsds.mem.CountingNodeStore;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SkipListMapTest {
+
+    @Test
+    public void matchesTreeMap() {
+        final CountingNodeStore<Integer, String> store = new CountingNodeStore<>();
+        final SkipListMap<Integer, String, String> map = new SkipListMap<>(-1, store, 8);
+        final TreeMap<Integer, String> expected = new TreeMap<>();
+        final Random random = new Random(1);
+
+        for (int i = 0; i < 3000; i++) {
+            final int k = random.nextInt(1000);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(k), map.remove(k));
+            } else {
+                assertEquals(expected.put(k, "v" + i), map.put(k, "v" + i));
+            }
+        }
+
+        assertEquals(expected.size(), map.size());
+        assertEquals(new ArrayList<>(expected.keySet()), new ArrayList<>(map.keySet()));
+        assertEquals(new ArrayList<>(expected.descendingKeySet()), new ArrayList<>(map.descendingKeySet()));
+        assertEquals(expected, map);
+
+        for (int k = -2; k < 1002; k++) {
+            assertEquals(expected.lowerKey(k), map.lowerKey(k));
+            assertEquals(expected.floorKey(k), map.floorKey(k));
+            assertEquals(expected.ceilingKey(k), map.ceilingKey(k));
+            assertEquals(expected.higherKey(k), map.higherKey(k));
+        }
+        assertEquals(expected.firstEntry(), map.firstEntry());
+        assertEquals(expected.lastEntry(), map.lastEntry());
+
+        for (final Integer k : new ArrayList<>(expected.keySet())) {
+            assertEquals(expected.remove(k), map.remove(k));
+        }
+        assertTrue(map.isEmpty());
+        assertNull(map.firstEntry());
+
+        // Only the head is left.
+        assertEquals(1, store.nodes.size());
+    }
+
+    @Test
+    public void views() {
+        final SkipListMap<Integer, String, String> map = new SkipListMap<>(-1, new ConcurrentMemoryNodeStore<>(), 4);
+        final TreeMap<Integer, String> expected = new TreeMap<>();
+
+        for (int i = 0; i < 200; i += 2) {
+            map.put(i, "v" + i);
+            expected.put(i, "v" + i);
+        }
+
+        assertEquals(expected.subMap(10, true, 50, false), map.subMap(10, true, 50, false));
+        assertEquals(
+            new ArrayList<>(expected.subMap(11, false, 51, true).descendingMap().keySet()),
+            new ArrayList<>(map.subMap(11, false, 51, true).descendingMap().keySet()));
+        assertEquals(new ArrayList<>(expected.headMap(30).keySet()), new ArrayList<>(map.headMap(30).keySet()));
+        assertEquals(new ArrayList<>(expected.tailMap(170).keySet()), new ArrayList<>(map.tailMap(170).keySet()));
+
+        final NavigableMap<Integer, String> expectedView = expected.descendingMap().subMap(100, true, 60, false);
+        final NavigableMap<Integer, String> view = map.descendingMap().subMap(100, true, 60, false);
+        assertEquals(new ArrayList<>(expectedView.keySet()), new ArrayList<>(view.keySet()));
+        assertEquals(expectedView.firstKey(), view.firstKey());
+        assertEquals(expectedView.lastKey(), view.lastKey());
+        assertEquals(expectedView.higherKey(80), view.higherKey(80));
+        assertEquals(expectedView.floorKey(81), view.floorKey(81));
+        assertEquals(expectedView.size(), view.size());
+        assertEquals(
+            new ArrayList<>(expectedView.headMap(80, true).keySet()),
+            new ArrayList<>(view.headMap(80, true).keySet()));
+        assertFalse(view.containsKey(60));
+        assertNull(view.get(50));
+
+        assertEquals(expected.pollFirstEntry(), map.pollFirstEntry());
+        assertEquals(expected.pollLastEntry(), map.pollLastEntry());
+        assertEquals(expected.navigableKeySet().headSet(20, false).pollLast(), map.navigableKeySet().headSet(20, false).pollLast());
+
+        // Removing through a view removes from the map.
+        for (final Iterator<Integer> i = map.subMap(100, 120).keySet().iterator(); i.hasNext(); ) {
+            i.next();
+            i.remove();
+        }
+        expected.subMap(100, 120).clear();
+        assertEquals(expected, map);
+    }
+
+    @Test
+    public void reopen() {
+        final ConcurrentMemoryNodeStore<Integer, String> store = new ConcurrentMemoryNodeStore<>();
+        final SkipListMap<Integer, String, String> map = new SkipListMap<>(-1, store, 4);
+        for (int i = 0; i < 100; i++) {
+            map.put(i, "v" + i);
+        }
+
+        final SkipListMap<Integer, String, String> reopened = new SkipListMap<>(-1, store);
+        assertEquals(map, reopened);
+        assertEquals(new ArrayList<>(map.keySet()), new ArrayList<>(reopened.keySet()));
+        assertTrue(reopened.putKey(1000));
+        assertFalse(reopened.putKey(1000));
+        assertTrue(reopened.removeKey(1000));
+        assertFalse(reopened.removeKey(1000));
+        assertEquals(100, reopened.size());
+
+        reopened.clear();
+        assertTrue(map.isEmpty());
+        assertNull(map.get(5));
+    }
+
+    @Test
+    public void readersDoNotBlockTheWriter() throws InterruptedException {
+        final SkipListMap<Integer, String, String> map = new SkipListMap<>(-1, new ConcurrentMemoryNodeStore<>(), 4);
+
+        // Even keys are always present. The writer adds and removes odd keys, splitting and merging pages.
+        for (int i = 0; i < 400; i += 2) {
+            map.put(i, "v" + i);
+        }
+
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final List<Thread> readers = new ArrayList<>();
+
+        for (int t = 0; t < 4; t++) {
+            final boolean descending = t % 2 == 1;
+            final Thread reader = new Thread(() -> {
+                try {
+                    while (writing.get()) {
+                        final List<Integer> keys = new ArrayList<>(descending ? map.descendingKeySet() : map.keySet());
+                        int evens = 0;
+                        for (int i = 0; i < keys.size(); i++) {
+                            if (i > 0) {
+                                final int c = keys.get(i - 1).compareTo(keys.get(i));
+                                assertTrue(descending ? c > 0 : c < 0);
+                            }
+                            if (keys.get(i) % 2 == 0) {
+                                evens++;
+                            }
+                        }
+                        assertEquals(200, evens);
+                        assertEquals(Integer.valueOf(10), map.ceilingKey(10));
+                        assertEquals(Integer.valueOf(398), map.floorKey(398));
+                    }
+                } catch (final Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+            reader.start();
+            readers.add(reader);
+        }
+
+        final Random random = new Random(2);
+        for (int i = 0; i < 5000; i++) {
+            final int k = random.nextInt(200) * 2 + 1;
+            if (random.nextBoolean()) {
+                map.put(k, "v" + k);
+            } else {
+                map.remove(k);
+            }
+        }
+
+        writing.set(false);
+        for (final Thread reader : readers) {
+            reader.join();
+        }
+
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+    }
+}
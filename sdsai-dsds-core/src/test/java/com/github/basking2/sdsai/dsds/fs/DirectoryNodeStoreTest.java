@@ -0,0 +1,44 @@
+package com.github.basking2.sdsai.dsds.fs;
+
+import com.github.basking2.sdsai.dsds.BTree;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DirectoryNodeStoreTest {
+
+    @Test
+    public void shardedAtomicLayout() throws IOException {
+        final File directory = new File("target/DirectoryNodeStore/"+getClass().getSimpleName()+"-sharded");
+        final DirectoryNodeStore<String, String> store =
+            new DirectoryNodeStore<>(directory, DirectoryNodeStore.Layout.SHARDED, true, 16);
+        final BTree<String, File, String> bt = new BTree<>("root", store, 3);
+
+        for (int i = 0; i < 300; i++) {
+            bt.put("key"+i, "value"+i);
+        }
+        store.flush();
+
+        assertEquals(300, bt.size());
+        assertEquals("value7", bt.get("key7"));
+
+        final File root = store.convert("root");
+        assertTrue(root.isFile());
+        assertEquals(directory, root.getParentFile().getParentFile().getParentFile());
+
+        try (final Stream<Path> files = Files.walk(directory.toPath())) {
+            assertFalse(files.anyMatch(p -> p.getFileName().toString().endsWith(".tmp")));
+        }
+
+        bt.destroy();
+        assertFalse(root.exists());
+    }
+}
@@ -0,0 +1,79 @@
+package com.github.basking2.sdsai.dsds.fs;
+
+import com.github.basking2.sdsai.dsds.BTree;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LogStructuredNodeStoreTest {
+
+    private final File directory = new File("target/LogStructuredNodeStore/"+getClass().getSimpleName());
+
+    @Before
+    public void setup() {
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            for (final File f : files) {
+                f.delete();
+            }
+        }
+    }
+
+    @Test
+    public void compactAndReopen() {
+        try (final LogStructuredNodeStore<String, String> store = new LogStructuredNodeStore<>(directory, 16 * 1024, 0.5)) {
+            final BTree<String, String, String> bt = new BTree<>("root", store, 3);
+            for (int i = 0; i < 1000; i++) {
+                bt.put("key"+i, "value"+i);
+            }
+            for (int i = 0; i < 1000; i += 2) {
+                bt.remove("key"+i);
+            }
+
+            final int before = store.getSegmentCount();
+            assertTrue(store.compact() > 0);
+            assertTrue(store.getSegmentCount() < before);
+            assertEquals(500, bt.size());
+        }
+
+        try (final LogStructuredNodeStore<String, String> store = new LogStructuredNodeStore<>(directory, 16 * 1024, 0.5)) {
+            final BTree<String, String, String> bt = new BTree<>("root", store, 3);
+            assertEquals(500, bt.size());
+            for (int i = 0; i < 1000; i++) {
+                if (i % 2 == 0) {
+                    assertNull(bt.get("key"+i));
+                }
+                else {
+                    assertEquals("value"+i, bt.get("key"+i));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void tombstonesOutliveCompaction() {
+        try (final LogStructuredNodeStore<String, String> store = new LogStructuredNodeStore<>(directory, 1024, 0.99)) {
+            store.store("a", "first");
+            for (int i = 0; i < 100; i++) {
+                store.store("filler"+i, "some filler value "+i);
+            }
+            store.removeData("a");
+            for (int i = 0; i < 100; i++) {
+                store.store("filler"+i, "replaced "+i);
+            }
+
+            store.compact();
+            assertNull(store.loadData("a"));
+        }
+
+        try (final LogStructuredNodeStore<String, String> store = new LogStructuredNodeStore<>(directory, 1024, 0.99)) {
+            assertNull(store.loadData("a"));
+            assertEquals("replaced 42", store.loadData("filler42"));
+        }
+    }
+}
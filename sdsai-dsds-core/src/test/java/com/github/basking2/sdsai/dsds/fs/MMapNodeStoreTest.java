@@ -0,0 +1,74 @@
+package com.github.basking2.sdsai.dsds.fs;
+
+import com.github.basking2.sdsai.dsds.BTree;
+import com.github.basking2.sdsai.dsds.PagedList;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class MMapNodeStoreTest {
+
+    private final File file = new File("target/MMapNodeStore/"+getClass().getSimpleName()+".db");
+
+    @Before
+    public void setup() {
+        file.delete();
+    }
+
+    @Test
+    public void btreeChurnAndReopen() {
+        try (final MMapNodeStore<String, String> store = new MMapNodeStore<>(file, 512, 64)) {
+            final BTree<String, String, String> bt = new BTree<>("root", store, 3);
+            for (int i = 0; i < 2000; i++) {
+                bt.put("key"+i, "value"+i);
+            }
+            for (int i = 0; i < 2000; i += 2) {
+                assertEquals("value"+i, bt.remove("key"+i));
+            }
+            assertEquals(1000, bt.size());
+        }
+
+        try (final MMapNodeStore<String, String> store = new MMapNodeStore<>(file)) {
+            final BTree<String, String, String> bt = new BTree<>("root", store, 3);
+            assertEquals(1000, bt.size());
+            for (int i = 0; i < 2000; i++) {
+                if (i % 2 == 0) {
+                    assertNull(bt.get("key"+i));
+                }
+                else {
+                    assertEquals("value"+i, bt.get("key"+i));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void largeValuesAndUncleanOpen() {
+        final char[] big = new char[5000];
+        Arrays.fill(big, 'x');
+
+        final MMapNodeStore<String, String> store = new MMapNodeStore<>(file, 1024, 64);
+        final PagedList<String, String> list = new PagedList<>("list", store, 10);
+        for (int i = 0; i < 100; i++) {
+            list.add(i % 10 == 0 ? new String(big) + i : "value"+i);
+        }
+        list.remove(3);
+        store.store("big", new String(big));
+        store.store("big", "small");
+
+        // Open a second copy without closing the first, as though the process died.
+        try (final MMapNodeStore<String, String> reopened = new MMapNodeStore<>(file)) {
+            final PagedList<String, String> list2 = new PagedList<>("list", reopened, 10);
+            assertEquals(99, list2.size());
+            assertEquals(new String(big) + 0, list2.get(0));
+            assertEquals("value4", list2.get(3));
+            assertEquals(new String(big) + 90, list2.get(89));
+            assertEquals("small", reopened.loadData("big"));
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.github.basking2.sdsai.dsds.io;
+
+import com.github.basking2.sdsai.dsds.BTree;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class IONodeStoreTest {
+
+    private final File directory = new File("target/IONodeStore/"+getClass().getSimpleName());
+
+    private static byte[] readAll(final InputStream in) throws IOException {
+        try (final InputStream i = in) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[1024];
+            for (int read = i.read(buffer); read >= 0; read = i.read(buffer)) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    @Test
+    public void loadedDataIsReadable() throws IOException {
+        final IONodeStore<String> store = IONodeStoreFactory.buildFileStore(directory);
+        final byte[] key = store.convert("loadedDataIsReadable");
+        final byte[] value = "some data".getBytes();
+
+        store.store(key, new ByteArrayInputStream(value));
+
+        assertArrayEquals(value, readAll(store.loadData(key)));
+
+        store.removeData(key);
+    }
+
+    @Test
+    public void fileToFileCopy() throws IOException {
+        final IONodeStore<String> store = IONodeStoreFactory.buildFileStore(directory);
+        final byte[] value = new byte[1024 * 1024 * 3 + 7];
+        new Random(1).nextBytes(value);
+
+        directory.mkdirs();
+        final File source = new File(directory, "fileToFileCopy.src");
+        try (final FileOutputStream out = new FileOutputStream(source)) {
+            out.write(value);
+        }
+
+        final byte[] key = store.convert("fileToFileCopy");
+        try (final FileInputStream in = new FileInputStream(source)) {
+            store.store(key, in);
+        }
+
+        assertArrayEquals(value, readAll(store.loadData(key)));
+
+        store.removeData(key);
+        source.delete();
+    }
+
+    @Test
+    public void btreeValues() throws IOException {
+        final IONodeStore<String> store = IONodeStoreFactory.buildFileStore(directory);
+        final BTree<String, byte[], InputStream> bt = new BTree<>("btreeValues", store, 2);
+
+        try {
+            for (int i = 0; i < 20; i++) {
+                bt.put("key"+i, new ByteArrayInputStream(("value"+i).getBytes()));
+            }
+
+            for (int i = 0; i < 20; i++) {
+                assertEquals("value"+i, new String(readAll(bt.get("key"+i))));
+            }
+
+            assertEquals(20, bt.size());
+        }
+        finally {
+            bt.destroy();
+        }
+    }
+
+    @Test
+    public void containsKeyClosesWhatItOpens() throws IOException {
+        final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+        final AtomicInteger open = new AtomicInteger();
+
+        final IONodeStore<String> store = IONodeStoreFactory.buildStringKeyStore(
+                key -> {
+                    final byte[] bytes = objects.get(new String(key));
+                    if (bytes == null) {
+                        return null;
+                    }
+                    open.incrementAndGet();
+                    return new ByteArrayInputStream(bytes) {
+                        @Override
+                        public void close() {
+                            open.decrementAndGet();
+                        }
+                    };
+                },
+                key -> new ByteArrayOutputStream() {
+                    @Override
+                    public void close() {
+                        objects.put(new String(key), toByteArray());
+                    }
+                },
+                key -> objects.remove(new String(key)));
+
+        final BTree<String, byte[], InputStream> bt = new BTree<>("containsKeyClosesWhatItOpens", store, 4);
+        for (int i = 0; i < 1000; i++) {
+            assertFalse(bt.containsKey("key"+i));
+            bt.put("key"+i, new ByteArrayInputStream(("value"+i).getBytes()));
+            assertTrue(bt.containsKey("key"+i));
+        }
+
+        final List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 1100; i++) {
+            keys.add("key"+i);
+        }
+        assertEquals(1000, bt.containsKeys(keys).size());
+
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertEquals(1000, bt.containsKeys(keys, pool).size());
+        }
+        finally {
+            pool.shutdown();
+        }
+
+        assertEquals(0, open.get());
+    }
+
+    @Test
+    public void fileStoreContainsKey() throws IOException {
+        final IONodeStore<String> store = IONodeStoreFactory.buildFileStore(directory);
+        final BTree<String, byte[], InputStream> bt = new BTree<>("fileStoreContainsKey", store, 4);
+
+        try {
+            for (int i = 0; i < 2000; i++) {
+                bt.put("key"+i, new ByteArrayInputStream(("value"+i).getBytes()));
+                assertTrue(bt.containsKey("key"+i));
+                assertFalse(bt.containsKey("missing"+i));
+            }
+        }
+        finally {
+            bt.destroy();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.github.basking2.sdsai.dsds.mem;
+
+import com.github.basking2.sdsai.dsds.BTree;
+import com.github.basking2.sdsai.dsds.PagedList;
+import com.github.basking2.sdsai.dsds.node.Node;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ConcurrentMemoryNodeStoreTest {
+
+    @Test
+    public void storedNodesAreNotAliased() {
+        final ConcurrentMemoryNodeStore<String, String> store = new ConcurrentMemoryNodeStore<>();
+        final Node<String, String> node = new Node<>(2, 2);
+        node.getData().add("a");
+
+        store.store("n", node);
+        node.getData().add("b");
+        assertEquals(1, store.loadNode("n").getData().size());
+
+        store.loadNode("n").getData().add("c");
+        assertEquals(1, store.loadNode("n").getData().size());
+    }
+
+    @Test
+    public void generatedKeysAreUnique() {
+        final ConcurrentMemoryNodeStore<String, String> store = new ConcurrentMemoryNodeStore<>();
+        assertNotEquals(store.generateKey(null, null), store.generateKey(null, null));
+    }
+
+    @Test
+    public void btreeChurn() {
+        final ConcurrentMemoryNodeStore<String, String> store = new ConcurrentMemoryNodeStore<>(false);
+        final BTree<String, String, String> bt = new BTree<>("root", store, 3);
+        for (int i = 0; i < 1000; i++) {
+            bt.put("key"+i, "value"+i);
+        }
+        for (int i = 0; i < 1000; i += 2) {
+            assertEquals("value"+i, bt.remove("key"+i));
+        }
+        assertEquals(500, bt.size());
+        bt.destroy();
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    public void spill() {
+        final ConcurrentMemoryNodeStore<String, String> cold = new ConcurrentMemoryNodeStore<>();
+        final ConcurrentMemoryNodeStore<String, String> hot = new ConcurrentMemoryNodeStore<>(true, 50, cold);
+        final PagedList<String, String> list = new PagedList<>("list", hot, 10);
+        for (int i = 0; i < 500; i++) {
+            list.add("value"+i);
+        }
+
+        assertTrue(hot.size() <= 50);
+        assertTrue(cold.size() > 0);
+        assertEquals(500, list.size());
+        for (int i = 0; i < 500; i += 37) {
+            assertEquals("value"+i, list.get(i));
+        }
+    }
+}
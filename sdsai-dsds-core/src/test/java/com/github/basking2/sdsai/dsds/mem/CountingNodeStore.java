@@ -0,0 +1,162 @@
+package com.github.basking2.sdsai.dsds.mem;
+
+import com.github.basking2.sdsai.dsds.node.BatchNodeStore;
+import com.github.basking2.sdsai.dsds.node.Node;
+import com.github.basking2.sdsai.dsds.node.NodeStoreBatch;
+import com.github.basking2.sdsai.dsds.node.NodeStoreException;
+import com.github.basking2.sdsai.dsds.node.NodeStoreNodeNotFoundException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link ConcurrentMemoryNodeStore} for tests that counts the calls made to it.
+ *
+ * It is a {@link BatchNodeStore} that applies each batch one write at a time, and
+ * it can be made to fail node writes to simulate a crash.
+ *
+ * @param <USERKEY> The user key type.
+ * @param <VALUE> The value type.
+ */
+public class CountingNodeStore<USERKEY, VALUE>
+    extends ConcurrentMemoryNodeStore<USERKEY, VALUE>
+    implements BatchNodeStore<USERKEY, String, VALUE>
+{
+    /**
+     * Calls to {@link #loadNode(String)}.
+     */
+    public final AtomicInteger nodeLoads = new AtomicInteger();
+
+    /**
+     * Calls to {@link #loadData(String)}.
+     */
+    public final AtomicInteger dataLoads = new AtomicInteger();
+
+    /**
+     * Calls to {@link #loadNodes(Collection)} and {@link #loadData(Collection)}.
+     */
+    public final AtomicInteger batchLoads = new AtomicInteger();
+
+    /**
+     * Each batch executed, in order.
+     */
+    public final List<NodeStoreBatch<USERKEY, String, VALUE>> batches = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * The keys of the nodes held.
+     */
+    public final Set<String> nodes = ConcurrentHashMap.newKeySet();
+
+    private final Map<String, AtomicInteger> nodeLoadsByKey = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> nodeStoresByKey = new ConcurrentHashMap<>();
+    private final AtomicInteger nodeStoresLeft = new AtomicInteger(Integer.MAX_VALUE);
+
+    /**
+     * Zero the counters and forget the batches.
+     */
+    public void reset() {
+        nodeLoads.set(0);
+        dataLoads.set(0);
+        batchLoads.set(0);
+        batches.clear();
+        nodeLoadsByKey.clear();
+        nodeStoresByKey.clear();
+    }
+
+    /**
+     * @param key A node key.
+     * @return The number of times the node was loaded.
+     */
+    public int nodeLoads(final String key) {
+        final AtomicInteger count = nodeLoadsByKey.get(key);
+        return count == null ? 0 : count.get();
+    }
+
+    /**
+     * @param key A node key.
+     * @return The number of times the node was stored.
+     */
+    public int nodeStores(final String key) {
+        final AtomicInteger count = nodeStoresByKey.get(key);
+        return count == null ? 0 : count.get();
+    }
+
+    /**
+     * Fail every node write after the next {@code stores} with a {@link NodeStoreException}.
+     *
+     * @param stores The node writes that succeed. {@link Integer#MAX_VALUE} to stop failing.
+     */
+    public void failNodeStoresAfter(final int stores) {
+        nodeStoresLeft.set(stores);
+    }
+
+    @Override
+    public VALUE loadData(final String key) {
+        dataLoads.incrementAndGet();
+        return super.loadData(key);
+    }
+
+    @Override
+    public Node<USERKEY, String> loadNode(final String key) {
+        nodeLoads.incrementAndGet();
+        nodeLoadsByKey.computeIfAbsent(key, k -> new AtomicInteger()).incrementAndGet();
+        return super.loadNode(key);
+    }
+
+    @Override
+    public void store(final String key, final Node<USERKEY, String> node) {
+        if (nodeStoresLeft.getAndDecrement() <= 0) {
+            throw new NodeStoreException("Crashed.");
+        }
+        nodeStoresByKey.computeIfAbsent(key, k -> new AtomicInteger()).incrementAndGet();
+        nodes.add(key);
+        super.store(key, node);
+    }
+
+    @Override
+    public void removeNode(final String key) {
+        nodes.remove(key);
+        super.removeNode(key);
+    }
+
+    @Override
+    public void execute(final NodeStoreBatch<USERKEY, String, VALUE> batch) {
+        batches.add(batch);
+        batch.executeOn(this);
+    }
+
+    @Override
+    public Map<String, Node<USERKEY, String>> loadNodes(final Collection<String> keys) {
+        batchLoads.incrementAndGet();
+        final Map<String, Node<USERKEY, String>> found = new HashMap<>();
+        for (final String k : keys) {
+            try {
+                found.put(k, super.loadNode(k));
+            }
+            catch (final NodeStoreNodeNotFoundException e) {
+                // Absent keys are left out.
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public Map<String, VALUE> loadData(final Collection<String> keys) {
+        batchLoads.incrementAndGet();
+        final Map<String, VALUE> found = new HashMap<>();
+        for (final String k : keys) {
+            final VALUE v = super.loadData(k);
+            if (v != null) {
+                found.put(k, v);
+            }
+        }
+        return found;
+    }
+}
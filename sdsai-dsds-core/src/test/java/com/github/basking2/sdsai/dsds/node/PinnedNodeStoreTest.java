@@ -0,0 +1,147 @@
+package com.github.basking2.sdsai.dsds.node;
+
+import com.github.basking2.sdsai.dsds.BTree;
+import com.github.basking2.sdsai.dsds.mem.ConcurrentMemoryNodeStore;
+import com.github.basking2.sdsai.dsds.mem.CountingNodeStore;
+import com.github.basking2.sdsai.dsds.node.metrics.InstrumentedNodeStore;
+import com.github.basking2.sdsai.dsds.node.metrics.JmxNodeStoreMetrics;
+import com.github.basking2.sdsai.dsds.node.metrics.NodeStoreMetrics.Operation;
+import org.junit.Test;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PinnedNodeStoreTest {
+
+    /**
+     * Versions nodes with a counter.
+     */
+    private static class VersionedStore
+        extends CountingNodeStore<Integer, String>
+        implements VersionedNodeStore<Integer, String, String>
+    {
+        private final AtomicLong next = new AtomicLong();
+        private final Map<String, Long> versions = new ConcurrentHashMap<>();
+
+        @Override
+        public Object nodeVersion(final String key) {
+            return versions.get(key);
+        }
+
+        @Override
+        public void store(final String key, final Node<Integer, String> node) {
+            super.store(key, node);
+            versions.put(key, next.incrementAndGet());
+        }
+
+        @Override
+        public void removeNode(final String key) {
+            versions.remove(key);
+            super.removeNode(key);
+        }
+    }
+
+    private static long rootLoads(final boolean pinned) {
+        final JmxNodeStoreMetrics metrics = new JmxNodeStoreMetrics();
+        final BTree<Integer, String, String> bt =
+            new BTree<>(-1, InstrumentedNodeStore.wrap(new ConcurrentMemoryNodeStore<Integer, String>(), metrics), 2);
+        if (pinned) {
+            bt.pinRoot(false);
+        }
+
+        for (int i = 0; i < 200; i++) {
+            bt.put(i, "v" + i);
+        }
+        for (int i = 0; i < 200; i += 2) {
+            bt.remove(i);
+        }
+
+        final Iterator<Integer> keys = bt.getIterator();
+        for (int i = 1; i < 200; i += 2) {
+            assertEquals(Integer.valueOf(i), keys.next());
+        }
+        assertFalse(keys.hasNext());
+
+        return metrics.getCount(Operation.LOAD_NODE);
+    }
+
+    @Test
+    public void pinningSkipsRootLoads() {
+        // Every put and remove loads the root once unless it is pinned.
+        assertTrue(rootLoads(true) + 300 <= rootLoads(false));
+    }
+
+    @Test
+    public void validationSeesOtherWriters() {
+        final VersionedStore store = new VersionedStore();
+        final BTree<Integer, String, String> pinned = new BTree<>(-1, store, 2);
+        final BTree<Integer, String, String> other = new BTree<>(-1, store, 2);
+        pinned.pinRoot(true);
+
+        for (int i = 0; i < 50; i++) {
+            pinned.put(i, "v" + i);
+        }
+
+        // An unchanged root is not loaded again.
+        final long loads = store.nodeLoads("-1");
+        for (int i = 0; i < 50; i++) {
+            pinned.isEmpty();
+        }
+        assertEquals(loads, store.nodeLoads("-1"));
+
+        // Another writer changes the root, so the pinned tree reloads it.
+        for (int i = 50; i < 100; i++) {
+            other.put(i, "v" + i);
+        }
+        assertEquals(100, pinned.size());
+
+        final Iterator<Integer> keys = pinned.getIterator();
+        for (int i = 0; i < 100; i++) {
+            assertEquals(Integer.valueOf(i), keys.next());
+        }
+        assertTrue(store.nodeLoads("-1") > loads);
+
+        pinned.unpinRoot();
+        pinned.clear();
+        assertTrue(other.isEmpty());
+    }
+
+    @Test
+    public void validationThroughInstrumentation() {
+        final VersionedStore store = new VersionedStore();
+        final JmxNodeStoreMetrics metrics = new JmxNodeStoreMetrics();
+        final BTree<Integer, String, String> pinned = new BTree<>(-1, InstrumentedNodeStore.wrap(store, metrics), 2);
+        pinned.pinRoot(true);
+
+        for (int i = 0; i < 50; i++) {
+            pinned.put(i, "v" + i);
+        }
+
+        final long loads = store.nodeLoads("-1");
+        for (int i = 0; i < 50; i++) {
+            pinned.isEmpty();
+        }
+        assertEquals(loads, store.nodeLoads("-1"));
+        assertTrue(metrics.getCount(Operation.NODE_VERSION) >= 50);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void validationNeedsVersions() {
+        new BTree<Integer, String, String>(-1, new ConcurrentMemoryNodeStore<Integer, String>(), 2).pinRoot(true);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void validationNeedsVersionsBeneathInstrumentation() {
+        new BTree<Integer, String, String>(
+            -1,
+            InstrumentedNodeStore.wrap(new ConcurrentMemoryNodeStore<Integer, String>(), new JmxNodeStoreMetrics()),
+            2
+        ).pinRoot(true);
+    }
+}
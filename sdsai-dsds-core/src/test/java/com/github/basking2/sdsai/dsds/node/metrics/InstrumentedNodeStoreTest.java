@@ -0,0 +1,112 @@
+package com.github.basking2.sdsai.dsds.node.metrics;
+
+import com.github.basking2.sdsai.dsds.BTree;
+import com.github.basking2.sdsai.dsds.mem.ConcurrentMemoryNodeStore;
+import com.github.basking2.sdsai.dsds.mem.CountingNodeStore;
+import com.github.basking2.sdsai.dsds.node.BatchNodeStore;
+import com.github.basking2.sdsai.dsds.node.Node;
+import com.github.basking2.sdsai.dsds.node.NodeStoreBatch;
+import com.github.basking2.sdsai.dsds.node.NodeStoreNodeNotFoundException;
+import com.github.basking2.sdsai.dsds.node.metrics.NodeStoreMetrics.Operation;
+import com.github.basking2.sdsai.dsds.node.metrics.NodeStoreMetricsMXBean.OperationStatistics;
+import org.junit.Test;
+
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class InstrumentedNodeStoreTest {
+
+    @Test
+    public void countsBackendCalls() {
+        final JmxNodeStoreMetrics metrics = new JmxNodeStoreMetrics();
+        final InstrumentedNodeStore<Integer, String, String> store = new InstrumentedNodeStore<>(
+            new ConcurrentMemoryNodeStore<Integer, String>(),
+            metrics,
+            InstrumentedNodeStore.serializedSize(
+                k -> k.toString().getBytes(StandardCharsets.UTF_8),
+                k -> k.getBytes(StandardCharsets.UTF_8)),
+            String::length
+        );
+
+        final BTree<Integer, String, String> bt = new BTree<>(-1, store, 2);
+        metrics.reset();
+
+        bt.put(1, "abc");
+        assertEquals("abc", bt.get(1));
+
+        assertEquals(1, metrics.getCount(Operation.STORE_DATA));
+        assertEquals(3, metrics.getBytes(Operation.STORE_DATA));
+        // The put reads the previous value, which is missing, and the get reads the new one.
+        assertEquals(2, metrics.getCount(Operation.LOAD_DATA));
+        assertEquals(3, metrics.getBytes(Operation.LOAD_DATA));
+        assertTrue(metrics.getCount(Operation.LOAD_NODE) > 0);
+        assertTrue(metrics.getBytes(Operation.STORE_NODE) > 0);
+        assertEquals(metrics.getCount(Operation.LOAD_NODE), metrics.getHistogram(Operation.LOAD_NODE).getTotalCount());
+
+        final long failures = metrics.getFailures(Operation.LOAD_NODE);
+        try {
+            store.loadNode("no such node");
+            fail("Expected node not found.");
+        }
+        catch (final NodeStoreNodeNotFoundException e) {
+            assertEquals(failures + 1, metrics.getFailures(Operation.LOAD_NODE));
+        }
+
+        assertFalse(store instanceof BatchNodeStore);
+    }
+
+    @Test
+    public void registersMXBean() throws Exception {
+        final InstrumentedNodeStore<Integer, String, String> store =
+            InstrumentedNodeStore.wrap(new ConcurrentMemoryNodeStore<Integer, String>(), "registersMXBean");
+        final JmxNodeStoreMetrics metrics = (JmxNodeStoreMetrics) store.getMetrics();
+
+        try {
+            store.store("k", "v");
+            store.removeData("k");
+
+            final ObjectName name = metrics.getObjectName();
+            final CompositeData[] operations =
+                (CompositeData[]) ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Operations");
+
+            assertEquals(Operation.values().length, operations.length);
+            assertEquals("STORE_DATA", operations[Operation.STORE_DATA.ordinal()].get("operation"));
+            assertEquals(1L, operations[Operation.STORE_DATA.ordinal()].get("count"));
+            assertEquals(1L, operations[Operation.REMOVE_DATA.ordinal()].get("count"));
+
+            final OperationStatistics stats = metrics.getOperations().get(Operation.STORE_DATA.ordinal());
+            assertTrue(stats.getMaxNanos() >= stats.getP50Nanos());
+        }
+        finally {
+            metrics.unregister();
+        }
+
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(
+            new ObjectName(JmxNodeStoreMetrics.DOMAIN + ":type=NodeStore,name=\"registersMXBean\"")));
+    }
+
+    @Test
+    public void wrapKeepsBatches() {
+        final JmxNodeStoreMetrics metrics = new JmxNodeStoreMetrics();
+        final CountingNodeStore<Integer, String> batchStore = new CountingNodeStore<>();
+
+        final InstrumentedNodeStore<Integer, String, String> store = InstrumentedNodeStore.wrap(batchStore, metrics);
+        assertTrue(store instanceof InstrumentedBatchNodeStore);
+
+        ((BatchNodeStore<Integer, String, String>) store).execute(
+            new NodeStoreBatch<Integer, String, String>()
+                .store("a", "A")
+                .store("n", new Node<Integer, String>(1, 1)));
+
+        assertEquals(1, metrics.getCount(Operation.EXECUTE_BATCH));
+        assertEquals(0, metrics.getCount(Operation.STORE_DATA));
+        assertEquals("A", batchStore.loadData("a"));
+    }
+}
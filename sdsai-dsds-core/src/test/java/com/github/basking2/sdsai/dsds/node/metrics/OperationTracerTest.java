@@ -0,0 +1,122 @@
+package com.github.basking2.sdsai.dsds.node.metrics;
+
+import com.github.basking2.sdsai.dsds.BTree;
+import com.github.basking2.sdsai.dsds.PagedList;
+import com.github.basking2.sdsai.dsds.mem.ConcurrentMemoryNodeStore;
+import com.github.basking2.sdsai.dsds.node.metrics.NodeStoreMetrics.Operation;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.ToIntFunction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OperationTracerTest {
+
+    private static int sum(final List<OperationTrace> traces, final ToIntFunction<OperationTrace> counter) {
+        int sum = 0;
+        for (final OperationTrace t : traces) {
+            sum += counter.applyAsInt(t);
+        }
+        return sum;
+    }
+
+    private static int maxDepth(final List<OperationTrace> traces) {
+        int depth = 0;
+        for (final OperationTrace t : traces) {
+            depth = Math.max(depth, t.getDepth());
+        }
+        return depth;
+    }
+
+    @Test
+    public void tracesBTreeOperations() {
+        final List<OperationTrace> traces = new ArrayList<>();
+        final JmxNodeStoreMetrics metrics = new JmxNodeStoreMetrics();
+        final OperationTracer tracer = new OperationTracer(traces::add, metrics);
+        final BTree<Integer, String, String> bt =
+            new BTree<>(-1, InstrumentedNodeStore.wrap(new ConcurrentMemoryNodeStore<Integer, String>(), tracer), 1);
+        bt.setTracer(tracer);
+
+        for (int i = 0; i < 200; i++) {
+            bt.put(i, "v" + i);
+        }
+
+        // Calls made within put, such as containsKey, are part of the put's trace.
+        assertEquals(200, traces.size());
+        long calls = 0;
+        for (final OperationTrace t : traces) {
+            assertEquals("BTree.put", t.getOperation());
+            assertTrue(t.getCalls(Operation.STORE_DATA) >= 1);
+            calls += t.getTotalCalls();
+        }
+
+        long recorded = 0;
+        for (final Operation o : Operation.values()) {
+            recorded += metrics.getCount(o);
+        }
+        assertEquals(recorded, calls);
+
+        assertTrue(sum(traces, OperationTrace::getSplits) > 0);
+        assertTrue(maxDepth(traces) >= 5);
+
+        traces.clear();
+        for (int i = 0; i < 200; i += 2) {
+            bt.remove(i);
+        }
+        assertEquals(100, traces.size());
+        assertTrue(sum(traces, OperationTrace::getMerges) > 0);
+        assertTrue(sum(traces, OperationTrace::getRotations) > 0);
+
+        traces.clear();
+        bt.setTracer(null);
+        bt.get(1);
+        assertTrue(traces.isEmpty());
+    }
+
+    @Test
+    public void tracesPagedListOperations() {
+        final List<OperationTrace> traces = new ArrayList<>();
+        final OperationTracer tracer = new OperationTracer(traces::add);
+        final ConcurrentMemoryNodeStore<String, String> store = new ConcurrentMemoryNodeStore<>();
+        final PagedList<String, String> pl =
+            new PagedList<>(store.generateKey(null, null), InstrumentedNodeStore.wrap(store, tracer), 3);
+        pl.setTracer(tracer);
+
+        for (int i = 0; i < 30; i++) {
+            pl.add(0, "v" + i);
+        }
+        assertTrue(sum(traces, OperationTrace::getSplits) > 0);
+
+        traces.clear();
+        assertEquals("v0", pl.get(29));
+        assertEquals(1, traces.size());
+        assertTrue(traces.get(0).getDepth() >= 5);
+        assertEquals(1, traces.get(0).getCalls(Operation.LOAD_DATA));
+
+        traces.clear();
+        for (int i = 0; i < 25; i++) {
+            pl.remove(0);
+        }
+        assertTrue(sum(traces, OperationTrace::getMerges) > 0);
+
+        final ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            traces.clear();
+            pl.clear(pool);
+            assertEquals(1, traces.size());
+            assertEquals("PagedList.clear", traces.get(0).getOperation());
+
+            traces.clear();
+            pl.destroy(pool);
+            assertEquals(1, traces.size());
+            assertEquals("PagedList.destroy", traces.get(0).getOperation());
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.github.basking2.sdsai.dsds.node.tx;
+
+import com.github.basking2.sdsai.dsds.BTree;
+import com.github.basking2.sdsai.dsds.mem.CountingNodeStore;
+import com.github.basking2.sdsai.dsds.node.Node;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TransactionalNodeStoreTest
+{
+    @Test
+    public void commitSendsOneBatch()
+    {
+        final CountingNodeStore<Integer, String> store = new CountingNodeStore<>();
+        final TransactionalNodeStore<Integer, String, String> tx = new TransactionalNodeStore<>(store);
+
+        tx.store("a", "1");
+        tx.store("a", "2");
+        tx.store("b", "3");
+        tx.removeData("b");
+        tx.store("n", new Node<Integer, String>());
+        tx.removeNode("n");
+
+        assertTrue(store.batches.isEmpty());
+        tx.commit();
+
+        assertEquals(1, store.batches.size());
+        assertEquals(2, store.batches.get(0).getDataWrites().size());
+        assertEquals(1, store.batches.get(0).getNodeWrites().size());
+        assertEquals("2", store.loadData("a"));
+        assertNull(store.loadData("b"));
+
+        // Nothing to write sends nothing.
+        tx.commit();
+        assertEquals(1, store.batches.size());
+    }
+
+    @Test
+    public void btreeCommitsAsBatch()
+    {
+        final CountingNodeStore<Integer, String> store = new CountingNodeStore<>();
+        final TransactionalNodeStore<Integer, String, String> tx = new TransactionalNodeStore<>(store);
+        final BTree<Integer, String, String> bt = new BTree<>(0, tx, 1);
+
+        for (int i = 0; i < 50; i++) {
+            bt.put(i, "v"+i);
+        }
+        tx.commit();
+
+        assertEquals(1, store.batches.size());
+        final BTree<Integer, String, String> committed = new BTree<>(0, store, 1);
+        for (int i = 0; i < 50; i++) {
+            assertEquals("v"+i, committed.get(i));
+        }
+        assertEquals(50, committed.size());
+    }
+}
@@ -0,0 +1,360 @@
+package com.github.basking2.sdsai.dsds.mongo;
+
+import com.github.basking2.sdsai.dsds.node.BatchNodeStore;
+import com.github.basking2.sdsai.dsds.node.Node;
+import com.github.basking2.sdsai.dsds.node.NodeStoreBatch;
+import com.github.basking2.sdsai.dsds.node.NodeStoreException;
+import com.github.basking2.sdsai.dsds.node.NodeStoreNodeNotFoundException;
+import com.mongodb.MongoException;
+import com.mongodb.WriteConcern;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.DeleteOneModel;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.WriteModel;
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.codecs.StringCodec;
+import org.bson.codecs.configuration.CodecRegistries;
+import org.bson.types.ObjectId;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Filters.in;
+
+/**
+ * A {@link BatchNodeStore} using the {@link MongoCollection} API of the MongoDB driver.
+ *
+ * Every document is {@code {_id: key, v: value}}. Nodes are encoded by a {@link NodeCodec} and user data
+ * by a codec given to the store, so, unlike {@link MongoNodeStore}, no class names are stored and no
+ * reflection is used.
+ *
+ * A {@link NodeStoreBatch} is sent as one bulk write to the data collection followed by one bulk
+ * write to the node collection. Many keys are loaded with {@code $in} queries.
+ *
+ * @param <USERKEY> The user key type. Keys are converted to store keys with {@link Object#toString()}.
+ * @param <VALUE> The user data type.
+ */
+public class MongoCollectionNodeStore<USERKEY, VALUE> implements BatchNodeStore<USERKEY, String, VALUE> {
+
+    /**
+     * The most keys sent in one {@code $in} query.
+     */
+    public static final int MAX_IN_KEYS = 1000;
+
+    private static final ReplaceOptions UPSERT = new ReplaceOptions().upsert(true);
+
+    private final MongoCollection<Entry<Node<USERKEY, String>>> nodeCollection;
+    private final MongoCollection<Entry<VALUE>> dataCollection;
+    private final BulkWriteOptions bulkWriteOptions;
+
+    /**
+     * A store using acknowledged, ordered writes.
+     *
+     * @see #MongoCollectionNodeStore(MongoCollection, MongoCollection, Codec, Codec, WriteConcern, boolean)
+     */
+    public MongoCollectionNodeStore(
+        final MongoCollection<?> nodeCollection,
+        final MongoCollection<?> dataCollection,
+        final Codec<USERKEY> userKeyCodec,
+        final Codec<VALUE> valueCodec
+    ) {
+        this(nodeCollection, dataCollection, userKeyCodec, valueCodec, WriteConcern.ACKNOWLEDGED, true);
+    }
+
+    /**
+     * @param nodeCollection Where nodes are stored.
+     * @param dataCollection Where user data is stored.
+     * @param userKeyCodec Encodes the user keys held in nodes, such as a {@link StringCodec}.
+     * @param valueCodec Encodes user data. It may write any BSON value, not only a document.
+     * @param writeConcern The write concern of all writes.
+     * @param ordered If false, the server may apply the writes of a bulk write in any order
+     *                and continues past a failed write.
+     */
+    public MongoCollectionNodeStore(
+        final MongoCollection<?> nodeCollection,
+        final MongoCollection<?> dataCollection,
+        final Codec<USERKEY> userKeyCodec,
+        final Codec<VALUE> valueCodec,
+        final WriteConcern writeConcern,
+        final boolean ordered
+    ) {
+        this.nodeCollection = withEntryCodec(nodeCollection, new NodeCodec<>(userKeyCodec, new StringCodec()))
+            .withWriteConcern(writeConcern);
+        this.dataCollection = withEntryCodec(dataCollection, valueCodec)
+            .withWriteConcern(writeConcern);
+        this.bulkWriteOptions = new BulkWriteOptions().ordered(ordered);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public VALUE loadData(final String key) {
+        try {
+            final Entry<VALUE> entry = dataCollection.find(eq("_id", key)).first();
+
+            return entry == null ? null : entry.value;
+        }
+        catch (final MongoException e) {
+            throw new NodeStoreException(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Node<USERKEY, String> loadNode(final String key) {
+        try {
+            final Entry<Node<USERKEY, String>> entry = nodeCollection.find(eq("_id", key)).first();
+
+            if (entry == null) {
+                throw new NodeStoreNodeNotFoundException("key:" + key);
+            }
+
+            return entry.value;
+        }
+        catch (final MongoException e) {
+            throw new NodeStoreException(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, Node<USERKEY, String>> loadNodes(final Collection<String> keys) {
+        return loadAll(nodeCollection, keys);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, VALUE> loadData(final Collection<String> keys) {
+        return loadAll(dataCollection, keys);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void store(final String key, final VALUE data) {
+        try {
+            dataCollection.replaceOne(eq("_id", key), new Entry<>(key, data), UPSERT);
+        }
+        catch (final MongoException e) {
+            throw new NodeStoreException(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void store(final String key, final Node<USERKEY, String> node) {
+        try {
+            nodeCollection.replaceOne(eq("_id", key), new Entry<>(key, node), UPSERT);
+        }
+        catch (final MongoException e) {
+            throw new NodeStoreException(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeNode(final String key) {
+        try {
+            nodeCollection.deleteOne(eq("_id", key));
+        }
+        catch (final MongoException e) {
+            throw new NodeStoreException(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeData(final String key) {
+        try {
+            dataCollection.deleteOne(eq("_id", key));
+        }
+        catch (final MongoException e) {
+            throw new NodeStoreException(e);
+        }
+    }
+
+    /**
+     * Send the data writes as one bulk write and then the node writes as another.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void execute(final NodeStoreBatch<USERKEY, String, VALUE> batch) {
+        try {
+            bulkWrite(dataCollection, batch.getDataWrites());
+            bulkWrite(nodeCollection, batch.getNodeWrites());
+        }
+        catch (final MongoException e) {
+            throw new NodeStoreException(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String generateKey(final Node<USERKEY, String> node, final VALUE value) {
+        return new ObjectId().toString();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String convert(final USERKEY key) {
+        return key.toString();
+    }
+
+    private <T> void bulkWrite(
+        final MongoCollection<Entry<T>> collection,
+        final Collection<NodeStoreBatch.Write<String, T>> writes
+    ) {
+        if (writes.isEmpty()) {
+            return;
+        }
+
+        final List<WriteModel<Entry<T>>> models = new ArrayList<>(writes.size());
+        for (final NodeStoreBatch.Write<String, T> w : writes) {
+            if (w.isRemove()) {
+                models.add(new DeleteOneModel<>(eq("_id", w.getKey())));
+            }
+            else {
+                models.add(new ReplaceOneModel<>(eq("_id", w.getKey()), new Entry<>(w.getKey(), w.getValue()), UPSERT));
+            }
+        }
+
+        collection.bulkWrite(models, bulkWriteOptions);
+    }
+
+    private <T> Map<String, T> loadAll(final MongoCollection<Entry<T>> collection, final Collection<String> keys) {
+        final Map<String, T> found = new HashMap<>();
+        final List<String> chunk = new ArrayList<>(Math.min(keys.size(), MAX_IN_KEYS));
+
+        try {
+            for (final String key : keys) {
+                chunk.add(key);
+                if (chunk.size() == MAX_IN_KEYS) {
+                    loadChunk(collection, chunk, found);
+                    chunk.clear();
+                }
+            }
+
+            if (!chunk.isEmpty()) {
+                loadChunk(collection, chunk, found);
+            }
+        }
+        catch (final MongoException e) {
+            throw new NodeStoreException(e);
+        }
+
+        return found;
+    }
+
+    private static <T> void loadChunk(
+        final MongoCollection<Entry<T>> collection,
+        final List<String> keys,
+        final Map<String, T> found
+    ) {
+        for (final Entry<T> entry : collection.find(in("_id", keys))) {
+            found.put(entry.key, entry.value);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> MongoCollection<Entry<T>> withEntryCodec(final MongoCollection<?> collection, final Codec<T> codec) {
+        final EntryCodec<T> entryCodec = new EntryCodec<>(codec);
+
+        return collection
+            .withDocumentClass(entryCodec.getEncoderClass())
+            .withCodecRegistry(CodecRegistries.fromRegistries(
+                CodecRegistries.fromCodecs(entryCodec),
+                collection.getCodecRegistry()));
+    }
+
+    /**
+     * A key and the node or data stored under it.
+     */
+    private static final class Entry<T> {
+        private final String key;
+        private final T value;
+
+        private Entry(final String key, final T value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Encodes an {@link Entry} as {@code {_id: key, v: value}}.
+     */
+    private static final class EntryCodec<T> implements Codec<Entry<T>> {
+        private final Codec<T> codec;
+
+        private EntryCodec(final Codec<T> codec) {
+            this.codec = codec;
+        }
+
+        @Override
+        public void encode(final BsonWriter writer, final Entry<T> entry, final EncoderContext encoderContext) {
+            writer.writeStartDocument();
+            writer.writeString("_id", entry.key);
+            writer.writeName("v");
+            encoderContext.encodeWithChildContext(codec, writer, entry.value);
+            writer.writeEndDocument();
+        }
+
+        @Override
+        public Entry<T> decode(final BsonReader reader, final DecoderContext decoderContext) {
+            String key = null;
+            T value = null;
+
+            reader.readStartDocument();
+            while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+                final String name = reader.readName();
+                if ("_id".equals(name)) {
+                    key = reader.readString();
+                }
+                else if ("v".equals(name)) {
+                    value = decoderContext.decodeWithChildContext(codec, reader);
+                }
+                else {
+                    reader.skipValue();
+                }
+            }
+            reader.readEndDocument();
+
+            return new Entry<>(key, value);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Class<Entry<T>> getEncoderClass() {
+            return (Class<Entry<T>>) (Class<?>) Entry.class;
+        }
+    }
+}
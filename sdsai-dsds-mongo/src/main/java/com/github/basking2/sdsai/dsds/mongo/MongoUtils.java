@@ -35,6 +35,10 @@ import java.lang.reflect.Method;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Maps java objects to {@link DBObject}s by reflection for {@link MongoNodeStore}.
+ * {@link MongoCollectionNodeStore} uses {@link NodeCodec} and user supplied codecs instead.
+ */
 public class MongoUtils
 {
 
@@ -205,8 +209,15 @@ public class MongoUtils
         }
     }
     
+    /**
+     * Convert a {@link DBObject} made by {@link #toDBObject(Object)} back to a java object.
+     * Values that {@link #toDBObject(Object)} wrapped in the key {@code Value} are unwrapped.
+     */
     public static Object fromDBObject(final DBObject dbo)
     {
+        if ( !dbo.containsField("Class") && dbo.containsField("Value") )
+            return dbo.get("Value");
+
         try {
             return fromDBObjectHelper(dbo);
         } catch (final Exception e) {
@@ -0,0 +1,159 @@
+package com.github.basking2.sdsai.dsds.mongo;
+
+import com.github.basking2.sdsai.dsds.node.Node;
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Encodes a {@link Node} as a BSON document of arrays.
+ *
+ * <pre>
+ * { c: [childCap, dataCap, ancestorsCap], d: [data keys], a: [ancestors], k: [children] }
+ * </pre>
+ *
+ * Empty key lists are not written. Keys are encoded by the given codecs, so no class names are
+ * stored and decoding uses no reflection.
+ *
+ * @param <USERKEY> The user's key.
+ * @param <STOREKEY> The key in the data storage medium.
+ */
+public class NodeCodec<USERKEY, STOREKEY> implements Codec<Node<USERKEY, STOREKEY>> {
+
+    private static final String CAPS = "c";
+    private static final String DATA = "d";
+    private static final String ANCESTORS = "a";
+    private static final String CHILDREN = "k";
+
+    private final Codec<USERKEY> userKeyCodec;
+    private final Codec<STOREKEY> storeKeyCodec;
+
+    /**
+     * @param userKeyCodec Encodes the data keys of a node.
+     * @param storeKeyCodec Encodes the ancestor and child keys of a node.
+     */
+    public NodeCodec(final Codec<USERKEY> userKeyCodec, final Codec<STOREKEY> storeKeyCodec) {
+        this.userKeyCodec = userKeyCodec;
+        this.storeKeyCodec = storeKeyCodec;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void encode(final BsonWriter writer, final Node<USERKEY, STOREKEY> node, final EncoderContext encoderContext) {
+        writer.writeStartDocument();
+
+        writer.writeStartArray(CAPS);
+        writer.writeInt32(node.getChildCap());
+        writer.writeInt32(node.getDataCap());
+        writer.writeInt32(node.getAncestorsCap());
+        writer.writeEndArray();
+
+        writeKeys(writer, DATA, node.getData(), userKeyCodec, encoderContext);
+        writeKeys(writer, ANCESTORS, node.getAncestors(), storeKeyCodec, encoderContext);
+        writeKeys(writer, CHILDREN, node.getChildren(), storeKeyCodec, encoderContext);
+
+        writer.writeEndDocument();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Node<USERKEY, STOREKEY> decode(final BsonReader reader, final DecoderContext decoderContext) {
+        int childCap = 1;
+        int dataCap = 1;
+        int ancestorsCap = 1;
+        List<USERKEY> data = null;
+        List<STOREKEY> ancestors = null;
+        List<STOREKEY> children = null;
+
+        reader.readStartDocument();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            final String name = reader.readName();
+            switch (name) {
+                case CAPS:
+                    reader.readStartArray();
+                    childCap = reader.readInt32();
+                    dataCap = reader.readInt32();
+                    ancestorsCap = reader.readInt32();
+                    reader.readEndArray();
+                    break;
+                case DATA:
+                    data = readKeys(reader, userKeyCodec, decoderContext);
+                    break;
+                case ANCESTORS:
+                    ancestors = readKeys(reader, storeKeyCodec, decoderContext);
+                    break;
+                case CHILDREN:
+                    children = readKeys(reader, storeKeyCodec, decoderContext);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.readEndDocument();
+
+        final Node<USERKEY, STOREKEY> node = new Node<>(childCap, dataCap, ancestorsCap);
+        if (data != null) {
+            node.setData(data);
+        }
+        if (ancestors != null) {
+            node.setAncestors(ancestors);
+        }
+        if (children != null) {
+            node.setChildren(children);
+        }
+        return node;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public Class<Node<USERKEY, STOREKEY>> getEncoderClass() {
+        return (Class<Node<USERKEY, STOREKEY>>) (Class<?>) Node.class;
+    }
+
+    private static <T> void writeKeys(
+        final BsonWriter writer,
+        final String name,
+        final List<T> keys,
+        final Codec<T> codec,
+        final EncoderContext encoderContext
+    ) {
+        if (keys.isEmpty()) {
+            return;
+        }
+
+        writer.writeStartArray(name);
+        for (final T key : keys) {
+            encoderContext.encodeWithChildContext(codec, writer, key);
+        }
+        writer.writeEndArray();
+    }
+
+    private static <T> List<T> readKeys(
+        final BsonReader reader,
+        final Codec<T> codec,
+        final DecoderContext decoderContext
+    ) {
+        final List<T> keys = new ArrayList<>();
+
+        reader.readStartArray();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            keys.add(decoderContext.decodeWithChildContext(codec, reader));
+        }
+        reader.readEndArray();
+
+        return keys;
+    }
+}
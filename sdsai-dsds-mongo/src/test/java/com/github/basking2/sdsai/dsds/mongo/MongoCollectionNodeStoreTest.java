@@ -0,0 +1,193 @@
+package com.github.basking2.sdsai.dsds.mongo;
+
+import com.github.basking2.sdsai.dsds.BTree;
+import com.github.basking2.sdsai.dsds.node.Node;
+import com.github.basking2.sdsai.dsds.node.NodeStoreBatch;
+import com.github.basking2.sdsai.dsds.node.tx.TransactionalNodeStore;
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.WriteConcern;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import org.bson.Document;
+import org.bson.codecs.StringCodec;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeNoException;
+
+/**
+ * Runs against a local {@code mongod}. The tests are skipped if one cannot be reached.
+ */
+public class MongoCollectionNodeStoreTest {
+    public static final String uri = System.getProperty(
+        "mongo.uri",
+        "mongodb://127.0.0.1/?serverSelectionTimeoutMS=2000");
+    public static final String database = "test";
+    public static final String nodeCollection = "testCollectionNodes";
+    public static final String dataCollection = "testCollectionData";
+
+    /**
+     * The names of the commands sent, such as "update", "delete" and "find".
+     */
+    private final List<String> commands = new CopyOnWriteArrayList<>();
+
+    private MongoClient client;
+    private MongoDatabase db;
+    private MongoCollectionNodeStore<String, String> ns;
+
+    @Before
+    public void setup() {
+        try {
+            client = MongoClients.create(MongoClientSettings.builder()
+                .applyConnectionString(new ConnectionString(uri))
+                .addCommandListener(new CommandListener() {
+                    @Override
+                    public void commandStarted(final CommandStartedEvent event) {
+                        commands.add(event.getCommandName());
+                    }
+
+                    @Override
+                    public void commandSucceeded(final CommandSucceededEvent event) {
+                    }
+
+                    @Override
+                    public void commandFailed(final CommandFailedEvent event) {
+                    }
+                })
+                .build());
+            db = client.getDatabase(database);
+            db.runCommand(new Document("ping", 1));
+            db.getCollection(nodeCollection).drop();
+            db.getCollection(dataCollection).drop();
+            ns = new MongoCollectionNodeStore<>(
+                db.getCollection(nodeCollection),
+                db.getCollection(dataCollection),
+                new StringCodec(),
+                new StringCodec(),
+                WriteConcern.ACKNOWLEDGED,
+                false);
+            commands.clear();
+        }
+        catch (final Throwable e) {
+            if (client != null) {
+                client.close();
+                client = null;
+            }
+            assumeNoException(e);
+        }
+    }
+
+    @After
+    public void teardown() {
+        if (client != null) {
+            db.getCollection(nodeCollection).drop();
+            db.getCollection(dataCollection).drop();
+            client.close();
+        }
+    }
+
+    @Test
+    public void loadStoreNode() {
+        final Node<String, String> n1 = new Node<>(1, 1);
+        final Node<String, String> n2 = new Node<>(1, 1);
+
+        n1.getChildren().add("node2");
+        n2.getChildren().add("node1");
+
+        ns.store("node1", n1);
+        ns.store("node2", n2);
+
+        assertEquals("node2", ns.loadNode("node1").getChildren().get(0));
+        assertEquals("node1", ns.loadNode("node2").getChildren().get(0));
+
+        ns.removeNode("node1");
+        ns.store("data1", "value1");
+        assertEquals("value1", ns.loadData("data1"));
+        ns.removeData("data1");
+        assertNull(ns.loadData("data1"));
+    }
+
+    @Test
+    public void batchIsOneBulkWritePerCollection() {
+        final NodeStoreBatch<String, String, String> batch = new NodeStoreBatch<>();
+        for (int i = 0; i < 10; i++) {
+            final Node<String, String> n = new Node<>(1, 1);
+            n.getData().add("k" + i);
+            batch.store("node" + i, n);
+            batch.store("data" + i, "value" + i);
+        }
+        batch.removeNode("node9");
+        batch.removeData("data9");
+
+        ns.execute(batch);
+
+        // The stores and removes go to each collection in one command of each kind.
+        assertEquals(Arrays.asList("update", "delete", "update", "delete"), commands);
+
+        commands.clear();
+        final Map<String, Node<String, String>> nodes = ns.loadNodes(Arrays.asList("node0", "node5", "node9", "none"));
+        assertEquals(Arrays.asList("find"), commands);
+        assertEquals(2, nodes.size());
+        assertEquals("k5", nodes.get("node5").getData().get(0));
+
+        final Map<String, String> data = ns.loadData(Arrays.asList("data1", "data9"));
+        assertEquals(1, data.size());
+        assertEquals("value1", data.get("data1"));
+    }
+
+    @Test
+    public void transactionCommitsAsBulkWrites() {
+        final TransactionalNodeStore<String, String, String> tx = new TransactionalNodeStore<>(ns);
+        final BTree<String, String, String> bt = new BTree<>("btRoot", tx, 2);
+
+        for (int i = 0; i < 50; i++) {
+            bt.put("key" + i, "value" + i);
+        }
+
+        assertFalse(commands.contains("update"));
+        commands.clear();
+        tx.commit();
+
+        // One update for each collection and no other commands beyond a single delete.
+        assertEquals(2, Collections.frequency(commands, "update"));
+        assertTrue(Collections.frequency(commands, "delete") <= 1);
+        assertEquals(commands.size(), Collections.frequency(commands, "update") + Collections.frequency(commands, "delete"));
+
+        final BTree<String, String, String> committed = new BTree<>("btRoot", ns, 2);
+        assertEquals(50, committed.size());
+        assertEquals("value7", committed.get("key7"));
+        committed.destroy();
+    }
+
+    @Test
+    public void btreeChurn() {
+        final BTree<String, String, String> bt = new BTree<>("btRoot", ns, 1);
+        try {
+            for (int i = 0; i < 100; i++) {
+                bt.put(java.util.UUID.randomUUID() + "", "value" + i);
+            }
+
+            assertEquals(100, bt.size());
+        }
+        finally {
+            bt.destroy();
+        }
+    }
+}
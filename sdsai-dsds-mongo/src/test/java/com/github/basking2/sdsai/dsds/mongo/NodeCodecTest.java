@@ -0,0 +1,66 @@
+package com.github.basking2.sdsai.dsds.mongo;
+
+import com.github.basking2.sdsai.dsds.node.Node;
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentReader;
+import org.bson.BsonDocumentWriter;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.codecs.LongCodec;
+import org.bson.codecs.StringCodec;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class NodeCodecTest {
+
+    private final NodeCodec<Long, String> codec = new NodeCodec<>(new LongCodec(), new StringCodec());
+
+    private BsonDocument encode(final Node<Long, String> node) {
+        final BsonDocument document = new BsonDocument();
+        codec.encode(new BsonDocumentWriter(document), node, EncoderContext.builder().build());
+        return document;
+    }
+
+    private Node<Long, String> decode(final BsonDocument document) {
+        return codec.decode(new BsonDocumentReader(document), DecoderContext.builder().build());
+    }
+
+    @Test
+    public void roundTrip() {
+        final Node<Long, String> node = new Node<>(5, 4, 1);
+        node.getData().addAll(Arrays.asList(1L, 2L, 3L));
+        node.getChildren().addAll(Arrays.asList("c1", "c2", "c3", "c4"));
+        node.getAncestors().add("parent");
+
+        final Node<Long, String> decoded = decode(encode(node));
+
+        assertEquals(5, decoded.getChildCap());
+        assertEquals(4, decoded.getDataCap());
+        assertEquals(1, decoded.getAncestorsCap());
+        assertEquals(node.getData(), decoded.getData());
+        assertEquals(node.getChildren(), decoded.getChildren());
+        assertEquals(node.getAncestors(), decoded.getAncestors());
+    }
+
+    @Test
+    public void leavesAreCompact() {
+        final Node<Long, String> leaf = new Node<>(3, 2, 1);
+        leaf.getData().add(7L);
+
+        final BsonDocument document = encode(leaf);
+
+        // No class names and no empty child or ancestor arrays.
+        assertEquals(new HashSet<>(Arrays.asList("c", "d")), document.keySet());
+        assertTrue(document.getArray("d").get(0).isInt64());
+
+        final Node<Long, String> decoded = decode(document);
+        assertTrue(decoded.getChildren().isEmpty());
+        assertTrue(decoded.getAncestors().isEmpty());
+        assertEquals(Arrays.asList(7L), decoded.getData());
+    }
+}
@@ -14,16 +14,26 @@ import com.basho.riak.client.RiakException;
 import com.basho.riak.client.RiakRetryFailedException;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static java.util.UUID.randomUUID;
 
 /**
  * A simple RiakNodeStore in which the user must provide the serialization classes.
+ *
+ * Nodes and values are written as bytes by {@link ObjectWriter}s built once per store, as JSON or,
+ * if the store is made by {@link #withSmile(IRiakClient, String, String, Class)}, as Smile.
+ * Bucket handles are fetched once and reused.
+ *
  * @see com.fasterxml.jackson.databind.ObjectMapper
  */
 public class RiakNodeStore<USERKEY, VALUE> implements NodeStore<USERKEY, String, VALUE>
@@ -32,9 +42,15 @@ public class RiakNodeStore<USERKEY, VALUE> implements NodeStore<USERKEY, String,
     private IRiakClient riakClient;
     private String dataBucket;
     private String nodeBucket;
-    private ObjectMapper objectMapper;
+    private final ObjectReader nodeReader;
+    private final ObjectWriter nodeWriter;
+    private final ObjectReader valueReader;
+    private final ObjectWriter valueWriter;
 
-    private Class<VALUE> valueClass;
+    /**
+     * Buckets fetched from Riak, by name.
+     */
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
 
     /**
      * Create a new RiakNodeStore that manipulates objects in a particular bucket.
@@ -47,12 +63,52 @@ public class RiakNodeStore<USERKEY, VALUE> implements NodeStore<USERKEY, String,
                          final String nodeBucket,
                          final String dataBucket,
                          final Class<VALUE> valueClass)
+    {
+        this(riakClient, nodeBucket, dataBucket, valueClass, new ObjectMapper());
+    }
+
+    /**
+     * Create a new RiakNodeStore that serializes with the given {@link ObjectMapper}.
+     *
+     * @param riakClient The RiakClient to use.
+     * @param nodeBucket The bucket that nodes will be stored in.
+     * @param dataBucket The bucket that user data will be stored in.
+     * @param valueClass The value class to convert members back from.
+     * @param objectMapper Builds the readers and writers of nodes and values.
+     */
+    public RiakNodeStore(final IRiakClient riakClient,
+                         final String nodeBucket,
+                         final String dataBucket,
+                         final Class<VALUE> valueClass,
+                         final ObjectMapper objectMapper)
     {
         this.riakClient = riakClient;
         this.dataBucket = dataBucket;
         this.nodeBucket = nodeBucket;
-        this.objectMapper = new ObjectMapper();
-        this.valueClass = valueClass;
+        this.nodeReader = objectMapper.readerFor(Node.class);
+        this.nodeWriter = objectMapper.writerFor(Node.class);
+        this.valueReader = objectMapper.readerFor(valueClass);
+        this.valueWriter = objectMapper.writerFor(valueClass);
+    }
+
+    /**
+     * Create a RiakNodeStore that stores nodes and values in the Smile binary encoding of JSON.
+     * A bucket written this way cannot be read by a store using JSON.
+     *
+     * @param riakClient The RiakClient to use.
+     * @param nodeBucket The bucket that nodes will be stored in.
+     * @param dataBucket The bucket that user data will be stored in.
+     * @param valueClass The value class to convert members back from.
+     * @param <USERKEY> The user key type.
+     * @param <VALUE> The user data type.
+     * @return A new store.
+     */
+    public static <USERKEY, VALUE> RiakNodeStore<USERKEY, VALUE> withSmile(final IRiakClient riakClient,
+                                                                           final String nodeBucket,
+                                                                           final String dataBucket,
+                                                                           final Class<VALUE> valueClass)
+    {
+        return new RiakNodeStore<>(riakClient, nodeBucket, dataBucket, valueClass, new ObjectMapper(new SmileFactory()));
     }
 
     /**
@@ -110,7 +166,7 @@ public class RiakNodeStore<USERKEY, VALUE> implements NodeStore<USERKEY, String,
 	    }
 
             logger.debug("Found: data@"+key);
-            return objectMapper.readValue(riakObject.getValueAsString(), valueClass);
+            return valueReader.readValue(riakObject.getValue());
         }
         catch (final IOException e)
         {
@@ -123,33 +179,43 @@ public class RiakNodeStore<USERKEY, VALUE> implements NodeStore<USERKEY, String,
     }
 
     /**
-     * Get the Node Bucket from Riak.
+     * Get the Data Bucket.
      */
     private Bucket getDataBucket() throws RiakRetryFailedException
     {
-	final Bucket bucket = riakClient.fetchBucket(dataBucket).execute();
-
-        if ( bucket == null )
-        {
-            throw new NodeStoreException("Bucket "+dataBucket+" not found.");
-        }
-
-        return bucket;
+        return getBucket(dataBucket);
     }
 
     /**
-     * Get the Node Bucket from Riak.
+     * Get the Node Bucket.
      */
     private Bucket getNodeBucket() throws RiakRetryFailedException
     {
-	final Bucket bucket = riakClient.fetchBucket(nodeBucket).execute();
+        return getBucket(nodeBucket);
+    }
+
+    /**
+     * Get a bucket, fetching it from Riak only the first time it is asked for.
+     * Two threads may both fetch a bucket. Either handle may be kept.
+     */
+    private Bucket getBucket(final String name) throws RiakRetryFailedException
+    {
+        final Bucket cached = buckets.get(name);
+        if ( cached != null )
+        {
+            return cached;
+        }
+
+        final Bucket bucket = riakClient.fetchBucket(name).execute();
 
         if ( bucket == null )
         {
-            throw new NodeStoreException("Bucket "+nodeBucket+" not found.");
+            throw new NodeStoreException("Bucket "+name+" not found.");
         }
 
-	return bucket;
+        buckets.put(name, bucket);
+
+        return bucket;
     }
 
     /**
@@ -170,8 +236,7 @@ public class RiakNodeStore<USERKEY, VALUE> implements NodeStore<USERKEY, String,
 	    }
 
             logger.debug("Not found: node@"+key);
-            @SuppressWarnings("unchecked")
-            final Node<USERKEY, String> n = objectMapper.readValue(riakObject.getValueAsString(), Node.class);
+            final Node<USERKEY, String> n = nodeReader.readValue(riakObject.getValue());
             return n;
         }
         catch (final IOException e)
@@ -242,7 +307,7 @@ public class RiakNodeStore<USERKEY, VALUE> implements NodeStore<USERKEY, String,
     {
         try 
         {
-            getNodeBucket().store(key, objectMapper.writeValueAsString(node)).execute();
+            getNodeBucket().store(key, nodeWriter.writeValueAsBytes(node)).execute();
         }
         catch (final IOException e)
         {
@@ -262,7 +327,7 @@ public class RiakNodeStore<USERKEY, VALUE> implements NodeStore<USERKEY, String,
     {
         try 
         {
-            getDataBucket().store(key, objectMapper.writeValueAsString(data)).execute();
+            getDataBucket().store(key, valueWriter.writeValueAsBytes(data)).execute();
         }
         catch (final IOException e)
         {
@@ -44,6 +44,7 @@ public class RiakNodeStoreTest {
     public static final String nodeBucket = "testNodeBucket";
     public static final String dataBucket = "testDataBucket";
 
+    private IRiakClient riakClient;
     private RiakNodeStore<String, String> ns;
     private BTree<String, String, String> bt;
     
@@ -52,7 +53,7 @@ public class RiakNodeStoreTest {
     {
         try
         {
-            final IRiakClient riakClient = RiakFactory.httpClient();
+            riakClient = RiakFactory.httpClient();
 
             ns = new RiakNodeStore<String, String>(riakClient, nodeBucket, dataBucket, String.class);
 
@@ -81,6 +82,25 @@ public class RiakNodeStoreTest {
         assertEquals("B", ns.loadData("A"));
     }
     
+    @Test
+    public void smileLoadStore()
+    {
+        final RiakNodeStore<String, String> smile =
+            RiakNodeStore.withSmile(riakClient, nodeBucket+"Smile", dataBucket+"Smile", String.class);
+
+        final Node<String, String> n = new Node<String, String>(2,1);
+        n.getChildren().add("child");
+
+        smile.store("A", "B");
+        smile.store("node", n);
+
+        assertEquals("B", smile.loadData("A"));
+        assertEquals("child", smile.loadNode("node").getChildren().get(0));
+
+        smile.removeData("A");
+        smile.removeNode("node");
+    }
+
     @Test
     public void loadStoreNode()
     {
@@ -0,0 +1,110 @@
+package com.github.basking2.sdsai.dsds.s3;
+
+import com.github.basking2.sdsai.dsds.node.NodeStoreException;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.UUID;
+
+/**
+ * An {@link S3ObjectCache} that keeps one file per object in a local directory,
+ * so that it survives restarts.
+ *
+ * Files are named by a hash of the object key and hold the ETag, when the entry
+ * was validated, and the content. Files are written to a temporary name and moved
+ * into place so a reader never sees a partial entry. Nothing is evicted; entries are
+ * only replaced or removed.
+ */
+public class DirectoryS3ObjectCache implements S3ObjectCache {
+
+    private final File directory;
+
+    /**
+     * @param directory The directory to keep entries in. It is created if it does not exist.
+     */
+    public DirectoryS3ObjectCache(final File directory) {
+        this.directory = directory;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new NodeStoreException("Could not create directory "+directory);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Entry get(final String key) {
+        try (final DataInputStream in = new DataInputStream(Files.newInputStream(file(key).toPath()))) {
+            final String eTag = in.readUTF();
+            final long validated = in.readLong();
+            final byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            return new Entry(eTag, bytes, validated);
+        }
+        catch (final NoSuchFileException e) {
+            return null;
+        }
+        catch (final IOException e) {
+            throw new NodeStoreException("Reading cached "+key, e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void put(final String key, final Entry entry) {
+        final File file = file(key);
+        final File tmp = new File(directory, "."+file.getName()+"."+UUID.randomUUID()+".tmp");
+        try {
+            try (final DataOutputStream out = new DataOutputStream(Files.newOutputStream(tmp.toPath()))) {
+                out.writeUTF(entry.getETag());
+                out.writeLong(entry.getValidated());
+                out.writeInt(entry.getBytes().length);
+                out.write(entry.getBytes());
+            }
+
+            try {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (final AtomicMoveNotSupportedException e) {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        catch (final IOException e) {
+            tmp.delete();
+            throw new NodeStoreException("Caching "+key, e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void remove(final String key) {
+        file(key).delete();
+    }
+
+    private File file(final String key) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            final StringBuilder name = new StringBuilder(digest.length * 2);
+            for (final byte b : digest) {
+                name.append(String.format("%02x", b & 0xff));
+            }
+            return new File(directory, name.toString());
+        }
+        catch (final NoSuchAlgorithmException e) {
+            throw new NodeStoreException(e);
+        }
+    }
+}
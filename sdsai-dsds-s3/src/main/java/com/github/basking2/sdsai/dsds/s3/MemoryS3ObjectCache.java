@@ -0,0 +1,68 @@
+package com.github.basking2.sdsai.dsds.s3;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An {@link S3ObjectCache} in memory that evicts the least recently used entries
+ * once their content exceeds a number of bytes.
+ */
+public class MemoryS3ObjectCache implements S3ObjectCache {
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final long maxBytes;
+
+    private long bytes;
+
+    /**
+     * @param maxBytes The most object content to hold.
+     */
+    public MemoryS3ObjectCache(final long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized Entry get(final String key) {
+        return entries.get(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void put(final String key, final Entry entry) {
+        final Entry old = entries.put(key, entry);
+        if (old != null) {
+            bytes -= old.getBytes().length;
+        }
+        bytes += entry.getBytes().length;
+
+        for (final Iterator<Map.Entry<String, Entry>> i = entries.entrySet().iterator(); bytes > maxBytes && i.hasNext(); ) {
+            bytes -= i.next().getValue().getBytes().length;
+            i.remove();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void remove(final String key) {
+        final Entry old = entries.remove(key);
+        if (old != null) {
+            bytes -= old.getBytes().length;
+        }
+    }
+
+    /**
+     * @return The bytes of object content held.
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+}
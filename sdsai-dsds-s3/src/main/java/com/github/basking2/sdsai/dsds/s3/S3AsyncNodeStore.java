@@ -0,0 +1,540 @@
+package com.github.basking2.sdsai.dsds.s3;
+
+import com.github.basking2.sdsai.dsds.node.*;
+import software.amazon.awssdk.core.ResponseBytes;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/**
+ * A {@link NodeStore} that uses an {@link S3AsyncClient}.
+ *
+ * The objects written are the same as those written by {@link S3NodeStore}, so the two may be used on the
+ * same bucket and prefixes.
+ *
+ * Each operation has an asynchronous form that returns a {@link CompletableFuture}. The
+ * {@link NodeStore} methods call these and wait for the result. At most {@code maxConcurrency} requests
+ * are in flight at once. Starting a request beyond that blocks the calling thread until another request
+ * completes, so asynchronous methods should not be called from the threads that complete the futures.
+ *
+ * Removing many keys at once is done with {@link #removeNodes(Collection)} and {@link #removeData(Collection)},
+ * which send {@code DeleteObjects} requests of up to {@value #MAX_DELETE_KEYS} keys.
+ * The removes in a {@link NodeStoreBatch} given to {@link #execute(NodeStoreBatch)} are sent the same way.
+ */
+public class S3AsyncNodeStore implements BatchNodeStore<String, S3ObjectId, String> {
+
+    /**
+     * The most keys S3 accepts in one {@code DeleteObjects} request.
+     */
+    public static final int MAX_DELETE_KEYS = 1000;
+
+    /**
+     * The default number of requests that may be in flight at once.
+     */
+    public static final int DEFAULT_MAX_CONCURRENCY = 50;
+
+    /**
+     * How S3 is accessed.
+     */
+    private final S3AsyncClient client;
+
+    /**
+     * The bucket keys will in.
+     */
+    private final String bucket;
+
+    /**
+     * The prefix all node keys will be placed under.
+     */
+    private final String nodePrefix;
+
+    /**
+     * The prefix all data keys will be placed under.
+     */
+    private final String dataPrefix;
+
+    /**
+     * Permits for requests in flight.
+     */
+    private final Semaphore inFlight;
+
+    /**
+     * Constructor.
+     * @param client How to access S3.
+     * @param bucket The bucket.
+     * @param nodePrefix The key prefix that keys will be put under. This should probably end in a / as no / is inserted.
+     * @param dataPrefix The key prefix that keys will be put under. This should probably end in a / as no / is inserted.
+     * @param maxConcurrency The number of requests that may be in flight at once.
+     */
+    public S3AsyncNodeStore(
+            final S3AsyncClient client,
+            final String bucket,
+            final String nodePrefix,
+            final String dataPrefix,
+            final int maxConcurrency
+    ) {
+        this.client = client;
+        this.bucket = bucket;
+        this.nodePrefix = nodePrefix;
+        this.dataPrefix = dataPrefix;
+        this.inFlight = new Semaphore(maxConcurrency);
+    }
+
+    /**
+     * Constructor.
+     * @param client How to access S3.
+     * @param bucket The bucket.
+     * @param prefix The key prefix that keys will be put under. This should probably end in a / as no / is inserted.
+     */
+    public S3AsyncNodeStore(final S3AsyncClient client, final String bucket, final String prefix) {
+        this(client, bucket, prefix, prefix, DEFAULT_MAX_CONCURRENCY);
+    }
+
+    /**
+     * Use a default S3 client over the Netty HTTP client, sized to {@code maxConcurrency} connections.
+     * @param bucket The bucket.
+     * @param prefix The key prefix that keys will be put under. This should probably end in a / as no / is inserted.
+     * @param maxConcurrency The number of requests that may be in flight at once.
+     */
+    public S3AsyncNodeStore(final String bucket, final String prefix, final int maxConcurrency) {
+        this(
+                S3AsyncClient
+                        .builder()
+                        .httpClientBuilder(NettyNioAsyncHttpClient.builder().maxConcurrency(maxConcurrency))
+                        .build(),
+                bucket,
+                prefix,
+                prefix,
+                maxConcurrency
+        );
+    }
+
+    /**
+     * Fetch user data.
+     *
+     * @param key The key.
+     * @return A future of the data, or of null if there is no such key.
+     */
+    public CompletableFuture<String> loadDataAsync(final S3ObjectId key) {
+        return limit(() -> client.getObject(
+                GetObjectRequest.builder().bucket(key.getBucket()).key(dataPrefix + key.getKey()).build(),
+                AsyncResponseTransformer.toBytes()
+        ))
+                .handle((bytes, t) -> {
+                    if (t == null) {
+                        return bytes.asUtf8String();
+                    }
+                    if (cause(t) instanceof NoSuchKeyException) {
+                        return null;
+                    }
+                    throw new NodeStoreException("Loading key "+dataPrefix+key.getKey(), cause(t));
+                });
+    }
+
+    /**
+     * Fetch a node.
+     *
+     * @param key The key.
+     * @return A future of the node. It completes exceptionally with a {@link NodeStoreNodeNotFoundException}
+     *         if there is no such node.
+     */
+    public CompletableFuture<Node<String, S3ObjectId>> loadNodeAsync(final S3ObjectId key) {
+        return limit(() -> client.getObject(
+                GetObjectRequest.builder().bucket(key.getBucket()).key(nodePrefix + key.getKey()).build(),
+                AsyncResponseTransformer.toBytes()
+        ))
+                .handle((bytes, t) -> {
+                    if (t == null) {
+                        return readNode(bytes);
+                    }
+                    if (cause(t) instanceof NoSuchKeyException) {
+                        throw new NodeStoreNodeNotFoundException(cause(t));
+                    }
+                    throw new NodeStoreException("Loading key "+nodePrefix+key.getKey(), cause(t));
+                });
+    }
+
+    /**
+     * Store user data.
+     *
+     * @param key The key.
+     * @param data The data.
+     * @return A future that completes when the data is stored.
+     */
+    public CompletableFuture<Void> storeAsync(final S3ObjectId key, final String data) {
+        return put(dataPrefix, key, AsyncRequestBody.fromString(data));
+    }
+
+    /**
+     * Store a node.
+     *
+     * @param key The key.
+     * @param node The node.
+     * @return A future that completes when the node is stored.
+     */
+    public CompletableFuture<Void> storeAsync(final S3ObjectId key, final Node<String, S3ObjectId> node) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            NodeUtil.storeNode(out, node, userKey -> userKey.getBytes(), storeKey -> storeKey.getKey().getBytes());
+        }
+        catch (final IOException e) {
+            throw new NodeStoreException(e);
+        }
+
+        return put(nodePrefix, key, AsyncRequestBody.fromBytes(out.toByteArray()));
+    }
+
+    /**
+     * Remove a node.
+     *
+     * @param key The key.
+     * @return A future that completes when the node is removed.
+     */
+    public CompletableFuture<Void> removeNodeAsync(final S3ObjectId key) {
+        return delete(nodePrefix, key);
+    }
+
+    /**
+     * Remove user data.
+     *
+     * @param key The key.
+     * @return A future that completes when the data is removed.
+     */
+    public CompletableFuture<Void> removeDataAsync(final S3ObjectId key) {
+        return delete(dataPrefix, key);
+    }
+
+    /**
+     * Remove many nodes using as few {@code DeleteObjects} requests as possible.
+     *
+     * @param keys The keys. They may be in different buckets.
+     * @return A future that completes when all the nodes are removed.
+     */
+    public CompletableFuture<Void> removeNodes(final Collection<S3ObjectId> keys) {
+        return deleteAll(nodePrefix, keys);
+    }
+
+    /**
+     * Remove many user data objects using as few {@code DeleteObjects} requests as possible.
+     *
+     * @param keys The keys. They may be in different buckets.
+     * @return A future that completes when all the data is removed.
+     */
+    public CompletableFuture<Void> removeData(final Collection<S3ObjectId> keys) {
+        return deleteAll(dataPrefix, keys);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String loadData(final S3ObjectId key) {
+        return join(loadDataAsync(key));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Node<String, S3ObjectId> loadNode(final S3ObjectId key) {
+        return join(loadNodeAsync(key));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void store(final S3ObjectId key, final String data) {
+        join(storeAsync(key, data));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void store(final S3ObjectId key, final Node<String, S3ObjectId> node) {
+        join(storeAsync(key, node));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeNode(final S3ObjectId key) {
+        join(removeNodeAsync(key));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeData(final S3ObjectId key) {
+        join(removeDataAsync(key));
+    }
+
+    /**
+     * Send the data writes of the batch, the removes as {@code DeleteObjects} requests,
+     * and once they complete send the node writes the same way.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void execute(final NodeStoreBatch<String, S3ObjectId, String> batch) {
+        final List<CompletableFuture<Void>> dataFutures = new ArrayList<>();
+        final List<S3ObjectId> dataRemoves = new ArrayList<>();
+        for (final NodeStoreBatch.Write<S3ObjectId, String> w : batch.getDataWrites()) {
+            if (w.isRemove()) {
+                dataRemoves.add(w.getKey());
+            }
+            else {
+                dataFutures.add(storeAsync(w.getKey(), w.getValue()));
+            }
+        }
+        if (!dataRemoves.isEmpty()) {
+            dataFutures.add(removeData(dataRemoves));
+        }
+        join(allOf(dataFutures));
+
+        final List<CompletableFuture<Void>> nodeFutures = new ArrayList<>();
+        final List<S3ObjectId> nodeRemoves = new ArrayList<>();
+        for (final NodeStoreBatch.Write<S3ObjectId, Node<String, S3ObjectId>> w : batch.getNodeWrites()) {
+            if (w.isRemove()) {
+                nodeRemoves.add(w.getKey());
+            }
+            else {
+                nodeFutures.add(storeAsync(w.getKey(), w.getValue()));
+            }
+        }
+        if (!nodeRemoves.isEmpty()) {
+            nodeFutures.add(removeNodes(nodeRemoves));
+        }
+        join(allOf(nodeFutures));
+    }
+
+    /**
+     * Fetch the nodes concurrently.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<S3ObjectId, Node<String, S3ObjectId>> loadNodes(final Collection<S3ObjectId> keys) {
+        final Map<S3ObjectId, CompletableFuture<Node<String, S3ObjectId>>> futures = new HashMap<>();
+        for (final S3ObjectId key : keys) {
+            futures.put(key, loadNodeAsync(key).exceptionally(t -> {
+                if (cause(t) instanceof NodeStoreNodeNotFoundException) {
+                    return null;
+                }
+                throw new CompletionException(cause(t));
+            }));
+        }
+
+        return joinAll(futures);
+    }
+
+    /**
+     * Fetch the data concurrently.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<S3ObjectId, String> loadData(final Collection<S3ObjectId> keys) {
+        final Map<S3ObjectId, CompletableFuture<String>> futures = new HashMap<>();
+        for (final S3ObjectId key : keys) {
+            futures.put(key, loadDataAsync(key));
+        }
+
+        return joinAll(futures);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public S3ObjectId generateKey(final Node<String, S3ObjectId> node, final String str) {
+        return new S3ObjectId(bucket, UUID.randomUUID().toString());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public S3ObjectId convert(final String key) {
+        return new S3ObjectId(bucket, key);
+    }
+
+    /**
+     * @return The client this store uses.
+     */
+    public S3AsyncClient getClient() {
+        return client;
+    }
+
+    private Node<String, S3ObjectId> readNode(final ResponseBytes<GetObjectResponse> bytes) {
+        try {
+            return NodeUtil.readNode(
+                    new ByteArrayInputStream(bytes.asByteArrayUnsafe()),
+                    userKey -> new String(userKey),
+                    storekey -> new S3ObjectId(bucket, new String(storekey))
+            );
+        }
+        catch (final IOException e) {
+            throw new NodeStoreException(e);
+        }
+    }
+
+    private CompletableFuture<Void> put(final String prefix, final S3ObjectId key, final AsyncRequestBody body) {
+        return limit(() -> client.putObject(
+                PutObjectRequest.builder().bucket(key.getBucket()).key(prefix + key.getKey()).build(),
+                body
+        ))
+                .handle((r, t) -> {
+                    if (t != null) {
+                        throw new NodeStoreException("Storing key "+prefix+key.getKey(), cause(t));
+                    }
+                    return null;
+                });
+    }
+
+    private CompletableFuture<Void> delete(final String prefix, final S3ObjectId key) {
+        return limit(() -> client.deleteObject(
+                DeleteObjectRequest.builder().bucket(key.getBucket()).key(prefix + key.getKey()).build()
+        ))
+                .handle((r, t) -> {
+                    if (t != null) {
+                        throw new NodeStoreException("Removing key "+prefix+key.getKey(), cause(t));
+                    }
+                    return null;
+                });
+    }
+
+    private CompletableFuture<Void> deleteAll(final String prefix, final Collection<S3ObjectId> keys) {
+        // DeleteObjects works on a single bucket.
+        final Map<String, List<ObjectIdentifier>> byBucket = new HashMap<>();
+        for (final S3ObjectId key : keys) {
+            byBucket
+                    .computeIfAbsent(key.getBucket(), b -> new ArrayList<>())
+                    .add(ObjectIdentifier.builder().key(prefix + key.getKey()).build());
+        }
+
+        final List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (final Map.Entry<String, List<ObjectIdentifier>> entry : byBucket.entrySet()) {
+            final List<ObjectIdentifier> objects = entry.getValue();
+            for (int i = 0; i < objects.size(); i += MAX_DELETE_KEYS) {
+                futures.add(deleteBatch(entry.getKey(), objects.subList(i, Math.min(i + MAX_DELETE_KEYS, objects.size()))));
+            }
+        }
+
+        return allOf(futures);
+    }
+
+    private CompletableFuture<Void> deleteBatch(final String bucket, final List<ObjectIdentifier> objects) {
+        final DeleteObjectsRequest request = DeleteObjectsRequest
+                .builder()
+                .bucket(bucket)
+                .delete(Delete.builder().objects(objects).quiet(true).build())
+                .build();
+
+        return limit(() -> client.deleteObjects(request))
+                .handle((r, t) -> {
+                    if (t != null) {
+                        throw new NodeStoreException("Removing "+objects.size()+" keys from "+bucket, cause(t));
+                    }
+
+                    // Quiet mode only reports the keys that failed.
+                    if (r.hasErrors() && !r.errors().isEmpty()) {
+                        final S3Error error = r.errors().get(0);
+                        throw new NodeStoreException(
+                                "Failed to remove "+r.errors().size()+" keys from "+bucket+
+                                        ". First was "+error.key()+": "+error.code()+" "+error.message());
+                    }
+
+                    return null;
+                });
+    }
+
+    /**
+     * Start a request once a permit is available and release the permit when it completes.
+     */
+    private <T> CompletableFuture<T> limit(final Supplier<CompletableFuture<T>> request) {
+        try {
+            inFlight.acquire();
+        }
+        catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NodeStoreException("Interrupted waiting to send a request.", e);
+        }
+
+        final CompletableFuture<T> future;
+        try {
+            future = request.get();
+        }
+        catch (final RuntimeException e) {
+            inFlight.release();
+            throw e;
+        }
+
+        return future.whenComplete((r, t) -> inFlight.release());
+    }
+
+    private static CompletableFuture<Void> allOf(final List<CompletableFuture<Void>> futures) {
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()]));
+    }
+
+    /**
+     * Wait on every future and collect the non-null results by key.
+     */
+    private static <T> Map<S3ObjectId, T> joinAll(final Map<S3ObjectId, CompletableFuture<T>> futures) {
+        join(CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[futures.size()])));
+
+        final Map<S3ObjectId, T> results = new HashMap<>();
+        for (final Map.Entry<S3ObjectId, CompletableFuture<T>> entry : futures.entrySet()) {
+            final T value = entry.getValue().join();
+            if (value != null) {
+                results.put(entry.getKey(), value);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Wait on a future, rethrowing any {@link NodeStoreException} it failed with.
+     */
+    private static <T> T join(final CompletableFuture<T> future) {
+        try {
+            return future.join();
+        }
+        catch (final CompletionException e) {
+            final Throwable t = cause(e);
+            if (t instanceof NodeStoreException) {
+                throw (NodeStoreException) t;
+            }
+            throw new NodeStoreException(t);
+        }
+    }
+
+    /**
+     * Unwrap the {@link CompletionException} a dependent stage sees.
+     */
+    private static Throwable cause(final Throwable t) {
+        if (t instanceof CompletionException && t.getCause() != null) {
+            return t.getCause();
+        }
+        return t;
+    }
+}
@@ -3,6 +3,7 @@ package com.github.basking2.sdsai.dsds.s3;
 import com.github.basking2.sdsai.dsds.node.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.core.ResponseBytes;
 import software.amazon.awssdk.core.ResponseInputStream;
 import software.amazon.awssdk.core.sync.RequestBody;
 import software.amazon.awssdk.services.s3.S3Client;
@@ -13,7 +14,25 @@ import java.io.*;
 import java.nio.ByteBuffer;
 import java.util.UUID;
 
-public class S3NodeStore implements NodeStore<String, S3ObjectId, String> {
+/**
+ * A {@link NodeStore} that stores each node and each user value as an S3 object.
+ *
+ * Nodes may be kept in an {@link S3ObjectCache}, see {@link #setNodeCache(S3ObjectCache, long)}.
+ * A cached node is loaded with a conditional GET that transfers nothing if the node is unchanged.
+ *
+ * Node versions are ETags, so a {@link PinnedNodeStore} can validate a pinned node with a HEAD request.
+ */
+public class S3NodeStore implements VersionedNodeStore<String, S3ObjectId, String> {
+
+    /**
+     * The HTTP status S3 answers a conditional GET with when the object is unchanged.
+     */
+    private static final int NOT_MODIFIED = 304;
+
+    /**
+     * The HTTP status of a HEAD request for a missing object.
+     */
+    private static final int NOT_FOUND = 404;
 
     /**
      * Logger.
@@ -40,6 +59,16 @@ public class S3NodeStore implements NodeStore<String, S3ObjectId, String> {
      */
     private final String bucket;
 
+    /**
+     * Node objects with their ETags, or null.
+     */
+    private volatile S3ObjectCache nodeCache;
+
+    /**
+     * How long a cached node is used without asking S3 if it changed.
+     */
+    private volatile long revalidateAfterMillis;
+
     /**
      * Constructor.
      * @param client How to access S3.
@@ -61,10 +90,7 @@ public class S3NodeStore implements NodeStore<String, S3ObjectId, String> {
      * @param prefix The key prefix that keys will be put under. This should probably end in a / as no / is inserted.
      */
     public S3NodeStore(final S3Client client, final String bucket, final String prefix) {
-        this.client = client;
-        this.bucket = bucket;
-        this.nodePrefix = prefix;
-        this.dataPrefix = prefix;
+        this(client, bucket, prefix, prefix);
     }
 
     /**
@@ -98,14 +124,15 @@ public class S3NodeStore implements NodeStore<String, S3ObjectId, String> {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * If a node cache is set, a cached node is revalidated with its ETag. S3 sends the node only if it changed.
+     */
     @Override
     public Node<String, S3ObjectId> loadNode(final S3ObjectId key) {
-        try (final ResponseInputStream<GetObjectResponse> o = client.getObject(GetObjectRequest.builder().bucket(key.getBucket()).key(nodePrefix + key.getKey()).build())) {
-            return NodeUtil.readNode(
-                    o,
-                    userKey -> new String(userKey),
-                    storekey -> new S3ObjectId(bucket, new String(storekey))
-            );
+        try {
+            return readNode(new ByteArrayInputStream(loadNodeBytes(key)));
         }
         catch(final NoSuchKeyException e) {
             throw new NodeStoreNodeNotFoundException(e);
@@ -118,6 +145,72 @@ public class S3NodeStore implements NodeStore<String, S3ObjectId, String> {
         }
     }
 
+    /**
+     * Keep node objects in a cache.
+     *
+     * If the cache is shared by another writer of the same nodes, or survives a restart,
+     * {@code revalidateAfterMillis} should be 0 so each load asks S3 if the node changed.
+     * If this store is the only writer, the cache is always current and a cached node may be
+     * used without asking S3.
+     *
+     * @param nodeCache The cache, or null to not cache.
+     * @param revalidateAfterMillis How long a cached node is used before S3 is asked if it changed.
+     */
+    public void setNodeCache(final S3ObjectCache nodeCache, final long revalidateAfterMillis) {
+        this.nodeCache = nodeCache;
+        this.revalidateAfterMillis = revalidateAfterMillis;
+    }
+
+    /**
+     * Fetch a node object, from the cache if it is unchanged.
+     */
+    private byte[] loadNodeBytes(final S3ObjectId key) {
+        final String objectKey = nodePrefix + key.getKey();
+        final S3ObjectCache cache = nodeCache;
+        final GetObjectRequest.Builder request = GetObjectRequest.builder().bucket(key.getBucket()).key(objectKey);
+
+        if (cache == null) {
+            return client.getObjectAsBytes(request.build()).asByteArray();
+        }
+
+        final String cacheKey = cacheKey(key.getBucket(), objectKey);
+        final S3ObjectCache.Entry cached = cache.get(cacheKey);
+        final long now = System.currentTimeMillis();
+
+        if (cached != null) {
+            if (now - cached.getValidated() < revalidateAfterMillis) {
+                return cached.getBytes();
+            }
+            request.ifNoneMatch(cached.getETag());
+        }
+
+        try {
+            final ResponseBytes<GetObjectResponse> response = client.getObjectAsBytes(request.build());
+            final byte[] bytes = response.asByteArray();
+            cache.put(cacheKey, new S3ObjectCache.Entry(response.response().eTag(), bytes, now));
+            return bytes;
+        }
+        catch (final NoSuchKeyException e) {
+            cache.remove(cacheKey);
+            throw e;
+        }
+        catch (final S3Exception e) {
+            if (cached != null && e.statusCode() == NOT_MODIFIED) {
+                cache.put(cacheKey, new S3ObjectCache.Entry(cached.getETag(), cached.getBytes(), now));
+                return cached.getBytes();
+            }
+            throw e;
+        }
+    }
+
+    private Node<String, S3ObjectId> readNode(final InputStream in) throws IOException {
+        return NodeUtil.readNode(
+                in,
+                userKey -> new String(userKey),
+                storekey -> new S3ObjectId(bucket, new String(storekey))
+        );
+    }
+
     @Override
     public void store(final S3ObjectId key, final String data) {
         client.putObject(
@@ -128,34 +221,91 @@ public class S3NodeStore implements NodeStore<String, S3ObjectId, String> {
 
     @Override
     public void store(final S3ObjectId key, final Node<String, S3ObjectId> node) {
+        storeVersioned(key, node);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The version is the ETag of the node object, as returned by the PUT.
+     */
+    @Override
+    public Object storeVersioned(final S3ObjectId key, final Node<String, S3ObjectId> node) {
         try {
-            final ByteArrayOutputStream out = new ByteArrayOutputStream() {
-                @Override
-                public void close() throws IOException {
-                    client.putObject(
-                            PutObjectRequest
-                                    .builder()
-                                    .bucket(key.getBucket())
-                                    .key(nodePrefix + key.getKey())
-                                    .build(),
-                            RequestBody.fromByteBuffer(ByteBuffer.wrap(buf, 0, count))
-
-                    );
-                }
-            };
-
-            NodeUtil.storeNode(out, node, userKey -> userKey.getBytes(), storeKey -> storeKey.getKey().getBytes());
-
-            // NOTE: This writes the buffered data to S3.
-            out.close();
+            final NodeBuffer out = new NodeBuffer();
+
+            NodeUtil.storeNode(
+                    out,
+                    node,
+                    userKey -> userKey.getBytes(),
+                    storeKey -> storeKey.getKey().getBytes()
+            );
+
+            final PutObjectResponse response = client.putObject(
+                    PutObjectRequest
+                            .builder()
+                            .bucket(key.getBucket())
+                            .key(nodePrefix + key.getKey())
+                            .build(),
+                    RequestBody.fromByteBuffer(out.byteBuffer())
+            );
+
+            final S3ObjectCache cache = nodeCache;
+            if (cache != null) {
+                cache.put(
+                        cacheKey(key.getBucket(), nodePrefix + key.getKey()),
+                        new S3ObjectCache.Entry(response.eTag(), out.toByteArray(), System.currentTimeMillis()));
+            }
+
+            return response.eTag();
         }
         catch (final IOException e) {
             throw new NodeStoreException(e);
         }
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * The version is the ETag of the node object, read with a HEAD request.
+     */
+    @Override
+    public Object nodeVersion(final S3ObjectId key) {
+        try {
+            return client.headObject(
+                    HeadObjectRequest
+                            .builder()
+                            .bucket(key.getBucket())
+                            .key(nodePrefix + key.getKey())
+                            .build()
+            ).eTag();
+        }
+        catch (final NoSuchKeyException e) {
+            return null;
+        }
+        catch (final S3Exception e) {
+            if (e.statusCode() == NOT_FOUND) {
+                return null;
+            }
+            throw new NodeStoreException(e);
+        }
+    }
+
+    /**
+     * A buffer that can be sent without copying it.
+     */
+    private static final class NodeBuffer extends ByteArrayOutputStream {
+        private ByteBuffer byteBuffer() {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+    }
+
     @Override
     public void removeNode(final S3ObjectId key) {
+        final S3ObjectCache cache = nodeCache;
+        if (cache != null) {
+            cache.remove(cacheKey(key.getBucket(), nodePrefix + key.getKey()));
+        }
         client.deleteObject(
                 DeleteObjectRequest
                         .builder()
@@ -185,4 +335,8 @@ public class S3NodeStore implements NodeStore<String, S3ObjectId, String> {
     public S3ObjectId convert(final String key) {
         return new S3ObjectId(bucket, key);
     }
+
+    private static String cacheKey(final String bucket, final String key) {
+        return bucket + "/" + key;
+    }
 }
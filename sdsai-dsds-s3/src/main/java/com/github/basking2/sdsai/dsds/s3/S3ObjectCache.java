@@ -0,0 +1,63 @@
+package com.github.basking2.sdsai.dsds.s3;
+
+/**
+ * A local copy of S3 objects, each held with the ETag it had when it was read or written.
+ *
+ * {@link S3NodeStore} sends the ETag in an {@code If-None-Match} header when it loads a cached object
+ * and uses the cached bytes when S3 answers that the object is unchanged.
+ */
+public interface S3ObjectCache {
+
+    /**
+     * @param key The bucket and object key.
+     * @return The cached entry or null.
+     */
+    Entry get(String key);
+
+    /**
+     * Add or replace an entry.
+     *
+     * @param key The bucket and object key.
+     * @param entry The entry.
+     */
+    void put(String key, Entry entry);
+
+    /**
+     * Remove an entry, if there is one.
+     *
+     * @param key The bucket and object key.
+     */
+    void remove(String key);
+
+    /**
+     * The content and ETag of an object.
+     */
+    final class Entry {
+        private final String eTag;
+        private final byte[] bytes;
+        private final long validated;
+
+        /**
+         * @param eTag The ETag S3 reported for the object.
+         * @param bytes The object's content. This is not copied.
+         * @param validated When, in milliseconds since the epoch, S3 last confirmed this content.
+         */
+        public Entry(final String eTag, final byte[] bytes, final long validated) {
+            this.eTag = eTag;
+            this.bytes = bytes;
+            this.validated = validated;
+        }
+
+        public String getETag() {
+            return eTag;
+        }
+
+        public byte[] getBytes() {
+            return bytes;
+        }
+
+        public long getValidated() {
+            return validated;
+        }
+    }
+}
@@ -16,4 +16,24 @@ public class S3ObjectId {
         this.key = key;
         this.bucket = bucket;
     }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (!(o instanceof S3ObjectId)) {
+            return false;
+        }
+
+        final S3ObjectId that = (S3ObjectId) o;
+        return key.equals(that.key) && bucket.equals(that.bucket);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * bucket.hashCode() + key.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return bucket + "/" + key;
+    }
 }
@@ -0,0 +1,210 @@
+package com.github.basking2.sdsai.dsds.s3;
+
+import com.github.basking2.sdsai.dsds.BTree;
+import com.github.basking2.sdsai.dsds.node.Node;
+import com.github.basking2.sdsai.dsds.node.NodeStoreBatch;
+import com.github.basking2.sdsai.dsds.node.NodeStoreNodeNotFoundException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3Configuration;
+import software.amazon.awssdk.services.s3.model.BucketAlreadyOwnedByYouException;
+import software.amazon.awssdk.services.s3.model.CreateBucketRequest;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assume.assumeNoException;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs against an S3 stand-in, such as MinIO, on localhost.
+ * The tests are skipped if none is running.
+ */
+public class S3AsyncNodeStoreTest {
+    public static final String endpoint = System.getProperty("s3.endpoint", "http://127.0.0.1:9000");
+    public static final String accessKey = System.getProperty("s3.accessKey", "minioadmin");
+    public static final String secretKey = System.getProperty("s3.secretKey", "minioadmin");
+    public static final String bucket = "sdsai-dsds-test";
+    public static final String prefix = "S3AsyncNodeStoreTest/";
+
+    private S3AsyncClient client;
+    private S3AsyncNodeStore ns;
+    private BTree<String, S3ObjectId, String> bt;
+
+    @Before
+    public void setup()
+    {
+        try
+        {
+            client = S3AsyncClient
+                .builder()
+                .endpointOverride(URI.create(endpoint))
+                .region(Region.US_EAST_1)
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create(accessKey, secretKey)))
+                // Some stand-ins reject the x-amz-te header sent when validating checksums.
+                .serviceConfiguration(S3Configuration.builder().pathStyleAccessEnabled(true).checksumValidationEnabled(false).build())
+                .build();
+
+            try
+            {
+                client.createBucket(CreateBucketRequest.builder().bucket(bucket).build()).join();
+            }
+            catch (final CompletionException e)
+            {
+                if (!(e.getCause() instanceof BucketAlreadyOwnedByYouException)) {
+                    throw e;
+                }
+            }
+
+            ns = new S3AsyncNodeStore(client, bucket, prefix, prefix, 8);
+            bt = new BTree<String, S3ObjectId, String>("btRoot", ns, 1);
+        }
+        catch (Throwable e)
+        {
+            if (client != null) {
+                client.close();
+                client = null;
+            }
+            assumeNoException(e);
+        }
+    }
+
+    @After
+    public void teardown()
+    {
+        if (client != null) {
+            client.close();
+        }
+    }
+
+    @Test
+    public void basicLoadStore()
+    {
+        final S3ObjectId key = ns.convert("A");
+        ns.store(key, "B");
+        assertEquals("B", ns.loadData(key));
+        ns.removeData(key);
+        assertNull(ns.loadData(key));
+    }
+
+    @Test
+    public void loadStoreNode()
+    {
+        final Node<String, S3ObjectId> n1 = new Node<String, S3ObjectId>(1,1);
+        final Node<String, S3ObjectId> n2 = new Node<String, S3ObjectId>(1,1);
+
+        final S3ObjectId n1id = ns.convert("node1");
+        final S3ObjectId n2id = ns.convert("node2");
+
+        n1.getChildren().add(n2id);
+        n2.getChildren().add(n1id);
+
+        CompletableFuture.allOf(ns.storeAsync(n1id, n1), ns.storeAsync(n2id, n2)).join();
+
+        assertEquals(n2id.getKey(), ns.loadNodeAsync(n1id).join().getChildren().get(0).getKey());
+        assertEquals(n1id.getKey(), ns.loadNodeAsync(n2id).join().getChildren().get(0).getKey());
+
+        ns.removeNode(n1id);
+        ns.removeNode(n2id);
+    }
+
+    @Test(expected = NodeStoreNodeNotFoundException.class)
+    public void missingNode()
+    {
+        ns.loadNode(ns.convert("no such node"));
+    }
+
+    @Test
+    public void batchRemove()
+    {
+        final List<S3ObjectId> keys = new ArrayList<>();
+        final List<CompletableFuture<Void>> stores = new ArrayList<>();
+        for (int i = 0; i < 1100; i++) {
+            final S3ObjectId key = ns.generateKey(null, null);
+            keys.add(key);
+            stores.add(ns.storeAsync(key, "value"+i));
+        }
+        CompletableFuture.allOf(stores.toArray(new CompletableFuture<?>[stores.size()])).join();
+
+        ns.removeData(keys).join();
+
+        assertNull(ns.loadData(keys.get(0)));
+        assertNull(ns.loadData(keys.get(keys.size()-1)));
+    }
+
+    @Test
+    public void btreeChurn()
+    {
+        try
+        {
+            for(int i = 0; i < 100; i++)
+                bt.put(java.util.UUID.randomUUID()+"", "value"+i);
+
+            assertNotNull(ns.loadNode(ns.convert("btRoot")));
+
+            for( final Iterator<String> i = bt.getIterator();
+                i.hasNext(); )
+                i.next();
+
+            assertEquals(100, bt.size());
+        }
+        finally
+        {
+            bt.destroy();
+        }
+    }
+
+    @Test
+    public void batchLoadAndExecute()
+    {
+        final S3ObjectId a = ns.convert("batchA");
+        final S3ObjectId b = ns.convert("batchB");
+        final Node<String, S3ObjectId> node = new Node<String, S3ObjectId>(1,1);
+
+        ns.execute(new NodeStoreBatch<String, S3ObjectId, String>().store(a, "A").store(b, node));
+
+        assertEquals("A", ns.loadData(Arrays.asList(a, ns.convert("no such data"))).get(a));
+        assertEquals(1, ns.loadNodes(Arrays.asList(b, ns.convert("no such node"))).size());
+
+        ns.execute(new NodeStoreBatch<String, S3ObjectId, String>().removeData(a).removeNode(b));
+
+        assertNull(ns.loadData(a));
+        assertTrue(ns.loadNodes(Arrays.asList(b)).isEmpty());
+    }
+
+    @Test
+    public void parallelDestroy()
+    {
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try
+        {
+            for(int i = 0; i < 100; i++)
+                bt.put("key"+i, "value"+i);
+
+            bt.destroy(pool);
+
+            assertNull(ns.loadData(ns.convert("key0")));
+            assertTrue(ns.loadNodes(Arrays.asList(ns.convert("btRoot"))).isEmpty());
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package com.github.basking2.sdsai.dsds.s3;
+
+import com.github.basking2.sdsai.dsds.BTree;
+import com.github.basking2.sdsai.dsds.node.Node;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.core.interceptor.Context;
+import software.amazon.awssdk.core.interceptor.ExecutionAttributes;
+import software.amazon.awssdk.core.interceptor.ExecutionInterceptor;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3Configuration;
+import software.amazon.awssdk.services.s3.model.BucketAlreadyOwnedByYouException;
+import software.amazon.awssdk.services.s3.model.CreateBucketRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assume.assumeNoException;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs against an S3 stand-in, such as MinIO, on localhost.
+ * The tests are skipped if none is running.
+ */
+public class S3NodeStoreTest {
+    public static final String bucket = S3AsyncNodeStoreTest.bucket;
+
+    private final String prefix = "S3NodeStoreTest/"+UUID.randomUUID()+"/";
+
+    /**
+     * The HTTP status of each node read.
+     */
+    private final List<Integer> nodeGets = Collections.synchronizedList(new ArrayList<>());
+
+    private S3Client client;
+
+    @Before
+    public void setup()
+    {
+        try
+        {
+            client = S3Client
+                .builder()
+                .endpointOverride(URI.create(S3AsyncNodeStoreTest.endpoint))
+                .region(Region.US_EAST_1)
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create(
+                    S3AsyncNodeStoreTest.accessKey,
+                    S3AsyncNodeStoreTest.secretKey)))
+                .serviceConfiguration(S3Configuration.builder().pathStyleAccessEnabled(true).checksumValidationEnabled(false).build())
+                .overrideConfiguration(ClientOverrideConfiguration.builder().addExecutionInterceptor(new ExecutionInterceptor() {
+                    @Override
+                    public void afterTransmission(final Context.AfterTransmission context, final ExecutionAttributes executionAttributes) {
+                        if (context.request() instanceof GetObjectRequest &&
+                            ((GetObjectRequest) context.request()).key().startsWith(prefix+"node/")) {
+                            nodeGets.add(context.httpResponse().statusCode());
+                        }
+                    }
+                }).build())
+                .build();
+
+            try
+            {
+                client.createBucket(CreateBucketRequest.builder().bucket(bucket).build());
+            }
+            catch (final BucketAlreadyOwnedByYouException e)
+            {
+                // Fine.
+            }
+        }
+        catch (Throwable e)
+        {
+            if (client != null) {
+                client.close();
+                client = null;
+            }
+            assumeNoException(e);
+        }
+    }
+
+    @After
+    public void teardown()
+    {
+        if (client != null) {
+            client.close();
+        }
+    }
+
+    private S3NodeStore store()
+    {
+        return new S3NodeStore(client, bucket, prefix+"node/", prefix+"data/");
+    }
+
+    @Test
+    public void storesShareABucket()
+    {
+        final BTree<String, S3ObjectId, String> bt = new BTree<>("btRoot", store(), 2);
+        final BTree<String, S3ObjectId, String> other = new BTree<>("btRoot", store(), 2);
+        for (int i = 0; i < 20; i++) {
+            bt.put(String.format("key%03d", i), "value"+i);
+        }
+
+        // Read everything through the first store before the other changes it.
+        assertEquals(20, bt.size());
+        assertEquals("value10", bt.get("key010"));
+
+        assertEquals("value10", other.put("key010", "replaced"));
+        assertEquals("value11", other.remove("key011"));
+        other.put("key100", "added");
+
+        assertEquals("replaced", bt.get("key010"));
+        assertNull(bt.get("key011"));
+        assertEquals("added", bt.get("key100"));
+
+        final List<String> values = new ArrayList<>();
+        bt.values().forEach(values::add);
+        assertEquals(20, values.size());
+        assertEquals("replaced", values.get(10));
+        assertEquals("added", values.get(19));
+
+        bt.clear();
+    }
+
+    @Test
+    public void cachedNodesAreRevalidated()
+    {
+        final S3ObjectCache cache = new MemoryS3ObjectCache(1024 * 1024);
+        final S3NodeStore cached = store();
+        cached.setNodeCache(cache, 0);
+        final S3NodeStore other = store();
+
+        final S3ObjectId key = cached.convert("node");
+        final Node<String, S3ObjectId> node = new Node<>(2, 2, 0);
+        node.getData().add("a");
+        cached.store(key, node);
+
+        nodeGets.clear();
+        assertEquals(Arrays.asList("a"), cached.loadNode(key).getData());
+        assertEquals(Arrays.asList(304), nodeGets);
+
+        // Another writer changes the node.
+        node.getData().add("b");
+        other.store(key, node);
+
+        nodeGets.clear();
+        assertEquals(Arrays.asList("a", "b"), cached.loadNode(key).getData());
+        assertEquals(Arrays.asList(200), nodeGets);
+
+        cached.removeNode(key);
+        assertNull(cache.get(bucket+"/"+prefix+"node/node"));
+    }
+
+    @Test
+    public void cachedNodesAreTrusted()
+    {
+        final S3NodeStore cached = store();
+        cached.setNodeCache(new MemoryS3ObjectCache(1024 * 1024), 60000);
+
+        final S3ObjectId key = cached.convert("node");
+        final Node<String, S3ObjectId> node = new Node<>(2, 2, 0);
+        node.getData().add("a");
+        cached.store(key, node);
+
+        nodeGets.clear();
+        assertEquals(Arrays.asList("a"), cached.loadNode(key).getData());
+        assertTrue(nodeGets.isEmpty());
+
+        cached.removeNode(key);
+    }
+
+    @Test
+    public void pinnedRootIsValidatedByETag()
+    {
+        final S3NodeStore store = store();
+        final S3ObjectId key = store.convert("node");
+        assertNull(store.nodeVersion(key));
+
+        final Node<String, S3ObjectId> node = new Node<>(2, 2, 0);
+        node.getData().add("a");
+        final Object version = store.storeVersioned(key, node);
+        assertEquals(version, store.nodeVersion(key));
+
+        node.getData().add("b");
+        store.store(key, node);
+        assertNotEquals(version, store.nodeVersion(key));
+        store.removeNode(key);
+
+        final BTree<String, S3ObjectId, String> pinned = new BTree<>("btRoot", store, 2);
+        final BTree<String, S3ObjectId, String> other = new BTree<>("btRoot", store(), 2);
+        pinned.pinRoot(true);
+
+        pinned.put("a", "A");
+        other.put("b", "B");
+
+        nodeGets.clear();
+        final Iterator<String> keys = pinned.getIterator();
+        assertEquals("a", keys.next());
+        assertEquals("b", keys.next());
+        assertEquals(Arrays.asList(200), nodeGets);
+
+        // The root is unchanged, so it is not read again.
+        nodeGets.clear();
+        assertTrue(pinned.getIterator().hasNext());
+        assertTrue(nodeGets.isEmpty());
+
+        pinned.clear();
+    }
+}
@@ -0,0 +1,58 @@
+package com.github.basking2.sdsai.dsds.s3;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.UUID;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class S3ObjectCacheTest {
+
+    private static S3ObjectCache.Entry entry(final String eTag, final int size) {
+        return new S3ObjectCache.Entry(eTag, new byte[size], 1L);
+    }
+
+    @Test
+    public void memoryCacheEvictsLeastRecentlyUsed() {
+        final MemoryS3ObjectCache cache = new MemoryS3ObjectCache(100);
+
+        cache.put("a", entry("1", 40));
+        cache.put("b", entry("2", 40));
+        assertNotNull(cache.get("a"));
+
+        cache.put("c", entry("3", 40));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("a"));
+        assertNotNull(cache.get("c"));
+        assertEquals(80, cache.getBytes());
+
+        cache.put("a", entry("4", 10));
+        assertEquals(50, cache.getBytes());
+        assertEquals("4", cache.get("a").getETag());
+
+        cache.remove("c");
+        assertEquals(10, cache.getBytes());
+    }
+
+    @Test
+    public void directoryCacheSurvivesReopening() {
+        final File directory = new File("target/S3ObjectCacheTest/"+UUID.randomUUID());
+        final byte[] bytes = "some node".getBytes();
+
+        new DirectoryS3ObjectCache(directory).put("bucket/key", new S3ObjectCache.Entry("\"etag\"", bytes, 5L));
+
+        final DirectoryS3ObjectCache cache = new DirectoryS3ObjectCache(directory);
+        final S3ObjectCache.Entry entry = cache.get("bucket/key");
+        assertEquals("\"etag\"", entry.getETag());
+        assertEquals(5L, entry.getValidated());
+        assertArrayEquals(bytes, entry.getBytes());
+
+        assertNull(cache.get("bucket/other"));
+        cache.remove("bucket/key");
+        assertNull(cache.get("bucket/key"));
+    }
+}